@@ -0,0 +1,43 @@
+package sini.grapher.bench;
+
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * A named operation to be measured by the {@link BenchmarkRunner}, along with the sizes it should be measured at. For each size, the
+ * setup function is called once, outside of the measurement, and returns the operation to be timed. The value returned by the operation
+ * is consumed by the runner so that the work done to compute it cannot be optimised away.
+ */
+public class Benchmark {
+	
+	private final String name;
+	private final String parameterName;
+	private final int[] parameters;
+	private final IntFunction<Supplier<Object>> setup;
+	
+	public Benchmark(String name, String parameterName, int[] parameters, IntFunction<Supplier<Object>> setup) {
+		this.name = name;
+		this.parameterName = parameterName;
+		this.parameters = parameters;
+		this.setup = setup;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public String getParameterName() {
+		return parameterName;
+	}
+	
+	public int[] getParameters() {
+		return parameters;
+	}
+	
+	/**
+	 * Prepares the benchmark for the given size and returns the operation to be measured.
+	 */
+	public Supplier<Object> setup(int parameter) {
+		return setup.apply(parameter);
+	}
+}
@@ -0,0 +1,394 @@
+package sini.grapher.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Measures {@link Benchmark}s in the same way as JMH does in its throughput mode: each benchmark is run for a number of timed warmup
+ * iterations, whose results are discarded, followed by a number of timed measurement iterations. Within an iteration the operation is
+ * called in batches, so that reading the clock does not dominate cheap operations.
+ * 
+ * <p>As in JMH, each benchmark is run in a JVM of its own, so that what the JIT compiler has learnt from earlier benchmarks does not
+ * affect it. {@code -nofork} runs every benchmark in the JVM of the runner instead, which is quicker but less accurate.
+ * 
+ * <p>With the GC profiler enabled, the bytes allocated per operation, by all threads, and the number and duration of garbage
+ * collections during the measurement are reported as well.
+ * 
+ * <p>Usage: {@code BenchmarkRunner [-f regex] [-wi n] [-i n] [-t millis] [-prof gc] [-nofork] [-csv file]}
+ */
+public class BenchmarkRunner {
+	
+	private static volatile Object sink;
+	
+	private int warmupIterations = 3;
+	private int measurementIterations = 5;
+	private long iterationMillis = 1000;
+	private boolean gcProfiler = false;
+	private boolean fork = true;
+	
+	/**
+	 * The result of measuring a benchmark at one size.
+	 */
+	public static class Result {
+		public final String name;
+		public final String parameterName;
+		public final int parameter;
+		
+		public final double opsPerSecond;
+		public final double opsPerSecondError;
+		public final double bytesPerOp;
+		public final long gcCount;
+		public final long gcMillis;
+		
+		public Result(String name, String parameterName, int parameter, double opsPerSecond, double opsPerSecondError, double bytesPerOp, long gcCount, long gcMillis) {
+			this.name = name;
+			this.parameterName = parameterName;
+			this.parameter = parameter;
+			this.opsPerSecond = opsPerSecond;
+			this.opsPerSecondError = opsPerSecondError;
+			this.bytesPerOp = bytesPerOp;
+			this.gcCount = gcCount;
+			this.gcMillis = gcMillis;
+		}
+		
+		public double getNanosPerOp() {
+			return 1e9 / opsPerSecond;
+		}
+	}
+	
+	
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+	
+	public void setMeasurementIterations(int measurementIterations) {
+		this.measurementIterations = measurementIterations;
+	}
+	
+	public void setIterationMillis(long iterationMillis) {
+		this.iterationMillis = iterationMillis;
+	}
+	
+	public void setGcProfiler(boolean gcProfiler) {
+		this.gcProfiler = gcProfiler;
+	}
+	
+	public void setFork(boolean fork) {
+		this.fork = fork;
+	}
+	
+	
+	public Result run(Benchmark benchmark, int parameter) {
+		Supplier<Object> operation = benchmark.setup(parameter);
+		
+		int batchSize = 1;
+		
+		for(int i = 0; i < warmupIterations; i++) {
+			runIteration(operation, batchSize);
+			batchSize = calibrate(operation, batchSize);
+		}
+		
+		double[] opsPerSecond = new double[measurementIterations];
+		long totalOps = 0;
+		
+		HashMap<Long, Long> allocationStart = getAllocatedBytes();
+		long gcCountStart = getGcCount();
+		long gcMillisStart = getGcMillis();
+		
+		for(int i = 0; i < measurementIterations; i++) {
+			long[] iteration = runIteration(operation, batchSize);
+			opsPerSecond[i] = iteration[1] * 1e9 / iteration[0];
+			totalOps += iteration[1];
+		}
+		
+		HashMap<Long, Long> allocationEnd = getAllocatedBytes();
+		
+		// Threads started during the measurement count from zero, but what threads that ended during it allocated is lost
+		long allocated = 0;
+		if(allocationStart != null) {
+			for(HashMap.Entry<Long, Long> entry: allocationEnd.entrySet()) allocated += entry.getValue() - allocationStart.getOrDefault(entry.getKey(), 0L);
+		}
+		
+		double mean = 0;
+		for(double ops: opsPerSecond) mean += ops / opsPerSecond.length;
+		
+		double variance = 0;
+		for(double ops: opsPerSecond) variance += (ops - mean) * (ops - mean) / Math.max(1, opsPerSecond.length - 1);
+		
+		return new Result(
+				benchmark.getName(), 
+				benchmark.getParameterName(), 
+				parameter, 
+				mean, 
+				Math.sqrt(variance), 
+				(allocationStart == null) ? Double.NaN : (double)allocated / totalOps, 
+				getGcCount() - gcCountStart, 
+				getGcMillis() - gcMillisStart);
+	}
+	
+	
+	/**
+	 * Runs every benchmark in {@code benchmarks} whose name matches {@code filter} at each of its sizes, printing the results as they
+	 * are measured.
+	 */
+	public ArrayList<Result> run(ArrayList<Benchmark> benchmarks, Pattern filter) {
+		ArrayList<Result> results = new ArrayList<Result>();
+		
+		System.out.println(getHeader());
+		
+		for(Benchmark benchmark: benchmarks) {
+			if(filter != null && !filter.matcher(benchmark.getName()).find()) continue;
+			
+			if(fork) {
+				for(Result result: runForked(benchmark)) {
+					results.add(result);
+					System.out.println(format(result));
+				}
+				
+				continue;
+			}
+			
+			for(int parameter: benchmark.getParameters()) {
+				Result result = run(benchmark, parameter);
+				results.add(result);
+				System.out.println(format(result));
+			}
+		}
+		
+		return results;
+	}
+	
+	
+	/**
+	 * Runs {@code benchmark} at each of its sizes in a new JVM, with the same class path and JVM options as this one, and returns the
+	 * results it measured.
+	 */
+	private ArrayList<Result> runForked(Benchmark benchmark) {
+		File csv = null;
+		
+		try {
+			csv = File.createTempFile("benchmark", ".csv");
+			
+			ArrayList<String> command = new ArrayList<String>();
+			command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+			command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(BenchmarkRunner.class.getName());
+			
+			command.add("-nofork");
+			command.add("-f");
+			command.add("^" + Pattern.quote(benchmark.getName()) + "$");
+			command.add("-wi");
+			command.add(Integer.toString(warmupIterations));
+			command.add("-i");
+			command.add(Integer.toString(measurementIterations));
+			command.add("-t");
+			command.add(Long.toString(iterationMillis));
+			if(gcProfiler) {
+				command.add("-prof");
+				command.add("gc");
+			}
+			command.add("-csv");
+			command.add(csv.getPath());
+			
+			// The results are read back from the CSV file, so only errors are passed through
+			Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			int exitCode = process.waitFor();
+			if(exitCode != 0) throw new IllegalStateException("The JVM running " + benchmark.getName() + " exited with code " + exitCode);
+			
+			return readCsv(csv.getPath());
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not run " + benchmark.getName() + " in a new JVM", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running " + benchmark.getName() + " in a new JVM", e);
+		} finally {
+			if(csv != null) csv.delete();
+		}
+	}
+	
+	
+	/**
+	 * Runs the operation in batches of {@code batchSize} until the iteration time has elapsed, and returns the time taken in nanoseconds
+	 * and the number of operations performed.
+	 */
+	private long[] runIteration(Supplier<Object> operation, int batchSize) {
+		long ops = 0;
+		long start = System.nanoTime();
+		long deadline = start + iterationMillis * 1000000;
+		long now;
+		
+		do {
+			for(int i = 0; i < batchSize; i++) {
+				sink = operation.get();
+			}
+			
+			ops += batchSize;
+			now = System.nanoTime();
+		} while(now < deadline);
+		
+		return new long[] {now - start, ops};
+	}
+	
+	
+	/**
+	 * Returns a batch size for which a batch takes roughly a tenth of a millisecond, so that the clock is read rarely.
+	 */
+	private int calibrate(Supplier<Object> operation, int batchSize) {
+		while(batchSize < (1 << 20)) {
+			long start = System.nanoTime();
+			for(int i = 0; i < batchSize; i++) sink = operation.get();
+			if(System.nanoTime() - start > 100000) break;
+			batchSize *= 2;
+		}
+		
+		return batchSize;
+	}
+	
+	
+	private String getHeader() {
+		String header = String.format(Locale.ROOT, "%-45s %-16s %14s %12s  %-6s", "Benchmark", "(param)", "Score", "Error", "Units");
+		if(gcProfiler) header += String.format(Locale.ROOT, " %14s %8s %8s", "alloc B/op", "gc count", "gc ms");
+		return header;
+	}
+	
+	
+	private String format(Result result) {
+		String line = String.format(Locale.ROOT, "%-45s %-16s %14.3f %12.3f  %-6s", 
+				result.name, result.parameterName + "=" + result.parameter, result.opsPerSecond, result.opsPerSecondError, "ops/s");
+		
+		if(gcProfiler) line += String.format(Locale.ROOT, " %14.1f %8d %8d", result.bytesPerOp, result.gcCount, result.gcMillis);
+		
+		return line;
+	}
+	
+	
+	public static void writeCsv(ArrayList<Result> results, String path) throws IOException {
+		try(PrintWriter out = new PrintWriter(new FileWriter(path))) {
+			out.println("benchmark,parameter,value,ops_per_second,error,ns_per_op,bytes_per_op,gc_count,gc_ms");
+			
+			for(Result result: results) {
+				out.println(String.format(Locale.ROOT, "%s,%s,%d,%f,%f,%f,%f,%d,%d", 
+						result.name, result.parameterName, result.parameter, result.opsPerSecond, result.opsPerSecondError, 
+						result.getNanosPerOp(), result.bytesPerOp, result.gcCount, result.gcMillis));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Reads back results written by {@link #writeCsv}.
+	 */
+	public static ArrayList<Result> readCsv(String path) throws IOException {
+		ArrayList<Result> results = new ArrayList<Result>();
+		
+		try(BufferedReader in = new BufferedReader(new FileReader(path))) {
+			in.readLine(); // The header
+			
+			for(String line = in.readLine(); line != null; line = in.readLine()) {
+				String[] fields = line.split(",");
+				
+				results.add(new Result(
+						fields[0], 
+						fields[1], 
+						Integer.parseInt(fields[2]), 
+						Double.parseDouble(fields[3]), 
+						Double.parseDouble(fields[4]), 
+						Double.parseDouble(fields[6]), 
+						Long.parseLong(fields[7]), 
+						Long.parseLong(fields[8])));
+			}
+		}
+		
+		return results;
+	}
+	
+	
+	/**
+	 * Returns the number of bytes allocated so far by each live thread, by thread ID, or {@code null} if the JVM cannot measure it.
+	 */
+	private static HashMap<Long, Long> getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+		
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if(!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled()) return null;
+		
+		long[] ids = sunBean.getAllThreadIds();
+		long[] bytes = sunBean.getThreadAllocatedBytes(ids);
+		
+		HashMap<Long, Long> allocated = new HashMap<Long, Long>();
+		for(int i = 0; i < ids.length; i++) {
+			if(bytes[i] >= 0) allocated.put(ids[i], bytes[i]); // -1 for threads that ended in the meantime
+		}
+		
+		return allocated;
+	}
+	
+	
+	private static long getGcCount() {
+		long count = 0;
+		for(GarbageCollectorMXBean bean: ManagementFactory.getGarbageCollectorMXBeans()) count += Math.max(0, bean.getCollectionCount());
+		return count;
+	}
+	
+	
+	private static long getGcMillis() {
+		long millis = 0;
+		for(GarbageCollectorMXBean bean: ManagementFactory.getGarbageCollectorMXBeans()) millis += Math.max(0, bean.getCollectionTime());
+		return millis;
+	}
+	
+	
+	public static void main(String[] args) throws IOException {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		Pattern filter = null;
+		String csvPath = null;
+		
+		for(int i = 0; i < args.length; i++) {
+			switch(args[i]) {
+			case "-f":
+				filter = Pattern.compile(args[++i]);
+				break;
+			case "-wi":
+				runner.setWarmupIterations(Integer.parseInt(args[++i]));
+				break;
+			case "-i":
+				runner.setMeasurementIterations(Integer.parseInt(args[++i]));
+				break;
+			case "-t":
+				runner.setIterationMillis(Long.parseLong(args[++i]));
+				break;
+			case "-prof":
+				if(!args[++i].equals("gc")) throw new IllegalArgumentException("Unknown profiler " + args[i] + ", only gc is supported");
+				runner.setGcProfiler(true);
+				break;
+			case "-nofork":
+				runner.setFork(false);
+				break;
+			case "-csv":
+				csvPath = args[++i];
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		
+		ArrayList<Result> results = runner.run(CoreBenchmarks.getBenchmarks(), filter);
+		
+		if(csvPath != null) writeCsv(results, csvPath);
+	}
+}
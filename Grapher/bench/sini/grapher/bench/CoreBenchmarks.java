@@ -0,0 +1,413 @@
+package sini.grapher.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.Function;
+
+import sini.batch.BatchFunction;
+import sini.complex.Complex;
+import sini.complex.ComplexMath;
+import sini.doubledouble.DoubleDouble;
+import sini.doubledouble.DoubleDoubleFunction;
+import sini.grapher.Curve;
+import sini.grapher.CurveAnalysis;
+import sini.grapher.CurveList;
+import sini.grapher.DensityScatterCurve;
+import sini.grapher.DifferentialEquation;
+import sini.grapher.DirectionField;
+import sini.grapher.Display;
+import sini.grapher.HistogramCurve;
+import sini.grapher.Interval;
+import sini.grapher.ParametricCurve;
+import sini.grapher.PointDouble;
+import sini.grapher.PointListCurve;
+import sini.grapher.PointSource;
+import sini.grapher.Quadrature;
+import sini.grapher.ScalarField;
+import sini.grapher.SegmentIndex;
+import sini.grapher.SimpleFunctionCurve;
+import sini.grapher.StreamingCurve;
+import sini.grapher.SurfacePlot;
+
+/**
+ * The benchmarks for the numeric and rendering hot paths of the grapher.
+ */
+public class CoreBenchmarks {
+	
+	private static final Function<double[], Double> SLOPE = p -> Math.sin(p[0]) + Math.cos(p[1]);
+	
+	public static ArrayList<Benchmark> getBenchmarks() {
+		ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		
+		benchmarks.add(new Benchmark("Interval.getPointIterator", "pointsPerSide", new int[] {10, 100, 1000}, n -> {
+			Interval interval = Interval.pow(new Interval(0, 1), 2);
+			double step = 1.0 / n;
+			
+			return () -> {
+				double sum = 0;
+				Iterator<double[]> iter = interval.getPointIterator(step);
+				while(iter.hasNext()) sum += iter.next()[0];
+				return sum;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("Interval.getPointCubeIterator", "pointsPerSide", new int[] {10, 100, 1000}, n -> {
+			Interval interval = Interval.pow(new Interval(0, 1), 2);
+			double step = 1.0 / n;
+			
+			return () -> {
+				double sum = 0;
+				Iterator<double[][]> iter = interval.getPointCubeIterator(step);
+				while(iter.hasNext()) sum += iter.next()[0][0];
+				return sum;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("Interval.getSobolIterator", "dimension", new int[] {2, 8, 21}, d -> {
+			Interval interval = Interval.pow(new Interval(0, 1), d);
+			
+			return () -> {
+				double sum = 0;
+				Iterator<double[]> iter = interval.getSobolIterator(10000);
+				while(iter.hasNext()) sum += iter.next()[0];
+				return sum;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("Interval.getSparseGridIterator", "dimension", new int[] {2, 8, 21}, d -> {
+			Interval interval = Interval.pow(new Interval(0, 1), d);
+			
+			return () -> {
+				double sum = 0;
+				Iterator<double[]> iter = interval.getSparseGridIterator(3);
+				while(iter.hasNext()) sum += iter.next()[0];
+				return sum;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("Interval.contains", "dimension", new int[] {1, 2, 4, 8}, d -> {
+			Interval interval = Interval.pow(new Interval(0, 1), d);
+			double[] point = new double[d];
+			for(int i = 0; i < d; i++) point[i] = 0.5;
+			
+			return () -> interval.contains(point);
+		}));
+		
+		benchmarks.add(new Benchmark("DifferentialEquation.getSolutionCurve", "maxSteps", new int[] {100, 1000, 10000}, maxSteps -> {
+			DifferentialEquation deq = new DifferentialEquation(SLOPE);
+			Interval interval = Interval.pow(new Interval(-1e4, 1e4), 2);
+			
+			return () -> deq.getSolutionCurve(interval, 0, 0, 0.05, maxSteps);
+		}));
+		
+		benchmarks.add(new Benchmark("ParametricCurve.updateMesh", "segments", new int[] {1000, 10000, 100000}, segments -> {
+			ParametricCurve curve = new ParametricCurve(p -> new double[] {Math.cos(p[0]), Math.sin(2 * p[0])});
+			Interval interval = new Interval(0, 2 * Math.PI);
+			double step = interval.length() / segments;
+			curve.setMeshCache(null);
+			
+			return () -> {
+				curve.updateMesh(interval, step);
+				return curve.getMesh();
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("DirectionField.updateMesh", "pointsPerSide", new int[] {20, 100, 400}, n -> {
+			DirectionField field = new DirectionField(SLOPE);
+			Interval interval = Interval.pow(new Interval(-4, 4), 2);
+			double step = interval.length() / n;
+			field.setMeshCache(null);
+			
+			return () -> {
+				field.updateMesh(interval, step);
+				return field.getMesh();
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("ComplexMath.exp", "values", new int[] {1, 1000}, n -> {
+			Complex[] values = getComplexValues(n);
+			
+			return () -> {
+				Complex result = Complex.ZERO;
+				for(Complex value: values) result = ComplexMath.exp(value);
+				return result;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("ComplexMath.pow(Complex, int)", "exponent", new int[] {2, 17, 1000}, n -> {
+			Complex base = new Complex(0.6, 0.7);
+			return () -> ComplexMath.pow(base, n);
+		}));
+		
+		benchmarks.add(new Benchmark("ComplexMath.pow(Complex, Complex)", "values", new int[] {1, 1000}, n -> {
+			Complex[] values = getComplexValues(n);
+			Complex exponent = new Complex(0.5, 1.5);
+			
+			return () -> {
+				Complex result = Complex.ZERO;
+				for(Complex value: values) result = ComplexMath.pow(value, exponent);
+				return result;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("Display.paintComponent", "width", new int[] {640, 1280, 1920}, width -> {
+			int height = width * 3 / 4;
+			
+			Display display = new Display(CurveList.getCurves());
+			display.setSize(width, height);
+			display.centerViewport(new PointDouble(2, 0));
+			
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			
+			return () -> {
+				Graphics2D g = image.createGraphics();
+				display.curvesChanged();
+				display.paintComponent(g);
+				g.dispose();
+				return image;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("Display.paintComponent (pan)", "width", new int[] {640, 1280, 1920}, width -> {
+			int height = width * 3 / 4;
+			
+			Display display = new Display(CurveList.getCurves());
+			display.setSize(width, height);
+			display.centerViewport(new PointDouble(2, 0));
+			
+			BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			int[] frame = new int[1];
+			
+			return () -> {
+				int step = (frame[0]++ & 1) == 0 ? 3 : -3;
+				display.movePlanePointToDisplayPoint(display.getPlanePoint(new Point(0, 0)), new Point(step, step));
+				
+				Graphics2D g = image.createGraphics();
+				display.paintComponent(g);
+				g.dispose();
+				return image;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("StreamingCurve.add", "batch", new int[] {1, 1000}, batch -> {
+			StreamingCurve curve = new StreamingCurve(1 << 20);
+			double[] x = new double[batch];
+			double[] y = new double[batch];
+			long[] count = new long[1];
+			
+			return () -> {
+				for(int i = 0; i < batch; i++) {
+					x[i] = count[0]++;
+					y[i] = Math.sin(x[i]);
+				}
+				
+				if(batch == 1) curve.add(x[0], y[0]);
+				else curve.add(x, y, batch);
+				return curve;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("StreamingCurve.draw", "points", new int[] {10000, 100000, 1000000}, points -> {
+			StreamingCurve curve = new StreamingCurve(points);
+			for(int i = 0; i < points; i++) curve.add(i, Math.sin(i * 0.01) + (i % 13) * 0.05);
+			
+			// Every point is in view, across 1280 columns of pixels
+			Display display = new Display(new ArrayList<Curve>());
+			display.setSize(1280, 720);
+			display.setViewport(new PointDouble(0, 2), 1280.0 / points / Display.GRID_CELL_DISPLAY_SIZE);
+			
+			BufferedImage image = new BufferedImage(1280, 720, BufferedImage.TYPE_INT_RGB);
+			
+			return () -> {
+				Graphics2D g = image.createGraphics();
+				curve.draw(display, g);
+				g.dispose();
+				return image;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("DensityScatterCurve.draw", "points", new int[] {100000, 1000000, 10000000}, points -> {
+			// Points scattered normally about the centre of the display
+			Random random = new Random(1);
+			double[] coordinates = new double[2 * points];
+			for(int i = 0; i < coordinates.length; i++) coordinates[i] = random.nextGaussian();
+			
+			DensityScatterCurve curve = new DensityScatterCurve(DoubleBuffer.wrap(coordinates), Color.BLUE);
+			
+			Display display = new Display(new ArrayList<Curve>());
+			display.setSize(1280, 720);
+			display.setViewport(new PointDouble(-6.4, 3.6), 2);
+			
+			BufferedImage image = new BufferedImage(1280, 720, BufferedImage.TYPE_INT_RGB);
+			
+			return () -> {
+				Graphics2D g = image.createGraphics();
+				curve.draw(display, g);
+				g.dispose();
+				return image;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("HistogramCurve.addAll", "points", new int[] {100000, 1000000, 10000000}, points -> {
+			Random random = new Random(1);
+			double[] coordinates = new double[2 * points];
+			for(int i = 0; i < coordinates.length; i++) coordinates[i] = random.nextGaussian() * 100;
+			
+			PointSource source = new PointListCurve(DoubleBuffer.wrap(coordinates), Color.BLUE, 1).getPoints();
+			
+			return () -> {
+				HistogramCurve curve = new HistogramCurve(0.01);
+				curve.addAll(source);
+				return curve;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("CurveAnalysis.analyse", "curves", new int[] {1, 4}, count -> {
+			// Every root, turning point and intersection across a viewport 1280 pixels wide, from meshes at half a pixel
+			Interval interval = new Interval(-6.4, 6.4);
+			ArrayList<Curve> curves = new ArrayList<Curve>();
+			
+			for(int i = 0; i < count; i++) {
+				double frequency = 1 + i;
+				SimpleFunctionCurve curve = new SimpleFunctionCurve(x -> Math.sin(frequency * x) + Math.cos(3 * x) / 2);
+				curve.updateMesh(interval, 0.005);
+				curves.add(curve);
+			}
+			
+			return () -> CurveAnalysis.analyse(curves, interval, 0.005);
+		}));
+		
+		benchmarks.add(new Benchmark("ScalarField.updateMesh", "levels", new int[] {1, 10}, levels -> {
+			double[] values = new double[levels];
+			for(int i = 0; i < levels; i++) values[i] = -1 + 2.0 * (i + 1) / (levels + 1);
+			
+			// A viewport of 1280 by 720 pixels, sampled every 2 pixels without caching
+			Interval region = Interval.product(new Interval(-6.4, 6.4), new Interval(-3.6, 3.6));
+			
+			return () -> {
+				ScalarField field = new ScalarField(p -> Math.sin(p[0] * p[0] + p[1] * p[1]) * Math.cos(p[0] * p[1]), values);
+				field.setMeshCache(null);
+				field.updateMesh(region, 0.005);
+				return field;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("Quadrature.integrate", "meshed", new int[] {0, 1}, meshed -> {
+			// A chirp across a viewport 1280 pixels wide, to a relative error of 1e-10, starting from its mesh or not
+			Interval interval = new Interval(0, 12.8);
+			SimpleFunctionCurve curve = new SimpleFunctionCurve(x -> Math.sin(x * x));
+			if(meshed == 1) curve.updateMesh(interval, 0.005);
+			
+			return () -> Quadrature.integrate(curve, interval, 1e-10);
+		}));
+		
+		benchmarks.add(new Benchmark("SegmentIndex.findNearest", "segments", new int[] {160000, 1000000}, segments -> {
+			// 160 trajectories wandering across the viewport, traced under a mouse moving over it within 8 pixels at the default zoom
+			Random random = new Random(46);
+			ArrayList<Curve> curves = new ArrayList<Curve>();
+			int points = segments / 160 + 1;
+			
+			for(int i = 0; i < 160; i++) {
+				double[] coordinates = new double[2 * points];
+				for(int j = 1; j < points; j++) {
+					coordinates[2 * j] = Math.max(-6, Math.min(6, coordinates[2 * j - 2] + random.nextGaussian() * 0.02));
+					coordinates[2 * j + 1] = Math.max(-4, Math.min(4, coordinates[2 * j - 1] + random.nextGaussian() * 0.02));
+				}
+				
+				curves.add(new PointListCurve(DoubleBuffer.wrap(coordinates), Color.BLUE, 1));
+			}
+			
+			SegmentIndex index = new SegmentIndex();
+			index.update(curves);
+			
+			return () -> {
+				int hits = 0;
+				for(int i = 0; i < 100; i++) {
+					if(index.findNearest(random.nextDouble() * 12 - 6, random.nextDouble() * 8 - 4, 0.08) != null) hits++;
+				}
+				
+				return hits;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("SimpleFunctionCurve.updateMesh (deep zoom)", "mode", new int[] {0, 1, 2}, mode -> {
+			// A cubic meshed across 1280 pixels: in doubles, in double-double at zoom 1, and in double-double 1e14 times deeper near x = 1000
+			Function<Double, Double> plain = x -> x * (x * x - 2);
+			DoubleDoubleFunction precise = x -> x.multiply(x.multiply(x).subtract(2));
+			
+			double width = (mode == 2) ? 1280e-16 : 12.8;
+			Interval offsets = Interval.product(new Interval(-width / 2, width / 2), new Interval(-1, 1));
+			
+			return () -> {
+				SimpleFunctionCurve curve = new SimpleFunctionCurve((mode == 0) ? plain : precise);
+				curve.setMeshCache(null);
+				
+				if(mode == 2) curve.setViewport(1000, 0, offsets, width / 2560);
+				else curve.setViewport(offsets, width / 2560);
+				
+				while(curve.refine(Long.MAX_VALUE));
+				return curve;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("SurfacePlot.draw", "triangles", new int[] {125000, 500000}, triangles -> {
+			int side = (int)Math.round(Math.sqrt(triangles / 2));
+			SurfacePlot surface = new SurfacePlot(p -> new double[] {p[0], p[1], Math.sin(3 * p[0]) * Math.cos(3 * p[1]) / 3},
+					Interval.pow(new Interval(-1, 1), 2), 2.0 / side);
+			
+			Display display = new Display(new ArrayList<Curve>());
+			display.setSize(1280, 800);
+			BufferedImage image = new BufferedImage(1280, 800, BufferedImage.TYPE_INT_RGB);
+			
+			// Each frame turns the camera a little, as a drag does
+			return () -> {
+				surface.getCamera().rotate(0.01, 0);
+				Graphics2D g = image.createGraphics();
+				surface.draw(display, g);
+				g.dispose();
+				return image;
+			};
+		}));
+		
+		benchmarks.add(new Benchmark("BatchFunction.polynomial", "batch", new int[] {0, 1}, batch -> {
+			double[] coefficients = {1, -0.5, 0.25, 2, -1, 0.125, 3, -2, 0.5};
+			Function<Double, Double> scalar = x -> {
+				double y = coefficients[coefficients.length - 1];
+				for(int k = coefficients.length - 2; k >= 0; k--) y = y * x + coefficients[k];
+				return y;
+			};
+			BatchFunction vector = BatchFunction.polynomial(coefficients);
+			
+			double[] xs = new Random(0).doubles(1 << 16, -1, 1).toArray();
+			double[] ys = new double[xs.length];
+			
+			return (batch == 0) ? () -> {
+				for(int i = 0; i < xs.length; i++) ys[i] = scalar.apply(xs[i]);
+				return ys;
+			} : () -> {
+				vector.apply(xs, ys, 0, xs.length);
+				return ys;
+			};
+		}));
+		
+		return benchmarks;
+	}
+	
+	
+	private static Complex[] getComplexValues(int n) {
+		Complex[] values = new Complex[n];
+		
+		for(int i = 0; i < n; i++) {
+			double angle = 2 * Math.PI * i / n;
+			values[i] = new Complex(2 * Math.cos(angle), 2 * Math.sin(angle));
+		}
+		
+		return values;
+	}
+}
@@ -0,0 +1,58 @@
+package sini.grapher.bench;
+
+import java.util.ArrayList;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+
+/**
+ * An initial value problem x' = f(t, x), x(t0) = x0, whose solution is known in closed form, so that the error of a numerical solution at
+ * {@code t1} can be measured exactly.
+ */
+public class OdeProblem {
+	
+	public final String name;
+	public final Function<double[], Double> f;
+	public final double t0;
+	public final double x0;
+	public final double t1;
+	public final DoubleUnaryOperator solution;
+	
+	public OdeProblem(String name, Function<double[], Double> f, double t0, double t1, DoubleUnaryOperator solution) {
+		this.name = name;
+		this.f = f;
+		this.t0 = t0;
+		this.x0 = solution.applyAsDouble(t0);
+		this.t1 = t1;
+		this.solution = solution;
+	}
+	
+	
+	/**
+	 * Returns the catalogue of test problems: a linear equation, the logistic equation, a Riccati equation, and the stiff
+	 * Prothero-Robinson equation at two levels of stiffness.
+	 */
+	public static ArrayList<OdeProblem> getCatalogue() {
+		ArrayList<OdeProblem> problems = new ArrayList<OdeProblem>();
+		
+		// x' = -x + sin(t), x(0) = 1
+		problems.add(new OdeProblem("linear", p -> -p[1] + Math.sin(p[0]), 0, 10, 
+				t -> (Math.sin(t) - Math.cos(t)) / 2 + 1.5 * Math.exp(-t)));
+		
+		// x' = x(1 - x), x(0) = 0.1
+		problems.add(new OdeProblem("logistic", p -> p[1] * (1 - p[1]), 0, 10, 
+				t -> 1 / (1 + 9 * Math.exp(-t))));
+		
+		// x' = 1 + x^2, x(0) = 0
+		problems.add(new OdeProblem("riccati", p -> 1 + p[1] * p[1], 0, 1.4, 
+				t -> Math.tan(t)));
+		
+		// x' = -lambda (x - cos(t)) - sin(t), x(0) = 1
+		problems.add(new OdeProblem("stiff-1e3", p -> -1e3 * (p[1] - Math.cos(p[0])) - Math.sin(p[0]), 0, 2, 
+				t -> Math.cos(t)));
+		
+		problems.add(new OdeProblem("stiff-1e5", p -> -1e5 * (p[1] - Math.cos(p[0])) - Math.sin(p[0]), 0, 2, 
+				t -> Math.cos(t)));
+		
+		return problems;
+	}
+}
@@ -0,0 +1,228 @@
+package sini.grapher.bench;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.function.Function;
+
+import javax.imageio.ImageIO;
+
+import sini.grapher.Curve;
+import sini.grapher.DifferentialEquation;
+import sini.grapher.Display;
+import sini.grapher.Integrator;
+import sini.grapher.PointDouble;
+import sini.grapher.PointListCurve;
+
+/**
+ * Measures the cost of accuracy for each way of integrating a {@link DifferentialEquation}. Every fixed step {@link Integrator} is run
+ * over a sweep of step sizes, and the adaptive Dormand-Prince method over a sweep of tolerances, on each problem in the
+ * {@link OdeProblem} catalogue. For every run, the error at the end of the interval is recorded against the number of evaluations of f
+ * and the wall time taken.
+ * 
+ * <p>The results are written to {@code work-precision.csv}, and a work-precision plot of log10(error) against log10(evaluations) is
+ * rendered for each problem as {@code work-precision-<problem>.png}, both in the directory given as the first argument.
+ */
+public class WorkPrecision {
+	
+	private static final int MAX_HALVINGS = 20;
+	private static final long MAX_EVALUATIONS = 4000000;
+	private static final long MIN_TIMING_NANOS = 20000000;
+	
+	private static final int PLOT_HEIGHT = 700;
+	private static final int MIN_PLOT_WIDTH = 300;
+	private static final int LEGEND_WIDTH = 220;
+	
+	/**
+	 * The outcome of solving one problem with one method at one step size or tolerance.
+	 */
+	public static class Run {
+		public final String problem;
+		public final String method;
+		public final String parameterName;
+		public final double parameter;
+		public final double error;
+		public final long evaluations;
+		public final double seconds;
+		
+		public Run(String problem, String method, String parameterName, double parameter, double error, long evaluations, double seconds) {
+			this.problem = problem;
+			this.method = method;
+			this.parameterName = parameterName;
+			this.parameter = parameter;
+			this.error = error;
+			this.evaluations = evaluations;
+			this.seconds = seconds;
+		}
+	}
+	
+	/**
+	 * A solver under test, given a counted version of f and either a step size or a tolerance.
+	 */
+	private interface Solver {
+		double solve(DifferentialEquation deq, OdeProblem problem, double parameter);
+	}
+	
+	
+	public static ArrayList<Run> measure(OdeProblem problem) {
+		ArrayList<Run> runs = new ArrayList<Run>();
+		
+		for(Integrator integrator: Integrator.values()) {
+			for(int k = 1; k <= MAX_HALVINGS; k++) {
+				double step = (problem.t1 - problem.t0) / (1 << k);
+				Run run = measure(problem, integrator.name(), "step", step, 
+						(deq, p, h) -> deq.solve(integrator, p.t0, p.x0, p.t1, h));
+				
+				runs.add(run);
+				if(run.evaluations > MAX_EVALUATIONS) break;
+			}
+		}
+		
+		for(int k = 1; k <= 13; k++) {
+			double tolerance = Math.pow(10, -k);
+			runs.add(measure(problem, "DORMAND_PRINCE", "tolerance", tolerance, 
+					(deq, p, tol) -> deq.solveAdaptive(p.t0, p.x0, p.t1, tol)));
+		}
+		
+		return runs;
+	}
+	
+	
+	private static Run measure(OdeProblem problem, String method, String parameterName, double parameter, Solver solver) {
+		long[] evaluations = new long[1];
+		Function<double[], Double> countedF = p -> {
+			evaluations[0]++;
+			return problem.f.apply(p);
+		};
+		
+		DifferentialEquation deq = new DifferentialEquation(countedF);
+		double x = solver.solve(deq, problem, parameter);
+		long evaluationsPerSolve = evaluations[0];
+		
+		// Repeat cheap solves until the total time is long enough to measure reliably
+		int repetitions = 0;
+		long start = System.nanoTime();
+		long elapsed;
+		
+		do {
+			solver.solve(deq, problem, parameter);
+			repetitions++;
+			elapsed = System.nanoTime() - start;
+		} while(elapsed < MIN_TIMING_NANOS);
+		
+		double error = Math.abs(x - problem.solution.applyAsDouble(problem.t1));
+		
+		return new Run(problem.name, method, parameterName, parameter, error, evaluationsPerSolve, elapsed / 1e9 / repetitions);
+	}
+	
+	
+	public static void writeCsv(ArrayList<Run> runs, File file) throws IOException {
+		try(PrintWriter out = new PrintWriter(new FileWriter(file))) {
+			out.println("problem,method,parameter,value,error,evaluations,seconds");
+			
+			for(Run run: runs) {
+				out.println(String.format(Locale.ROOT, "%s,%s,%s,%e,%e,%d,%e", 
+						run.problem, run.method, run.parameterName, run.parameter, run.error, run.evaluations, run.seconds));
+			}
+		}
+	}
+	
+	
+	/**
+	 * Renders a work-precision plot of the given runs, which should all be of the same problem, with one curve per method. Runs that
+	 * diverged, or whose error is larger than 100, are left out.
+	 */
+	public static BufferedImage plot(ArrayList<Run> runs) {
+		ArrayList<String> methods = new ArrayList<String>();
+		for(Run run: runs) if(!methods.contains(run.method)) methods.add(run.method);
+		
+		ArrayList<Curve> curves = new ArrayList<Curve>();
+		Color[] colors = new Color[methods.size()];
+		
+		double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		
+		for(int i = 0; i < methods.size(); i++) {
+			colors[i] = Color.getHSBColor((float)i / methods.size(), 0.9F, 0.8F);
+			ArrayList<double[]> points = new ArrayList<double[]>();
+			
+			for(Run run: runs) {
+				if(!run.method.equals(methods.get(i)) || !(run.error <= 100)) continue;
+				
+				double x = Math.log10(run.evaluations);
+				double y = Math.log10(Math.max(run.error, 1e-17));
+				points.add(new double[] {x, y});
+				
+				minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+			}
+			
+			curves.add(new PointListCurve(points, colors[i], 2));
+		}
+		
+		// The display has the same scale on both axes, so the width of the plot follows the range of the data
+		double margin = 0.5;
+		double displayUnit = Display.GRID_CELL_DISPLAY_SIZE;
+		int plotWidth = MIN_PLOT_WIDTH;
+		
+		if(minX <= maxX) {
+			displayUnit = PLOT_HEIGHT / (maxY - minY + 2*margin);
+			plotWidth = Math.max(MIN_PLOT_WIDTH, (int)Math.ceil(displayUnit * (maxX - minX + 2*margin)));
+		}
+		
+		Display display = new Display(curves);
+		display.setSize(plotWidth, PLOT_HEIGHT);
+		display.setViewport(new PointDouble(minX - margin, maxY + margin), displayUnit / Display.GRID_CELL_DISPLAY_SIZE);
+		
+		BufferedImage image = new BufferedImage(plotWidth + LEGEND_WIDTH, PLOT_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		display.paintComponent(g);
+		
+		// Legend
+		g.setColor(Color.WHITE);
+		g.fillRect(plotWidth, 0, LEGEND_WIDTH, PLOT_HEIGHT);
+		g.setColor(Color.BLACK);
+		g.drawLine(plotWidth, 0, plotWidth, PLOT_HEIGHT);
+		
+		g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 13));
+		int lineHeight = g.getFontMetrics().getHeight();
+		int legendX = plotWidth + 12;
+		
+		g.drawString(runs.isEmpty() ? "" : runs.get(0).problem, legendX, lineHeight + 10);
+		g.drawString("x: log10(evaluations)", legendX, 2*lineHeight + 10);
+		g.drawString("y: log10(error)", legendX, 3*lineHeight + 10);
+		
+		for(int i = 0; i < methods.size(); i++) {
+			g.setColor(colors[i]);
+			g.drawString(methods.get(i), legendX, (i + 5) * lineHeight + 10);
+		}
+		
+		g.dispose();
+		return image;
+	}
+	
+	
+	public static void main(String[] args) throws IOException {
+		File directory = new File((args.length > 0) ? args[0] : ".");
+		directory.mkdirs();
+		
+		ArrayList<Run> allRuns = new ArrayList<Run>();
+		
+		for(OdeProblem problem: OdeProblem.getCatalogue()) {
+			ArrayList<Run> runs = measure(problem);
+			allRuns.addAll(runs);
+			
+			ImageIO.write(plot(runs), "png", new File(directory, "work-precision-" + problem.name + ".png"));
+			System.out.println(String.format(Locale.ROOT, "%-10s %4d runs", problem.name, runs.size()));
+		}
+		
+		writeCsv(allRuns, new File(directory, "work-precision.csv"));
+	}
+}
@@ -0,0 +1,47 @@
+package sini.batch;
+
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+
+/**
+ * A function of one variable that is evaluated at a whole array of points at once. It is also an ordinary function, and can be given
+ * wherever a {@code Function<Double, Double>} is expected, such as to a {@link sini.grapher.SimpleFunctionCurve}, which then evaluates
+ * it a block of the mesh at a time, without boxing each value, and in a loop that can be compiled to SIMD instructions.
+ */
+@FunctionalInterface
+public interface BatchFunction extends Function<Double, Double> {
+	
+	/**
+	 * Sets {@code ys[i]} to the value of the function at {@code xs[i]}, for each i from {@code from} up to {@code to}.
+	 */
+	public abstract void apply(double[] xs, double[] ys, int from, int to);
+	
+	/**
+	 * Returns the value of the function at {@code x}, evaluated as a batch of one.
+	 */
+	@Override
+	public default Double apply(Double x) {
+		double[] ys = new double[1];
+		apply(new double[] {x}, ys, 0, 1);
+		return ys[0];
+	}
+	
+	/**
+	 * Returns the polynomial whose coefficient of {@code x^k} is {@code coefficients[k]}, evaluated by
+	 * {@link BatchKernels#polynomial}.
+	 */
+	public static BatchFunction polynomial(double... coefficients) {
+		double[] copy = coefficients.clone();
+		return (xs, ys, from, to) -> BatchKernels.polynomial(copy, xs, ys, from, to);
+	}
+	
+	/**
+	 * Returns the function that applies {@code f} to each element in turn. The loop is compiled along with {@code f}, so that simple
+	 * arithmetic is vectorised like a kernel, and other functions are at least spared boxing.
+	 */
+	public static BatchFunction of(DoubleUnaryOperator f) {
+		return (xs, ys, from, to) -> {
+			for(int i = from; i < to; i++) ys[i] = f.applyAsDouble(xs[i]);
+		};
+	}
+}
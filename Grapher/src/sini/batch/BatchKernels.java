@@ -0,0 +1,36 @@
+package sini.batch;
+
+/**
+ * Loops that apply the same arithmetic to every element of a range of arrays of doubles. Each is a counted loop over primitive arrays
+ * with no calls, branches or dependencies from one element to the next, which is the shape the just-in-time compiler turns into SIMD
+ * instructions, so that each pass handles as many elements at once as the vector registers of the processor hold. On processors or
+ * virtual machines that do not vectorise them they run as ordinary scalar loops, with the same results.
+ * 
+ * <p>The inputs and outputs of a kernel may be the same array.
+ */
+public class BatchKernels {
+	
+	private BatchKernels() {}
+	
+	/**
+	 * Sets {@code out[i] = in[i] + offset} for each i from {@code from} up to {@code to}, as coordinates are moved to and from an origin.
+	 */
+	public static void add(double[] in, double[] out, int from, int to, double offset) {
+		for(int i = from; i < to; i++) out[i] = in[i] + offset;
+	}
+	
+	/**
+	 * Sets {@code ys[i]} to the value at {@code xs[i]} of the polynomial whose coefficient of {@code x^k} is {@code coefficients[k]},
+	 * for each i from {@code from} up to {@code to}. Horner's rule is applied to every element for one coefficient before moving on to
+	 * the next, so that the inner loop runs across the elements rather than along the chain of multiplications for one of them.
+	 */
+	public static void polynomial(double[] coefficients, double[] xs, double[] ys, int from, int to) {
+		double leading = (coefficients.length == 0) ? 0 : coefficients[coefficients.length - 1];
+		for(int i = from; i < to; i++) ys[i] = leading;
+		
+		for(int k = coefficients.length - 2; k >= 0; k--) {
+			double coefficient = coefficients[k];
+			for(int i = from; i < to; i++) ys[i] = ys[i] * xs[i] + coefficient;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package sini.doubledouble;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * A double-double number: the unevaluated sum of two doubles {@code hi + lo}, where {@code lo} is no more than half an ulp of
+ * {@code hi}, giving about 106 bits of precision at a few times the cost of a double. Sums and products are made exact with the two-sum
+ * and fused multiply-add error terms, and then renormalised, so that no operation loses more than a few ulps of the low part.
+ * 
+ * <p>The range is that of a double. Numbers whose low part is 0 are exactly the doubles, so a double-double can stand in for a double
+ * and costs nothing extra in precision when it does.
+ */
+public class DoubleDouble implements Comparable<DoubleDouble> {
+	
+	public static final DoubleDouble ZERO = new DoubleDouble(0, 0);
+	public static final DoubleDouble ONE = new DoubleDouble(1, 0);
+	
+	public final double hi;
+	public final double lo;
+	
+	/**
+	 * Creates the number {@code hi + lo}, where {@code lo} must already be no more than half an ulp of {@code hi}.
+	 */
+	public DoubleDouble(double hi, double lo) {
+		this.hi = hi;
+		this.lo = lo;
+	}
+	
+	public static DoubleDouble valueOf(double value) {
+		return new DoubleDouble(value, 0);
+	}
+	
+	/**
+	 * Returns the exact sum of {@code a} and {@code b}.
+	 */
+	public static DoubleDouble sum(double a, double b) {
+		double s = a + b;
+		double v = s - a;
+		return new DoubleDouble(s, (a - (s - v)) + (b - v));
+	}
+	
+	/**
+	 * Returns the exact product of {@code a} and {@code b}.
+	 */
+	public static DoubleDouble product(double a, double b) {
+		double p = a * b;
+		return new DoubleDouble(p, Math.fma(a, b, -p));
+	}
+	
+	/**
+	 * Returns {@code hi + lo} renormalised, for {@code |hi| >= |lo|}.
+	 */
+	private static DoubleDouble normalise(double hi, double lo) {
+		double s = hi + lo;
+		return new DoubleDouble(s, lo - (s - hi));
+	}
+	
+	public DoubleDouble add(DoubleDouble d) {
+		double s = hi + d.hi;
+		double v = s - hi;
+		double e = (hi - (s - v)) + (d.hi - v);
+		
+		double t = lo + d.lo;
+		double w = t - lo;
+		double f = (lo - (t - w)) + (d.lo - w);
+		
+		DoubleDouble u = normalise(s, e + t);
+		return normalise(u.hi, u.lo + f);
+	}
+	
+	public DoubleDouble add(double r) {
+		double s = hi + r;
+		double v = s - hi;
+		double e = (hi - (s - v)) + (r - v);
+		return normalise(s, e + lo);
+	}
+	
+	public DoubleDouble subtract(DoubleDouble d) {
+		double s = hi - d.hi;
+		double v = s - hi;
+		double e = (hi - (s - v)) - (d.hi + v);
+		
+		double t = lo - d.lo;
+		double w = t - lo;
+		double f = (lo - (t - w)) - (d.lo + w);
+		
+		DoubleDouble u = normalise(s, e + t);
+		return normalise(u.hi, u.lo + f);
+	}
+	
+	public DoubleDouble subtract(double r) {
+		return add(-r);
+	}
+	
+	public DoubleDouble multiply(DoubleDouble d) {
+		double p = hi * d.hi;
+		double e = Math.fma(hi, d.hi, -p);
+		return normalise(p, e + (hi * d.lo + lo * d.hi));
+	}
+	
+	public DoubleDouble multiply(double r) {
+		double p = hi * r;
+		double e = Math.fma(hi, r, -p);
+		return normalise(p, e + lo * r);
+	}
+	
+	/**
+	 * Returns this divided by {@code d}, by long division: each quotient digit is a double, and the remainder is found exactly.
+	 */
+	public DoubleDouble divide(DoubleDouble d) {
+		double q1 = hi / d.hi;
+		DoubleDouble r = subtract(d.multiply(q1));
+		double q2 = r.hi / d.hi;
+		r = r.subtract(d.multiply(q2));
+		double q3 = r.hi / d.hi;
+		
+		return normalise(q1, q2).add(q3);
+	}
+	
+	public DoubleDouble divide(double r) {
+		double q1 = hi / r;
+		DoubleDouble p = product(q1, r);
+		double q2 = (((hi - p.hi) - p.lo) + lo) / r;
+		return normalise(q1, q2);
+	}
+	
+	public DoubleDouble negate() {
+		return new DoubleDouble(-hi, -lo);
+	}
+	
+	public double doubleValue() {
+		return hi + lo;
+	}
+	
+	public int signum() {
+		return (hi != 0) ? (int)Math.signum(hi) : (int)Math.signum(lo);
+	}
+	
+	public boolean isFinite() {
+		return Double.isFinite(hi) && Double.isFinite(lo);
+	}
+	
+	@Override
+	public int compareTo(DoubleDouble d) {
+		int compare = Double.compare(hi, d.hi);
+		return (compare != 0) ? compare : Double.compare(lo, d.lo);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof DoubleDouble)) return false;
+		
+		DoubleDouble d = (DoubleDouble) obj;
+		return hi == d.hi && lo == d.lo;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Double.hashCode(hi) * 31 + Double.hashCode(lo);
+	}
+	
+	/**
+	 * Returns the exact decimal value of the number.
+	 */
+	public BigDecimal toBigDecimal() {
+		return new BigDecimal(hi).add(new BigDecimal(lo));
+	}
+	
+	/**
+	 * Returns the number to the 32 significant figures it holds.
+	 */
+	@Override
+	public String toString() {
+		if(!isFinite()) return Double.toString(hi);
+		return toBigDecimal().round(new MathContext(32)).toString();
+	}
+}
@@ -0,0 +1,22 @@
+package sini.doubledouble;
+
+import java.util.function.Function;
+
+/**
+ * A function of one variable written with {@link DoubleDouble double-double numbers}. It is also an ordinary function, and can be given
+ * wherever a {@code Function<Double, Double>} is expected, such as to a {@link sini.grapher.SimpleFunctionCurve}, which evaluates it in
+ * double-double precision when the display is zoomed in further than doubles can resolve.
+ */
+@FunctionalInterface
+public interface DoubleDoubleFunction extends Function<Double, Double> {
+	
+	public abstract DoubleDouble apply(DoubleDouble x);
+	
+	/**
+	 * Returns the value of the function at {@code x}, rounded to a double.
+	 */
+	@Override
+	public default Double apply(Double x) {
+		return apply(DoubleDouble.valueOf(x)).doubleValue();
+	}
+}
@@ -0,0 +1,94 @@
+package sini.doubledouble;
+
+/**
+ * Elementary functions of {@link DoubleDouble double-double numbers}, accurate to about 106 bits.
+ */
+public class DoubleDoubleMath {
+	
+	private static final DoubleDouble LN2 = new DoubleDouble(0.6931471805599453, 2.3190468138462996e-17);
+	
+	private DoubleDoubleMath() {}
+	
+	public static DoubleDouble abs(DoubleDouble a) {
+		return (a.signum() < 0) ? a.negate() : a;
+	}
+	
+	public static DoubleDouble min(DoubleDouble a, DoubleDouble b) {
+		return (a.compareTo(b) <= 0) ? a : b;
+	}
+	
+	public static DoubleDouble max(DoubleDouble a, DoubleDouble b) {
+		return (a.compareTo(b) >= 0) ? a : b;
+	}
+	
+	public static DoubleDouble sqr(DoubleDouble a) {
+		return a.multiply(a);
+	}
+	
+	public static DoubleDouble pow(DoubleDouble a, int n) {
+		if(n < 0) return DoubleDouble.ONE.divide(pow(a, -n));
+		
+		// By repeated squaring
+		DoubleDouble result = DoubleDouble.ONE;
+		for(DoubleDouble square = a; n > 0; n >>= 1, square = square.multiply(square)) {
+			if((n & 1) == 1) result = result.multiply(square);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Returns the square root of {@code a}, by one Newton step from the square root of its high part.
+	 */
+	public static DoubleDouble sqrt(DoubleDouble a) {
+		if(a.hi <= 0) return DoubleDouble.valueOf(Math.sqrt(a.hi));
+		
+		double root = Math.sqrt(a.hi);
+		DoubleDouble error = a.subtract(DoubleDouble.product(root, root));
+		return DoubleDouble.sum(root, error.hi / (2 * root));
+	}
+	
+	public static DoubleDouble floor(DoubleDouble a) {
+		double hi = Math.floor(a.hi);
+		if(hi != a.hi) return DoubleDouble.valueOf(hi);
+		
+		// The high part is a whole number, so the low part decides
+		return DoubleDouble.sum(hi, Math.floor(a.lo));
+	}
+	
+	/**
+	 * Returns {@code e^a}, from {@code e^r} for {@code a = k ln 2 + r} with {@code |r| <= ln 2 / 2}, found by a Taylor series after
+	 * halving r ten times and squaring the result back up.
+	 */
+	public static DoubleDouble exp(DoubleDouble a) {
+		if(a.hi > 709.8) return DoubleDouble.valueOf(Double.POSITIVE_INFINITY);
+		if(a.hi < -745.2) return DoubleDouble.ZERO;
+		
+		double k = Math.rint(a.hi / LN2.hi);
+		DoubleDouble r = a.subtract(LN2.multiply(k)).multiply(1.0 / 1024);
+		
+		DoubleDouble term = r;
+		DoubleDouble sum = r;
+		
+		for(int i = 2; i <= 12; i++) {
+			term = term.multiply(r).divide(i);
+			sum = sum.add(term);
+		}
+		
+		// e^r - 1 is squared up as (s + 1)^2 - 1 = s (s + 2), which keeps its precision when it is small
+		for(int i = 0; i < 10; i++) sum = sum.multiply(sum.add(2));
+		
+		DoubleDouble result = sum.add(1);
+		return new DoubleDouble(Math.scalb(result.hi, (int)k), Math.scalb(result.lo, (int)k));
+	}
+	
+	/**
+	 * Returns the natural logarithm of {@code a}, by one Newton step on {@code e^x = a} from the logarithm of its high part.
+	 */
+	public static DoubleDouble log(DoubleDouble a) {
+		if(a.hi <= 0) return DoubleDouble.valueOf(Math.log(a.hi));
+		
+		double x = Math.log(a.hi);
+		return a.multiply(exp(DoubleDouble.valueOf(-x))).subtract(1).add(x);
+	}
+}
@@ -0,0 +1,133 @@
+package sini.dual;
+
+import java.util.Arrays;
+
+/**
+ * A dual number for forward-mode automatic differentiation: the value of an expression together with its gradient, the partial
+ * derivatives of the expression with respect to each of the variables it was computed from. Every operation applies the chain rule to
+ * the gradients of its arguments, so a function written with these operations returns its gradient with its value from one evaluation.
+ * 
+ * <p>A gradient that is shorter than another is taken to be 0 in its missing entries, so constants can be given an empty gradient and
+ * combined freely with the variables.
+ */
+public class Dual {
+	
+	private static final double[] NO_GRADIENT = new double[0];
+	
+	public double value;
+	public double[] gradient;
+	
+	public Dual(double value, double[] gradient) {
+		this.value = value;
+		this.gradient = gradient;
+	}
+	
+	/**
+	 * Returns the constant {@code value}, which has a derivative of 0 with respect to every variable.
+	 */
+	public static Dual constant(double value) {
+		return new Dual(value, NO_GRADIENT);
+	}
+	
+	/**
+	 * Returns the variable {@code index} of {@code variables}, taking the value {@code value}.
+	 */
+	public static Dual variable(double value, int index, int variables) {
+		double[] gradient = new double[variables];
+		gradient[index] = 1;
+		return new Dual(value, gradient);
+	}
+	
+	/**
+	 * Returns the variables at {@code point}, each with the derivative 1 with respect to itself.
+	 */
+	public static Dual[] variables(double[] point) {
+		Dual[] variables = new Dual[point.length];
+		for(int i = 0; i < point.length; i++) variables[i] = variable(point[i], i, point.length);
+		return variables;
+	}
+	
+	/**
+	 * Returns the constants at {@code point}, for evaluating a function without its gradient.
+	 */
+	public static Dual[] constants(double[] point) {
+		Dual[] constants = new Dual[point.length];
+		for(int i = 0; i < point.length; i++) constants[i] = constant(point[i]);
+		return constants;
+	}
+	
+	/**
+	 * Returns the partial derivative with respect to the variable {@code index}.
+	 */
+	public double getDerivative(int index) {
+		return (index < gradient.length) ? gradient[index] : 0;
+	}
+	
+	public Dual add(Dual d) {
+		return combine(value + d.value, this, 1, d, 1);
+	}
+	
+	public Dual add(double r) {
+		return new Dual(value + r, gradient.clone());
+	}
+	
+	public Dual subtract(Dual d) {
+		return combine(value - d.value, this, 1, d, -1);
+	}
+	
+	public Dual subtract(double r) {
+		return new Dual(value - r, gradient.clone());
+	}
+	
+	public Dual multiply(Dual d) {
+		return combine(value * d.value, this, d.value, d, value);
+	}
+	
+	public Dual multiply(double r) {
+		return chain(value * r, r);
+	}
+	
+	public Dual divide(Dual d) {
+		double quotient = value / d.value;
+		return combine(quotient, this, 1 / d.value, d, -quotient / d.value);
+	}
+	
+	public Dual divide(double r) {
+		return chain(value / r, 1 / r);
+	}
+	
+	public Dual negate() {
+		return chain(-value, -1);
+	}
+	
+	public Dual invert() {
+		return chain(1 / value, -1 / (value * value));
+	}
+	
+	/**
+	 * Returns g of this number, given the value {@code value} of g and its derivative {@code derivative} at the value of this number.
+	 */
+	public Dual chain(double value, double derivative) {
+		double[] result = new double[gradient.length];
+		for(int i = 0; i < gradient.length; i++) result[i] = derivative * gradient[i];
+		return new Dual(value, result);
+	}
+	
+	/**
+	 * Returns the number with the value {@code value} and the gradient {@code da} times the gradient of {@code a} plus {@code db} times
+	 * the gradient of {@code b}.
+	 */
+	static Dual combine(double value, Dual a, double da, Dual b, double db) {
+		int length = Math.max(a.gradient.length, b.gradient.length);
+		double[] result = new double[length];
+		
+		for(int i = 0; i < a.gradient.length; i++) result[i] = da * a.gradient[i];
+		for(int i = 0; i < b.gradient.length; i++) result[i] += db * b.gradient[i];
+		
+		return new Dual(value, result);
+	}
+	
+	public String toString() {
+		return "(" + value + ", " + Arrays.toString(gradient) + ")";
+	}
+}
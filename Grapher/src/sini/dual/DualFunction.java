@@ -0,0 +1,30 @@
+package sini.dual;
+
+import java.util.function.Function;
+
+/**
+ * A function of one variable written with {@link Dual dual numbers}, so that one evaluation gives both its value and its derivative.
+ * It is also an ordinary function, and can be given wherever a {@code Function<Double, Double>} is expected, such as to a
+ * {@link sini.grapher.SimpleFunctionCurve}, which then finds derivatives from it without extra evaluations.
+ */
+@FunctionalInterface
+public interface DualFunction extends Function<Double, Double> {
+	
+	public abstract Dual apply(Dual x);
+	
+	/**
+	 * Returns the value of the function at {@code x}, evaluated without its derivative.
+	 */
+	@Override
+	public default Double apply(Double x) {
+		return apply(Dual.constant(x)).value;
+	}
+	
+	/**
+	 * Returns the value of the function at {@code x} and its derivative there, in turn.
+	 */
+	public default double[] getValueAndDerivative(double x) {
+		Dual y = apply(Dual.variable(x, 0, 1));
+		return new double[] {y.value, y.getDerivative(0)};
+	}
+}
@@ -0,0 +1,99 @@
+package sini.dual;
+
+/**
+ * The elementary functions of {@link Dual dual numbers}, each returning its value and its gradient by the chain rule.
+ */
+public class DualMath {
+	
+	private DualMath() {}
+	
+	public static Dual add(Dual a, Dual b) {
+		return a.add(b);
+	}
+	
+	public static Dual multiply(Dual a, Dual b) {
+		return a.multiply(b);
+	}
+	
+	public static Dual pow(Dual a, int n) {
+		if(n == 0) return Dual.constant(1);
+		return a.chain(Math.pow(a.value, n), n * Math.pow(a.value, n - 1));
+	}
+	
+	public static Dual pow(Dual a, double p) {
+		return a.chain(Math.pow(a.value, p), p * Math.pow(a.value, p - 1));
+	}
+	
+	/**
+	 * Returns {@code a^b} for a positive base {@code a}.
+	 */
+	public static Dual pow(Dual a, Dual b) {
+		double power = Math.pow(a.value, b.value);
+		return Dual.combine(power, a, b.value * Math.pow(a.value, b.value - 1), b, power * Math.log(a.value));
+	}
+	
+	public static Dual sqr(Dual a) {
+		return a.chain(a.value * a.value, 2 * a.value);
+	}
+	
+	public static Dual sqrt(Dual a) {
+		double root = Math.sqrt(a.value);
+		return a.chain(root, 0.5 / root);
+	}
+	
+	public static Dual abs(Dual a) {
+		return (a.value < 0) ? a.negate() : a;
+	}
+	
+	public static Dual min(Dual a, Dual b) {
+		return (b.value < a.value) ? b : a;
+	}
+	
+	public static Dual max(Dual a, Dual b) {
+		return (b.value > a.value) ? b : a;
+	}
+	
+	public static Dual exp(Dual a) {
+		double exp = Math.exp(a.value);
+		return a.chain(exp, exp);
+	}
+	
+	public static Dual log(Dual a) {
+		return a.chain(Math.log(a.value), 1 / a.value);
+	}
+	
+	public static Dual sin(Dual a) {
+		return a.chain(Math.sin(a.value), Math.cos(a.value));
+	}
+	
+	public static Dual cos(Dual a) {
+		return a.chain(Math.cos(a.value), -Math.sin(a.value));
+	}
+	
+	public static Dual tan(Dual a) {
+		double tan = Math.tan(a.value);
+		return a.chain(tan, 1 + tan * tan);
+	}
+	
+	public static Dual atan(Dual a) {
+		return a.chain(Math.atan(a.value), 1 / (1 + a.value * a.value));
+	}
+	
+	public static Dual atan2(Dual y, Dual x) {
+		double r2 = x.value * x.value + y.value * y.value;
+		return Dual.combine(Math.atan2(y.value, x.value), y, x.value / r2, x, -y.value / r2);
+	}
+	
+	public static Dual sinh(Dual a) {
+		return a.chain(Math.sinh(a.value), Math.cosh(a.value));
+	}
+	
+	public static Dual cosh(Dual a) {
+		return a.chain(Math.cosh(a.value), Math.sinh(a.value));
+	}
+	
+	public static Dual tanh(Dual a) {
+		double tanh = Math.tanh(a.value);
+		return a.chain(tanh, 1 - tanh * tanh);
+	}
+}
@@ -0,0 +1,30 @@
+package sini.dual;
+
+import java.util.function.Function;
+
+/**
+ * A function of several variables with a single value, written with {@link Dual dual numbers}, so that one evaluation gives both its
+ * value and its gradient. It is also an ordinary function, and can be given wherever a {@code Function<double[], Double>} is expected,
+ * such as to a {@link sini.grapher.DifferentialEquation}, whose implicit integrators then take the Jacobian from it instead of from
+ * finite differences.
+ */
+@FunctionalInterface
+public interface DualScalarFunction extends Function<double[], Double> {
+	
+	public abstract Dual apply(Dual[] x);
+	
+	/**
+	 * Returns the value of the function at {@code point}, evaluated without its gradient.
+	 */
+	@Override
+	public default Double apply(double[] point) {
+		return apply(Dual.constants(point)).value;
+	}
+	
+	/**
+	 * Returns the value of the function at {@code point}, with its partial derivatives there with respect to each coordinate.
+	 */
+	public default Dual getGradient(double[] point) {
+		return apply(Dual.variables(point));
+	}
+}
@@ -0,0 +1,41 @@
+package sini.dual;
+
+import java.util.function.Function;
+
+/**
+ * A function of several variables with several values, written with {@link Dual dual numbers}, so that one evaluation gives both its
+ * values and its Jacobian. It is also an ordinary function, and can be given wherever a {@code Function<double[], double[]>} is
+ * expected, such as to a {@link sini.grapher.ParametricCurve}.
+ */
+@FunctionalInterface
+public interface DualVectorFunction extends Function<double[], double[]> {
+	
+	public abstract Dual[] apply(Dual[] x);
+	
+	/**
+	 * Returns the values of the function at {@code point}, evaluated without their gradients.
+	 */
+	@Override
+	public default double[] apply(double[] point) {
+		Dual[] values = apply(Dual.constants(point));
+		
+		double[] result = new double[values.length];
+		for(int i = 0; i < values.length; i++) result[i] = values[i].value;
+		return result;
+	}
+	
+	/**
+	 * Returns the Jacobian of the function at {@code point}, the row {@code i} of which holds the partial derivatives of the value
+	 * {@code i} with respect to each coordinate.
+	 */
+	public default double[][] getJacobian(double[] point) {
+		Dual[] values = apply(Dual.variables(point));
+		
+		double[][] jacobian = new double[values.length][point.length];
+		for(int i = 0; i < values.length; i++) {
+			for(int j = 0; j < point.length; j++) jacobian[i][j] = values[i].getDerivative(j);
+		}
+		
+		return jacobian;
+	}
+}
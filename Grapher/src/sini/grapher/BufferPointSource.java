@@ -0,0 +1,36 @@
+package sini.grapher;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Points held in a {@link DoubleBuffer} as x and y coordinates in turn.
+ */
+class BufferPointSource implements PointSource {
+	
+	private final DoubleBuffer coordinates;
+	private final int size;
+	
+	public BufferPointSource(DoubleBuffer coordinates) {
+		this.coordinates = coordinates;
+		size = coordinates.limit() / 2;
+	}
+	
+	@Override
+	public long size() {
+		return size;
+	}
+	
+	@Override
+	public double getX(long i) {
+		return coordinates.get(2 * (int)i);
+	}
+	
+	@Override
+	public double getY(long i) {
+		return coordinates.get(2 * (int)i + 1);
+	}
+	
+	public DoubleBuffer getCoordinates() {
+		return coordinates.asReadOnlyBuffer();
+	}
+}
@@ -6,4 +6,13 @@ public interface Curve {
 	public abstract void draw(Display display, Graphics2D g);
 	
 	public abstract void updateMesh(Interval interval, double step);
+	
+	/**
+	 * Returns a number that changes whenever the appearance of the curve changes other than through {@link #updateMesh}, for example
+	 * when its colour is set. Displays cache what they have drawn, and use this to tell when a curve needs to be drawn again. Curves that
+	 * never change their appearance can leave this as 0.
+	 */
+	public default long getVersion() {
+		return 0;
+	}
 }
@@ -0,0 +1,767 @@
+package sini.grapher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+import sini.dual.Dual;
+import sini.dual.DualFunction;
+import sini.grapher.profiling.Counters;
+
+/**
+ * Finds the roots, turning points and intersections of the graphs of {@link SimpleFunctionCurve functions} and of
+ * {@link PointListCurve point lists} over an interval of the x-axis.
+ * 
+ * <p>Each curve is first sampled, from its mesh where that covers the interval, and the samples bracket the candidates: a root where
+ * consecutive samples change sign, a turning point where they stop rising or falling, and an intersection where the difference between
+ * two curves changes sign. The candidates of a function are then refined to full precision, roots by Brent's method, or by Newton's
+ * method safeguarded by bisection if the function is a {@link DualFunction}, and turning points by Brent's minimisation, or as a root of
+ * the derivative of a {@link DualFunction}. The candidates of a point list are exact on its segments. The samples of each curve and each
+ * pair of curves are split into chunks that are searched in parallel on a pool with one thread per processor.
+ * 
+ * <p>Roots and intersections are only found where the curves cross, and not where they touch without crossing.
+ */
+public class CurveAnalysis {
+	
+	/**
+	 * The kinds of feature that are found.
+	 */
+	public static enum Kind {ROOT, MINIMUM, MAXIMUM, INTERSECTION}
+	
+	private static final int CHUNK_POINTS = 4096;
+	private static final int MAX_ITERATIONS = 100;
+	private static final double EPSILON = Math.ulp(1.0);
+	private static final double GOLDEN_SECTION = 0.3819660112501051;
+	
+	private CurveAnalysis() {}
+	
+	
+	/**
+	 * A root, turning point or intersection found on a curve.
+	 */
+	public static class Feature {
+		private final Kind kind;
+		private final double x, y;
+		private final Curve curve, other;
+		
+		public Feature(Kind kind, double x, double y, Curve curve, Curve other) {
+			this.kind = kind;
+			this.x = x;
+			this.y = y;
+			this.curve = curve;
+			this.other = other;
+		}
+		
+		public Kind getKind() {
+			return kind;
+		}
+		
+		public double getX() {
+			return x;
+		}
+		
+		public double getY() {
+			return y;
+		}
+		
+		public Curve getCurve() {
+			return curve;
+		}
+		
+		/**
+		 * Returns the other curve of an intersection, or {@code null} for the other kinds of feature.
+		 */
+		public Curve getOtherCurve() {
+			return other;
+		}
+		
+		public String toString() {
+			return kind + " (" + x + ", " + y + ")";
+		}
+	}
+	
+	
+	/**
+	 * Returns the points in {@code interval} where {@code curve} crosses the x-axis, sampling it with a step of {@code step} if its mesh
+	 * does not cover the interval.
+	 */
+	public static ArrayList<Feature> findRoots(Curve curve, Interval interval, double step) {
+		Track track = getTrack(curve, interval, step);
+		if(track == null) throw new IllegalArgumentException("Cannot analyse a " + curve.getClass().getSimpleName());
+		
+		return collect(getTasks(track, Kind.ROOT));
+	}
+	
+	
+	/**
+	 * Returns the local minima and maxima of {@code curve} in {@code interval}, sampling it with a step of {@code step} if its mesh does
+	 * not cover the interval.
+	 */
+	public static ArrayList<Feature> findExtrema(Curve curve, Interval interval, double step) {
+		Track track = getTrack(curve, interval, step);
+		if(track == null) throw new IllegalArgumentException("Cannot analyse a " + curve.getClass().getSimpleName());
+		
+		return collect(getTasks(track, Kind.MINIMUM));
+	}
+	
+	
+	/**
+	 * Returns the points in {@code interval} where {@code a} and {@code b} cross, sampling them with a step of {@code step} if their
+	 * meshes do not cover the interval.
+	 */
+	public static ArrayList<Feature> findIntersections(Curve a, Curve b, Interval interval, double step) {
+		Track trackA = getTrack(a, interval, step);
+		Track trackB = getTrack(b, interval, step);
+		if(trackA == null) throw new IllegalArgumentException("Cannot analyse a " + a.getClass().getSimpleName());
+		if(trackB == null) throw new IllegalArgumentException("Cannot analyse a " + b.getClass().getSimpleName());
+		
+		return collect(getTasks(trackA, trackB));
+	}
+	
+	
+	/**
+	 * Returns the roots and turning points of each of {@code curves} in {@code interval}, followed by the intersections of each pair of
+	 * them. Curves that are neither functions nor point lists are skipped.
+	 */
+	public static ArrayList<Feature> analyse(List<? extends Curve> curves, Interval interval, double step) {
+		ArrayList<Callable<Track>> trackTasks = new ArrayList<Callable<Track>>();
+		for(Curve curve: curves) trackTasks.add(() -> getTrack(curve, interval, step));
+		
+		ArrayList<Track> tracks = new ArrayList<Track>();
+		for(Track track: Parallel.run(trackTasks)) if(track != null) tracks.add(track);
+		
+		ArrayList<Callable<ArrayList<Feature>>> tasks = new ArrayList<Callable<ArrayList<Feature>>>();
+		
+		for(Track track: tracks) {
+			tasks.addAll(getTasks(track, Kind.ROOT));
+			tasks.addAll(getTasks(track, Kind.MINIMUM));
+		}
+		
+		for(int i = 0; i < tracks.size(); i++) {
+			for(int j = i + 1; j < tracks.size(); j++) tasks.addAll(getTasks(tracks.get(i), tracks.get(j)));
+		}
+		
+		return collect(tasks);
+	}
+	
+	
+	/**
+	 * Returns a root of {@code f} between {@code a} and {@code b}, given the values {@code fa} and {@code fb} of f there, which must
+	 * differ in sign, found by Brent's method to full precision.
+	 */
+	public static double findRoot(Function<Double, Double> f, double a, double b, double fa, double fb) {
+		if(fa == 0) return a;
+		if(fb == 0) return b;
+		
+		double c = b, fc = fb;
+		double d = b - a, e = d;
+		
+		for(int i = 0; i < MAX_ITERATIONS; i++) {
+			// c is kept on the other side of the root from b, and b is kept as the best estimate so far
+			if((fb > 0) == (fc > 0)) {
+				c = a;
+				fc = fa;
+				d = e = b - a;
+			}
+			
+			if(Math.abs(fc) < Math.abs(fb)) {
+				a = b;
+				b = c;
+				c = a;
+				fa = fb;
+				fb = fc;
+				fc = fa;
+			}
+			
+			double tolerance = 2 * EPSILON * Math.abs(b) + Double.MIN_NORMAL;
+			double m = (c - b) / 2;
+			if(Math.abs(m) <= tolerance || fb == 0) return b;
+			
+			if(Math.abs(e) >= tolerance && Math.abs(fa) > Math.abs(fb)) {
+				// Inverse quadratic interpolation, or the secant method if only two points are distinct
+				double s = fb / fa;
+				double p, q;
+				
+				if(a == c) {
+					p = 2 * m * s;
+					q = 1 - s;
+				} else {
+					double r = fb / fc;
+					q = fa / fc;
+					p = s * (2 * m * q * (q - r) - (b - a) * (r - 1));
+					q = (q - 1) * (r - 1) * (s - 1);
+				}
+				
+				if(p > 0) q = -q;
+				else p = -p;
+				
+				// The interpolated step is only taken if it falls well within the bracket and shrinks quickly enough
+				if(2 * p < Math.min(3 * m * q - Math.abs(tolerance * q), Math.abs(e * q))) {
+					e = d;
+					d = p / q;
+				} else {
+					d = m;
+					e = m;
+				}
+			} else {
+				d = m;
+				e = m;
+			}
+			
+			a = b;
+			fa = fb;
+			b += (Math.abs(d) > tolerance) ? d : Math.copySign(tolerance, m);
+			fb = f.apply(b);
+		}
+		
+		return b;
+	}
+	
+	
+	/**
+	 * Returns a root of {@code f} between {@code a} and {@code b}, given the values {@code fa} and {@code fb} of f there, which must
+	 * differ in sign, found by Newton's method with the derivatives of f. A Newton step that would leave the bracket, or that would not
+	 * halve it quickly enough, is replaced by bisection.
+	 */
+	public static double findRoot(DualFunction f, double a, double b, double fa, double fb) {
+		if(fa == 0) return a;
+		if(fb == 0) return b;
+		
+		// f is negative at low and positive at high
+		double low = (fa < 0) ? a : b;
+		double high = (fa < 0) ? b : a;
+		
+		double x = (a + b) / 2;
+		double lastStep = Math.abs(b - a);
+		double step = lastStep;
+		Dual y = f.apply(Dual.variable(x, 0, 1));
+		
+		for(int i = 0; i < MAX_ITERATIONS; i++) {
+			double fx = y.value;
+			double dfdx = y.getDerivative(0);
+			
+			if(fx == 0) return x;
+			if(fx < 0) low = x;
+			else high = x;
+			
+			boolean isOutside = ((x - high) * dfdx - fx) * ((x - low) * dfdx - fx) > 0;
+			
+			if(isOutside || Math.abs(2 * fx) > Math.abs(lastStep * dfdx)) {
+				lastStep = step;
+				step = (high - low) / 2;
+				x = low + step;
+			} else {
+				lastStep = step;
+				step = fx / dfdx;
+				x -= step;
+			}
+			
+			if(Math.abs(step) <= 2 * EPSILON * Math.abs(x) + Double.MIN_NORMAL) return x;
+			y = f.apply(Dual.variable(x, 0, 1));
+		}
+		
+		return x;
+	}
+	
+	
+	/**
+	 * Returns a local minimum of {@code f} between {@code a} and {@code c}, given a point {@code b} between them at which f takes the
+	 * value {@code fb}, lower than at either end, found by Brent's method. The minimum is only found to about the square root of the
+	 * precision of a double, since f is flat near it.
+	 */
+	public static double findMinimum(Function<Double, Double> f, double a, double b, double c, double fb) {
+		double low = Math.min(a, c);
+		double high = Math.max(a, c);
+		
+		// x is the lowest point so far, w the second lowest and v the previous value of w
+		double x = b, w = b, v = b;
+		double fx = fb, fw = fb, fv = fb;
+		double d = 0, e = 0;
+		
+		for(int i = 0; i < MAX_ITERATIONS; i++) {
+			double middle = (low + high) / 2;
+			double tolerance = Math.sqrt(EPSILON) * Math.abs(x) + Double.MIN_NORMAL;
+			if(Math.abs(x - middle) <= 2 * tolerance - (high - low) / 2) return x;
+			
+			boolean isGoldenSection = true;
+			
+			if(Math.abs(e) > tolerance) {
+				// A parabola through x, w and v
+				double r = (x - w) * (fx - fv);
+				double q = (x - v) * (fx - fw);
+				double p = (x - v) * q - (x - w) * r;
+				q = 2 * (q - r);
+				if(q > 0) p = -p;
+				q = Math.abs(q);
+				
+				double lastStep = e;
+				e = d;
+				
+				if(Math.abs(p) < Math.abs(q * lastStep / 2) && p > q * (low - x) && p < q * (high - x)) {
+					d = p / q;
+					double u = x + d;
+					if(u - low < 2 * tolerance || high - u < 2 * tolerance) d = Math.copySign(tolerance, middle - x);
+					isGoldenSection = false;
+				}
+			}
+			
+			if(isGoldenSection) {
+				e = (x >= middle) ? low - x : high - x;
+				d = GOLDEN_SECTION * e;
+			}
+			
+			double u = (Math.abs(d) >= tolerance) ? x + d : x + Math.copySign(tolerance, d);
+			double fu = f.apply(u);
+			
+			if(fu <= fx) {
+				if(u >= x) low = x;
+				else high = x;
+				
+				v = w;
+				fv = fw;
+				w = x;
+				fw = fx;
+				x = u;
+				fx = fu;
+			} else {
+				if(u < x) low = u;
+				else high = u;
+				
+				if(fu <= fw || w == x) {
+					v = w;
+					fv = fw;
+					w = u;
+					fw = fu;
+				} else if(fu <= fv || v == x || v == w) {
+					v = u;
+					fv = fu;
+				}
+			}
+		}
+		
+		return x;
+	}
+	
+	
+	/**
+	 * Returns the samples of {@code curve} in {@code interval}, or {@code null} if it cannot be analysed.
+	 */
+	private static Track getTrack(Curve curve, Interval interval, double step) {
+		if(curve instanceof SimpleFunctionCurve) return getFunctionTrack((SimpleFunctionCurve) curve, interval, step);
+		if(curve instanceof PointListCurve) return getPointTrack((PointListCurve) curve, interval);
+		return null;
+	}
+	
+	
+	private static Track getFunctionTrack(SimpleFunctionCurve curve, Interval interval, double step) {
+		Track track = new Track(curve, curve.getFunction());
+		double lower = interval.lower();
+		double upper = interval.upper();
+		
+		// The points of the mesh, in which each block starts where the last one ended, unless they are offsets from an origin at deep zoom
+		double[] origin = curve.getMeshOrigin();
+		ArrayList<double[][]> mesh = (origin[0] == 0 && origin[1] == 0) ? curve.getMesh() : new ArrayList<double[][]>();
+		
+		for(double[][] segment: mesh) {
+			for(double[] point: segment) {
+				if(point[0] < lower || point[0] > upper) continue;
+				if(track.size > 0 && point[0] <= track.xs[track.size - 1]) continue;
+				
+				track.add(point[0], point[1]);
+			}
+		}
+		
+		if(track.size >= 2 && track.xs[0] <= lower + step && track.xs[track.size - 1] >= upper - step) return track;
+		
+		int segments = (int)Math.min(Integer.MAX_VALUE - 1, Math.max(1, Math.ceil((upper - lower) / step)));
+		track = new Track(curve, curve.getFunction());
+		
+		for(int i = 0; i <= segments; i++) {
+			double x = (i == segments) ? upper : lower + i * (upper - lower) / segments;
+			track.add(x, track.function.apply(x));
+		}
+		
+		Counters.addFunctionEvaluations(segments + 1);
+		return track;
+	}
+	
+	
+	/**
+	 * Returns the points of {@code curve} that start or end a segment that lies partly in {@code interval}, with runs of them that are
+	 * not joined by such segments separated by a point of {@code NaN}.
+	 */
+	private static Track getPointTrack(PointListCurve curve, Interval interval) {
+		Track track = new Track(curve, null);
+		PointSource points = curve.getPoints();
+		long size = points.size();
+		
+		double lower = interval.lower();
+		double upper = interval.upper();
+		boolean wasInside = false;
+		
+		for(long i = 0; i < size; i++) {
+			double x = points.getX(i);
+			boolean isInside = x >= lower && x <= upper;
+			boolean isNextInside = i + 1 < size && points.getX(i + 1) >= lower && points.getX(i + 1) <= upper;
+			
+			if(isInside || wasInside || isNextInside) {
+				if(!isInside && !wasInside && track.size > 0) track.add(Double.NaN, Double.NaN);
+				track.add(x, points.getY(i));
+			}
+			
+			wasInside = isInside;
+		}
+		
+		return track;
+	}
+	
+	
+	/**
+	 * Returns the tasks that find the roots of {@code track}, or its turning points if {@code kind} is {@link Kind#MINIMUM}, each in a
+	 * chunk of its samples.
+	 */
+	private static ArrayList<Callable<ArrayList<Feature>>> getTasks(Track track, Kind kind) {
+		ArrayList<Callable<ArrayList<Feature>>> tasks = new ArrayList<Callable<ArrayList<Feature>>>();
+		
+		for(int from = 0; from < track.size; from += CHUNK_POINTS) {
+			int start = from;
+			int end = Math.min(track.size, from + CHUNK_POINTS);
+			
+			tasks.add((kind == Kind.ROOT) ? () -> findRoots(track, start, end) : () -> findExtrema(track, start, end));
+		}
+		
+		return tasks;
+	}
+	
+	
+	/**
+	 * Returns the tasks that find the intersections of {@code a} and {@code b}, each in a chunk of the samples of one of them.
+	 */
+	private static ArrayList<Callable<ArrayList<Feature>>> getTasks(Track a, Track b) {
+		ArrayList<Callable<ArrayList<Feature>>> tasks = new ArrayList<Callable<ArrayList<Feature>>>();
+		
+		// The chunks are taken from a point list if there is one, so that each of its segments is checked against the other curve once
+		Track chunked = (a.function != null && b.function == null) ? b : a;
+		Track other = (chunked == a) ? b : a;
+		SegmentOrder order = (chunked.function == null && other.function == null) ? new SegmentOrder(other) : null;
+		
+		for(int from = 0; from < chunked.size; from += CHUNK_POINTS) {
+			int start = from;
+			int end = Math.min(chunked.size, from + CHUNK_POINTS);
+			
+			if(chunked.function != null) tasks.add(() -> findFunctionIntersections(chunked, other, start, end));
+			else if(other.function != null) tasks.add(() -> findMixedIntersections(chunked, other, start, end));
+			else tasks.add(() -> findSegmentIntersections(chunked, other, order, start, end));
+		}
+		
+		return tasks;
+	}
+	
+	
+	/**
+	 * Returns the roots at the samples {@code from} to {@code to} of {@code track}, and on the segments that start at them.
+	 */
+	private static ArrayList<Feature> findRoots(Track track, int from, int to) {
+		ArrayList<Feature> roots = new ArrayList<Feature>();
+		long[] evaluations = new long[1];
+		Function<Double, Double> f = count(track.function, evaluations);
+		
+		for(int i = from; i < to; i++) {
+			double x0 = track.xs[i];
+			double y0 = track.ys[i];
+			
+			if(y0 == 0) roots.add(new Feature(Kind.ROOT, x0, 0, track.curve, null));
+			if(i + 1 >= track.size) break;
+			
+			double x1 = track.xs[i + 1];
+			double y1 = track.ys[i + 1];
+			if(!(y0 < 0 && y1 > 0) && !(y0 > 0 && y1 < 0)) continue;
+			
+			double x;
+			if(f == null) x = x0 + (x1 - x0) * y0 / (y0 - y1);
+			else if(f instanceof DualFunction) x = findRoot((DualFunction) f, x0, x1, y0, y1);
+			else x = findRoot(f, x0, x1, y0, y1);
+			
+			roots.add(new Feature(Kind.ROOT, x, 0, track.curve, null));
+		}
+		
+		Counters.addFunctionEvaluations(evaluations[0]);
+		return roots;
+	}
+	
+	
+	/**
+	 * Returns the turning points at the samples {@code from} to {@code to} of {@code track}.
+	 */
+	private static ArrayList<Feature> findExtrema(Track track, int from, int to) {
+		ArrayList<Feature> extrema = new ArrayList<Feature>();
+		long[] evaluations = new long[1];
+		Function<Double, Double> f = count(track.function, evaluations);
+		
+		for(int i = Math.max(1, from); i < to && i + 1 < track.size; i++) {
+			double rise = track.ys[i] - track.ys[i - 1];
+			double nextRise = track.ys[i + 1] - track.ys[i];
+			
+			boolean isMaximum = rise > 0 && nextRise < 0;
+			if(!isMaximum && !(rise < 0 && nextRise > 0)) continue;
+			
+			Kind kind = isMaximum ? Kind.MAXIMUM : Kind.MINIMUM;
+			double x = track.xs[i];
+			double y = track.ys[i];
+			
+			if(f instanceof DualFunction) {
+				// A root of the derivative, if it changes sign between the neighbouring samples
+				DualFunction df = (DualFunction) f;
+				Function<Double, Double> derivative = t -> df.apply(Dual.variable(t, 0, 1)).getDerivative(0);
+				double d0 = derivative.apply(track.xs[i - 1]);
+				double d1 = derivative.apply(track.xs[i + 1]);
+				
+				if((d0 > 0) != (d1 > 0)) {
+					x = findRoot(derivative, track.xs[i - 1], track.xs[i + 1], d0, d1);
+					y = f.apply(x);
+				}
+			} else if(f != null) {
+				double sign = isMaximum ? -1 : 1;
+				x = findMinimum(t -> sign * f.apply(t), track.xs[i - 1], x, track.xs[i + 1], sign * y);
+				y = f.apply(x);
+			}
+			
+			extrema.add(new Feature(kind, x, y, track.curve, null));
+		}
+		
+		Counters.addFunctionEvaluations(evaluations[0]);
+		return extrema;
+	}
+	
+	
+	/**
+	 * Returns the intersections of the functions of {@code a} and {@code b} at the samples {@code from} to {@code to} of {@code a}, and
+	 * on the segments that start at them.
+	 */
+	private static ArrayList<Feature> findFunctionIntersections(Track a, Track b, int from, int to) {
+		ArrayList<Feature> intersections = new ArrayList<Feature>();
+		long[] evaluations = new long[1];
+		Function<Double, Double> fa = count(a.function, evaluations);
+		Function<Double, Double> fb = count(b.function, evaluations);
+		Function<Double, Double> difference = x -> fa.apply(x) - fb.apply(x);
+		
+		double x0 = a.xs[from];
+		double h0 = a.ys[from] - fb.apply(x0);
+		
+		for(int i = from; i < to; i++) {
+			if(h0 == 0) intersections.add(new Feature(Kind.INTERSECTION, x0, a.ys[i], a.curve, b.curve));
+			if(i + 1 >= a.size) break;
+			
+			double x1 = a.xs[i + 1];
+			double h1 = a.ys[i + 1] - fb.apply(x1);
+			
+			if((h0 < 0 && h1 > 0) || (h0 > 0 && h1 < 0)) {
+				double x = findRoot(difference, x0, x1, h0, h1);
+				intersections.add(new Feature(Kind.INTERSECTION, x, fa.apply(x), a.curve, b.curve));
+			}
+			
+			x0 = x1;
+			h0 = h1;
+		}
+		
+		Counters.addFunctionEvaluations(evaluations[0]);
+		return intersections;
+	}
+	
+	
+	/**
+	 * Returns the intersections of the function of {@code function} with the segments of the point list {@code points} that start at its
+	 * points {@code from} to {@code to}.
+	 */
+	private static ArrayList<Feature> findMixedIntersections(Track points, Track function, int from, int to) {
+		ArrayList<Feature> intersections = new ArrayList<Feature>();
+		long[] evaluations = new long[1];
+		Function<Double, Double> f = count(function.function, evaluations);
+		
+		double x0 = points.xs[from];
+		double y0 = points.ys[from];
+		double h0 = y0 - f.apply(x0);
+		
+		for(int i = from; i < to; i++) {
+			if(h0 == 0) intersections.add(new Feature(Kind.INTERSECTION, x0, y0, points.curve, function.curve));
+			if(i + 1 >= points.size) break;
+			
+			double x1 = points.xs[i + 1];
+			double y1 = points.ys[i + 1];
+			double h1 = Double.isNaN(x1) ? Double.NaN : y1 - f.apply(x1);
+			
+			if((h0 < 0 && h1 > 0) || (h0 > 0 && h1 < 0)) {
+				// The root of the difference along the segment, by the fraction of the way along it
+				double startX = x0, startY = y0;
+				Function<Double, Double> difference = t -> startY + t * (y1 - startY) - f.apply(startX + t * (x1 - startX));
+				double t = findRoot(difference, 0, 1, h0, h1);
+				
+				double x = x0 + t * (x1 - x0);
+				intersections.add(new Feature(Kind.INTERSECTION, x, y0 + t * (y1 - y0), points.curve, function.curve));
+			}
+			
+			x0 = x1;
+			y0 = y1;
+			h0 = h1;
+		}
+		
+		Counters.addFunctionEvaluations(evaluations[0]);
+		return intersections;
+	}
+	
+	
+	/**
+	 * Returns the intersections of the segments of {@code a} that start at its points {@code from} to {@code to} with the segments of
+	 * {@code b}. A crossing at the end of a segment is counted only at its start, so that it is not counted twice.
+	 */
+	private static ArrayList<Feature> findSegmentIntersections(Track a, Track b, SegmentOrder order, int from, int to) {
+		ArrayList<Feature> intersections = new ArrayList<Feature>();
+		
+		for(int i = from; i < to && i + 1 < a.size; i++) {
+			double ax = a.xs[i], ay = a.ys[i];
+			double adx = a.xs[i + 1] - ax, ady = a.ys[i + 1] - ay;
+			if(Double.isNaN(adx)) continue;
+			
+			double minX = Math.min(ax, ax + adx);
+			double maxX = Math.max(ax, ax + adx);
+			
+			// The segments of b that start no further left than the widest of them could and still reach this one
+			for(int k = order.getFirst(minX - order.maxWidth); k < order.size && order.minXs[k] <= maxX; k++) {
+				int j = order.segments[k];
+				double bx = b.xs[j], by = b.ys[j];
+				double bdx = b.xs[j + 1] - bx, bdy = b.ys[j + 1] - by;
+				
+				double denominator = adx * bdy - ady * bdx;
+				if(denominator == 0) continue;
+				
+				double s = ((bx - ax) * bdy - (by - ay) * bdx) / denominator;
+				double u = ((bx - ax) * ady - (by - ay) * adx) / denominator;
+				
+				if(s >= 0 && s < 1 && u >= 0 && u < 1) intersections.add(new Feature(Kind.INTERSECTION, ax + s * adx, ay + s * ady, a.curve, b.curve));
+			}
+		}
+		
+		return intersections;
+	}
+	
+	
+	/**
+	 * Returns {@code f}, counting its evaluations in {@code evaluations}, and keeping its derivatives if it has them.
+	 */
+	private static Function<Double, Double> count(Function<Double, Double> f, long[] evaluations) {
+		if(f == null) return null;
+		
+		if(f instanceof DualFunction) {
+			DualFunction df = (DualFunction) f;
+			return (DualFunction) x -> {
+				evaluations[0]++;
+				return df.apply(x);
+			};
+		}
+		
+		return x -> {
+			evaluations[0]++;
+			return f.apply(x);
+		};
+	}
+	
+	
+	/**
+	 * Runs {@code tasks} and returns the features that they find, in order.
+	 */
+	private static ArrayList<Feature> collect(ArrayList<Callable<ArrayList<Feature>>> tasks) {
+		ArrayList<Feature> features = new ArrayList<Feature>();
+		for(ArrayList<Feature> result: Parallel.run(tasks)) features.addAll(result);
+		return features;
+	}
+	
+	
+	/**
+	 * The samples of a curve in order, with the function that they were taken from, or {@code null} for a point list.
+	 */
+	private static class Track {
+		private final Curve curve;
+		private final Function<Double, Double> function;
+		private double[] xs = new double[64];
+		private double[] ys = new double[64];
+		private int size;
+		
+		private Track(Curve curve, Function<Double, Double> function) {
+			this.curve = curve;
+			this.function = function;
+		}
+		
+		private void add(double x, double y) {
+			if(size == xs.length) {
+				xs = Arrays.copyOf(xs, 2 * size);
+				ys = Arrays.copyOf(ys, 2 * size);
+			}
+			
+			xs[size] = x;
+			ys[size] = y;
+			size++;
+		}
+	}
+	
+	
+	/**
+	 * The segments of a point list in order of the lowest x of each, so that those near a given x can be found by a binary search.
+	 */
+	private static class SegmentOrder {
+		private final int[] segments;
+		private final double[] minXs;
+		private final int size;
+		private double maxWidth;
+		
+		private SegmentOrder(Track track) {
+			int count = 0;
+			int[] found = new int[Math.max(0, track.size - 1)];
+			
+			for(int j = 0; j + 1 < track.size; j++) {
+				if(Double.isNaN(track.xs[j]) || Double.isNaN(track.xs[j + 1])) continue;
+				found[count++] = j;
+				maxWidth = Math.max(maxWidth, Math.abs(track.xs[j + 1] - track.xs[j]));
+			}
+			
+			// Data along the x-axis is usually in order of x already, and otherwise the segments are sorted
+			boolean isSorted = true;
+			for(int k = 0; k < count && isSorted; k++) {
+				int j = found[k];
+				isSorted = track.xs[j + 1] >= track.xs[j] && (k == 0 || track.xs[j] >= track.xs[found[k - 1]]);
+			}
+			
+			if(!isSorted) {
+				Integer[] boxed = new Integer[count];
+				for(int k = 0; k < count; k++) boxed[k] = found[k];
+				Arrays.sort(boxed, (j, k) -> Double.compare(getMinX(track, j), getMinX(track, k)));
+				for(int k = 0; k < count; k++) found[k] = boxed[k];
+			}
+			
+			segments = found;
+			size = count;
+			minXs = new double[count];
+			for(int k = 0; k < count; k++) minXs[k] = getMinX(track, found[k]);
+		}
+		
+		private static double getMinX(Track track, int segment) {
+			return Math.min(track.xs[segment], track.xs[segment + 1]);
+		}
+		
+		/**
+		 * Returns the position in order of the first segment whose lowest x is at least {@code x}.
+		 */
+		private int getFirst(double x) {
+			int low = 0, high = size;
+			
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(minXs[middle] < x) low = middle + 1;
+				else high = middle;
+			}
+			
+			return low;
+		}
+	}
+}
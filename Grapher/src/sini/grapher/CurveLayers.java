@@ -0,0 +1,153 @@
+package sini.grapher;
+
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+import sini.grapher.profiling.FrameProfiler;
+
+/**
+ * The curves of a {@link Display}, rendered into transparent {@link ScrollingLayer}s that are cached between frames. Each layer holds a
+ * contiguous run of the curves, so compositing the layers in order draws the curves in the same order as drawing them one by one.
+ * 
+ * <p>A layer is rendered again only when it is invalidated, or when one of its curves reports a new {@link Curve#getVersion() version},
+ * so changing one curve leaves the other layers untouched. When the viewport is panned every layer is scrolled. The layers that need
+ * work are brought up to date in parallel on a shared pool of worker threads while the painting thread waits, and are then composited
+ * by the painting thread.
+ * 
+ * <p>Every layer is an image the size of the display, so the number of layers is bounded by {@link #MAX_LAYERS} and by twice the number
+ * of processors, rather than there being one layer for every curve.
+ */
+class CurveLayers {
+	
+	private static final int MAX_LAYERS = 16;
+	
+	private final Display display;
+	private final FrameProfiler profiler;
+	
+	private List<Curve> curves;
+	private Layer[] layers = new Layer[0];
+	private final ArrayList<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+	
+	public CurveLayers(Display display, FrameProfiler profiler) {
+		this.display = display;
+		this.profiler = profiler;
+	}
+	
+	
+	/**
+	 * Marks every layer as out of date.
+	 */
+	public void invalidate() {
+		for(Layer layer: layers) layer.image.invalidate();
+	}
+	
+	
+	/**
+	 * Marks the layer that holds {@code curve} as out of date.
+	 */
+	public void invalidate(Curve curve) {
+		for(Layer layer: layers) {
+			for(int i = layer.from; i < layer.to; i++) {
+				if(curves.get(i) == curve) layer.image.invalidate();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Brings the layers up to date with the viewport of the display and with {@code curves}. Returns true if any layer had to be
+	 * rendered in full, in which case whatever has been composited from the layers is out of date as a whole.
+	 */
+	public boolean update(List<Curve> curves) {
+		boolean isRegrouped = false;
+		
+		if(curves != this.curves || getCurveCount() != curves.size()) {
+			this.curves = curves;
+			regroup();
+			isRegrouped = true;
+		}
+		
+		boolean isRendered = false;
+		
+		try {
+			for(boolean rendered: Parallel.run(tasks)) isRendered |= rendered;
+		} catch (CancellationException e) {
+			// The layers that were interrupted are half rendered, and are rendered again in full next time
+			invalidate();
+			return true;
+		} catch (RuntimeException | Error e) {
+			invalidate();
+			throw e;
+		}
+		
+		return isRendered || isRegrouped;
+	}
+	
+	
+	/**
+	 * Composites the layers onto {@code g}, as they were last brought up to date.
+	 */
+	public void draw(Graphics2D g) {
+		for(Layer layer: layers) layer.image.draw(g);
+	}
+	
+	
+	private int getCurveCount() {
+		return (layers.length == 0) ? 0 : layers[layers.length - 1].to;
+	}
+	
+	
+	/**
+	 * Splits the curves into runs of as equal a length as possible, one for each layer.
+	 */
+	private void regroup() {
+		int layerCount = Math.min(curves.size(), Math.min(MAX_LAYERS, 2 * Parallel.PROCESSORS));
+		
+		layers = new Layer[layerCount];
+		tasks.clear();
+		
+		for(int i = 0; i < layerCount; i++) {
+			layers[i] = new Layer(curves.size() * i / layerCount, curves.size() * (i + 1) / layerCount);
+			tasks.add(layers[i]::update);
+		}
+	}
+	
+	
+	private class Layer {
+		
+		private final int from;
+		private final int to;
+		private final long[] versions;
+		private final ScrollingLayer image;
+		
+		private Layer(int from, int to) {
+			this.from = from;
+			this.to = to;
+			
+			versions = new long[to - from];
+			image = new ScrollingLayer(display, this::render, false);
+			
+			for(int i = from; i < to; i++) versions[i - from] = curves.get(i).getVersion();
+		}
+		
+		private boolean update() {
+			for(int i = from; i < to; i++) {
+				long version = curves.get(i).getVersion();
+				
+				if(version != versions[i - from]) {
+					versions[i - from] = version;
+					image.invalidate();
+				}
+			}
+			
+			return image.update();
+		}
+		
+		private void render(Graphics2D g) {
+			for(int i = from; i < to; i++) profiler.drawCurve(curves.get(i), i, display, g);
+		}
+	}
+}
@@ -8,6 +8,9 @@ import java.util.function.Function;
 
 import sini.complex.Complex;
 import sini.complex.ComplexMath;
+import sini.doubledouble.DoubleDouble;
+import sini.doubledouble.DoubleDoubleFunction;
+import sini.doubledouble.DoubleDoubleMath;
 
 @SuppressWarnings("unused")
 public class CurveList {
@@ -22,6 +25,7 @@ public class CurveList {
 		ArrayList<Curve> curves = new ArrayList<Curve>();
 		
 		DifferentialEquation deq = new DifferentialEquation(p -> f(p));
+		deq.setDiskCache(DiskMeshCache.getDefault(), "CurveList.f sin(t) + cos(x)");
 		
 		Interval interval = new Interval(-4, 4);
 		Interval interval2 = Interval.product(interval, interval);
@@ -45,9 +49,13 @@ public class CurveList {
 		//curves.add(new SimpleFunctionCurve(x -> Math.sin(x)));
 		//curves.add(new SimpleFunctionCurve(x -> Math.tan(x), randomColor()));
 		//curves.add(new SimpleFunctionCurve(x -> funnyFractionFractal(x), randomColor()));
+		//curves.add(new SimpleFunctionCurve((DoubleDoubleFunction) x -> funnyFractionFractal(x), randomColor()));
 		//curves.add(new ParametricCurve(p -> function2D(rotation(p,45)), Interval.product(new Interval(-3, 3), new Interval(-3, 3)), 0.1));
 		//curves.add(new ParametricCurve(p -> rotation(tetrationCardioid(p), 70), new Interval(0, 4), 0.01, new Color(200, 80, 40)));
 		//curves.add(new ParametricCurve(p -> p, Interval.product(new Interval(-3, 3), new Interval(-3, 3)), 0.1));
+		//curves.add(new SurfacePlot(p -> new double[] {p[0], p[1], Math.sin(p[0] * p[1])}, Interval.pow(new Interval(-3, 3), 2), 0.01, new Color(60, 100, 255)));
+		//curves.add(new ImplicitCurve(ImplicitFunction.of((x, y) -> Math.sin(x*x + y*y) - Math.cos(x*y),
+		//		(x, y) -> IntervalMath.subtract(IntervalMath.sin(IntervalMath.add(IntervalMath.sqr(x), IntervalMath.sqr(y))), IntervalMath.cos(IntervalMath.multiply(x, y)))), randomColor(), 2));
 		
 		
 		
@@ -81,6 +89,18 @@ public class CurveList {
 		return result;
 	}
 	
+	// The same, in double-double precision, which keeps its detail at deep zoom
+	private static DoubleDouble funnyFractionFractal(DoubleDouble x) {
+		int iterations = 1000;
+		DoubleDouble result = DoubleDoubleMath.abs(x.multiply(iterations));
+		
+		for(int i = 1; i <= iterations; i++) {
+			result = DoubleDoubleMath.abs(result.subtract(DoubleDouble.valueOf(iterations).divide(i)));
+		}
+		
+		return result;
+	}
+	
 	private static double[] function2D(double[] p) {
 		double x = p[0];
 		double y = p[1];
@@ -0,0 +1,23 @@
+package sini.grapher;
+
+/**
+ * A progressive curve that can be meshed at zoom levels where the step of the mesh spans only a few doubles, by meshing the offsets of
+ * its points from an origin near the viewport, which doubles resolve finely. A display meshes such curves this way once it is
+ * {@link Display#isDeepZoom() zoomed in deeply}, and draws them by adding the offsets to the origin only after taking away the viewport.
+ */
+public interface DeepZoomCurve extends ProgressiveCurve {
+	
+	/**
+	 * Fits the curve to the region of the plane given by {@code offsets}, a 2-dimensional interval of offsets from the point
+	 * (originX, originY), to be meshed with a step that is eventually {@code step}. The mesh of the curve then holds offsets from that
+	 * origin, until the curve is next fitted with {@link #setViewport(Interval, double)}.
+	 * @return true if the mesh of the curve was rebuilt, and false if it was left as it was.
+	 */
+	public abstract boolean setViewport(double originX, double originY, Interval offsets, double step);
+	
+	/**
+	 * Returns the point that the points of the mesh are offsets from, which is (0, 0) unless the curve was last fitted with
+	 * {@link #setViewport(double, double, Interval, double)}.
+	 */
+	public abstract double[] getMeshOrigin();
+}
@@ -0,0 +1,309 @@
+package sini.grapher;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * A scatter plot of a large set of points, drawn as a map of their density rather than as a mark for each point. Each point in view adds
+ * one to the count of the pixel it falls in, and each pixel is then coloured by its count on a logarithmic scale, from faint for a single
+ * point to the full colour of the plot for the densest pixel. Drawing takes time in proportion to the number of points plus the number of
+ * pixels, with no call to {@link Graphics2D} for each point.
+ * 
+ * <p>The points are split between a pool with one thread per processor, and each thread counts its share into a grid of its own, so the
+ * threads never contend. The grids are then summed and coloured in parallel, each thread taking a band of the image, and the result is drawn
+ * as a single image.
+ * 
+ * <p>Straight after the viewport changes, only every {@code stride}-th point is counted, with the stride chosen so that about
+ * {@code COARSE_POINTS} points are counted, and each counts for {@code stride} points. Each refinement halves the stride.
+ */
+public class DensityScatterCurve implements ProgressiveCurve {
+	
+	private static final int COARSE_POINTS = 1 << 19;
+	private static final int MIN_POINTS_PER_THREAD = 1 << 16;
+	
+	// The opacity of a pixel holding a single point, so that isolated points stay visible next to dense clusters
+	private static final float MIN_ALPHA = 0.2f;
+	private static final int COLOR_LEVELS = 256;
+	private static final int MAX_TABLE_COUNT = 4096;
+	
+	private final PointSource points;
+	private Color color;
+	private long version;
+	
+	private long stride = 1;
+	private Interval lastVisible;
+	
+	// Reused from frame to frame while the size of the clip stays the same
+	private int[][] grids = new int[0][];
+	private boolean isFirstGridCleared = true;
+	private BufferedImage image;
+	private final int[] colors = new int[COLOR_LEVELS];
+	private final int[] levelOfCount = new int[MAX_TABLE_COUNT];
+	
+	public DensityScatterCurve(PointSource points) {
+		this(points, Color.BLUE);
+	}
+	
+	/**
+	 * Creates a scatter plot of the points in {@code coordinates}, which holds the x and y coordinates of each point in turn. The buffer is
+	 * used as it is, without being copied.
+	 */
+	public DensityScatterCurve(DoubleBuffer coordinates, Color color) {
+		this(new BufferPointSource(coordinates), color);
+	}
+	
+	public DensityScatterCurve(PointSource points, Color color) {
+		this.points = points;
+		setColor(color);
+	}
+	
+	
+	public void setColor(Color color) {
+		this.color = color;
+		
+		// The colours from a single point up to the densest pixel, all of the colour of the plot and growing more opaque
+		for(int level = 0; level < COLOR_LEVELS; level++) {
+			float alpha = MIN_ALPHA + (1 - MIN_ALPHA) * level / (COLOR_LEVELS - 1);
+			colors[level] = (Math.round(alpha * color.getAlpha()) << 24) | (color.getRGB() & 0xFFFFFF);
+		}
+		
+		version++;
+	}
+	
+	
+	public Color getColor() {
+		return color;
+	}
+	
+	
+	public PointSource getPoints() {
+		return points;
+	}
+	
+	
+	@Override
+	public long getVersion() {
+		return version;
+	}
+	
+	
+	@Override
+	public void updateMesh(Interval interval, double step) {}
+	
+	
+	@Override
+	public DensityScatterCurve copy() {
+		return new DensityScatterCurve(points, color);
+	}
+	
+	
+	@Override
+	public boolean setViewport(Interval visible, double step) {
+		if(visible.equals(lastVisible)) return false;
+		lastVisible = visible;
+		
+		stride = Math.max(1, Long.highestOneBit(points.size() / COARSE_POINTS));
+		version++;
+		return true;
+	}
+	
+	
+	@Override
+	public boolean refine(long deadline) {
+		if(stride == 1) return false;
+		
+		stride /= 2;
+		version++;
+		return stride > 1;
+	}
+	
+	
+	@Override
+	public synchronized void draw(Display display, Graphics2D g) {
+		Rectangle bounds = g.getClipBounds();
+		if(bounds == null) bounds = new Rectangle(display.getWidth(), display.getHeight());
+		if(bounds.isEmpty()) return;
+		
+		long first = 0;
+		long last = points.size();
+		
+		// Points sorted by x can be narrowed down to those in view
+		PointLodIndex index = points.getLodIndex();
+		
+		if(index != null) {
+			first = index.findFirst(display.getPlaneX(bounds.x));
+			last = index.findFirst(display.getPlaneX(bounds.x + bounds.width));
+		}
+		
+		long stride = this.stride;
+		long count = (last - first + stride - 1) / stride;
+		int threads = (int)Math.max(1, Math.min(Parallel.PROCESSORS, count / MIN_POINTS_PER_THREAD));
+		
+		ensureGrids(threads, bounds.width, bounds.height);
+		isFirstGridCleared = false;
+		
+		ArrayList<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(threads);
+		
+		for(int i = 0; i < threads; i++) {
+			int[] grid = grids[i];
+			long from = first + stride * (count * i / threads);
+			long to = first + stride * (count * (i + 1) / threads);
+			Rectangle area = bounds;
+			
+			tasks.add(() -> splat(display, area, grid, from, to, stride));
+		}
+		
+		int max = 0;
+		for(int result: Parallel.run(tasks)) max = Math.max(max, result);
+		
+		// The counts of the other threads are summed into the first grid, band by band
+		int pixels = bounds.width * bounds.height;
+		tasks.clear();
+		
+		for(int i = 0; i < threads && threads > 1; i++) {
+			int from = (int)((long)pixels * i / threads);
+			int to = (int)((long)pixels * (i + 1) / threads);
+			
+			tasks.add(() -> merge(threads, from, to));
+		}
+		
+		if(!tasks.isEmpty()) {
+			max = 0;
+			for(int result: Parallel.run(tasks)) max = Math.max(max, result);
+		}
+		
+		fillLevels(max, stride);
+		
+		int[] pixelData = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		int maxCount = max;
+		tasks.clear();
+		
+		for(int i = 0; i < threads; i++) {
+			int from = (int)((long)pixels * i / threads);
+			int to = (int)((long)pixels * (i + 1) / threads);
+			
+			tasks.add(() -> colorPixels(pixelData, from, to, maxCount, stride));
+		}
+		
+		Parallel.run(tasks);
+		isFirstGridCleared = true;
+		
+		g.drawImage(image, bounds.x, bounds.y, null);
+	}
+	
+	
+	/**
+	 * Counts every {@code stride}-th point from {@code from} up to {@code to} into the pixel of {@code grid} it falls in, where the grid
+	 * covers {@code bounds}. Returns the largest count in the grid.
+	 */
+	private int splat(Display display, Rectangle bounds, int[] grid, long from, long to, long stride) {
+		int width = bounds.width;
+		int height = bounds.height;
+		int max = 0;
+		
+		// The transform from the plane to the grid, worked out once rather than for each point
+		double unit = display.getDisplayUnit();
+		double offsetX = display.getDisplayX(0) - bounds.x;
+		double offsetY = display.getDisplayY(0) - bounds.y;
+		
+		for(long i = from; i < to; i += stride) {
+			double x = points.getX(i) * unit + offsetX;
+			double y = offsetY - points.getY(i) * unit;
+			
+			// NaN coordinates fail both comparisons, and are skipped along with points out of view
+			if(x >= 0 && x < width && y >= 0 && y < height) {
+				int pixel = (int)y * width + (int)x;
+				int count = ++grid[pixel];
+				if(count > max) max = count;
+			}
+		}
+		
+		return max;
+	}
+	
+	
+	/**
+	 * Adds the counts of pixels {@code from} up to {@code to} of every grid into the first, returning the largest sum.
+	 */
+	private int merge(int threads, int from, int to) {
+		int[] total = grids[0];
+		int max = 0;
+		
+		for(int i = 1; i < threads; i++) {
+			int[] grid = grids[i];
+			for(int pixel = from; pixel < to; pixel++) total[pixel] += grid[pixel];
+		}
+		
+		for(int pixel = from; pixel < to; pixel++) max = Math.max(max, total[pixel]);
+		
+		return max;
+	}
+	
+	
+	/**
+	 * Colours pixels {@code from} up to {@code to} of the image by their counts in the first grid, where each count stands for
+	 * {@code stride} points, and clears those counts for the next frame.
+	 */
+	private int colorPixels(int[] pixelData, int from, int to, int maxCount, long stride) {
+		int[] total = grids[0];
+		double scale = (COLOR_LEVELS - 1) / Math.log1p((double)maxCount * stride);
+		
+		for(int pixel = from; pixel < to; pixel++) {
+			int count = total[pixel];
+			
+			if(count == 0) {
+				pixelData[pixel] = 0;
+			} else if(count < MAX_TABLE_COUNT) {
+				pixelData[pixel] = colors[levelOfCount[count]];
+			} else {
+				pixelData[pixel] = colors[Math.min(COLOR_LEVELS - 1, (int)(Math.log1p((double)count * stride) * scale))];
+			}
+			
+			total[pixel] = 0;
+		}
+		
+		return 0;
+	}
+	
+	
+	/**
+	 * Fills in the colour level of each count up to {@code MAX_TABLE_COUNT}, so that most pixels are coloured without taking a logarithm.
+	 */
+	private void fillLevels(int maxCount, long stride) {
+		double scale = (COLOR_LEVELS - 1) / Math.log1p((double)maxCount * stride);
+		int counts = Math.min(MAX_TABLE_COUNT, maxCount + 1);
+		
+		for(int count = 1; count < counts; count++) {
+			levelOfCount[count] = Math.min(COLOR_LEVELS - 1, (int)(Math.log1p((double)count * stride) * scale));
+		}
+	}
+	
+	
+	/**
+	 * Makes sure there are at least {@code threads} grids, which are cleared, and an image of {@code width} by {@code height} pixels.
+	 */
+	private void ensureGrids(int threads, int width, int height) {
+		if(image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			grids = new int[0][];
+		}
+		
+		if(grids.length < threads) {
+			int[][] newGrids = new int[threads][];
+			System.arraycopy(grids, 0, newGrids, 0, grids.length);
+			
+			for(int i = grids.length; i < threads; i++) newGrids[i] = new int[width * height];
+			grids = newGrids;
+		}
+		
+		// The first grid is cleared as it is coloured, unless the last frame was cancelled before then, and the others are cleared here
+		for(int i = isFirstGridCleared ? 1 : 0; i < threads; i++) Arrays.fill(grids[i], 0);
+	}
+}
@@ -3,20 +3,80 @@ package sini.grapher;
 import java.util.ArrayList;
 import java.util.function.Function;
 import java.awt.Color;
+import java.nio.DoubleBuffer;
+
+import sini.dual.DualScalarFunction;
+import sini.grapher.profiling.Counters;
+import sini.grapher.profiling.MeshUpdateEvent;
 
 public class DifferentialEquation {
 	
 	private Function<double[], Double> f;
+	private DiskMeshCache diskCache;
+	private String functionIdentity;
 	
+	/**
+	 * Creates the equation x' = f(t, x), with f given a point {t, x}. If f is a {@link DualScalarFunction}, its derivatives are used by
+	 * the implicit integrators instead of finite differences.
+	 */
 	public DifferentialEquation(Function<double[], Double> f) {
 		this.f = f;
 	}
 	
+	/**
+	 * Sets the cache that solution curves are kept in on disk, or stops caching them if {@code diskCache} is {@code null}. The curves are
+	 * stored against {@code functionIdentity}, such as a name and a version, which stands for f: the cache cannot tell when f changes, so
+	 * the identity must be changed with it, or curves traced for the old f are loaded.
+	 */
+	public void setDiskCache(DiskMeshCache diskCache, String functionIdentity) {
+		this.diskCache = diskCache;
+		this.functionIdentity = functionIdentity;
+	}
+	
 	public Curve getSolutionCurve(Interval interval, double t0, double x0, double step, int maxSteps) {
 		return getSolutionCurve(interval, t0, x0, step, maxSteps, Color.BLUE, 2);
 	}
 	
 	public Curve getSolutionCurve(Interval interval, double t0, double x0, double step, int maxSteps, Color color, float thickness) {
+		return getSolutionCurve(interval, t0, x0, step, maxSteps, color, thickness, Integrator.EULER);
+	}
+	
+	/**
+	 * Returns the solution curve passing through ({@code t0}, {@code x0}), traced in both directions until it leaves {@code interval} or
+	 * {@code maxSteps} steps have been taken each way. Each step is at most {@code step} long in t, and is shortened where the solution is
+	 * steep so that it also moves at most {@code step} in x.
+	 * 
+	 * <p>If a disk cache has been set, a curve that has been traced before with the same arguments, for a function with the same identity,
+	 * is loaded from the cache instead.
+	 */
+	public Curve getSolutionCurve(Interval interval, double t0, double x0, double step, int maxSteps, Color color, float thickness, Integrator integrator) {
+		DiskMeshCache.Key key = null;
+		
+		if(diskCache != null) {
+			key = new DiskMeshCache.Key("solution", functionIdentity, interval, t0, x0, step, maxSteps, integrator.name());
+			
+			DoubleBuffer coordinates = diskCache.get(key);
+			if(coordinates != null) return new PointListCurve(coordinates, color, thickness);
+		}
+		
+		MeshUpdateEvent event = new MeshUpdateEvent();
+		event.begin();
+		
+		long[] evaluations = new long[1];
+		Function<double[], Double> countedF = p -> {
+			evaluations[0]++;
+			return f.apply(p);
+		};
+		
+		// A differentiable f stays differentiable when counted, so that implicit integrators can still take its derivative
+		if(f instanceof DualScalarFunction) {
+			DualScalarFunction df = (DualScalarFunction) f;
+			countedF = (DualScalarFunction) p -> {
+				evaluations[0]++;
+				return df.apply(p);
+			};
+		}
+		
 		double t = t0;
 		double x = x0;
 		
@@ -33,19 +93,11 @@ public class DifferentialEquation {
 			
 			points.add(currentPoint);
 			
-			double m = f.apply(currentPoint);
+			double m = countedF.apply(currentPoint);
+			double tstep = (m != 0) ? Math.min(step, Math.abs(step / m)) : step;
 			
-			if(m != 0) {
-				double tstep = step;
-				tstep = Math.min(step, Math.abs(step / m));
-				 
-				t += tstep;
-				x += m*tstep;
-				
-			} else {
-				t += step;
-				
-			}
+			x = integrator.step(countedF, t, x, m, tstep);
+			t += tstep;
 		}
 		
 		t = t0;
@@ -58,29 +110,75 @@ public class DifferentialEquation {
 		while(interval.contains(currentPoint) && steps < maxSteps) {
 			steps++;
 			
-			double m = f.apply(currentPoint);
+			double m = countedF.apply(currentPoint);
+			double tstep = (m != 0) ? Math.min(step, Math.abs(step / m)) : step;
 			
-			if(m != 0) {
-				double tstep = step;
-				tstep = Math.min(step, Math.abs(step / m));
-				 
-				t -= tstep;
-				x -= m*tstep;
-			} else {
-				t -= step;
-				
-			}
+			x = integrator.step(countedF, t, x, m, -tstep);
+			t -= tstep;
 
 			currentPoint = new double[] {t, x};
 			
 			points.add(0, currentPoint);
 		}
 		
-		return new PointListCurve(points, color, thickness);
+		Counters.addFunctionEvaluations(evaluations[0]);
+		event.end();
+		
+		if(event.shouldCommit()) {
+			event.curveType = PointListCurve.class.getSimpleName();
+			event.step = step;
+			event.meshSize = points.size();
+			event.evaluations = evaluations[0];
+			event.commit();
+		}
+		
+		DoubleBuffer coordinates = DoubleBuffer.wrap(PointListCurve.pack(points));
+		if(diskCache != null) diskCache.put(key, coordinates);
+		
+		return new PointListCurve(coordinates, color, thickness);
+	}
+	
+	/**
+	 * Returns the value at {@code t1} of the solution passing through ({@code t0}, {@code x0}), found by taking steps of size {@code step}
+	 * with {@code integrator}. The last step is shortened so that it ends exactly at {@code t1}.
+	 */
+	public double solve(Integrator integrator, double t0, double x0, double t1, double step) {
+		double direction = Math.signum(t1 - t0);
+		
+		double t = t0;
+		double x = x0;
+		
+		while(direction * (t1 - t) > 0) {
+			double h = direction * Math.min(step, Math.abs(t1 - t));
+			
+			x = integrator.step(f, t, x, f.apply(new double[] {t, x}), h);
+			t = (Math.abs(t1 - t) <= step) ? t1 : t + h;
+		}
+		
+		return x;
+	}
+	
+	/**
+	 * Returns the value at {@code t1} of the solution passing through ({@code t0}, {@code x0}), found with the adaptive
+	 * {@link DormandPrince} method so that the local error of each step stays within {@code tolerance}.
+	 */
+	public double solveAdaptive(double t0, double x0, double t1, double tolerance) {
+		return DormandPrince.solve(f, t0, x0, t1, tolerance);
+	}
+	
+	public Function<double[], Double> getFunction() {
+		return f;
 	}
 	
 	public DirectionField getDirectionField(Interval interval, double step) {
 		return new DirectionField(f, interval, step);
 	}
+	
+	/**
+	 * Returns the slope f(t, x) of the solutions as a {@link ScalarField}, drawn as a heat map with contours at {@code levels}.
+	 */
+	public ScalarField getSlopeField(double... levels) {
+		return new ScalarField(f, levels);
+	}
 
 }
@@ -3,17 +3,34 @@ package sini.grapher;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.function.Function;
 
-public class DirectionField implements Curve {
+import sini.grapher.profiling.Counters;
+import sini.grapher.profiling.MeshUpdateEvent;
+
+/**
+ * A direction field of a first order differential equation, drawn as a short line through each point of a grid with the slope given by
+ * the equation. Straight after the zoom level changes the field is drawn as one path without antialiasing, which is several times
+ * quicker, and antialiasing is turned back on when it is refined. It is refined after the curves that are drawn over it.
+ * 
+ * @author Sini
+ */
+public class DirectionField implements ProgressiveCurve {
 	
 	private Color color;
+	private long version;
 	private Function<double[], Double> f; // Let's assume f : R^2 -> R
 	private ArrayList<double[][]> mesh;
+	private MeshCache cache = MeshCache.getShared();
+	
+	private boolean antialiased = true;
+	private double viewStep;
 
 	public DirectionField(Function<double[], Double> f) {
 		this(f, Color.RED);
@@ -37,6 +54,20 @@ public class DirectionField implements Curve {
 	
 	public void setColor(Color color) {
 		this.color = color;
+		version++;
+	}
+	
+	@Override
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Sets the cache that meshes of the curve are kept in, or turns caching off if {@code cache} is {@code null}. The shared cache is
+	 * used by default.
+	 */
+	public void setMeshCache(MeshCache cache) {
+		this.cache = cache;
 	}
 	
 	public ArrayList<double[][]> getMesh() {
@@ -45,19 +76,84 @@ public class DirectionField implements Curve {
 
 	@Override
 	public void draw(Display display, Graphics2D g) {
-		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiased ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
 		g.setColor(color);
 		g.setStroke(new BasicStroke(1, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
 		
+		// Segments that lie entirely outside of the clip are skipped
+		Rectangle bounds = g.getClipBounds();
+		if(bounds != null) bounds.grow(1, 1);
+		
+		long segments = 0;
+		Path2D.Double path = antialiased ? null : new Path2D.Double();
+		
 		for(double[][] meshSegment: mesh) {
-			PointDouble p1 = display.getDisplayPoint(new PointDouble(meshSegment[0][0], meshSegment[0][1]));
-			PointDouble p2 = display.getDisplayPoint(new PointDouble(meshSegment[1][0], meshSegment[1][1]));;
-			g.draw(new Line2D.Double(p1.x, p1.y, p2.x, p2.y));
+			double x1 = display.getDisplayX(meshSegment[0][0]);
+			double y1 = display.getDisplayY(meshSegment[0][1]);
+			double x2 = display.getDisplayX(meshSegment[1][0]);
+			double y2 = display.getDisplayY(meshSegment[1][1]);
+			
+			if(bounds == null || bounds.intersectsLine(x1, y1, x2, y2)) {
+				if(path == null) {
+					g.draw(new Line2D.Double(x1, y1, x2, y2));
+				} else {
+					path.moveTo(x1, y1);
+					path.lineTo(x2, y2);
+				}
+				
+				segments++;
+			}
 		}
+		
+		if(path != null) g.draw(path);
+		
+		Counters.addSegmentsDrawn(segments);
+	}
+	
+	@Override
+	public DirectionField copy() {
+		DirectionField copy = new DirectionField(f, color);
+		copy.setMeshCache(cache);
+		return copy;
+	}
+	
+	@Override
+	public boolean setViewport(Interval visible, double step) {
+		if(step == viewStep) return false;
+		
+		viewStep = step;
+		antialiased = false;
+		version++;
+		return true;
+	}
+	
+	@Override
+	public boolean refine(long deadline) {
+		if(antialiased) return false;
+		
+		antialiased = true;
+		version++;
+		return false;
+	}
+	
+	@Override
+	public int getPriority() {
+		return -1;
 	}
 
 	@Override
 	public void updateMesh(Interval interval, double step) {
+		ArrayList<double[][]> cachedMesh = (cache == null) ? null : cache.get(this, interval, step);
+		
+		if(cachedMesh != null) {
+			mesh = cachedMesh;
+			return;
+		}
+		
+		MeshUpdateEvent event = new MeshUpdateEvent();
+		event.begin();
+		long start = System.nanoTime();
+		
 		mesh = new ArrayList<double[][]>();
 		Iterator<double[]> iter = interval.getPointIterator(step);
 		
@@ -92,6 +188,18 @@ public class DirectionField implements Curve {
 				mesh.add(new double[][] {p1, p2});
 			}
 		}
+		
+		Counters.addFunctionEvaluations(mesh.size());
+		if(cache != null) cache.put(this, interval, step, mesh, MeshCache.sizeOf(mesh), System.nanoTime() - start);
+		event.end();
+		
+		if(event.shouldCommit()) {
+			event.curveType = getClass().getSimpleName();
+			event.step = step;
+			event.meshSize = mesh.size();
+			event.evaluations = mesh.size();
+			event.commit();
+		}
 	}
 	
 	
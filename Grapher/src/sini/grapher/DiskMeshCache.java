@@ -0,0 +1,403 @@
+package sini.grapher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * A cache of arrays of coordinates kept in a file, so that expensive meshes and trajectories survive restarts. Each array is stored
+ * against a {@link Key} that hashes everything the array was computed from. The first time the cache is used, the whole file is mapped
+ * into memory and indexed, and the arrays in it are handed out as views of the mapping, so loading an array copies nothing until it is
+ * drawn. New arrays are appended to the end of the file.
+ * 
+ * <p>The file starts with a header of 16 bytes, giving a magic number, the format version and the byte order. Each array follows as a
+ * record of 24 bytes, giving the two halves of its key and the number of values, and then the values as doubles in the native byte
+ * order. Records cut short, for example by a crash while writing, are dropped, and a file with another header is started afresh.
+ * 
+ * <p>The file holds at most a fixed number of bytes. When an array would take it over, the file is compacted: it is rewritten with only
+ * the latest array stored against each key, dropping the least recently used until they fill half of it, and moved over the old file
+ * in one step. Every write holds a {@link FileLock} on a lock file next to the cache file, and first rereads the file if another process
+ * has written to it since, so several processes can share a cache.
+ * 
+ * <p>There is no cache unless one is asked for. The default cache is kept in the file given by the system property
+ * {@code grapher.diskCache}, and holds at most the number of bytes given by {@code grapher.diskCacheBytes}.
+ */
+public class DiskMeshCache {
+	
+	public static final long DEFAULT_MAX_BYTES = 256L << 20;
+	
+	private static final int MAGIC = 0x47524D43; // "GRMC"
+	private static final int FORMAT_VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+	private static final int RECORD_HEADER_BYTES = 24;
+	
+	// A file lock is held by the whole process, so caches on the same file in one process also take turns through this
+	private static final Object writeLock = new Object();
+	
+	private static DiskMeshCache defaultCache;
+	
+	private final File file;
+	private final File lockFile;
+	private final long maxBytes;
+	
+	private LinkedHashMap<Key, DoubleBuffer> entries; // Loaded the first time the cache is used, from least to most recently used
+	private long validBytes; // The length of the file up to the end of the last whole record
+	private Object fileKey; // Identifies the file that was loaded, which a compaction by another process replaces
+	
+	public DiskMeshCache(File file) {
+		this(file, DEFAULT_MAX_BYTES);
+	}
+	
+	/**
+	 * Creates a cache kept in {@code file}, which holds at most {@code maxBytes} bytes.
+	 */
+	public DiskMeshCache(File file, long maxBytes) {
+		this.file = file;
+		this.lockFile = new File(file.getPath() + ".lock");
+		this.maxBytes = Math.min(maxBytes, Integer.MAX_VALUE);
+	}
+	
+	
+	/**
+	 * Returns the default cache, or {@code null} if the system property {@code grapher.diskCache} has not been set.
+	 */
+	public static synchronized DiskMeshCache getDefault() {
+		if(defaultCache == null) {
+			String path = System.getProperty("grapher.diskCache", "");
+			if(path.isEmpty()) return null;
+			
+			defaultCache = new DiskMeshCache(new File(path), Long.getLong("grapher.diskCacheBytes", DEFAULT_MAX_BYTES));
+		}
+		
+		return defaultCache;
+	}
+	
+	
+	/**
+	 * Returns the values stored against {@code key}, or {@code null} if there are none. Values read from the file are mapped read-only.
+	 */
+	public synchronized DoubleBuffer get(Key key) {
+		if(entries == null) load();
+		
+		DoubleBuffer values = entries.get(key);
+		return (values == null) ? null : values.duplicate();
+	}
+	
+	
+	/**
+	 * Stores the values in {@code values}, from its position to its limit, against {@code key}, replacing any values already stored
+	 * against it. Values too many to fit in the file at all are not stored.
+	 */
+	public synchronized void put(Key key, DoubleBuffer values) {
+		if(entries == null) load();
+		
+		int count = values.remaining();
+		if(HEADER_BYTES + getRecordBytes(count) > maxBytes) return;
+		
+		try {
+			if(file.getParentFile() != null) Files.createDirectories(file.getParentFile().toPath());
+			
+			synchronized(writeLock) {
+				try(FileChannel lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+					FileLock lock = lockChannel.lock();
+					
+					try {
+						if(isChangedOnDisk()) load();
+						
+						entries.remove(key);
+						if(validBytes + getRecordBytes(count) > maxBytes) compact(maxBytes / 2 - getRecordBytes(count));
+						
+						append(key, values.duplicate());
+					} finally {
+						lock.release();
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		entries.put(key, values.duplicate());
+	}
+	
+	
+	/**
+	 * Removes every array from the cache, and deletes its file.
+	 */
+	public synchronized void clear() {
+		entries = new LinkedHashMap<Key, DoubleBuffer>(16, 0.75f, true);
+		validBytes = 0;
+		fileKey = null;
+		
+		try {
+			Files.deleteIfExists(file.toPath());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	
+	public File getFile() {
+		return file;
+	}
+	
+	
+	/**
+	 * Maps the file into memory and indexes the records in it.
+	 */
+	private void load() {
+		entries = new LinkedHashMap<Key, DoubleBuffer>(16, 0.75f, true);
+		validBytes = 0;
+		fileKey = null;
+		
+		if(!file.isFile()) return;
+		
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+			
+			long size = channel.size();
+			if(size < HEADER_BYTES || size > Integer.MAX_VALUE) return;
+			
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			buffer.order(ByteOrder.nativeOrder());
+			
+			if(!buffer.duplicate().limit(HEADER_BYTES).equals(getHeader())) return;
+			
+			int position = HEADER_BYTES;
+			
+			while(position + RECORD_HEADER_BYTES <= size) {
+				Key key = new Key(buffer.getLong(position), buffer.getLong(position + 8));
+				int count = buffer.getInt(position + 16);
+				
+				long end = position + getRecordBytes(count);
+				if(count < 0 || end > size) break;
+				
+				ByteBuffer values = buffer.duplicate();
+				values.position(position + RECORD_HEADER_BYTES).limit((int)end);
+				
+				// A later record for the same key replaces the earlier one, and is more recent
+				entries.remove(key);
+				entries.put(key, values.slice().order(ByteOrder.nativeOrder()).asDoubleBuffer());
+				
+				position = (int)end;
+			}
+			
+			validBytes = position;
+		} catch (IOException e) {
+			// An unreadable file is treated as empty, and replaced by the next put
+		}
+	}
+	
+	
+	/**
+	 * Returns whether the file has been written to or replaced since it was loaded. Only called with the file locked.
+	 */
+	private boolean isChangedOnDisk() throws IOException {
+		if(!file.isFile()) return validBytes != 0;
+		
+		BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		return attributes.size() != validBytes || !Objects.equals(attributes.fileKey(), fileKey);
+	}
+	
+	
+	/**
+	 * Appends a record of {@code values} against {@code key} to the file, dropping anything after the last whole record, and starting a
+	 * new file if there was no valid header. Only called with the file locked.
+	 */
+	private void append(Key key, DoubleBuffer values) throws IOException {
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			if(validBytes == 0) {
+				channel.truncate(0);
+				writeFully(channel, getHeader(), 0);
+				validBytes = HEADER_BYTES;
+			} else {
+				channel.truncate(validBytes);
+			}
+			
+			ByteBuffer record = getRecord(key, values);
+			writeFully(channel, record, validBytes);
+			validBytes += record.capacity();
+		}
+		
+		fileKey = Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+	}
+	
+	
+	/**
+	 * Rewrites the file with only the most recently used arrays that fit in {@code budget} bytes of records, and loads it again. The new
+	 * file is written alongside and moved over the old one, so a crash leaves one or the other, and the arrays already handed out stay
+	 * mapped from the old one. Only called with the file locked.
+	 */
+	private void compact(long budget) throws IOException {
+		ArrayList<Key> kept = new ArrayList<Key>();
+		ArrayList<DoubleBuffer> keptValues = new ArrayList<DoubleBuffer>();
+		
+		ArrayList<Key> keys = new ArrayList<Key>(entries.keySet());
+		long bytes = 0;
+		
+		for(int i = keys.size() - 1; i >= 0; i--) {
+			DoubleBuffer values = entries.get(keys.get(i));
+			bytes += getRecordBytes(values.remaining());
+			if(bytes > budget) break;
+			
+			kept.add(0, keys.get(i));
+			keptValues.add(0, values);
+		}
+		
+		File temp = new File(file.getPath() + ".tmp");
+		
+		try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long position = HEADER_BYTES;
+			writeFully(channel, getHeader(), 0);
+			
+			for(int i = 0; i < kept.size(); i++) {
+				ByteBuffer record = getRecord(kept.get(i), keptValues.get(i).duplicate());
+				writeFully(channel, record, position);
+				position += record.capacity();
+			}
+		}
+		
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		load();
+	}
+	
+	
+	private static ByteBuffer getRecord(Key key, DoubleBuffer values) {
+		int count = values.remaining();
+		
+		ByteBuffer record = ByteBuffer.allocate((int)getRecordBytes(count)).order(ByteOrder.nativeOrder());
+		record.putLong(key.high);
+		record.putLong(key.low);
+		record.putInt(count);
+		record.putInt(0);
+		record.asDoubleBuffer().put(values);
+		return record;
+	}
+	
+	
+	private static long getRecordBytes(int count) {
+		return RECORD_HEADER_BYTES + 8L * count;
+	}
+	
+	
+	private static ByteBuffer getHeader() {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.nativeOrder());
+		header.putInt(MAGIC);
+		header.putInt(FORMAT_VERSION);
+		header.put((byte)(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0));
+		return header.rewind();
+	}
+	
+	
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		buffer.rewind();
+		while(buffer.hasRemaining()) position += channel.write(buffer, position);
+	}
+	
+	
+	/**
+	 * A 128-bit hash of everything that a cached array was computed from. A function cannot be hashed, so the caller adds an identity of
+	 * its own for it instead, such as a name and a version, and must change the identity whenever the function changes.
+	 * 
+	 * <p>A key is hashed once, from all of its parts, when it is created, and cannot be changed afterwards.
+	 */
+	public static class Key {
+		
+		private final long high;
+		private final long low;
+		
+		/**
+		 * Creates the key of an array of the kind {@code kind}, computed from {@code parts}, each of which is a whole number, a
+		 * {@code Double}, a {@code String}, an {@link Interval} or another key.
+		 */
+		public Key(String kind, Object... parts) {
+			long[] hash = {0x6A09E667F3BCC908L, 0xBB67AE8584CAA73BL};
+			add(hash, kind);
+			
+			for(Object part: parts) {
+				if(part instanceof Double || part instanceof Float) add(hash, Double.doubleToLongBits(((Number) part).doubleValue()));
+				else if(part instanceof Long || part instanceof Integer || part instanceof Short || part instanceof Byte) add(hash, ((Number) part).longValue());
+				else if(part instanceof String) add(hash, (String) part);
+				else if(part instanceof Interval) add(hash, (Interval) part);
+				else if(part instanceof Key) add(add(hash, ((Key) part).high), ((Key) part).low);
+				else throw new IllegalArgumentException("Cannot hash " + part);
+			}
+			
+			high = hash[0];
+			low = hash[1];
+		}
+		
+		private Key(long high, long low) {
+			this.high = high;
+			this.low = low;
+		}
+		
+		private static long[] add(long[] hash, long value) {
+			// Two independent 64-bit hashes, each mixing in the value with the finaliser of MurmurHash3
+			hash[0] = mix(Long.rotateLeft(hash[0], 23) ^ value) * 0x9E3779B97F4A7C15L;
+			hash[1] = mix(hash[1] + Long.rotateLeft(value, 31) + 0xC2B2AE3D27D4EB4FL);
+			return hash;
+		}
+		
+		private static void add(long[] hash, String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			add(hash, bytes.length);
+			for(byte b: bytes) add(hash, b);
+		}
+		
+		private static void add(long[] hash, Interval interval) {
+			add(hash, interval.getDimension());
+			Iterator<Interval> iter = interval.getFactorIterator();
+			
+			while(iter.hasNext()) {
+				Interval factor = iter.next();
+				add(hash, Double.doubleToLongBits(factor.lower()));
+				add(hash, Double.doubleToLongBits(factor.upper()));
+			}
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(obj instanceof Key) {
+				Key key = (Key) obj;
+				return high == key.high && low == key.low;
+			}
+			return false;
+		}
+		
+		@Override
+		public int hashCode() {
+			return Long.hashCode(high ^ low);
+		}
+		
+		@Override
+		public String toString() {
+			return Long.toHexString(high) + Long.toHexString(low);
+		}
+		
+		private static long mix(long h) {
+			h ^= h >>> 33;
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 33;
+			h *= 0xC4CEB9FE1A85EC53L;
+			h ^= h >>> 33;
+			return h;
+		}
+	}
+}
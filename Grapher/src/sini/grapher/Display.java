@@ -3,24 +3,77 @@ package sini.grapher;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.ArrayList;
-import java.util.function.Consumer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
+import javax.swing.AbstractAction;
 import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+
+import sini.doubledouble.DoubleDouble;
+import sini.grapher.profiling.CurveUpdateEvent;
+import sini.grapher.profiling.FrameProfiler;
+import sini.grapher.profiling.HudOverlay;
 
 public class Display extends JPanel implements MouseWheelListener, MouseMotionListener, MouseListener {
 	private static final long serialVersionUID = -6696561578530033238L;
 	
-	private static final int GRID_CELL_DISPLAY_SIZE = 50;
+	public static final int GRID_CELL_DISPLAY_SIZE = 50;
 	public static final double GRID_SCALE_FACTOR = 10;
-	
-	private PointDouble viewPoint = new PointDouble(); // Represents the top left coordinate of the viewport
+	public static final double ZOOM_FACTOR = 1.2; // The factor the zoom level changes by for each step of the mouse wheel
+	public static final double DEEP_ZOOM_ULPS = 64; // Meshes are built relative to an origin once a step spans fewer doubles than this
+	public static final int HOVER_RADIUS = 8; // The distance in pixels from the mouse within which the nearest curve is traced
+	public static final double ORBIT_SPEED = 0.01; // The angle in radians that surface plots turn by for each pixel of a right drag
+	
+	// The top left corner of the viewport, in double-double precision so that it can be placed more finely than a double can at deep zoom
+	private DoubleDouble viewX = DoubleDouble.ZERO;
+	private DoubleDouble viewY = DoubleDouble.ZERO;
 	private double zoom;
 	
 	ArrayList<Curve> curves;
 	
 	Theme theme;
+	
+	// The colours of the current theme, resolved once per change to the theme rather than looked up for every line
+	private Theme resolvedTheme;
+	private int resolvedThemeVersion;
+	private Color backgroundColor;
+	private Color axesColor;
+	private Color majorTicksColor;
+	private Color minorTicksColor;
+	
+	private static final BasicStroke LINE_STROKE = new BasicStroke(1);
+	
+	private LabelCache labels = new LabelCache();
+	
+	// The grid and the curves, which are cached between frames and only redrawn where they have changed
+	private ScrollingLayer scene = new ScrollingLayer(this, this::paintScene);
+	
+	private FrameProfiler profiler = new FrameProfiler();
+	private HudOverlay hud = new HudOverlay(profiler);
+	private CurveLayers curveLayers = new CurveLayers(this, profiler);
+	private boolean hudVisible = Boolean.getBoolean("grapher.hud");
+	
+	private ViewportAnimator animator = new ViewportAnimator(this);
+	private RefinementScheduler refinement = new RefinementScheduler(this, profiler);
+	private boolean meshesStale; // Set when the viewport has moved without the meshes of the curves being rebuilt
+	private StreamFollower follower;
+	
+	// The index of the segments of the curves, and the point on them nearest to the mouse, which is labelled with its coordinates
+	private SegmentIndex segmentIndex = new SegmentIndex();
+	private SegmentIndex.Hit hover;
+	private Point hoverPoint; // Where the mouse was last moved to, or null if it has left the display
+	
+	private Point orbitPoint; // Where a right drag, which orbits the cameras of the surface plots, was last
 
 	public Display() {
+		this(CurveList.getCurves());
+	}
+	
+	public Display(ArrayList<Curve> curves) {
 		zoom = 2;
 		
 		setBackground(Color.WHITE);
@@ -29,9 +82,22 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 		addMouseWheelListener(this);
 		addMouseMotionListener(this);
 		
-		curves = CurveList.getCurves();
+		this.curves = curves;
 		
 		defineThemes();
+		defineKeyBindings();
+	}
+	
+	private void defineKeyBindings() {
+		getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_H, 0), "toggleHud");
+		getActionMap().put("toggleHud", new AbstractAction() {
+			private static final long serialVersionUID = 5384164949617255442L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				setHudVisible(!hudVisible);
+			}
+		});
 	}
 	
 	private void defineThemes() {
@@ -59,120 +125,328 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 		theme = themeLight;
 	}
 	
+	/**
+	 * Sets the theme used to colour the display.
+	 */
+	public void setTheme(Theme theme) {
+		this.theme = theme;
+		repaint();
+	}
+	
+	private void resolveTheme() {
+		if(theme == resolvedTheme && theme.getVersion() == resolvedThemeVersion) return;
+		
+		backgroundColor = theme.getColor(Theme.BACKGROUND);
+		axesColor = theme.getColor(Theme.AXES);
+		majorTicksColor = theme.getColor(Theme.MAJOR_TICKS);
+		minorTicksColor = theme.getColor(Theme.MINOR_TICKS);
+		
+		resolvedTheme = theme;
+		resolvedThemeVersion = theme.getVersion();
+		
+		scene.invalidate();
+	}
+	
+	/**
+	 * Tells the display that its curves have changed, so that the cached scene is drawn again on the next frame. Changes to the viewport
+	 * and the theme are picked up without this, as are changes to a curve that are reflected in its {@link Curve#getVersion() version}.
+	 */
+	public void curvesChanged() {
+		curveLayers.invalidate();
+		scene.invalidate();
+		repaint();
+	}
+	
+	/**
+	 * Tells the display that the curve {@code curve} has changed, so that it is drawn again on the next frame. Only the cached layer
+	 * that holds the curve is drawn again, rather than every curve.
+	 */
+	public void curveChanged(Curve curve) {
+		curveLayers.invalidate(curve);
+		scene.invalidate();
+		repaint();
+	}
+	
 	private void updateCurves() {
-		for(Curve curve: curves) {
-			if(curve instanceof SimpleFunctionCurve) {
-				curve.updateMesh(new Interval(getPlaneX(0), getPlaneX(getWidth())), 1.0 / (100 * zoom));
-			}
+		CurveUpdateEvent event = new CurveUpdateEvent();
+		event.begin();
+		
+		Interval visible = Interval.product(new Interval(getPlaneX(0), getPlaneX(getWidth())), new Interval(getPlaneY(getHeight()), getPlaneY(0)));
+		double[] origin = getMeshOrigin();
+		List<ProgressiveCurve> rebuilt;
+		
+		if(origin[0] == 0 && origin[1] == 0) {
+			rebuilt = refinement.retarget(curves, visible, getMeshStep());
+		} else {
+			// The viewport relative to the origin, which doubles resolve finely however far the viewport is from 0
+			double left = viewX.subtract(origin[0]).doubleValue();
+			double top = viewY.subtract(origin[1]).doubleValue();
+			Interval offsets = Interval.product(new Interval(left, left + getWidth() / getDisplayUnit()), new Interval(top - getHeight() / getDisplayUnit(), top));
+			
+			rebuilt = refinement.retarget(curves, visible, getMeshStep(), origin[0], origin[1], offsets);
+		}
+		int curvesUpdated = rebuilt.size();
+		
+		// Parts of the curves drawn since the viewport moved were drawn from the old meshes
+		if(meshesStale) {
+			for(Curve curve: rebuilt) curveLayers.invalidate(curve);
+			
+			meshesStale = false;
+			scene.invalidate();
+		}
+		
+		event.end();
+		
+		if(event.shouldCommit()) {
+			event.curvesUpdated = curvesUpdated;
+			event.zoom = zoom;
+			event.commit();
 		}
 	}
 	
+	/**
+	 * Shows or hides the heads-up display, which shows the frame rate, frame times and the slowest curve. It can also be toggled with the H key.
+	 */
+	public void setHudVisible(boolean hudVisible) {
+		this.hudVisible = hudVisible;
+		repaint();
+	}
+	
+	public boolean isHudVisible() {
+		return hudVisible;
+	}
+	
+	/**
+	 * Repaints the display as points are added to {@code curve}, scrolling the viewport to keep the newest point in view, or stops
+	 * following the curve that was given before if {@code curve} is {@code null}.
+	 */
+	public void setAutoScroll(StreamingCurve curve) {
+		if(follower != null) follower.stop();
+		
+		follower = (curve == null) ? null : new StreamFollower(this, animator, curve);
+		if(follower != null) follower.start();
+	}
+	
 	/**
 	 * Centres the viewport on the given point p, where p represents a point on the coordinate plane.
 	 */
 	public void centerViewport(PointDouble p) {
-		viewPoint = new PointDouble(
-				p.x - (double)getWidth() / (2 * getDisplayUnit()),
-				p.y + (double)getHeight() / (2 * getDisplayUnit())
-				);
+		viewX = DoubleDouble.valueOf(p.x).subtract((double)getWidth() / (2 * getDisplayUnit()));
+		viewY = DoubleDouble.valueOf(p.y).add((double)getHeight() / (2 * getDisplayUnit()));
 		
 		updateCurves();
 		repaint();
 	}
 	
 	/**
-	 * Moves the viewport such that the point on the plane pointPlane sits at the point pointDisplay relative to the display.
+	 * Places the top left corner of the viewport at the point {@code viewPoint} on the plane, and sets the zoom level to {@code zoom}.
 	 */
-	public void movePlanePointToDisplayPoint(PointDouble pointPlane, Point pointDisplay) {
-		PointDouble pointDisplayPlaneCoord = getPlanePoint(pointDisplay);
-		
-		viewPoint = new PointDouble(
-				viewPoint.x + pointPlane.x - pointDisplayPlaneCoord.x,
-				viewPoint.y + pointPlane.y - pointDisplayPlaneCoord.y
-				);
+	public void setViewport(PointDouble viewPoint, double zoom) {
+		setViewport(DoubleDouble.valueOf(viewPoint.x), DoubleDouble.valueOf(viewPoint.y), zoom);
+	}
+	
+	/**
+	 * Places the top left corner of the viewport at the point (viewX, viewY) on the plane, given more precisely than doubles can for zoom
+	 * levels where a pixel is smaller than the spacing of doubles, and sets the zoom level to {@code zoom}.
+	 */
+	public void setViewport(DoubleDouble viewX, DoubleDouble viewY, double zoom) {
+		this.viewX = viewX;
+		this.viewY = viewY;
+		this.zoom = zoom;
 		
 		updateCurves();
 		repaint();
 	}
 	
-	private void doGrid(Consumer<Double> consumerV, Consumer<Double> consumerH, double subDivision) {
-		double gridScale = getGridScale();
-		double lineSpacing = getDisplayUnit() * gridScale / subDivision;
-		
-		double lineX = getDisplayUnit() * (-viewPoint.x % gridScale - gridScale); 
-		double lineY = getDisplayUnit() * (viewPoint.y % gridScale - gridScale);
+	/**
+	 * Places the top left corner of the viewport at the point (viewX, viewY) on the plane and sets the zoom level to {@code zoom}. The
+	 * meshes of the curves are only rebuilt if {@code updateMeshes} is set; otherwise they are rebuilt by the next call that does.
+	 */
+	void setViewport(DoubleDouble viewX, DoubleDouble viewY, double zoom, boolean updateMeshes) {
+		boolean isMoved = !viewX.equals(this.viewX) || !viewY.equals(this.viewY) || zoom != this.zoom;
 		
-		while(lineX < getWidth()) {
-			consumerV.accept(lineX);
-			lineX += lineSpacing;
+		if(isMoved) {
+			this.viewX = viewX;
+			this.viewY = viewY;
+			this.zoom = zoom;
 		}
 		
-		while(lineY < getHeight()) {
-			consumerH.accept(lineY);
-			lineY += lineSpacing;
+		if(updateMeshes && (isMoved || meshesStale)) {
+			updateCurves();
+			repaint();
+		} else if(isMoved) {
+			meshesStale = true;
+			refinement.stop();
+			repaint();
 		}
 	}
 	
-	private void doGrid(Consumer<Double> consumerH, Consumer<Double> consumerV) {
-		doGrid(consumerH, consumerV, 1);
+	/**
+	 * Moves the viewport such that the point on the plane pointPlane sits at the point pointDisplay relative to the display.
+	 */
+	public void movePlanePointToDisplayPoint(PointDouble pointPlane, Point pointDisplay) {
+		viewX = DoubleDouble.valueOf(pointPlane.x).subtract(pointDisplay.x / getDisplayUnit());
+		viewY = DoubleDouble.valueOf(pointPlane.y).add(pointDisplay.y / getDisplayUnit());
+		
+		updateCurves();
+		repaint();
 	}
 	
 	public void paintComponent(Graphics g) {
-		setBackground(theme.getColor(Theme.BACKGROUND));
+		resolveTheme();
+		setBackground(backgroundColor);
 		super.paintComponent(g);
 		
 		Graphics2D g2 = (Graphics2D) g;
 		
-		int yAxisDisplayPos = (int)getDisplayX(0);
-		int xAxisDisplayPos = (int)getDisplayY(0);
+		profiler.beginFrame();
 		
+		if(curveLayers.update(curves)) scene.invalidate();
+		scene.paint(g2);
 		
-		// Draw minor grid lines
+		paintAxes(g2);
+		paintAxisNumbers(g2);
 		
-		g2.setColor(theme.getColor(Theme.MINOR_TICKS));
-		doGrid(
-				x -> g2.drawLine(x.intValue(), 0, x.intValue(), getHeight()),
-				y -> g2.drawLine(0, y.intValue(), getWidth(), y.intValue()),
-				GRID_SCALE_FACTOR
-				);
+		profiler.endFrame(getWidth(), getHeight(), curves.size());
 		
+		if(hover != null) paintHover(g2);
+		if(hudVisible) hud.paint(g2);
+	}
+	
+	/**
+	 * Marks the point on the curves nearest to the mouse, and labels it with its coordinates to the precision of a pixel.
+	 */
+	private void paintHover(Graphics2D g2) {
+		int x = (int)Math.round(getDisplayX(hover.getX()));
+		int y = (int)Math.round(getDisplayY(hover.getY()));
+		int precision = (int)Math.max(0, Math.ceil(Math.log10(getDisplayUnit())));
+		String label = String.format("(%." + precision + "f, %." + precision + "f)", hover.getX(), hover.getY());
+		
+		g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g2.setStroke(LINE_STROKE);
+		g2.setColor(axesColor);
+		g2.drawOval(x - 4, y - 4, 8, 8);
+		
+		FontMetrics metrics = g2.getFontMetrics();
+		int labelX = Math.min(x + 8, getWidth() - metrics.stringWidth(label) - 4);
+		int labelY = Math.max(y - 8, metrics.getAscent() + 4);
+		
+		g2.setColor(backgroundColor);
+		g2.fillRect(labelX - 3, labelY - metrics.getAscent() - 2, metrics.stringWidth(label) + 6, metrics.getHeight() + 4);
+		g2.setColor(axesColor);
+		g2.drawRect(labelX - 3, labelY - metrics.getAscent() - 2, metrics.stringWidth(label) + 6, metrics.getHeight() + 4);
+		g2.drawString(label, labelX, labelY);
+	}
+	
+	/**
+	 * Returns the point on the curves nearest to where the mouse was last moved to, within {@code HOVER_RADIUS} pixels, or {@code null}
+	 * if there is none.
+	 */
+	public SegmentIndex.Hit getHover() {
+		return hover;
+	}
+	
+	/**
+	 * Paints the background and the grid, and composites the curve layers over them, within the clip of {@code g2}.
+	 */
+	private void paintScene(Graphics2D g2) {
+		g2.setColor(backgroundColor);
+		g2.fillRect(0, 0, getWidth(), getHeight());
 		
-		// Draw major grid lines
+		paintGrid(g2);
 		
-		g2.setColor(theme.getColor(Theme.MAJOR_TICKS));
-		doGrid(
-				x -> g2.drawLine(x.intValue(), 0, x.intValue(), getHeight()),
-				y -> g2.drawLine(0, y.intValue(), getWidth(), y.intValue())
-				);
-
 		
 		// Draw graph
 		
-		for(Curve curve: curves) {
-			curve.draw(this, g2);
+		curveLayers.draw(g2);
+	}
+	
+	/**
+	 * Paints the minor and major grid lines of the current viewport.
+	 */
+	public void paintGrid(Graphics2D g2) {
+		resolveTheme();
+		g2.setStroke(LINE_STROKE);
+		
+		g2.setColor(minorTicksColor);
+		paintGridLines(g2, GRID_SCALE_FACTOR);
+		
+		g2.setColor(majorTicksColor);
+		paintGridLines(g2, 1);
+	}
+	
+	private void paintGridLines(Graphics2D g2, double subDivision) {
+		double lineSpacing = getDisplayUnit() * getGridScale() / subDivision;
+		int width = getWidth();
+		int height = getHeight();
+		
+		for(double lineX = getFirstGridLineX(); lineX < width; lineX += lineSpacing) {
+			int x = (int)lineX;
+			g2.drawLine(x, 0, x, height);
 		}
 		
+		for(double lineY = getFirstGridLineY(); lineY < height; lineY += lineSpacing) {
+			int y = (int)lineY;
+			g2.drawLine(0, y, width, y);
+		}
+	}
+	
+	/**
+	 * Returns the display x-coordinate of the first major grid line to the left of the viewport.
+	 */
+	private double getFirstGridLineX() {
+		double gridScale = getGridScale();
+		return getDisplayUnit() * (-(viewX.hi % gridScale + viewX.lo) % gridScale - gridScale);
+	}
+	
+	/**
+	 * Returns the display y-coordinate of the first major grid line above the viewport.
+	 */
+	private double getFirstGridLineY() {
+		double gridScale = getGridScale();
+		return getDisplayUnit() * ((viewY.hi % gridScale + viewY.lo) % gridScale - gridScale);
+	}
+	
+	/**
+	 * Paints the x and y axis lines of the current viewport.
+	 */
+	public void paintAxes(Graphics2D g2) {
+		resolveTheme();
 		
-		// Draw axis lines
+		int yAxisDisplayPos = (int)getDisplayX(0);
+		int xAxisDisplayPos = (int)getDisplayY(0);
 		
-		g2.setStroke(new BasicStroke(1));
-		g2.setColor(theme.getColor(Theme.AXES));
+		g2.setStroke(LINE_STROKE);
+		g2.setColor(axesColor);
 		g2.drawLine(yAxisDisplayPos, 0, yAxisDisplayPos, getHeight());
 		g2.drawLine(0, xAxisDisplayPos, getWidth(), xAxisDisplayPos);
+	}
+	
+	/**
+	 * Numbers the major grid lines along both axes of the current viewport.
+	 */
+	public void paintAxisNumbers(Graphics2D g2) {
+		resolveTheme();
+		g2.setColor(axesColor);
 		
+		double lineSpacing = getDisplayUnit() * getGridScale();
+		int precision = (int)Math.max(0, Math.floor(Math.log(zoom) / Math.log(GRID_SCALE_FACTOR)));
 		
-		// Number the axes
-		g2.setColor(theme.getColor(Theme.AXES));
-		doGrid(x -> drawXAxisNumber(g2, x.intValue()), y -> drawYAxisNumber(g2, y.intValue()));
+		for(double lineX = getFirstGridLineX(); lineX < getWidth(); lineX += lineSpacing) {
+			drawXAxisNumber(g2, (int)lineX, precision);
+		}
+		
+		for(double lineY = getFirstGridLineY(); lineY < getHeight(); lineY += lineSpacing) {
+			drawYAxisNumber(g2, (int)lineY, precision);
+		}
 	}
 	
-	private void drawYAxisNumber(Graphics2D g, int y) {
+	private void drawYAxisNumber(Graphics2D g, int y, int precision) {
 		int yAxisDisplayPos = (int)getDisplayX(0);
-		int numberLength = (int)Math.max(0, Math.floor(Math.log(zoom) / Math.log(GRID_SCALE_FACTOR)));
 		int stringPadding = 5;
 		
-		String numberString = String.format("%." + numberLength + "f", getPlaneY(y));
-		int stringWidth = g.getFontMetrics().stringWidth(numberString);
+		labels.lookup(g, getPlaneY(y), precision);
+		int stringWidth = labels.getWidth();
 		int numberXPos;
 		
 		if(yAxisDisplayPos > getWidth() - stringWidth - stringPadding) {
@@ -185,19 +459,18 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 		
 		if(y != (int)getDisplayY(0)) { 
 			g.drawString(
-				numberString, 
+				labels.getLabel(), 
 				numberXPos, 
 				y);
 		}
 	}
 	
-	private void drawXAxisNumber(Graphics2D g, int x) {
+	private void drawXAxisNumber(Graphics2D g, int x, int precision) {
 		int xAxisDisplayPos = (int)getDisplayY(0);
-		int numberLength = (int)Math.max(0, Math.floor(Math.log(zoom) / Math.log(GRID_SCALE_FACTOR)));
 		int stringPadding = 5;
 		
-		String numberString = String.format("%." + numberLength + "f", getPlaneX(x));
-		int stringHeight = g.getFontMetrics().getHeight();
+		labels.lookup(g, getPlaneX(x), precision);
+		int stringHeight = labels.getMetrics(g).getHeight();
 		int numberYPos;
 		
 		if(xAxisDisplayPos > getHeight() - stringPadding) {
@@ -210,7 +483,7 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 		
 		if(x != (int)getDisplayX(0)) { 
 			g.drawString(
-				numberString, 
+				labels.getLabel(), 
 				x,
 				numberYPos);
 		}
@@ -221,6 +494,24 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 	}
 	
 	
+	public Theme getTheme() {
+		return theme;
+	}
+	
+	
+	public double getZoom() {
+		return zoom;
+	}
+	
+	
+	/**
+	 * Returns the step size used when meshing curves that depend on the viewport, which corresponds to half a pixel at the current zoom level.
+	 */
+	public double getMeshStep() {
+		return 1.0 / (100 * zoom);
+	}
+	
+	
 	/**
 	 * Returns the length on the display (in pixels) that corresponds to a length of one unit on the plane.
 	 */
@@ -235,7 +526,7 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 	 * @return the x-coordinate on the plane that corresponds to the x-coordinate on the display given by {@code x}.
 	 */
 	public double getPlaneX(double x) {
-		return x / getDisplayUnit() + viewPoint.x;
+		return viewX.hi + (viewX.lo + x / getDisplayUnit());
 	}
 	
 	
@@ -245,7 +536,25 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 	 * @return the y-coordinate on the plane that corresponds to the y-coordinate on the display given by {@code y}.
 	 */
 	public double getPlaneY(double y) {
-		return -y / getDisplayUnit() + viewPoint.y;
+		return viewY.hi + (viewY.lo - y / getDisplayUnit());
+	}
+	
+	
+	/**
+	 * Returns the x-coordinate on the plane that corresponds to the x-coordinate on the display given by {@code x}, in double-double
+	 * precision, which resolves every pixel however deep the zoom.
+	 */
+	public DoubleDouble getPrecisePlaneX(double x) {
+		return viewX.add(x / getDisplayUnit());
+	}
+	
+	
+	/**
+	 * Returns the y-coordinate on the plane that corresponds to the y-coordinate on the display given by {@code y}, in double-double
+	 * precision, which resolves every pixel however deep the zoom.
+	 */
+	public DoubleDouble getPrecisePlaneY(double y) {
+		return viewY.subtract(y / getDisplayUnit());
 	}
 	
 	
@@ -255,7 +564,7 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 	 * @return the x-coordinate on the display that corresponds to the x-coordinate on the plane given by {@code x}.
 	 */
 	public double getDisplayX(double x) {
-		return (x - viewPoint.x) * getDisplayUnit();
+		return ((x - viewX.hi) - viewX.lo) * getDisplayUnit();
 	}
 	
 	
@@ -265,7 +574,56 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 	 * @return the y-coordinate on the display that corresponds to the y-coordinate on the plane given by {@code y}.
 	 */
 	public double getDisplayY(double y) {
-		return (-y + viewPoint.y) * getDisplayUnit();
+		return ((viewY.hi - y) + viewY.lo) * getDisplayUnit();
+	}
+	
+	
+	/**
+	 * Returns the x-coordinate on the display of the point {@code offset} to the right of {@code origin} on the plane. The origin is
+	 * taken away from the viewport first, so that offsets finer than the spacing of doubles near the origin are still resolved.
+	 */
+	public double getDisplayX(double origin, double offset) {
+		if(origin == 0) return getDisplayX(offset);
+		return (((origin - viewX.hi) - viewX.lo) + offset) * getDisplayUnit();
+	}
+	
+	
+	/**
+	 * Returns the y-coordinate on the display of the point {@code offset} above {@code origin} on the plane, resolving offsets finer than
+	 * the spacing of doubles near the origin.
+	 */
+	public double getDisplayY(double origin, double offset) {
+		if(origin == 0) return getDisplayY(offset);
+		return (((viewY.hi - origin) + viewY.lo) - offset) * getDisplayUnit();
+	}
+	
+	
+	/**
+	 * Returns true if the step of the meshes spans fewer than {@code DEEP_ZOOM_ULPS} doubles somewhere in the viewport, so that curves
+	 * that can are meshed relative to the {@link #getMeshOrigin() mesh origin}.
+	 */
+	public boolean isDeepZoom() {
+		double width = getWidth() / getDisplayUnit();
+		double height = getHeight() / getDisplayUnit();
+		double largest = Math.max(Math.max(Math.abs(viewX.hi), Math.abs(viewX.hi + width)), Math.max(Math.abs(viewY.hi), Math.abs(viewY.hi - height)));
+		
+		return DEEP_ZOOM_ULPS * Math.ulp(largest) > getMeshStep();
+	}
+	
+	
+	/**
+	 * Returns the point on the plane that meshes are built relative to: (0, 0) at all but {@link #isDeepZoom() deep zoom}, and otherwise
+	 * the centre of the viewport rounded to a multiple of a power of 2 a thousand times its size, so that it stays put while panning.
+	 */
+	public double[] getMeshOrigin() {
+		if(!isDeepZoom()) return new double[] {0, 0};
+		
+		double size = Math.max(getWidth(), getHeight()) / getDisplayUnit();
+		double quantum = Math.scalb(1.0, Math.getExponent(1024 * size) + 1);
+		double centreX = getPrecisePlaneX(getWidth() / 2.0).hi;
+		double centreY = getPrecisePlaneY(getHeight() / 2.0).hi;
+		
+		return new double[] {Math.rint(centreX / quantum) * quantum, Math.rint(centreY / quantum) * quantum};
 	}
 	
 	
@@ -290,47 +648,113 @@ public class Display extends JPanel implements MouseWheelListener, MouseMotionLi
 	
 	
 	// Mouse Listeners
-
-	private Point anchorPos;
+	// These only set the target of the animator, which moves the viewport and repaints the display at most once per frame
 	
 	@Override
 	public void mousePressed(MouseEvent e) {
-		anchorPos = e.getPoint();
+		setHover(null);
+		
+		// A right drag turns the surface plots if there are any, and otherwise pans like any other drag
+		if(SwingUtilities.isRightMouseButton(e) && !getCameras().isEmpty()) {
+			orbitPoint = e.getPoint();
+			return;
+		}
+		
+		animator.press(e.getPoint());
 	}
 	
 	@Override
 	public void mouseDragged(MouseEvent e) {
-		Point mousePos = e.getPoint();
-		PointDouble planePos = getPlanePoint(anchorPos);
-		movePlanePointToDisplayPoint(planePos, mousePos);
-		anchorPos = mousePos;
+		if(orbitPoint != null) {
+			orbit(-(e.getX() - orbitPoint.x) * ORBIT_SPEED, (e.getY() - orbitPoint.y) * ORBIT_SPEED, 1);
+			orbitPoint = e.getPoint();
+			return;
+		}
+		
+		animator.drag(e.getPoint());
 	}
-
+	
 	@Override
-	public void mouseWheelMoved(MouseWheelEvent e) {
-		Point mousePos = e.getPoint();
-		PointDouble planePos = getPlanePoint(mousePos);
+	public void mouseReleased(MouseEvent e) {
+		if(orbitPoint != null) {
+			orbitPoint = null;
+			return;
+		}
 		
-		if(e.getWheelRotation() < 0)
-			zoom *= 1.2;
-		else {
-			zoom /= 1.2;
+		animator.release();
+	}
+	
+	/**
+	 * Returns the cameras of the surface plots, each once even if it is shared.
+	 */
+	private Set<OrbitCamera> getCameras() {
+		Set<OrbitCamera> cameras = Collections.newSetFromMap(new IdentityHashMap<OrbitCamera, Boolean>());
+		for(Curve curve: curves) {
+			if(curve instanceof SurfacePlot) cameras.add(((SurfacePlot) curve).getCamera());
 		}
 		
-		movePlanePointToDisplayPoint(planePos, mousePos);
+		return cameras;
+	}
+	
+	/**
+	 * Turns and zooms the cameras of the surface plots and repaints the display, returning false if there are none to move.
+	 */
+	private boolean orbit(double deltaYaw, double deltaPitch, double zoomFactor) {
+		Set<OrbitCamera> cameras = getCameras();
+		if(cameras.isEmpty()) return false;
+		
+		for(OrbitCamera camera: cameras) {
+			camera.rotate(deltaYaw, deltaPitch);
+			camera.zoom(zoomFactor);
+		}
+		
+		repaint();
+		return true;
+	}
+	
+	/**
+	 * Traces the curve nearest to the mouse. The index is brought up to date on a thread of its own, which only indexes the curves whose
+	 * meshes have changed since the last move, and the curve is traced again once it has been.
+	 */
+	@Override
+	public void mouseMoved(MouseEvent e) {
+		hoverPoint = e.getPoint();
+		segmentIndex.updateLater(new ArrayList<Curve>(curves), () -> SwingUtilities.invokeLater(() -> traceHover()));
+		traceHover();
+	}
+	
+	@Override
+	public void mouseExited(MouseEvent e) {
+		hoverPoint = null;
+		setHover(null);
+	}
+	
+	private void traceHover() {
+		if(hoverPoint == null) return;
+		setHover(segmentIndex.findNearest(getPlaneX(hoverPoint.x), getPlaneY(hoverPoint.y), HOVER_RADIUS / getDisplayUnit()));
+	}
+	
+	private void setHover(SegmentIndex.Hit hover) {
+		if(hover == null && this.hover == null) return;
+		
+		this.hover = hover;
+		repaint();
+	}
+	
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e) {
+		// With shift held, the wheel moves the cameras of the surface plots instead, if there are any
+		if(e.isShiftDown() && orbit(0, 0, Math.pow(ZOOM_FACTOR, -e.getPreciseWheelRotation()))) return;
+		
+		// Precise rotation lets high resolution wheels and touchpads zoom by fractions of a step
+		animator.zoom(e.getPoint(), Math.pow(ZOOM_FACTOR, -e.getPreciseWheelRotation()));
 	}
 
 	
 	// Unused listener methods
 	
-	@Override
-	public void mouseMoved(MouseEvent e) {}
 	@Override
 	public void mouseClicked(MouseEvent e) {}
 	@Override
-	public void mouseReleased(MouseEvent e) {}
-	@Override
 	public void mouseEntered(MouseEvent e) {}
-	@Override
-	public void mouseExited(MouseEvent e) {}
 }
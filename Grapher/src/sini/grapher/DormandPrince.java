@@ -0,0 +1,74 @@
+package sini.grapher;
+
+import java.util.function.Function;
+
+/**
+ * An adaptive integrator for equations of the form x' = f(t, x), using the Dormand-Prince 5(4) embedded Runge-Kutta pair. The step size
+ * is chosen so that the estimated local error of every step stays within the requested tolerance, which is applied as both an absolute
+ * and a relative tolerance. The last stage of each step is the first stage of the next, so an accepted step takes six evaluations of f.
+ */
+public class DormandPrince {
+	
+	private static final double C2 = 1.0/5, C3 = 3.0/10, C4 = 4.0/5, C5 = 8.0/9;
+	
+	private static final double A21 = 1.0/5;
+	private static final double A31 = 3.0/40, A32 = 9.0/40;
+	private static final double A41 = 44.0/45, A42 = -56.0/15, A43 = 32.0/9;
+	private static final double A51 = 19372.0/6561, A52 = -25360.0/2187, A53 = 64448.0/6561, A54 = -212.0/729;
+	private static final double A61 = 9017.0/3168, A62 = -355.0/33, A63 = 46732.0/5247, A64 = 49.0/176, A65 = -5103.0/18656;
+	private static final double A71 = 35.0/384, A73 = 500.0/1113, A74 = 125.0/192, A75 = -2187.0/6784, A76 = 11.0/84;
+	
+	// Differences between the fifth and fourth order weights, which give the error estimate
+	private static final double E1 = 71.0/57600, E3 = -71.0/16695, E4 = 71.0/1920, E5 = -17253.0/339200, E6 = 22.0/525, E7 = -1.0/40;
+	
+	private static final double SAFETY = 0.9;
+	private static final double MIN_FACTOR = 0.2;
+	private static final double MAX_FACTOR = 5;
+	private static final int MAX_STEPS = 1000000;
+	
+	private DormandPrince() {}
+	
+	
+	/**
+	 * Returns the value at {@code t1} of the solution of x' = f(t, x) that passes through ({@code t0}, {@code x0}). The value of
+	 * {@code t1} may be less than {@code t0}, in which case the equation is integrated backwards.
+	 */
+	public static double solve(Function<double[], Double> f, double t0, double x0, double t1, double tolerance) {
+		double direction = Math.signum(t1 - t0);
+		if(direction == 0) return x0;
+		
+		double t = t0;
+		double x = x0;
+		double k1 = f.apply(new double[] {t, x});
+		double h = direction * Math.min(Math.abs(t1 - t0), Math.pow(tolerance, 0.2));
+		
+		for(int steps = 0; direction * (t1 - t) > 0 && steps < MAX_STEPS; steps++) {
+			if(direction * (t + h - t1) > 0) h = t1 - t;
+			
+			double k2 = f.apply(new double[] {t + C2*h, x + h*(A21*k1)});
+			double k3 = f.apply(new double[] {t + C3*h, x + h*(A31*k1 + A32*k2)});
+			double k4 = f.apply(new double[] {t + C4*h, x + h*(A41*k1 + A42*k2 + A43*k3)});
+			double k5 = f.apply(new double[] {t + C5*h, x + h*(A51*k1 + A52*k2 + A53*k3 + A54*k4)});
+			double k6 = f.apply(new double[] {t + h, x + h*(A61*k1 + A62*k2 + A63*k3 + A64*k4 + A65*k5)});
+			
+			double xNext = x + h*(A71*k1 + A73*k3 + A74*k4 + A75*k5 + A76*k6);
+			double k7 = f.apply(new double[] {t + h, xNext});
+			
+			double error = Math.abs(h*(E1*k1 + E3*k3 + E4*k4 + E5*k5 + E6*k6 + E7*k7));
+			double scaledError = error / (tolerance + tolerance * Math.max(Math.abs(x), Math.abs(xNext)));
+			
+			if(Double.isNaN(scaledError)) return Double.NaN;
+			
+			if(scaledError <= 1) {
+				t += h;
+				x = xNext;
+				k1 = k7;
+			}
+			
+			double factor = (scaledError == 0) ? MAX_FACTOR : SAFETY * Math.pow(scaledError, -0.2);
+			h *= Math.min(MAX_FACTOR, Math.max(MIN_FACTOR, factor));
+		}
+		
+		return x;
+	}
+}
@@ -0,0 +1,471 @@
+package sini.grapher;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import sini.grapher.profiling.Counters;
+
+/**
+ * A histogram of the x coordinates of a set of points, or a plot of the mean, or the range, of their y coordinates binned by x. The points
+ * are binned once into bins of a fixed width, and the bins are merged into wider bins, a power of 2 of them at a time, whenever the
+ * zoom level makes the bars narrower than {@code MIN_BAR_PIXELS}.
+ * 
+ * <p>Bins are kept in blocks of {@code BLOCK_BINS}, and only blocks holding points are stored, so the points may be spread over any range.
+ * The merged bins are built only for the blocks in view, and are kept while the zoom level stays the same, so panning only merges the bins
+ * that come into view. Points added one by one, for example from a stream, update both their bin and its merged bin in place, and the
+ * points already added are never looked at again.
+ * 
+ * <p>Adding a large set of points at once bins them in parallel: each thread bins its share into blocks of its own, and the blocks of
+ * the threads are then merged pairwise, in parallel, into one set.
+ * 
+ * <p>The bars are drawn as a single filled shape.
+ */
+public class HistogramCurve implements Curve {
+	
+	/**
+	 * The value of each bin that is drawn as a bar.
+	 */
+	public static enum Statistic {
+		/** The number of points in the bin, per bin of the base width. */
+		COUNT,
+		/** The mean of the y coordinates of the points in the bin. */
+		MEAN,
+		/** The range from the lowest to the highest y coordinate of the points in the bin. */
+		RANGE
+	}
+	
+	private static final int BLOCK_SHIFT = 10;
+	private static final int BLOCK_BINS = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_CACHE_SIZE = 64;
+	private static final int MIN_BAR_PIXELS = 3;
+	private static final int MIN_POINTS_PER_THREAD = 1 << 16;
+	
+	private final double binWidth;
+	private Statistic statistic;
+	private Color color;
+	private long version;
+	
+	private final TreeMap<Long, Block> blocks = new TreeMap<Long, Block>();
+	
+	// The bins merged 2^level at a time, for the blocks that have been in view since the level last changed
+	private int level = -1;
+	private final TreeMap<Long, Block> levelBlocks = new TreeMap<Long, Block>();
+	
+	public HistogramCurve(double binWidth) {
+		this(binWidth, Statistic.COUNT, Color.BLUE);
+	}
+	
+	/**
+	 * Creates an empty histogram whose narrowest bins are {@code binWidth} wide, with the bin {@code i} covering the x coordinates from
+	 * {@code i * binWidth} up to {@code (i + 1) * binWidth}.
+	 */
+	public HistogramCurve(double binWidth, Statistic statistic, Color color) {
+		if(!(binWidth > 0)) throw new IllegalArgumentException("Bin width must be positive: " + binWidth);
+		
+		this.binWidth = binWidth;
+		this.statistic = statistic;
+		this.color = color;
+	}
+	
+	
+	/**
+	 * Adds the point (x, y).
+	 */
+	public synchronized void add(double x, double y) {
+		if(!Double.isFinite(x)) return;
+		
+		long bin = getBin(x);
+		getBlock(blocks, bin >> BLOCK_SHIFT).add((int)(bin & (BLOCK_BINS - 1)), y);
+		
+		// The merged bin is updated in place if it has been built, and built again if its block was found to be empty
+		if(level > 0) {
+			long levelBin = bin >> level;
+			Block block = levelBlocks.get(levelBin >> BLOCK_SHIFT);
+			
+			if(block != null) block.add((int)(levelBin & (BLOCK_BINS - 1)), y);
+			else levelBlocks.remove(levelBin >> BLOCK_SHIFT);
+		}
+		
+		version++;
+	}
+	
+	
+	/**
+	 * Adds the first {@code count} points given by {@code x} and {@code y}.
+	 */
+	public synchronized void add(double[] x, double[] y, int count) {
+		for(int i = 0; i < count; i++) add(x[i], y[i]);
+	}
+	
+	
+	/**
+	 * Adds every point of {@code points}, binning them in parallel.
+	 */
+	public void addAll(PointSource points) {
+		long size = points.size();
+		int threads = (int)Math.max(1, Math.min(Parallel.PROCESSORS, size / MIN_POINTS_PER_THREAD));
+		
+		ArrayList<Callable<TreeMap<Long, Block>>> tasks = new ArrayList<Callable<TreeMap<Long, Block>>>(threads);
+		
+		for(int i = 0; i < threads; i++) {
+			long from = size * i / threads;
+			long to = size * (i + 1) / threads;
+			
+			tasks.add(() -> bin(points, from, to));
+		}
+		
+		ArrayList<TreeMap<Long, Block>> partials = Parallel.run(tasks);
+		
+		// The blocks of the threads are merged pairwise until one set is left
+		while(partials.size() > 1) {
+			ArrayList<Callable<TreeMap<Long, Block>>> merges = new ArrayList<Callable<TreeMap<Long, Block>>>();
+			
+			for(int i = 0; i + 1 < partials.size(); i += 2) {
+				TreeMap<Long, Block> a = partials.get(i);
+				TreeMap<Long, Block> b = partials.get(i + 1);
+				
+				merges.add(() -> {
+					merge(a, b);
+					return a;
+				});
+			}
+			
+			ArrayList<TreeMap<Long, Block>> merged = Parallel.run(merges);
+			if(partials.size() % 2 == 1) merged.add(partials.get(partials.size() - 1));
+			partials = merged;
+		}
+		
+		synchronized(this) {
+			merge(blocks, partials.get(0));
+			
+			// The merged bins of every block that gained points are built again when next in view
+			for(Long index: partials.get(0).keySet()) {
+				if(level > 0) levelBlocks.remove(index >> level);
+			}
+			
+			version++;
+		}
+	}
+	
+	
+	/**
+	 * Removes every point.
+	 */
+	public synchronized void clear() {
+		blocks.clear();
+		levelBlocks.clear();
+		version++;
+	}
+	
+	
+	public synchronized void setStatistic(Statistic statistic) {
+		this.statistic = statistic;
+		version++;
+	}
+	
+	
+	public synchronized void setColor(Color color) {
+		this.color = color;
+		version++;
+	}
+	
+	
+	public double getBinWidth() {
+		return binWidth;
+	}
+	
+	
+	/**
+	 * Returns the number of points in the bin {@code index} of the bins merged {@code 2^level} at a time.
+	 */
+	public synchronized long getCount(int level, long index) {
+		Block block = getMergedBlock(level, index >> BLOCK_SHIFT);
+		return (block == null) ? 0 : block.counts[(int)(index & (BLOCK_BINS - 1))];
+	}
+	
+	
+	/**
+	 * Returns the mean of the y coordinates of the points in the bin {@code index} of the bins merged {@code 2^level} at a time, or
+	 * {@code NaN} if it is empty.
+	 */
+	public synchronized double getMean(int level, long index) {
+		Block block = getMergedBlock(level, index >> BLOCK_SHIFT);
+		int i = (int)(index & (BLOCK_BINS - 1));
+		return (block == null || block.counts[i] == 0) ? Double.NaN : block.sums[i] / block.counts[i];
+	}
+	
+	
+	/**
+	 * Returns the lowest y coordinate of the points in the bin {@code index} of the bins merged {@code 2^level} at a time, or
+	 * {@code NaN} if it is empty.
+	 */
+	public synchronized double getMin(int level, long index) {
+		Block block = getMergedBlock(level, index >> BLOCK_SHIFT);
+		int i = (int)(index & (BLOCK_BINS - 1));
+		return (block == null || block.counts[i] == 0) ? Double.NaN : block.mins[i];
+	}
+	
+	
+	/**
+	 * Returns the highest y coordinate of the points in the bin {@code index} of the bins merged {@code 2^level} at a time, or
+	 * {@code NaN} if it is empty.
+	 */
+	public synchronized double getMax(int level, long index) {
+		Block block = getMergedBlock(level, index >> BLOCK_SHIFT);
+		int i = (int)(index & (BLOCK_BINS - 1));
+		return (block == null || block.counts[i] == 0) ? Double.NaN : block.maxs[i];
+	}
+	
+	
+	@Override
+	public synchronized long getVersion() {
+		return version;
+	}
+	
+	
+	@Override
+	public void updateMesh(Interval interval, double step) {}
+	
+	
+	@Override
+	public synchronized void draw(Display display, Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+		g.setColor(color);
+		
+		Rectangle bounds = g.getClipBounds();
+		if(bounds == null) bounds = new Rectangle(display.getWidth(), display.getHeight());
+		
+		// The bins are merged until each bar is at least MIN_BAR_PIXELS wide
+		double minWidth = MIN_BAR_PIXELS / display.getDisplayUnit();
+		int level = Math.max(0, Math.min(62 - BLOCK_SHIFT, Math.getExponent(minWidth / binWidth) + 1));
+		
+		if(level != this.level) {
+			this.level = level;
+			levelBlocks.clear();
+		}
+		
+		double width = Math.scalb(binWidth, level);
+		long first = (long)Math.floor(display.getPlaneX(bounds.x) / width);
+		long last = (long)Math.floor(display.getPlaneX(bounds.x + bounds.width) / width);
+		
+		double zeroY = display.getDisplayY(0);
+		double heightScale = 1.0 / (1L << level);
+		
+		Path2D.Double path = new Path2D.Double();
+		long bars = 0;
+		
+		for(long blockIndex = first >> BLOCK_SHIFT; blockIndex <= last >> BLOCK_SHIFT; blockIndex++) {
+			Block block = getLevelBlock(blockIndex);
+			if(block == null) continue;
+			
+			long base = blockIndex << BLOCK_SHIFT;
+			int from = (int)Math.max(0, first - base);
+			int to = (int)Math.min(BLOCK_BINS - 1, last - base);
+			
+			for(int i = from; i <= to; i++) {
+				long count = block.counts[i];
+				if(count == 0) continue;
+				
+				double lower, upper;
+				
+				if(statistic == Statistic.COUNT) {
+					lower = zeroY;
+					upper = display.getDisplayY(count * heightScale);
+				} else if(statistic == Statistic.MEAN) {
+					lower = zeroY;
+					upper = display.getDisplayY(block.sums[i] / count);
+				} else {
+					lower = display.getDisplayY(block.mins[i]);
+					upper = display.getDisplayY(block.maxs[i]);
+				}
+				
+				double left = display.getDisplayX((base + i) * width);
+				double right = display.getDisplayX((base + i + 1) * width);
+				double top = Math.min(lower, upper);
+				double bottom = Math.max(Math.max(lower, upper), top + 1); // Bars of no height are drawn a pixel high
+				
+				path.moveTo(left, top);
+				path.lineTo(right, top);
+				path.lineTo(right, bottom);
+				path.lineTo(left, bottom);
+				path.closePath();
+				bars++;
+			}
+		}
+		
+		g.fill(path);
+		
+		Counters.addSegmentsDrawn(4 * bars);
+	}
+	
+	
+	private long getBin(double x) {
+		return (long)Math.floor(x / binWidth);
+	}
+	
+	
+	/**
+	 * Returns the block {@code index} of the bins merged {@code 2^level} at a time, which is built if need be, or {@code null} if it
+	 * has no points.
+	 */
+	private Block getMergedBlock(int level, long index) {
+		if(level == this.level) return getLevelBlock(index);
+		return buildLevelBlock(level, index);
+	}
+	
+	
+	/**
+	 * Returns the block {@code index} of the bins at the current level, which is built the first time it is needed, or {@code null} if
+	 * it has no points.
+	 */
+	private Block getLevelBlock(long index) {
+		if(level == 0) return blocks.get(index);
+		
+		Block block = levelBlocks.get(index);
+		
+		if(block == null && !levelBlocks.containsKey(index)) {
+			block = buildLevelBlock(level, index);
+			levelBlocks.put(index, block);
+		}
+		
+		return block;
+	}
+	
+	
+	/**
+	 * Merges the bins of the blocks covered by the block {@code index} of the bins merged {@code 2^level} at a time.
+	 */
+	private Block buildLevelBlock(int level, long index) {
+		if(level == 0) return blocks.get(index);
+		
+		// The block covers 2^level blocks of the narrowest bins, of which only those holding points are stored
+		long firstBlock = index << level;
+		long lastBlock = firstBlock + (1L << level) - 1;
+		Map<Long, Block> covered = blocks.subMap(firstBlock, true, lastBlock, true);
+		if(covered.isEmpty()) return null;
+		
+		Block merged = new Block();
+		
+		for(Map.Entry<Long, Block> entry: covered.entrySet()) {
+			Block block = entry.getValue();
+			long base = (entry.getKey() - firstBlock) << BLOCK_SHIFT;
+			
+			for(int i = 0; i < BLOCK_BINS; i++) {
+				if(block.counts[i] != 0) merged.merge((int)((base + i) >> level), block, i);
+			}
+		}
+		
+		return merged;
+	}
+	
+	
+	/**
+	 * Bins the points of {@code points} from {@code from} up to {@code to} into blocks of their own.
+	 */
+	private TreeMap<Long, Block> bin(PointSource points, long from, long to) {
+		TreeMap<Long, Block> binned = new TreeMap<Long, Block>();
+		
+		// The blocks used most recently, by their index modulo the size of the cache, so that most points need no lookup in the map
+		long[] cachedIndices = new long[BLOCK_CACHE_SIZE];
+		Block[] cachedBlocks = new Block[BLOCK_CACHE_SIZE];
+		
+		for(long i = from; i < to; i++) {
+			double x = points.getX(i);
+			if(!Double.isFinite(x)) continue;
+			
+			long bin = getBin(x);
+			long blockIndex = bin >> BLOCK_SHIFT;
+			int slot = (int)(blockIndex & (BLOCK_CACHE_SIZE - 1));
+			
+			Block block = cachedBlocks[slot];
+			
+			if(block == null || cachedIndices[slot] != blockIndex) {
+				block = getBlock(binned, blockIndex);
+				cachedBlocks[slot] = block;
+				cachedIndices[slot] = blockIndex;
+			}
+			
+			block.add((int)(bin & (BLOCK_BINS - 1)), points.getY(i));
+		}
+		
+		return binned;
+	}
+	
+	
+	/**
+	 * Merges the blocks of {@code source} into those of {@code target}, taking over the blocks that {@code target} does not have.
+	 */
+	private static void merge(TreeMap<Long, Block> target, TreeMap<Long, Block> source) {
+		for(Map.Entry<Long, Block> entry: source.entrySet()) {
+			Block block = target.get(entry.getKey());
+			
+			if(block == null) {
+				target.put(entry.getKey(), entry.getValue());
+			} else {
+				Block other = entry.getValue();
+				for(int i = 0; i < BLOCK_BINS; i++) {
+					if(other.counts[i] != 0) block.merge(i, other, i);
+				}
+			}
+		}
+	}
+	
+	
+	private static Block getBlock(TreeMap<Long, Block> blocks, long index) {
+		Block block = blocks.get(index);
+		
+		if(block == null) {
+			block = new Block();
+			blocks.put(index, block);
+		}
+		
+		return block;
+	}
+	
+	
+	/**
+	 * The count, sum, minimum and maximum of the y coordinates of the points in each of {@code BLOCK_BINS} consecutive bins.
+	 */
+	private static class Block {
+		private final long[] counts = new long[BLOCK_BINS];
+		private final double[] sums = new double[BLOCK_BINS];
+		private final double[] mins = new double[BLOCK_BINS];
+		private final double[] maxs = new double[BLOCK_BINS];
+		
+		private void add(int i, double y) {
+			if(counts[i] == 0) {
+				mins[i] = y;
+				maxs[i] = y;
+			} else {
+				if(y < mins[i]) mins[i] = y;
+				if(y > maxs[i]) maxs[i] = y;
+			}
+			
+			counts[i]++;
+			sums[i] += y;
+		}
+		
+		/**
+		 * Merges the bin {@code j} of {@code other} into the bin {@code i} of this block.
+		 */
+		private void merge(int i, Block other, int j) {
+			if(counts[i] == 0) {
+				mins[i] = other.mins[j];
+				maxs[i] = other.maxs[j];
+			} else {
+				mins[i] = Math.min(mins[i], other.mins[j]);
+				maxs[i] = Math.max(maxs[i], other.maxs[j]);
+			}
+			
+			counts[i] += other.counts[j];
+			sums[i] += other.sums[j];
+		}
+	}
+}
@@ -0,0 +1,349 @@
+package sini.grapher;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import sini.grapher.profiling.Counters;
+
+/**
+ * The curve F(x, y) = 0 of an {@link ImplicitFunction} F. The visible region is split into a quadtree: each box is split into four, and
+ * any box over which the enclosure of F does not contain 0 is dropped, since the curve cannot pass through it. Boxes are split until they
+ * are no larger than a pixel, so the work is done only near the curve, and since a box is only dropped when the curve is certain to miss
+ * it, no part of the curve is lost, however thin.
+ * 
+ * <p>Within each box, the curve is drawn by marching squares from the values of F at the corners of the box. A pixel that has not been
+ * dropped but whose corners all have the same sign, which happens where the curve touches 0 without crossing it or is thinner than a
+ * pixel, is filled instead, so that it still shows.
+ * 
+ * <p>Straight after the viewport changes, the boxes are only split down to {@code COARSE_PIXELS} pixels across, and the curve is drawn
+ * through those. Each refinement splits the boxes further, the largest first.
+ */
+public class ImplicitCurve implements ProgressiveCurve {
+	
+	private static final int COARSE_PIXELS = 8;
+	
+	// Times a pixel where F does not change sign is split further, to rule out the curve passing through it before filling it
+	private static final int LEAF_LEVELS = 2;
+	
+	// Corners of a box, as indices into its array
+	private static final int X0 = 0, Y0 = 1, X1 = 2, Y1 = 3;
+	private static final int V00 = 4, V10 = 5, V11 = 6, V01 = 7;
+	
+	private final ImplicitFunction f;
+	private Color color;
+	private float thickness;
+	private long version;
+	
+	private Interval visible;
+	private double step;
+	private double pixel;
+	
+	// Boxes that may hold part of the curve: those still to be split, largest first, and those no larger than a pixel
+	private ArrayDeque<double[]> pending = new ArrayDeque<double[]>();
+	private ArrayList<double[]> leaves = new ArrayList<double[]>();
+	
+	private ArrayList<double[][]> segments = new ArrayList<double[][]>();
+	private ArrayList<double[]> filled = new ArrayList<double[]>();
+	
+	public ImplicitCurve(ImplicitFunction f) {
+		this(f, Color.BLUE, 2);
+	}
+	
+	public ImplicitCurve(ImplicitFunction f, Color color, float thickness) {
+		this.f = f;
+		this.color = color;
+		this.thickness = thickness;
+	}
+	
+	
+	public void setColor(Color color) {
+		this.color = color;
+		version++;
+	}
+	
+	
+	@Override
+	public long getVersion() {
+		return version;
+	}
+	
+	
+	/**
+	 * Returns the segments of the curve drawn through boxes where F changes sign.
+	 */
+	public ArrayList<double[][]> getSegments() {
+		return segments;
+	}
+	
+	
+	/**
+	 * Returns the boxes, each as the array {x0, y0, x1, y1, ...}, which are no larger than a pixel and may hold part of the curve, but
+	 * where F does not change sign.
+	 */
+	public ArrayList<double[]> getFilledBoxes() {
+		return filled;
+	}
+	
+	
+	@Override
+	public void draw(Display display, Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(color);
+		g.setStroke(new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		
+		Path2D.Double path = new Path2D.Double();
+		
+		for(double[][] segment: segments) {
+			path.moveTo(display.getDisplayX(segment[0][0]), display.getDisplayY(segment[0][1]));
+			path.lineTo(display.getDisplayX(segment[1][0]), display.getDisplayY(segment[1][1]));
+		}
+		
+		g.draw(path);
+		
+		if(!filled.isEmpty()) {
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+			Path2D.Double boxes = new Path2D.Double();
+			
+			// Each box is filled at least a pixel across, however small it is
+			for(double[] box: filled) {
+				double left = Math.floor(display.getDisplayX(box[X0]));
+				double top = Math.floor(display.getDisplayY(box[Y1]));
+				double right = Math.max(left + 1, Math.ceil(display.getDisplayX(box[X1])));
+				double bottom = Math.max(top + 1, Math.ceil(display.getDisplayY(box[Y0])));
+				
+				boxes.moveTo(left, top);
+				boxes.lineTo(right, top);
+				boxes.lineTo(right, bottom);
+				boxes.lineTo(left, bottom);
+				boxes.closePath();
+			}
+			
+			g.fill(boxes);
+		}
+		
+		Counters.addSegmentsDrawn(segments.size() + filled.size());
+	}
+	
+	
+	/**
+	 * Builds the curve over the 2-dimensional interval {@code interval} at full detail straight away.
+	 */
+	@Override
+	public void updateMesh(Interval interval, double step) {
+		if(interval.getDimension() != 2) return;
+		
+		setViewport(interval, step);
+		while(refine(Long.MAX_VALUE));
+	}
+	
+	
+	@Override
+	public ImplicitCurve copy() {
+		return new ImplicitCurve(f, color, thickness);
+	}
+	
+	
+	@Override
+	public boolean setViewport(Interval visible, double step) {
+		if(visible.equals(this.visible) && step == this.step) return false;
+		
+		this.visible = visible.clone();
+		this.step = step;
+		
+		// The mesh step is half a pixel
+		pixel = 2 * step;
+		
+		pending.clear();
+		leaves.clear();
+		
+		Interval y = visible.getFactor();
+		double[] root = createBox(visible.lower(), y.lower(), visible.upper(), y.upper());
+		if(mayContainCurve(root)) pending.add(root);
+		
+		subdivide(COARSE_PIXELS * pixel, Long.MAX_VALUE);
+		buildMesh();
+		
+		version++;
+		return true;
+	}
+	
+	
+	@Override
+	public boolean refine(long deadline) {
+		if(pending.isEmpty()) return false;
+		
+		subdivide(pixel, deadline);
+		buildMesh();
+		
+		version++;
+		return !pending.isEmpty();
+	}
+	
+	
+	@Override
+	public boolean isVisible(Interval visible) {
+		return !pending.isEmpty() || !leaves.isEmpty();
+	}
+	
+	
+	/**
+	 * Splits the pending boxes, largest first, until they are no larger than {@code size} or {@link System#nanoTime()} has passed
+	 * {@code deadline}. Boxes no larger than a pixel are moved to the leaves.
+	 */
+	private void subdivide(double size, long deadline) {
+		long evaluations = 0;
+		
+		while(!pending.isEmpty() && getSize(pending.peekFirst()) > size) {
+			double[] box = pending.pollFirst();
+			
+			double midX = (box[X0] + box[X1]) / 2;
+			double midY = (box[Y0] + box[Y1]) / 2;
+			double mid = f.apply(midX, midY);
+			double bottom = f.apply(midX, box[Y0]);
+			double right = f.apply(box[X1], midY);
+			double top = f.apply(midX, box[Y1]);
+			double left = f.apply(box[X0], midY);
+			evaluations += 5;
+			
+			// The corners are shared with the parent and with each other, so only five new values are needed
+			addChild(new double[] {box[X0], box[Y0], midX, midY, box[V00], bottom, mid, left});
+			addChild(new double[] {midX, box[Y0], box[X1], midY, bottom, box[V10], right, mid});
+			addChild(new double[] {midX, midY, box[X1], box[Y1], mid, right, box[V11], top});
+			addChild(new double[] {box[X0], midY, midX, box[Y1], left, mid, top, box[V01]});
+			
+			if(System.nanoTime() > deadline) break;
+		}
+		
+		Counters.addFunctionEvaluations(evaluations);
+	}
+	
+	
+	private void addChild(double[] box) {
+		if(!mayContainCurve(box)) return;
+		
+		if(getSize(box) > pixel) {
+			pending.addLast(box);
+		} else if(hasSignChange(box) || mayContainCurve(box[X0], box[Y0], box[X1], box[Y1], LEAF_LEVELS)) {
+			leaves.add(box);
+		}
+	}
+	
+	
+	/**
+	 * Returns false if the curve is certain not to pass through the box from (x0, y0) to (x1, y1), splitting it up to {@code levels}
+	 * more times to tighten the enclosures.
+	 */
+	private boolean mayContainCurve(double x0, double y0, double x1, double y1, int levels) {
+		if(!IntervalMath.containsZero(f.enclose(new Interval(x0, x1), new Interval(y0, y1)))) return false;
+		if(levels == 0) return true;
+		
+		double midX = (x0 + x1) / 2;
+		double midY = (y0 + y1) / 2;
+		
+		return mayContainCurve(x0, y0, midX, midY, levels - 1) || mayContainCurve(midX, y0, x1, midY, levels - 1)
+				|| mayContainCurve(midX, midY, x1, y1, levels - 1) || mayContainCurve(x0, midY, midX, y1, levels - 1);
+	}
+	
+	
+	private static boolean hasSignChange(double[] box) {
+		boolean isPositive = box[V00] >= 0;
+		return (box[V10] >= 0) != isPositive || (box[V11] >= 0) != isPositive || (box[V01] >= 0) != isPositive;
+	}
+	
+	
+	/**
+	 * Returns false if the curve is certain not to pass through {@code box}.
+	 */
+	private boolean mayContainCurve(double[] box) {
+		return mayContainCurve(box[X0], box[Y0], box[X1], box[Y1], 0);
+	}
+	
+	
+	private double[] createBox(double x0, double y0, double x1, double y1) {
+		Counters.addFunctionEvaluations(4);
+		return new double[] {x0, y0, x1, y1, f.apply(x0, y0), f.apply(x1, y0), f.apply(x1, y1), f.apply(x0, y1)};
+	}
+	
+	
+	private static double getSize(double[] box) {
+		return Math.max(box[X1] - box[X0], box[Y1] - box[Y0]);
+	}
+	
+	
+	/**
+	 * Draws the curve through every box that may hold part of it.
+	 */
+	private void buildMesh() {
+		segments = new ArrayList<double[][]>();
+		filled = new ArrayList<double[]>();
+		
+		for(double[] box: leaves) {
+			if(!addSegments(box)) filled.add(box);
+		}
+		
+		for(double[] box: pending) addSegments(box);
+	}
+	
+	
+	/**
+	 * Adds the segments of the curve through {@code box} by marching squares, returning false if F does not change sign along the edges
+	 * of the box.
+	 */
+	private boolean addSegments(double[] box) {
+		double[][] crossings = new double[4][];
+		int count = 0;
+		
+		// The edges in turn: bottom, right, top and left
+		crossings[0] = getCrossing(box[X0], box[Y0], box[V00], box[X1], box[Y0], box[V10]);
+		crossings[1] = getCrossing(box[X1], box[Y0], box[V10], box[X1], box[Y1], box[V11]);
+		crossings[2] = getCrossing(box[X1], box[Y1], box[V11], box[X0], box[Y1], box[V01]);
+		crossings[3] = getCrossing(box[X0], box[Y1], box[V01], box[X0], box[Y0], box[V00]);
+		
+		for(double[] crossing: crossings) {
+			if(crossing != null) count++;
+		}
+		
+		if(count == 2) {
+			double[] first = null;
+			
+			for(double[] crossing: crossings) {
+				if(crossing == null) continue;
+				
+				if(first == null) first = crossing;
+				else segments.add(new double[][] {first, crossing});
+			}
+		} else if(count == 4) {
+			// A saddle, where the corners alternate in sign, is resolved by the sign at the centre of the box
+			boolean isCentreLikeV00 = (f.apply((box[X0] + box[X1]) / 2, (box[Y0] + box[Y1]) / 2) >= 0) == (box[V00] >= 0);
+			Counters.addFunctionEvaluations(1);
+			
+			if(isCentreLikeV00) {
+				segments.add(new double[][] {crossings[0], crossings[1]});
+				segments.add(new double[][] {crossings[2], crossings[3]});
+			} else {
+				segments.add(new double[][] {crossings[3], crossings[0]});
+				segments.add(new double[][] {crossings[1], crossings[2]});
+			}
+		}
+		
+		// An odd number of crossings is only possible next to corners where F is undefined
+		return count == 2 || count == 4;
+	}
+	
+	
+	/**
+	 * Returns the point where F crosses 0 along the edge from (x0, y0) to (x1, y1), interpolated linearly from the values {@code v0} and
+	 * {@code v1} of F at its ends, or {@code null} if they have the same sign.
+	 */
+	private static double[] getCrossing(double x0, double y0, double v0, double x1, double y1, double v1) {
+		if(Double.isNaN(v0) || Double.isNaN(v1) || (v0 >= 0) == (v1 >= 0)) return null;
+		
+		double t = v0 / (v0 - v1);
+		return new double[] {x0 + t * (x1 - x0), y0 + t * (y1 - y0)};
+	}
+}
@@ -0,0 +1,36 @@
+package sini.grapher;
+
+import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * A function F of two variables whose zero set F(x, y) = 0 is plotted by an {@link ImplicitCurve}. Besides its value at a point, the
+ * function must give an enclosure of its values over a box, which is most easily found by evaluating the same expression with the
+ * operations of {@link IntervalMath}. The enclosure may be wider than the true range of the function, but must never be narrower.
+ */
+public interface ImplicitFunction {
+	
+	public abstract double apply(double x, double y);
+	
+	/**
+	 * Returns an interval that contains the value of the function at every point (x, y) with x in {@code x} and y in {@code y}.
+	 */
+	public abstract Interval enclose(Interval x, Interval y);
+	
+	/**
+	 * Returns the function whose value is given by {@code value} and whose enclosures are given by {@code enclosure}.
+	 */
+	public static ImplicitFunction of(DoubleBinaryOperator value, BinaryOperator<Interval> enclosure) {
+		return new ImplicitFunction() {
+			@Override
+			public double apply(double x, double y) {
+				return value.applyAsDouble(x, y);
+			}
+			
+			@Override
+			public Interval enclose(Interval x, Interval y) {
+				return enclosure.apply(x, y);
+			}
+		};
+	}
+}
@@ -0,0 +1,100 @@
+package sini.grapher;
+
+import java.util.function.Function;
+
+import sini.dual.Dual;
+import sini.dual.DualScalarFunction;
+
+/**
+ * The fixed step methods that a {@link DifferentialEquation} can be integrated with. Each method advances a solution of the equation
+ * x' = f(t, x) by a single step of size h, which may be negative to integrate backwards.
+ * 
+ * <p>Every method is given the slope m = f(t, x) at the start of the step, since that has usually already been computed to choose the
+ * size of the step, and so the first stage of each method comes for free.
+ */
+public enum Integrator {
+	
+	/**
+	 * The explicit Euler method, which is first order and takes no further evaluations of f.
+	 */
+	EULER {
+		@Override
+		public double step(Function<double[], Double> f, double t, double x, double m, double h) {
+			return x + h*m;
+		}
+	},
+	
+	
+	/**
+	 * Heun's method, the explicit trapezoidal rule, which is second order and takes one further evaluation of f.
+	 */
+	HEUN {
+		@Override
+		public double step(Function<double[], Double> f, double t, double x, double m, double h) {
+			double k2 = f.apply(new double[] {t + h, x + h*m});
+			return x + h * (m + k2) / 2;
+		}
+	},
+	
+	
+	/**
+	 * The classical Runge-Kutta method, which is fourth order and takes three further evaluations of f.
+	 */
+	RK4 {
+		@Override
+		public double step(Function<double[], Double> f, double t, double x, double m, double h) {
+			double k2 = f.apply(new double[] {t + h/2, x + h*m/2});
+			double k3 = f.apply(new double[] {t + h/2, x + h*k2/2});
+			double k4 = f.apply(new double[] {t + h, x + h*k3});
+			return x + h * (m + 2*k2 + 2*k3 + k4) / 6;
+		}
+	},
+	
+	
+	/**
+	 * The implicit Euler method, which is first order but stable for stiff equations at any step size. The implicit equation
+	 * y = x + h f(t + h, y) is solved by Newton's method. If f is a {@link DualScalarFunction}, the derivative of f with respect to x is
+	 * found with its value, so each Newton iteration takes one evaluation of f, and otherwise it is found by a finite difference, which
+	 * takes two.
+	 */
+	BACKWARD_EULER {
+		@Override
+		public double step(Function<double[], Double> f, double t, double x, double m, double h) {
+			DualScalarFunction df = (f instanceof DualScalarFunction) ? (DualScalarFunction) f : null;
+			double y = x + h*m;
+			
+			for(int i = 0; i < MAX_NEWTON_ITERATIONS; i++) {
+				double fy, dfdx;
+				
+				if(df != null) {
+					Dual value = df.getGradient(new double[] {t + h, y});
+					fy = value.value;
+					dfdx = value.getDerivative(1);
+				} else {
+					fy = f.apply(new double[] {t + h, y});
+					double dy = FINITE_DIFFERENCE_STEP * Math.max(1, Math.abs(y));
+					dfdx = (f.apply(new double[] {t + h, y + dy}) - fy) / dy;
+				}
+				
+				double residual = y - x - h*fy;
+				double correction = residual / (1 - h*dfdx);
+				y -= correction;
+				
+				if(Math.abs(correction) <= NEWTON_TOLERANCE * Math.max(1, Math.abs(y))) break;
+			}
+			
+			return y;
+		}
+	};
+	
+	
+	private static final int MAX_NEWTON_ITERATIONS = 20;
+	private static final double NEWTON_TOLERANCE = 1e-13;
+	private static final double FINITE_DIFFERENCE_STEP = 1.5e-8;
+	
+	
+	/**
+	 * Returns the value of the solution at t + h, given its value {@code x} at {@code t}, and the slope {@code m} = f(t, x).
+	 */
+	public abstract double step(Function<double[], Double> f, double t, double x, double m, double h);
+}
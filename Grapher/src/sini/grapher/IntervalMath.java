@@ -0,0 +1,230 @@
+package sini.grapher;
+
+/**
+ * Interval arithmetic on 1-dimensional {@link Interval intervals}. Each operation returns an interval that contains the result of the
+ * operation applied to every choice of numbers from its arguments, so an expression evaluated with these operations gives an enclosure of
+ * the values of the expression over its arguments. The bounds of each result are rounded outwards by a unit in the last place, so the
+ * enclosure holds in spite of rounding errors.
+ * 
+ * <p>An operation that is undefined for some numbers in its arguments, such as division by an interval that contains 0, returns the whole
+ * real line, and one that is undefined for every number in its arguments, such as the square root of a negative interval, returns an
+ * interval with bounds of {@code NaN}, which contains no numbers. Any operation with such an argument also returns it.
+ */
+public class IntervalMath {
+	
+	private IntervalMath() {}
+	
+	
+	/**
+	 * Returns the interval holding the single number {@code value}.
+	 */
+	public static Interval constant(double value) {
+		return new Interval(value, value);
+	}
+	
+	
+	/**
+	 * Returns the whole real line.
+	 */
+	public static Interval entire() {
+		return new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+	
+	
+	/**
+	 * Returns an interval that contains no numbers, the result of an operation that is undefined over the whole of its arguments.
+	 */
+	public static Interval empty() {
+		return new Interval(Double.NaN, Double.NaN);
+	}
+	
+	
+	public static boolean isEmpty(Interval a) {
+		return Double.isNaN(a.lower()) || Double.isNaN(a.upper());
+	}
+	
+	
+	/**
+	 * Returns true if {@code a} contains 0, so that an expression enclosed by {@code a} may have a root.
+	 */
+	public static boolean containsZero(Interval a) {
+		return a.lower() <= 0 && a.upper() >= 0;
+	}
+	
+	
+	public static Interval add(Interval a, Interval b) {
+		if(isEmpty(a) || isEmpty(b)) return empty();
+		return round(a.lower() + b.lower(), a.upper() + b.upper());
+	}
+	
+	
+	public static Interval add(Interval a, double b) {
+		if(isEmpty(a)) return empty();
+		return round(a.lower() + b, a.upper() + b);
+	}
+	
+	
+	public static Interval subtract(Interval a, Interval b) {
+		if(isEmpty(a) || isEmpty(b)) return empty();
+		return round(a.lower() - b.upper(), a.upper() - b.lower());
+	}
+	
+	
+	public static Interval negate(Interval a) {
+		return new Interval(-a.upper(), -a.lower());
+	}
+	
+	
+	public static Interval multiply(Interval a, Interval b) {
+		if(isEmpty(a) || isEmpty(b)) return empty();
+		
+		double p1 = product(a.lower(), b.lower());
+		double p2 = product(a.lower(), b.upper());
+		double p3 = product(a.upper(), b.lower());
+		double p4 = product(a.upper(), b.upper());
+		
+		return round(Math.min(Math.min(p1, p2), Math.min(p3, p4)), Math.max(Math.max(p1, p2), Math.max(p3, p4)));
+	}
+	
+	
+	public static Interval multiply(Interval a, double b) {
+		return multiply(a, constant(b));
+	}
+	
+	
+	public static Interval divide(Interval a, Interval b) {
+		if(isEmpty(a) || isEmpty(b)) return empty();
+		if(containsZero(b)) return entire();
+		
+		// 1 / b is rounded outwards before multiplying, which rounds outwards again
+		return multiply(a, round(1 / b.upper(), 1 / b.lower()));
+	}
+	
+	
+	/**
+	 * Returns an enclosure of {@code a^n}, which is tighter than multiplying {@code a} by itself, since each factor takes the same value.
+	 */
+	public static Interval pow(Interval a, int n) {
+		if(isEmpty(a)) return empty();
+		if(n == 0) return constant(1);
+		if(n < 0) return divide(constant(1), pow(a, -n));
+		
+		double lower = Math.pow(a.lower(), n);
+		double upper = Math.pow(a.upper(), n);
+		
+		if(n % 2 == 1) return round(lower, upper);
+		
+		// Even powers fall to 0 between the bounds of an interval that contains 0
+		if(containsZero(a)) return new Interval(0, Math.nextUp(Math.max(lower, upper)));
+		return round(Math.min(lower, upper), Math.max(lower, upper));
+	}
+	
+	
+	public static Interval sqr(Interval a) {
+		return pow(a, 2);
+	}
+	
+	
+	public static Interval sqrt(Interval a) {
+		if(isEmpty(a) || a.upper() < 0) return empty();
+		return new Interval(Math.max(0, Math.nextDown(Math.sqrt(Math.max(0, a.lower())))), Math.nextUp(Math.sqrt(a.upper())));
+	}
+	
+	
+	public static Interval abs(Interval a) {
+		if(a.lower() >= 0) return a;
+		if(a.upper() <= 0) return negate(a);
+		return new Interval(0, Math.max(-a.lower(), a.upper()));
+	}
+	
+	
+	public static Interval min(Interval a, Interval b) {
+		return new Interval(Math.min(a.lower(), b.lower()), Math.min(a.upper(), b.upper()));
+	}
+	
+	
+	public static Interval max(Interval a, Interval b) {
+		return new Interval(Math.max(a.lower(), b.lower()), Math.max(a.upper(), b.upper()));
+	}
+	
+	
+	public static Interval exp(Interval a) {
+		if(isEmpty(a)) return empty();
+		return new Interval(Math.max(0, Math.nextDown(Math.exp(a.lower()))), Math.nextUp(Math.exp(a.upper())));
+	}
+	
+	
+	public static Interval log(Interval a) {
+		if(isEmpty(a) || a.upper() <= 0) return empty();
+		
+		double lower = (a.lower() <= 0) ? Double.NEGATIVE_INFINITY : Math.nextDown(Math.log(a.lower()));
+		return new Interval(lower, Math.nextUp(Math.log(a.upper())));
+	}
+	
+	
+	public static Interval sin(Interval a) {
+		// sin(x) = cos(x - pi/2), and the rounding of pi/2 is covered by widening the interval first
+		return cos(round(a.lower() - Math.PI / 2, a.upper() - Math.PI / 2));
+	}
+	
+	
+	public static Interval cos(Interval a) {
+		if(isEmpty(a)) return empty();
+		if(!(a.length() < 2 * Math.PI)) return new Interval(-1, 1);
+		
+		double lower = Math.min(Math.cos(a.lower()), Math.cos(a.upper()));
+		double upper = Math.max(Math.cos(a.lower()), Math.cos(a.upper()));
+		
+		// cos has its maxima at the even multiples of pi and its minima at the odd ones. The multiple found may be off by one near the
+		// bounds, through the rounding of pi, but the bounds are then within a few ulps of an extremum and the value is close anyway
+		double k = Math.ceil(a.lower() / Math.PI);
+		
+		for(double m = k; m * Math.PI <= a.upper(); m++) {
+			if(m % 2 == 0) upper = 1;
+			else lower = -1;
+		}
+		
+		return new Interval(Math.max(-1, Math.nextDown(lower)), Math.min(1, Math.nextUp(upper)));
+	}
+	
+	
+	public static Interval tan(Interval a) {
+		if(isEmpty(a)) return empty();
+		
+		// tan is increasing between its poles, at the odd multiples of pi/2
+		double poles = Math.floor(a.upper() / Math.PI - 0.5) - Math.floor(a.lower() / Math.PI - 0.5);
+		if(poles != 0 || !(a.length() < Math.PI)) return entire();
+		
+		// A pole that lies within rounding error of a bound shows up as the values at the bounds being out of order
+		double lower = Math.tan(a.lower());
+		double upper = Math.tan(a.upper());
+		if(lower > upper) return entire();
+		
+		return round(lower, upper);
+	}
+	
+	
+	public static Interval atan(Interval a) {
+		if(isEmpty(a)) return empty();
+		return round(Math.atan(a.lower()), Math.atan(a.upper()));
+	}
+	
+	
+	/**
+	 * Returns the product of {@code x} and {@code y}, taking 0 times an infinity to be 0, as it is for the numbers that the infinite
+	 * bound stands in for.
+	 */
+	private static double product(double x, double y) {
+		if(x == 0 || y == 0) return 0;
+		return x * y;
+	}
+	
+	
+	/**
+	 * Returns the interval from {@code lower} to {@code upper}, widened by a unit in the last place at each end.
+	 */
+	private static Interval round(double lower, double upper) {
+		if(Double.isNaN(lower) || Double.isNaN(upper)) return entire();
+		return new Interval(Math.nextDown(lower), Math.nextUp(upper));
+	}
+}
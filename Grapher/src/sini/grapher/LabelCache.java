@@ -0,0 +1,98 @@
+package sini.grapher;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+
+/**
+ * A direct-mapped table of axis labels, so that numbering the axes does not format a new string for every label on every frame. Each
+ * label is keyed by its value rounded to the number of decimal places it is shown with, and is stored along with its width in the font
+ * it was last measured in. Labels are only formatted when they are first seen or have been displaced by another label with the same
+ * slot in the table.
+ */
+class LabelCache {
+	
+	private static final int SIZE = 1024; // Must be a power of 2
+	private static final long[] POWERS_OF_TEN = new long[19];
+	
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for(int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1] * 10;
+	}
+	
+	private final long[] values = new long[SIZE];
+	private final int[] precisions = new int[SIZE];
+	private final String[] labels = new String[SIZE];
+	private final int[] widths = new int[SIZE];
+	
+	private Font font;
+	private FontMetrics metrics;
+	
+	private String label;
+	private int width;
+	
+	
+	/**
+	 * Looks up the label for {@code value} shown with {@code precision} decimal places, measured in the current font of {@code g}. The
+	 * result can then be read from {@link #getLabel()} and {@link #getWidth()}.
+	 */
+	public void lookup(Graphics2D g, double value, int precision) {
+		updateMetrics(g);
+		
+		double scaledValue = value * ((precision < POWERS_OF_TEN.length) ? POWERS_OF_TEN[precision] : Double.POSITIVE_INFINITY);
+		
+		// Values too large to be keyed by a long are formatted every time
+		if(!(Math.abs(scaledValue) < Long.MAX_VALUE)) {
+			label = String.format("%." + precision + "f", value);
+			width = metrics.stringWidth(label);
+			return;
+		}
+		
+		long key = Math.round(scaledValue);
+		int slot = getSlot(key, precision);
+		
+		if(labels[slot] == null || values[slot] != key || precisions[slot] != precision) {
+			values[slot] = key;
+			precisions[slot] = precision;
+			labels[slot] = String.format("%." + precision + "f", (double)key / POWERS_OF_TEN[precision]);
+			widths[slot] = metrics.stringWidth(labels[slot]);
+		}
+		
+		label = labels[slot];
+		width = widths[slot];
+	}
+	
+	public String getLabel() {
+		return label;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Returns the metrics of the font that labels are currently measured in.
+	 */
+	public FontMetrics getMetrics(Graphics2D g) {
+		updateMetrics(g);
+		return metrics;
+	}
+	
+	
+	private void updateMetrics(Graphics2D g) {
+		if(g.getFont() == font) return;
+		
+		font = g.getFont();
+		metrics = g.getFontMetrics(font);
+		
+		for(int i = 0; i < SIZE; i++) {
+			if(labels[i] != null) widths[i] = metrics.stringWidth(labels[i]);
+		}
+	}
+	
+	
+	private static int getSlot(long key, int precision) {
+		long hash = (key * 31 + precision) * 0x9E3779B97F4A7C15L;
+		return (int)(hash >>> 32) & (SIZE - 1);
+	}
+}
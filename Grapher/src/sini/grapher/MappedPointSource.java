@@ -0,0 +1,88 @@
+package sini.grapher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Points read from a file of raw little-endian doubles, as x and y coordinates in turn, which is mapped into memory rather than read. The
+ * operating system pages the points in as they are used and may drop them again under memory pressure, so the file may be far larger than
+ * the heap.
+ * 
+ * <p>A single mapping holds at most 2GB, so the file is mapped in chunks of {@code chunkPoints} points. Any bytes at the end of the file
+ * that do not make up a whole point are ignored. The mappings are released once the source has been garbage collected.
+ */
+public class MappedPointSource implements PointSource {
+	
+	public static final int DEFAULT_CHUNK_POINTS = 1 << 26; // 1GB per chunk
+	
+	private final File file;
+	private final long size;
+	
+	private final int chunkShift;
+	private final long chunkMask;
+	private final DoubleBuffer[] chunks;
+	
+	private PointLodIndex lodIndex;
+	
+	public MappedPointSource(File file) throws IOException {
+		this(file, DEFAULT_CHUNK_POINTS);
+	}
+	
+	/**
+	 * Maps {@code file} in chunks of {@code chunkPoints} points, which must be a power of 2 no larger than {@code DEFAULT_CHUNK_POINTS}.
+	 */
+	public MappedPointSource(File file, int chunkPoints) throws IOException {
+		if(chunkPoints <= 0 || chunkPoints > DEFAULT_CHUNK_POINTS || Integer.bitCount(chunkPoints) != 1) {
+			throw new IllegalArgumentException("Chunk size must be a power of 2 no larger than " + DEFAULT_CHUNK_POINTS + ": " + chunkPoints);
+		}
+		
+		this.file = file;
+		chunkShift = Integer.numberOfTrailingZeros(chunkPoints);
+		chunkMask = chunkPoints - 1;
+		
+		// The mappings stay valid after the channel is closed
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			size = channel.size() / 16;
+			chunks = new DoubleBuffer[(int)((size + chunkMask) >>> chunkShift)];
+			
+			for(int i = 0; i < chunks.length; i++) {
+				long first = (long)i << chunkShift;
+				long points = Math.min(chunkPoints, size - first);
+				
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, 16 * first, 16 * points).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+			}
+		}
+	}
+	
+	@Override
+	public long size() {
+		return size;
+	}
+	
+	@Override
+	public double getX(long i) {
+		return chunks[(int)(i >>> chunkShift)].get(2 * (int)(i & chunkMask));
+	}
+	
+	@Override
+	public double getY(long i) {
+		return chunks[(int)(i >>> chunkShift)].get(2 * (int)(i & chunkMask) + 1);
+	}
+	
+	@Override
+	public PointLodIndex getLodIndex() {
+		return lodIndex;
+	}
+	
+	public void setLodIndex(PointLodIndex lodIndex) {
+		this.lodIndex = lodIndex;
+	}
+	
+	public File getFile() {
+		return file;
+	}
+}
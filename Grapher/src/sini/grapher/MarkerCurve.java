@@ -0,0 +1,99 @@
+package sini.grapher;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.util.ArrayList;
+
+/**
+ * Markers at the {@link CurveAnalysis.Feature features} found on curves: a ring at each root, a triangle pointing up at each maximum and
+ * down at each minimum, and a diamond at each intersection. The markers keep the same size in pixels at every zoom.
+ */
+public class MarkerCurve implements Curve {
+	
+	private static final double MARKER_SIZE = 8;
+	
+	private ArrayList<CurveAnalysis.Feature> features;
+	private Color color;
+	private long version;
+	
+	public MarkerCurve(ArrayList<CurveAnalysis.Feature> features) {
+		this(features, Color.BLACK);
+	}
+	
+	public MarkerCurve(ArrayList<CurveAnalysis.Feature> features, Color color) {
+		this.features = features;
+		this.color = color;
+	}
+	
+	public synchronized void setFeatures(ArrayList<CurveAnalysis.Feature> features) {
+		this.features = features;
+		version++;
+	}
+	
+	public synchronized ArrayList<CurveAnalysis.Feature> getFeatures() {
+		return features;
+	}
+	
+	public synchronized void setColor(Color color) {
+		this.color = color;
+		version++;
+	}
+	
+	@Override
+	public synchronized long getVersion() {
+		return version;
+	}
+	
+	@Override
+	public synchronized void draw(Display display, Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(color);
+		g.setStroke(new BasicStroke(1.5f));
+		
+		double r = MARKER_SIZE / 2;
+		Path2D.Double filled = new Path2D.Double();
+		Path2D.Double outlined = new Path2D.Double();
+		
+		for(CurveAnalysis.Feature feature: features) {
+			double x = display.getDisplayX(feature.getX());
+			double y = display.getDisplayY(feature.getY());
+			
+			if(x < -MARKER_SIZE || y < -MARKER_SIZE || x > display.getWidth() + MARKER_SIZE || y > display.getHeight() + MARKER_SIZE) continue;
+			
+			switch(feature.getKind()) {
+			case ROOT:
+				outlined.append(new Ellipse2D.Double(x - r, y - r, MARKER_SIZE, MARKER_SIZE), false);
+				break;
+			case MAXIMUM:
+				filled.moveTo(x, y - r);
+				filled.lineTo(x + r, y + r);
+				filled.lineTo(x - r, y + r);
+				filled.closePath();
+				break;
+			case MINIMUM:
+				filled.moveTo(x, y + r);
+				filled.lineTo(x + r, y - r);
+				filled.lineTo(x - r, y - r);
+				filled.closePath();
+				break;
+			case INTERSECTION:
+				filled.moveTo(x, y - r);
+				filled.lineTo(x + r, y);
+				filled.lineTo(x, y + r);
+				filled.lineTo(x - r, y);
+				filled.closePath();
+				break;
+			}
+		}
+		
+		g.fill(filled);
+		g.draw(outlined);
+	}
+	
+	@Override
+	public void updateMesh(Interval interval, double step) {}
+}
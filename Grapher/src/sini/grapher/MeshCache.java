@@ -0,0 +1,275 @@
+package sini.grapher;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+/**
+ * A cache of meshes shared by every curve, so that returning to a viewport that has recently been seen does not rebuild its meshes. A
+ * mesh is stored against the curve it belongs to, the interval it covers and the step it was built with. Curves are held weakly, so
+ * caching a mesh does not keep its curve alive.
+ * 
+ * <p>The cache holds at most a fixed number of bytes of meshes, set by the system property {@code grapher.meshCacheBytes} for the shared
+ * cache. When it is full, meshes are evicted by the GreedyDual-Size policy: each mesh is given a credit of the time it took to build per
+ * byte it takes up, on top of a baseline that rises to the credit of each mesh evicted. The mesh with the least credit is evicted first,
+ * and using a mesh renews its credit, so meshes that are cheap to rebuild, large or long unused go first.
+ */
+public class MeshCache {
+	
+	public static final long DEFAULT_BUDGET = 64L << 20;
+	
+	private static final MeshCache shared = new MeshCache(Long.getLong("grapher.meshCacheBytes", DEFAULT_BUDGET));
+	
+	private long budget;
+	private long bytes;
+	private long hits;
+	private long misses;
+	
+	private double baseline;
+	private long nextSequence;
+	
+	private final ReferenceQueue<Object> deadCurves = new ReferenceQueue<Object>();
+	private final HashMap<Key, Entry> entries = new HashMap<Key, Entry>();
+	private final TreeSet<Entry> evictionOrder = new TreeSet<Entry>((a, b) -> (a.credit != b.credit) ? Double.compare(a.credit, b.credit) : Long.compare(a.sequence, b.sequence));
+	
+	/**
+	 * Creates a new cache that holds at most {@code budget} bytes of meshes.
+	 */
+	public MeshCache(long budget) {
+		this.budget = budget;
+	}
+	
+	
+	/**
+	 * Returns the cache shared by every curve.
+	 */
+	public static MeshCache getShared() {
+		return shared;
+	}
+	
+	
+	/**
+	 * Returns the mesh of {@code curve} over {@code interval} with step {@code step}, or {@code null} if it is not cached.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> T get(Object curve, Interval interval, double step) {
+		Entry entry = entries.get(new Key(curve, interval, step));
+		
+		if(entry == null) {
+			misses++;
+			return null;
+		}
+		
+		hits++;
+		
+		evictionOrder.remove(entry);
+		entry.credit = baseline + entry.costPerByte;
+		entry.sequence = nextSequence++;
+		evictionOrder.add(entry);
+		
+		return (T) entry.mesh;
+	}
+	
+	
+	/**
+	 * Caches {@code mesh} as the mesh of {@code curve} over {@code interval} with step {@code step}, where the mesh takes up about
+	 * {@code meshBytes} bytes and took {@code costNanos} nanoseconds to build. Meshes larger than the whole budget are not cached.
+	 */
+	public synchronized void put(Object curve, Interval interval, double step, Object mesh, long meshBytes, long costNanos) {
+		if(meshBytes > budget) return;
+		evictDeadEntries();
+		
+		Key key = new Key(curve, interval, step);
+		Entry old = entries.remove(key);
+		if(old != null) removeEntry(old);
+		
+		Entry entry = new Entry(key, mesh, meshBytes, (double)Math.max(1, costNanos) / Math.max(1, meshBytes));
+		entry.credit = baseline + entry.costPerByte;
+		entry.sequence = nextSequence++;
+		
+		entries.put(key, entry);
+		evictionOrder.add(entry);
+		bytes += meshBytes;
+		
+		evict();
+	}
+	
+	
+	/**
+	 * Sets the number of bytes of meshes the cache may hold, evicting meshes if it now holds more.
+	 */
+	public synchronized void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+	
+	
+	public synchronized long getBudget() {
+		return budget;
+	}
+	
+	
+	/**
+	 * Returns the number of bytes of meshes held by the cache.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+	
+	
+	public synchronized int getSize() {
+		return entries.size();
+	}
+	
+	
+	/**
+	 * Returns the fraction of lookups that found a cached mesh, or 0 if there have been none.
+	 */
+	public synchronized double getHitRate() {
+		return (hits + misses == 0) ? 0 : (double)hits / (hits + misses);
+	}
+	
+	
+	/**
+	 * Removes every mesh from the cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		evictionOrder.clear();
+		bytes = 0;
+		baseline = 0;
+	}
+	
+	
+	/**
+	 * Returns an estimate of the number of bytes taken up by {@code mesh}, a list of cells whose vertices are arrays of coordinates.
+	 */
+	public static long sizeOf(ArrayList<double[][]> mesh) {
+		if(mesh.isEmpty()) return 0;
+		
+		double[][] cell = mesh.get(0);
+		int dimension = (cell.length == 0) ? 0 : cell[0].length;
+		
+		// An array header is 16 bytes, references are 4 bytes (compressed) and the list holds one reference for each cell
+		long cellBytes = 4 + 16 + 4L * cell.length + cell.length * (16 + 8L * dimension);
+		return 16 + mesh.size() * cellBytes;
+	}
+	
+	
+	/**
+	 * Returns the largest power of 2 that is no larger than {@code step}, so that meshes built for nearby zoom levels share a step.
+	 */
+	public static double quantizeStep(double step) {
+		return Math.scalb(1.0, Math.getExponent(step));
+	}
+	
+	
+	private void evict() {
+		while(bytes > budget && !evictionOrder.isEmpty()) {
+			Entry entry = evictionOrder.first();
+			baseline = entry.credit;
+			
+			entries.remove(entry.key);
+			removeEntry(entry);
+		}
+	}
+	
+	
+	/**
+	 * Removes the meshes of curves that have been garbage collected.
+	 */
+	private void evictDeadEntries() {
+		CurveReference reference;
+		
+		while((reference = (CurveReference) deadCurves.poll()) != null) {
+			Entry entry = entries.remove(reference.key);
+			if(entry != null) removeEntry(entry);
+		}
+	}
+	
+	
+	private void removeEntry(Entry entry) {
+		evictionOrder.remove(entry);
+		bytes -= entry.bytes;
+	}
+	
+	
+	private class Key {
+		private final CurveReference curve;
+		private final int curveHash;
+		private final double step;
+		private final double[] bounds;
+		private final int hash;
+		
+		private Key(Object curve, Interval interval, double step) {
+			this.curve = new CurveReference(curve, this);
+			this.step = step;
+			
+			curveHash = System.identityHashCode(curve);
+			bounds = new double[2 * interval.getDimension()];
+			
+			int i = 0;
+			Iterator<Interval> iter = interval.getFactorIterator();
+			
+			while(iter.hasNext()) {
+				Interval factor = iter.next();
+				bounds[i++] = factor.lower();
+				bounds[i++] = factor.upper();
+			}
+			
+			hash = (curveHash * 31 + Double.hashCode(step)) * 31 + Arrays.hashCode(bounds);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if(obj instanceof Key) {
+				Key key = (Key) obj;
+				if(this == key) return true;
+				
+				Object referent = curve.get();
+				return curveHash == key.curveHash && referent != null && referent == key.curve.get() && step == key.step && Arrays.equals(bounds, key.bounds);
+			}
+			return false;
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+	
+	
+	/**
+	 * A weak reference to the curve of a key, which is queued once the curve has been garbage collected so that its meshes can be removed.
+	 */
+	private class CurveReference extends WeakReference<Object> {
+		private final Key key;
+		
+		private CurveReference(Object curve, Key key) {
+			super(curve, deadCurves);
+			this.key = key;
+		}
+	}
+	
+	
+	private static class Entry {
+		private final Key key;
+		private final Object mesh;
+		private final long bytes;
+		private final double costPerByte;
+		
+		private double credit;
+		private long sequence;
+		
+		private Entry(Key key, Object mesh, long bytes, double costPerByte) {
+			this.key = key;
+			this.mesh = mesh;
+			this.bytes = bytes;
+			this.costPerByte = costPerByte;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package sini.grapher;
+
+/**
+ * A camera that orbits a point, for viewing a {@link SurfacePlot}. The camera sits on a sphere around its target, at an azimuth (yaw)
+ * measured in the xy-plane from the x axis and an elevation (pitch) above it, and always looks at the target with the z axis pointing up
+ * the screen. The elevation is kept short of the poles, where the up direction would be undefined.
+ * 
+ * <p>The distance to the target is measured in units of the radius of whatever is being viewed, so that a camera can be shared by
+ * surfaces of any size and each fills about the same part of the screen.
+ */
+public class OrbitCamera {
+	
+	public static final double MAX_PITCH = Math.toRadians(89);
+	public static final double MIN_DISTANCE = 1.05; // Just outside the bounding sphere of the surface
+	
+	private double yaw;
+	private double pitch;
+	private double distance;
+	private double fieldOfView;
+	private long version;
+	
+	/**
+	 * Creates a camera looking down on its target from the front left, at the distance that fits its bounding sphere into the field of
+	 * view.
+	 */
+	public OrbitCamera() {
+		this(Math.toRadians(-60), Math.toRadians(30), 2.5);
+	}
+	
+	public OrbitCamera(double yaw, double pitch, double distance) {
+		fieldOfView = Math.toRadians(45);
+		set(yaw, pitch, distance);
+	}
+	
+	/**
+	 * Moves the camera to the given azimuth, elevation and distance, with the elevation and distance kept within their limits.
+	 */
+	public void set(double yaw, double pitch, double distance) {
+		this.yaw = Math.IEEEremainder(yaw, 2 * Math.PI);
+		this.pitch = Math.max(-MAX_PITCH, Math.min(MAX_PITCH, pitch));
+		this.distance = Math.max(MIN_DISTANCE, distance);
+		version++;
+	}
+	
+	/**
+	 * Turns the camera about its target by {@code deltaYaw} around the z axis and {@code deltaPitch} up towards it, in radians.
+	 */
+	public void rotate(double deltaYaw, double deltaPitch) {
+		set(yaw + deltaYaw, pitch + deltaPitch, distance);
+	}
+	
+	/**
+	 * Moves the camera towards its target by {@code factor}, so that a factor above 1 zooms in.
+	 */
+	public void zoom(double factor) {
+		set(yaw, pitch, distance / factor);
+	}
+	
+	public double getYaw() {
+		return yaw;
+	}
+	
+	public double getPitch() {
+		return pitch;
+	}
+	
+	public double getDistance() {
+		return distance;
+	}
+	
+	/**
+	 * Returns the vertical angle of view, in radians.
+	 */
+	public double getFieldOfView() {
+		return fieldOfView;
+	}
+	
+	/**
+	 * Returns a number that changes whenever the camera moves.
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Returns the unit vector from the target towards the camera.
+	 */
+	public double[] getDirection() {
+		return new double[] {Math.cos(pitch) * Math.cos(yaw), Math.cos(pitch) * Math.sin(yaw), Math.sin(pitch)};
+	}
+	
+	/**
+	 * Returns the unit vector pointing right across the screen, which is horizontal.
+	 */
+	public double[] getRight() {
+		return new double[] {-Math.sin(yaw), Math.cos(yaw), 0};
+	}
+	
+	/**
+	 * Returns the unit vector pointing up the screen, perpendicular to the direction and the right vector.
+	 */
+	public double[] getUp() {
+		return new double[] {-Math.sin(pitch) * Math.cos(yaw), -Math.sin(pitch) * Math.sin(yaw), Math.cos(pitch)};
+	}
+}
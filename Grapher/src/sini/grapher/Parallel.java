@@ -0,0 +1,78 @@
+package sini.grapher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The pool of threads shared by everything that splits its work across the processors, such as rendering layers, splatting points and
+ * rasterising surfaces, so that there is one thread per processor however many kinds of work there are.
+ * 
+ * <p>Tasks run from a thread of the pool, as when a curve drawn into a layer splits its own work, are run on that thread instead, since
+ * the other threads may all be waiting for tasks of their own. The outer level of work already keeps every processor busy.
+ * 
+ * <p>If the calling thread is interrupted while it waits, the tasks still running are cancelled, the interrupt is restored and a
+ * {@link CancellationException} is thrown, so that the caller never goes on with the results of only some of its tasks.
+ */
+class Parallel {
+	
+	static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+	
+	private static final ExecutorService pool = Executors.newFixedThreadPool(PROCESSORS, r -> new Worker(r));
+	
+	private Parallel() {}
+	
+	/**
+	 * Runs {@code tasks} on the pool, or on this thread if there is only one or this is a thread of the pool, and returns their results in
+	 * order. An exception thrown by a task is rethrown, wrapped in an {@code IllegalStateException} if it is checked.
+	 */
+	static <T> ArrayList<T> run(List<? extends Callable<T>> tasks) {
+		ArrayList<T> results = new ArrayList<T>(tasks.size());
+		
+		try {
+			if(tasks.size() == 1 || PROCESSORS == 1 || Thread.currentThread() instanceof Worker) {
+				for(Callable<T> task: tasks) {
+					if(Thread.interrupted()) throw new InterruptedException();
+					results.add(task.call());
+				}
+				
+				return results;
+			}
+			
+			for(Future<T> result: pool.invokeAll(tasks)) results.add(result.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			
+			CancellationException cancellation = new CancellationException("Interrupted while waiting for tasks");
+			cancellation.initCause(e);
+			throw cancellation;
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if(e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		
+		return results;
+	}
+	
+	
+	/**
+	 * A thread of the pool, which is a daemon so that the pool never keeps the application running.
+	 */
+	private static class Worker extends Thread {
+		
+		Worker(Runnable r) {
+			super(r, "grapher-worker");
+			setDaemon(true);
+		}
+	}
+}
@@ -5,16 +5,26 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Polygon;
 import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.function.Function;
 
+import sini.dual.DualVectorFunction;
+import sini.grapher.profiling.Counters;
+import sini.grapher.profiling.MeshUpdateEvent;
+
 public class ParametricCurve implements Curve {
 	
+	private static final double FINITE_DIFFERENCE_STEP = 1.5e-8;
+	
 	private Color color;
+	private long version;
 	private Function<double[], double[]> f;
 	private ArrayList<double[][]> mesh;
+	private double meshOriginX, meshOriginY; // The point that the points of the mesh are offsets from
+	private MeshCache cache = MeshCache.getShared();
 	
 	public ParametricCurve(Function<double[], double[]> f) {
 		this(f, Color.RED);
@@ -38,15 +48,107 @@ public class ParametricCurve implements Curve {
 	
 	public void setColor(Color color) {
 		this.color = color;
+		version++;
+	}
+	
+	public Color getColor() {
+		return color;
+	}
+	
+	@Override
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Sets the cache that meshes of the curve are kept in, or turns caching off if {@code cache} is {@code null}. The shared cache is
+	 * used by default.
+	 */
+	public void setMeshCache(MeshCache cache) {
+		this.cache = cache;
+	}
+	
+	/**
+	 * Returns the Jacobian of the function at {@code p}, the row {@code i} of which holds the partial derivatives of the coordinate
+	 * {@code i} with respect to each parameter. If the function is a {@link DualVectorFunction} it comes from one evaluation, and
+	 * otherwise it is found by forward differences, which take one more evaluation for each parameter.
+	 */
+	public double[][] getJacobian(double[] p) {
+		if(f instanceof DualVectorFunction) {
+			Counters.addFunctionEvaluations(1);
+			return ((DualVectorFunction) f).getJacobian(p);
+		}
+		
+		double[] value = f.apply(p);
+		double[][] jacobian = new double[value.length][p.length];
+		
+		for(int j = 0; j < p.length; j++) {
+			double[] q = p.clone();
+			double h = FINITE_DIFFERENCE_STEP * Math.max(1, Math.abs(p[j]));
+			q[j] += h;
+			
+			double[] shifted = f.apply(q);
+			for(int i = 0; i < value.length; i++) jacobian[i][j] = (shifted[i] - value[i]) / h;
+		}
+		
+		Counters.addFunctionEvaluations(p.length + 1);
+		return jacobian;
+	}
+	
+	protected MeshCache getMeshCache() {
+		return cache;
 	}
 	
 	public ArrayList<double[][]> getMesh() {
 		return mesh;
 	}
 	
+	/**
+	 * Replaces the mesh of the curve with {@code mesh}. Like {@link #updateMesh}, this does not change the version of the curve.
+	 */
+	protected void setMesh(ArrayList<double[][]> mesh) {
+		this.mesh = mesh;
+	}
+	
+	/**
+	 * Returns the point that the points of the mesh are offsets from, which is (0, 0) unless a subclass has meshed the curve relative to
+	 * another origin.
+	 */
+	public double[] getMeshOrigin() {
+		return new double[] {meshOriginX, meshOriginY};
+	}
+	
+	/**
+	 * Sets the point that the points of the mesh are offsets from, for subclasses that mesh the curve relative to an origin near the
+	 * viewport at deep zoom.
+	 */
+	protected void setMeshOrigin(double x, double y) {
+		meshOriginX = x;
+		meshOriginY = y;
+	}
+	
+	/**
+	 * Changes the version of the curve, for subclasses that have changed its appearance.
+	 */
+	protected void markChanged() {
+		version++;
+	}
+	
 	public void updateMesh(Interval interval, double step) {
+		ArrayList<double[][]> cachedMesh = (cache == null) ? null : cache.get(this, interval, step);
+		
+		if(cachedMesh != null) {
+			mesh = cachedMesh;
+			return;
+		}
+		
+		MeshUpdateEvent event = new MeshUpdateEvent();
+		event.begin();
+		long start = System.nanoTime();
+		
 		mesh = new ArrayList<double[][]>();
 		Iterator<double[][]> iter = interval.getPointCubeIterator(step);
+		long evaluations = 0;
 		
 		while(iter.hasNext()) {
 			double[][] currentMeshSeg = iter.next();
@@ -59,8 +161,45 @@ public class ParametricCurve implements Curve {
 			}
 			
 			for(int i = 0; i < currentMeshSeg.length; i++) currentMeshSeg[i] = f.apply(currentMeshSeg[i]);
+			evaluations += currentMeshSeg.length;
 			mesh.add(currentMeshSeg);
 		}
+		
+		Counters.addFunctionEvaluations(evaluations);
+		if(cache != null) cache.put(this, interval, step, mesh, MeshCache.sizeOf(mesh), System.nanoTime() - start);
+		event.end();
+		
+		if(event.shouldCommit()) {
+			event.curveType = getClass().getSimpleName();
+			event.step = step;
+			event.meshSize = mesh.size();
+			event.evaluations = evaluations;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Replaces the mesh of the curve with the images of {@code points}, each of which is drawn as a dot. This samples a curve over a
+	 * parameter domain of 3 or more dimensions, whose lattice of n-cubes grows as {@code step^(-d)} and cannot be drawn as polygons,
+	 * from a few thousand points of an {@link Interval#getSobolIterator Sobol}, {@link Interval#getHaltonIterator Halton} or
+	 * {@link Interval#getSparseGridIterator sparse grid} iterator instead. The point cloud is not cached.
+	 */
+	public void updatePointCloud(Iterator<double[]> points) {
+		MeshUpdateEvent event = new MeshUpdateEvent();
+		event.begin();
+		
+		mesh = new ArrayList<double[][]>();
+		while(points.hasNext()) mesh.add(new double[][] {f.apply(points.next())});
+		
+		Counters.addFunctionEvaluations(mesh.size());
+		event.end();
+		
+		if(event.shouldCommit()) {
+			event.curveType = getClass().getSimpleName();
+			event.meshSize = mesh.size();
+			event.evaluations = mesh.size();
+			event.commit();
+		}
 	}
 
 	public void draw(Display display, Graphics2D g) {
@@ -71,21 +210,28 @@ public class ParametricCurve implements Curve {
 		for(double[][] meshSegment: mesh) {
 			fillPolytope(display, g, meshSegment);
 		}
+		
+		Counters.addSegmentsDrawn(mesh.size());
 	}
 
 	private void fillPolytope(Display display, Graphics2D g, double[][] meshSegment) {
 		switch(intLog(meshSegment.length)) {
+		case 0: // a point of a point cloud - draw a dot
+			g.fill(new Ellipse2D.Double(
+					display.getDisplayX(meshOriginX, meshSegment[0][0]) - 1.5, display.getDisplayY(meshOriginY, meshSegment[0][1]) - 1.5, 3, 3));
+			break;
+			
 		case 1: // 1-dimensional interval - draw a line
 			// we are assuming the points on the mesh are 2 dimensional for now
-			PointDouble p1 = display.getDisplayPoint(new PointDouble(meshSegment[0][0], meshSegment[0][1]));
-			PointDouble p2 = display.getDisplayPoint(new PointDouble(meshSegment[1][0], meshSegment[1][1]));;
-			g.draw(new Line2D.Double(p1.x, p1.y, p2.x, p2.y));
+			g.draw(new Line2D.Double(
+					display.getDisplayX(meshOriginX, meshSegment[0][0]), display.getDisplayY(meshOriginY, meshSegment[0][1]),
+					display.getDisplayX(meshOriginX, meshSegment[1][0]), display.getDisplayY(meshOriginY, meshSegment[1][1])));
 			
 		case 2: // 2-dimensional interval - draw a polygon
 			// we are assuming the points on the mesh are 2 dimensional for now
 			Polygon p = new Polygon();
 			for(int i=0; i < meshSegment.length; i++) {
-				p.addPoint((int)display.getDisplayX(meshSegment[i][0]), (int)display.getDisplayY(meshSegment[i][1]));
+				p.addPoint((int)display.getDisplayX(meshOriginX, meshSegment[i][0]), (int)display.getDisplayY(meshOriginY, meshSegment[i][1]));
 			}
 			
 			g.draw(p);
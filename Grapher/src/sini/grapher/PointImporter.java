@@ -0,0 +1,145 @@
+package sini.grapher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Imports large sets of points from files, without reading them into the heap.
+ * 
+ * <p>Binary files hold raw little-endian doubles, as x and y coordinates in turn, and are mapped into memory as they are. CSV files are
+ * read a line at a time and converted into a binary file, which is then mapped. Each line of a CSV file gives the x and y coordinates of
+ * a point as its first two fields, separated by commas, semicolons, tabs or spaces; blank lines and lines starting with {@code #} are
+ * skipped, as is a header on the first line.
+ * 
+ * <p>If asked to, the importer also builds a {@link PointLodIndex} of the points, which is kept next to the binary file with the extension
+ * {@code .lod} and reused on later imports of the same file. An index written well after the file last changed is reused as it is. One
+ * written around the same time as the file, or before it, may be of earlier points of the same length, since modification times are
+ * only recorded to a second or two, so the points are checked against the hash the index holds first.
+ */
+public class PointImporter {
+	
+	private static final int WRITE_BUFFER_BYTES = 1 << 20;
+	private static final long MODIFIED_TIME_GRANULARITY = 2000; // Milliseconds, as on FAT file systems; most are finer
+	
+	private PointImporter() {}
+	
+	
+	/**
+	 * Maps the binary file {@code file}, with a level of detail index if {@code lodIndex} is set and the points are sorted by x.
+	 */
+	public static MappedPointSource importBinary(File file, boolean lodIndex) throws IOException {
+		MappedPointSource source = new MappedPointSource(file);
+		
+		if(lodIndex) {
+			File indexFile = getIndexFile(file);
+			boolean isRacy = indexFile.lastModified() - file.lastModified() <= MODIFIED_TIME_GRANULARITY;
+			PointLodIndex index = PointLodIndex.open(source, indexFile, isRacy);
+			
+			source.setLodIndex((index != null) ? index : PointLodIndex.build(source, indexFile));
+		}
+		
+		return source;
+	}
+	
+	
+	/**
+	 * Converts the CSV file {@code csv} into the binary file {@code binary}, and maps it as {@link #importBinary} does.
+	 */
+	public static MappedPointSource importCsv(File csv, File binary, boolean lodIndex) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		
+		try(BufferedReader reader = Files.newBufferedReader(csv.toPath(), StandardCharsets.UTF_8);
+				FileChannel channel = FileChannel.open(binary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			
+			double[] point = new double[2];
+			String line;
+			int lineNumber = 0;
+			
+			while((line = reader.readLine()) != null) {
+				lineNumber++;
+				
+				if(line.isBlank() || line.startsWith("#")) continue;
+				
+				if(!parsePoint(line, point)) {
+					if(lineNumber == 1) continue;
+					throw new IOException("Line " + lineNumber + " of " + csv + " does not start with two numbers: " + line);
+				}
+				
+				if(buffer.remaining() < 16) {
+					write(channel, buffer);
+				}
+				
+				buffer.putDouble(point[0]);
+				buffer.putDouble(point[1]);
+			}
+			
+			write(channel, buffer);
+		}
+		
+		return importBinary(binary, lodIndex);
+	}
+	
+	
+	/**
+	 * Converts the CSV file {@code csv} into a temporary binary file, which is deleted when the virtual machine exits, and maps it as
+	 * {@link #importBinary} does.
+	 */
+	public static MappedPointSource importCsv(File csv, boolean lodIndex) throws IOException {
+		File binary = File.createTempFile("points", ".bin");
+		binary.deleteOnExit();
+		getIndexFile(binary).deleteOnExit();
+		
+		return importCsv(csv, binary, lodIndex);
+	}
+	
+	
+	public static File getIndexFile(File binary) {
+		return new File(binary.getPath() + ".lod");
+	}
+	
+	
+	/**
+	 * Reads the first two fields of {@code line} into {@code point}, returning false if they are not both numbers.
+	 */
+	private static boolean parsePoint(String line, double[] point) {
+		int start = 0;
+		
+		for(int field = 0; field < 2; field++) {
+			while(start < line.length() && isSeparator(line.charAt(start))) start++;
+			
+			int end = start;
+			while(end < line.length() && !isSeparator(line.charAt(end))) end++;
+			
+			if(start == end) return false;
+			
+			try {
+				point[field] = Double.parseDouble(line.substring(start, end));
+			} catch (NumberFormatException e) {
+				return false;
+			}
+			
+			start = end;
+		}
+		
+		return true;
+	}
+	
+	
+	private static boolean isSeparator(char c) {
+		return c == ',' || c == ';' || c == '\t' || c == ' ';
+	}
+	
+	
+	private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+}
@@ -3,18 +3,45 @@ package sini.grapher;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.nio.DoubleBuffer;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.function.Function;
 
-public class PointListCurve implements Curve {
+import sini.grapher.profiling.Counters;
+
+/**
+ * A curve through a list of points. Straight after the zoom level changes, the curve is drawn without antialiasing, which is several
+ * times quicker for thick lines, and through only every {@code stride}-th point, with the stride chosen so that about
+ * {@code COARSE_POINTS} points are drawn. Each refinement halves the stride, and the last turns antialiasing back on.
+ * 
+ * <p>The points are read from a {@link PointSource}, which may be a file mapped into memory. If the source has a {@link PointLodIndex},
+ * only the points in view are visited, found by binary search, and where there are more than {@code 2 * BASE_POINTS} of them to a column
+ * of pixels the curve is drawn as the envelope of the minimum and maximum of each bucket of the index instead, so that drawing takes time
+ * in proportion to the width of the display rather than to the number of points. Curves with an index are drawn in full straight away,
+ * and are only drawn without antialiasing until they are refined.
+ * 
+ * @author Sini
+ */
+public class PointListCurve implements ProgressiveCurve {
+	
+	private static final int COARSE_POINTS = 64;
 	
 	private Color color;
-	private ArrayList<double[]> points;
+	private long version;
+	private PointSource points;
 	private float thickness;
-
+	
+	private long stride = 1;
+	private boolean antialiased = true;
+	private double step;
+	
+	// The bounding box of the points, found the first time it is needed
+	private boolean isBounded;
+	private double minX, maxX, minY, maxY;
+	
 	public PointListCurve(ArrayList<double[]> points) {
 		this(points, Color.BLUE, 2);
 	}
@@ -27,38 +54,230 @@ public class PointListCurve implements Curve {
 		this(points, color, thickness);
 	}
 	
+	/**
+	 * Creates a curve through {@code points}, each an array of its x and y coordinates. The points are copied, so points added to or
+	 * changed in the list afterwards are not drawn; to change the points, create a new curve.
+	 */
 	public PointListCurve(ArrayList<double[]> points, Color color, float thickness) {
+		this(DoubleBuffer.wrap(pack(points)), color, thickness);
+	}
+	
+	/**
+	 * Creates a curve through the points in {@code coordinates}, which holds the x and y coordinates of each point in turn. The buffer is
+	 * used as it is, without being copied.
+	 */
+	public PointListCurve(DoubleBuffer coordinates, Color color, float thickness) {
+		this(new BufferPointSource(coordinates), color, thickness);
+	}
+	
+	public PointListCurve(PointSource points, Color color, float thickness) {
 		this.thickness = thickness;
 		this.color = color;
 		this.points = points;
 	}
 	
+	/**
+	 * Returns the x and y coordinates of {@code points} packed into one array.
+	 */
+	public static double[] pack(ArrayList<double[]> points) {
+		double[] coordinates = new double[2 * points.size()];
+		
+		for(int i = 0; i < points.size(); i++) {
+			double[] point = points.get(i);
+			coordinates[2*i] = point[0];
+			coordinates[2*i + 1] = point[1];
+		}
+		
+		return coordinates;
+	}
+	
 	public void setColor(Color color) {
 		this.color = color;
+		version++;
 	}
-
+	
+	@Override
+	public long getVersion() {
+		return version;
+	}
+	
+	public PointSource getPoints() {
+		return points;
+	}
+	
 	@Override
 	public void draw(Display display, Graphics2D g) {
-		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiased ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
 		g.setColor(color);
 		g.setStroke(new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
 		
-		Iterator<double[]> iter = points.iterator();
-		double[] lastPoint = iter.next();
-		double[] curPoint = iter.next();
+		long size = points.size();
+		if(size == 0) return;
+		
+		// Segments that lie entirely outside of the clip, allowing for the thickness of the line, are skipped
+		Rectangle bounds = g.getClipBounds();
+		if(bounds != null) bounds.grow((int)Math.ceil(thickness), (int)Math.ceil(thickness));
+		
+		PointLodIndex index = points.getLodIndex();
+		
+		if(index != null) {
+			drawIndexed(display, g, index, (bounds != null) ? bounds : new Rectangle(display.getWidth(), display.getHeight()));
+			return;
+		}
+		
+		double lastX = points.getX(0);
+		double lastY = points.getY(0);
+		
+		long segments = 0;
+		
+		// Without antialiasing, one path is quicker to stroke than many segments. With antialiasing, the overlapping joins of a thick path
+		// make it slower, so the segments are drawn one by one
+		Path2D.Double path = antialiased ? null : new Path2D.Double();
+		boolean isPathOpen = false;
+		
+		for(long i = 1; i < size; i++) {
+			// Points between strides are skipped, but the last point is always drawn
+			if(i % stride != 0 && i != size - 1) continue;
+			
+			double curX = points.getX(i);
+			double curY = points.getY(i);
+			
+			double x1 = display.getDisplayX(lastX);
+			double y1 = display.getDisplayY(lastY);
+			double x2 = display.getDisplayX(curX);
+			double y2 = display.getDisplayY(curY);
+			
+			if(bounds == null || bounds.intersectsLine(x1, y1, x2, y2)) {
+				if(path == null) {
+					g.draw(new Line2D.Double(x1, y1, x2, y2));
+				} else {
+					if(!isPathOpen) path.moveTo(x1, y1);
+					path.lineTo(x2, y2);
+					isPathOpen = true;
+				}
+				
+				segments++;
+			} else {
+				isPathOpen = false;
+			}
+			
+			lastX = curX;
+			lastY = curY;
+		}
+		
+		if(path != null) g.draw(path);
 		
-		while(iter.hasNext()) {
-			PointDouble p1 = display.getDisplayPoint(new PointDouble(lastPoint[0], lastPoint[1]));
-			PointDouble p2 = display.getDisplayPoint(new PointDouble(curPoint[0], curPoint[1]));
+		Counters.addSegmentsDrawn(segments);
+	}
+	
+	/**
+	 * Draws the points within {@code bounds} as one path, through each point if there are few enough of them, and otherwise through the
+	 * minimum and maximum of each bucket of {@code index} in turn.
+	 */
+	private void drawIndexed(Display display, Graphics2D g, PointLodIndex index, Rectangle bounds) {
+		long size = points.size();
+		
+		// One point either side of the bounds is included, so that the lines leading out of view are drawn
+		long first = Math.max(0, index.findFirst(display.getPlaneX(bounds.x)) - 1);
+		long last = Math.min(size - 1, index.findFirst(display.getPlaneX(bounds.x + bounds.width)));
+		
+		int level = index.getLevel((last - first + 1) / (2L * Math.max(1, bounds.width)));
+		Path2D.Double path = new Path2D.Double();
+		long segments = 0;
+		
+		if(level < 0) {
+			path.moveTo(display.getDisplayX(points.getX(first)), display.getDisplayY(points.getY(first)));
 			
-			g.draw(new Line2D.Double(p1.x, p1.y, p2.x, p2.y));
+			for(long i = first + 1; i <= last; i++) {
+				path.lineTo(display.getDisplayX(points.getX(i)), display.getDisplayY(points.getY(i)));
+				segments++;
+			}
+		} else {
+			long bucketSize = index.getBucketSize(level);
 			
-			lastPoint = curPoint;
-			curPoint = iter.next();
+			for(long bucket = first / bucketSize; bucket <= last / bucketSize; bucket++) {
+				double x = display.getDisplayX(points.getX(bucket * bucketSize));
+				double minY = display.getDisplayY(index.getMinY(level, bucket));
+				double maxY = display.getDisplayY(index.getMaxY(level, bucket));
+				
+				if(segments == 0) path.moveTo(x, minY);
+				else path.lineTo(x, minY);
+				
+				path.lineTo(x, maxY);
+				segments += 2;
+			}
 		}
+		
+		g.draw(path);
+		
+		Counters.addSegmentsDrawn(segments);
 	}
-
+	
 	@Override
 	public void updateMesh(Interval interval, double step) {}
+	
+	@Override
+	public PointListCurve copy() {
+		return new PointListCurve(points, color, thickness);
+	}
+	
+	@Override
+	public boolean setViewport(Interval visible, double step) {
+		if(step == this.step) return false;
+		this.step = step;
+		
+		stride = (points.getLodIndex() != null) ? 1 : Math.max(1, Long.highestOneBit(points.size() / COARSE_POINTS));
+		antialiased = false;
+		version++;
+		return true;
+	}
+	
+	@Override
+	public boolean refine(long deadline) {
+		if(stride > 1) stride /= 2;
+		else if(!antialiased) antialiased = true;
+		else return false;
+		
+		version++;
+		return stride > 1 || !antialiased;
+	}
+	
+	@Override
+	public boolean isVisible(Interval visible) {
+		if(!isBounded) findBounds();
+		
+		Interval yInterval = visible.getFactor();
+		return maxX >= visible.lower() && minX <= visible.upper() && maxY >= yInterval.lower() && minY <= yInterval.upper();
+	}
+	
+	private void findBounds() {
+		long size = points.size();
+		PointLodIndex index = points.getLodIndex();
+		
+		minX = minY = Double.POSITIVE_INFINITY;
+		maxX = maxY = Double.NEGATIVE_INFINITY;
+		
+		if(index != null) {
+			// The points are sorted by x, and the coarsest level of the index has a single bucket
+			if(size > 0) {
+				minX = points.getX(0);
+				maxX = points.getX(size - 1);
+				minY = index.getMinY(index.getLevels() - 1, 0);
+				maxY = index.getMaxY(index.getLevels() - 1, 0);
+			}
+		} else {
+			for(long i = 0; i < size; i++) {
+				double x = points.getX(i);
+				double y = points.getY(i);
+				
+				minX = Math.min(minX, x);
+				maxX = Math.max(maxX, x);
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+			}
+		}
+		
+		isBounded = true;
+	}
 
 }
@@ -0,0 +1,267 @@
+package sini.grapher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A level of detail index over a {@link PointSource} whose points are sorted by x, such as a series of measurements. The points are split
+ * into buckets of {@code BASE_POINTS} points, then {@code 2 * BASE_POINTS} points and so on, and the index holds the minimum and maximum y
+ * coordinate of each bucket at each level. A curve through millions of points can then be drawn as the envelope of a few buckets for each
+ * column of pixels, and the points in view can be found by binary search.
+ * 
+ * <p>The index takes about one double for every 16 points, and is kept in a file mapped into memory, so that it does not take up the heap
+ * and can be reused the next time the points are loaded. The file starts with a header of 32 bytes, giving a magic number, the format
+ * version, the number of points, the bucket size, the number of levels and a hash of the points, followed by the minimum and maximum of
+ * each bucket as doubles, level by level. Everything is little-endian, like the point files, so that an index can be moved between
+ * machines with its points.
+ */
+public class PointLodIndex {
+	
+	public static final int BASE_POINTS = 64;
+	
+	private static final int MAGIC = 0x47524C49; // "GRLI"
+	private static final int FORMAT_VERSION = 2;
+	private static final int HEADER_BYTES = 32;
+	private static final long HASH_SEED = 0xCBF29CE484222325L;
+	
+	private final PointSource source;
+	private final int levels;
+	private final long[] levelOffsets; // The position in data of the first bucket of each level
+	private final DoubleBuffer data;
+	
+	private PointLodIndex(PointSource source, MappedByteBuffer buffer) {
+		this.source = source;
+		
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		levels = buffer.getInt(20);
+		levelOffsets = getLevelOffsets(source.size(), levels);
+		
+		buffer.position(HEADER_BYTES);
+		data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+	}
+	
+	
+	/**
+	 * Builds the index of {@code source} in {@code file}, replacing anything already in it. Returns {@code null}, and deletes the file, if
+	 * the points are not sorted by x.
+	 */
+	public static PointLodIndex build(PointSource source, File file) throws IOException {
+		long size = source.size();
+		int levels = getLevelCount(size);
+		long[] levelOffsets = getLevelOffsets(size, levels);
+		long bytes = HEADER_BYTES + 8 * levelOffsets[levels];
+		
+		if(bytes > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many points to index: " + size);
+		
+		MappedByteBuffer buffer;
+		
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(0);
+			raf.setLength(bytes);
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		}
+		
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.position(HEADER_BYTES);
+		DoubleBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+		
+		// The first level is found from the points, checking that they are sorted and hashing them on the way
+		double lastX = Double.NEGATIVE_INFINITY;
+		long hash = HASH_SEED;
+		
+		for(long bucket = 0; bucket < getBucketCount(size, 0); bucket++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			
+			long end = Math.min(size, (bucket + 1) * BASE_POINTS);
+			
+			for(long i = bucket * BASE_POINTS; i < end; i++) {
+				double x = source.getX(i);
+				double y = source.getY(i);
+				
+				if(x < lastX) {
+					file.delete();
+					return null;
+				}
+				
+				lastX = x;
+				hash = hash(hash(hash, x), y);
+				if(y < min) min = y;
+				if(y > max) max = y;
+			}
+			
+			data.put((int)(2 * bucket), min);
+			data.put((int)(2 * bucket + 1), max);
+		}
+		
+		// Each further level merges pairs of buckets from the level below
+		for(int level = 1; level < levels; level++) {
+			int below = (int)levelOffsets[level - 1];
+			int offset = (int)levelOffsets[level];
+			long belowCount = getBucketCount(size, level - 1);
+			
+			for(long bucket = 0; bucket < getBucketCount(size, level); bucket++) {
+				int first = below + (int)(4 * bucket);
+				boolean hasSecond = 2 * bucket + 1 < belowCount;
+				
+				double min = data.get(first);
+				double max = data.get(first + 1);
+				
+				if(hasSecond) {
+					min = Math.min(min, data.get(first + 2));
+					max = Math.max(max, data.get(first + 3));
+				}
+				
+				data.put(offset + (int)(2 * bucket), min);
+				data.put(offset + (int)(2 * bucket + 1), max);
+			}
+		}
+		
+		// The header is written last, so that an index cut short while building is never opened
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, FORMAT_VERSION);
+		buffer.putLong(8, size);
+		buffer.putInt(16, BASE_POINTS);
+		buffer.putInt(20, levels);
+		buffer.putLong(24, hash);
+		buffer.force();
+		
+		return new PointLodIndex(source, buffer);
+	}
+	
+	
+	/**
+	 * Opens the index of {@code source} kept in {@code file}, or returns {@code null} if the file does not hold an index of the same
+	 * points.
+	 */
+	public static PointLodIndex open(PointSource source, File file) throws IOException {
+		return open(source, file, true);
+	}
+	
+	
+	/**
+	 * Opens the index of {@code source} kept in {@code file}, or returns {@code null} if the file does not hold an index of as many points.
+	 * If {@code verify} is set, the points are also hashed and compared with the points the index was built from, which reads every point
+	 * once; otherwise the caller must know by other means that the points have not changed.
+	 */
+	public static PointLodIndex open(PointSource source, File file, boolean verify) throws IOException {
+		if(!file.isFile()) return null;
+		
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long bytes = raf.length();
+			if(bytes < HEADER_BYTES || bytes > Integer.MAX_VALUE) return null;
+			
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, bytes);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			
+			if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) return null;
+			if(buffer.getLong(8) != source.size() || buffer.getInt(16) != BASE_POINTS) return null;
+			
+			int levels = buffer.getInt(20);
+			if(levels != getLevelCount(source.size()) || bytes != HEADER_BYTES + 8 * getLevelOffsets(source.size(), levels)[levels]) return null;
+			if(verify && buffer.getLong(24) != hash(source)) return null;
+			
+			return new PointLodIndex(source, buffer);
+		}
+	}
+	
+	
+	public int getLevels() {
+		return levels;
+	}
+	
+	
+	public long getBucketSize(int level) {
+		return (long)BASE_POINTS << level;
+	}
+	
+	
+	public long getBucketCount(int level) {
+		return getBucketCount(source.size(), level);
+	}
+	
+	
+	public double getMinY(int level, long bucket) {
+		return data.get((int)(levelOffsets[level] + 2 * bucket));
+	}
+	
+	
+	public double getMaxY(int level, long bucket) {
+		return data.get((int)(levelOffsets[level] + 2 * bucket + 1));
+	}
+	
+	
+	/**
+	 * Returns the coarsest level whose buckets hold at most {@code points} points, or -1 if even the finest level holds more.
+	 */
+	public int getLevel(long points) {
+		if(points < BASE_POINTS) return -1;
+		return Math.min(levels - 1, 63 - Long.numberOfLeadingZeros(points / BASE_POINTS));
+	}
+	
+	
+	/**
+	 * Returns the index of the first point whose x coordinate is at least {@code x}, or the number of points if there is none.
+	 */
+	public long findFirst(double x) {
+		long low = 0;
+		long high = source.size();
+		
+		while(low < high) {
+			long mid = (low + high) >>> 1;
+			
+			if(source.getX(mid) < x) low = mid + 1;
+			else high = mid;
+		}
+		
+		return low;
+	}
+	
+	
+	/**
+	 * Returns the hash of the coordinates of every point of {@code source}, as {@link #build} finds it.
+	 */
+	static long hash(PointSource source) {
+		long hash = HASH_SEED;
+		for(long i = 0; i < source.size(); i++) hash = hash(hash(hash, source.getX(i)), source.getY(i));
+		return hash;
+	}
+	
+	
+	/**
+	 * Mixes the bits of {@code value} into {@code hash}. Each step is invertible, so changing any one coordinate always changes the
+	 * hash, and the shift carries the high bits down so that changes to several of them do not cancel out.
+	 */
+	private static long hash(long hash, double value) {
+		hash = (hash ^ Double.doubleToRawLongBits(value)) * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 32);
+	}
+	
+	
+	private static long getBucketCount(long size, int level) {
+		long bucketSize = (long)BASE_POINTS << level;
+		return (size + bucketSize - 1) / bucketSize;
+	}
+	
+	
+	/**
+	 * Returns the number of levels needed for {@code size} points, stopping at the first level with a single bucket.
+	 */
+	private static int getLevelCount(long size) {
+		int levels = 0;
+		while(getBucketCount(size, levels) > 1) levels++;
+		return (size == 0) ? 0 : levels + 1;
+	}
+	
+	
+	private static long[] getLevelOffsets(long size, int levels) {
+		long[] offsets = new long[levels + 1];
+		for(int level = 0; level < levels; level++) offsets[level + 1] = offsets[level] + 2 * getBucketCount(size, level);
+		return offsets;
+	}
+}
@@ -0,0 +1,22 @@
+package sini.grapher;
+
+/**
+ * A sequence of points in the plane, indexed by {@code long} so that it may hold more points than fit in an array. A source may be backed
+ * by memory outside the heap, such as a file mapped into memory, in which case reading a point may have to fetch it from disk first.
+ */
+public interface PointSource {
+	
+	public abstract long size();
+	
+	public abstract double getX(long i);
+	
+	public abstract double getY(long i);
+	
+	/**
+	 * Returns an index of the minimum and maximum y coordinates of runs of points, used to draw many points quickly, or {@code null} if
+	 * the source has none.
+	 */
+	public default PointLodIndex getLodIndex() {
+		return null;
+	}
+}
@@ -0,0 +1,48 @@
+package sini.grapher;
+
+/**
+ * A curve that can be drawn from a coarse approximation straight after the viewport changes, and refined towards full detail over the
+ * following frames. A display asks each of its progressive curves to fit the new viewport, which must be quick, and then hands out the
+ * time left over in each frame to the curves that still have refining to do, visible curves and curves of higher priority first.
+ * 
+ * <p>Each piece of refinement that changes the appearance of the curve must also change its {@link #getVersion() version}, so that the
+ * display knows to draw it again.
+ */
+public interface ProgressiveCurve extends Curve {
+	
+	/**
+	 * Fits the curve to the region of the plane given by {@code visible}, a 2-dimensional interval, which is to be drawn with a mesh whose
+	 * step is eventually {@code step}. This should do no more than build a coarse approximation of the curve, leaving the rest of the work
+	 * to {@link #refine}.
+	 * @return true if the mesh of the curve was rebuilt, and false if it was left as it was.
+	 */
+	public abstract boolean setViewport(Interval visible, double step);
+	
+	/**
+	 * Refines the curve a step further towards full detail, returning promptly once {@link System#nanoTime()} has passed
+	 * {@code deadline}.
+	 * @return true if there is refining left to do, and false if the curve is at full detail.
+	 */
+	public abstract boolean refine(long deadline);
+	
+	/**
+	 * Returns a new curve with the same definition and style as this one, which is fitted to no viewport yet and shares nothing with this
+	 * one that depends on the viewport. Copies can then be fitted to different viewports at the same time, as when the tiles of a scene
+	 * are rendered in parallel.
+	 */
+	public abstract ProgressiveCurve copy();
+	
+	/**
+	 * Returns true if any part of the curve may lie within the 2-dimensional interval {@code visible}.
+	 */
+	public default boolean isVisible(Interval visible) {
+		return true;
+	}
+	
+	/**
+	 * Returns the priority of the curve, where curves of higher priority are refined first.
+	 */
+	public default int getPriority() {
+		return 0;
+	}
+}
@@ -0,0 +1,376 @@
+package sini.grapher;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+import sini.dual.DualFunction;
+import sini.grapher.profiling.Counters;
+
+/**
+ * Definite integrals of functions of one variable, areas between curves and lengths of curves, by adaptive Gauss-Kronrod quadrature.
+ * 
+ * <p>Each subinterval is integrated by the 15-point Kronrod rule, and its error is estimated from the difference to the 7-point Gauss
+ * rule on the same points. The subintervals are kept in a heap by their errors, and those with the largest errors are bisected, one for
+ * each processor at a time in parallel, until the total error is within the tolerance relative to the integral. For a smooth function
+ * the error of each rule falls with the 23rd power of the width, so a relative error of 1e-10 takes a few hundred evaluations where a
+ * fixed step sum would take many thousands.
+ * 
+ * <p>Integrals over a {@link SimpleFunctionCurve} start from its mesh where that covers the interval, which is split between each of the
+ * turning points of the mesh without any more evaluations, so that the rule starts from subintervals on which the function is simple.
+ */
+public class Quadrature {
+	
+	private static final int MAX_SUBINTERVALS = 100000;
+	private static final int MAX_INITIAL_SUBINTERVALS = 4096;
+	private static final double EPSILON = Math.ulp(1.0);
+	
+	// The nodes of the 15-point Kronrod rule on [-1, 1], from the end towards the centre. The odd nodes are those of the 7-point Gauss rule
+	private static final double[] KRONROD_NODES = {
+			0.991455371120812639206854697526329, 0.949107912342758524526189684047851, 0.864864423359769072789712788640926,
+			0.741531185599394439863864773280788, 0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+			0.207784955007898467600689403773245, 0.0};
+	
+	private static final double[] KRONROD_WEIGHTS = {
+			0.022935322010529224963732008058970, 0.063092092629978553290700663189204, 0.104790010322250183839876322541518,
+			0.140653259715525918745189590510238, 0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+			0.204432940075298892414161999234649, 0.209482141084727828012999174891714};
+	
+	private static final double[] GAUSS_WEIGHTS = {
+			0.129484966168869693270611432679082, 0.279705391489276667901467771423780, 0.381830050505118944950369775488975,
+			0.417959183673469387755102040816327};
+	
+	private Quadrature() {}
+	
+	
+	/**
+	 * An integral with an estimate of its absolute error, and the number of evaluations it took.
+	 */
+	public static class Estimate {
+		private final double value;
+		private final double error;
+		private final long evaluations;
+		
+		public Estimate(double value, double error, long evaluations) {
+			this.value = value;
+			this.error = error;
+			this.evaluations = evaluations;
+		}
+		
+		public double getValue() {
+			return value;
+		}
+		
+		public double getError() {
+			return error;
+		}
+		
+		public long getEvaluations() {
+			return evaluations;
+		}
+		
+		private Estimate add(Estimate estimate) {
+			return new Estimate(value + estimate.value, error + estimate.error, evaluations + estimate.evaluations);
+		}
+		
+		public String toString() {
+			return value + " +- " + error + " (" + evaluations + " evaluations)";
+		}
+	}
+	
+	
+	/**
+	 * Returns the integral of {@code f} over the 1-dimensional interval {@code interval}, to within {@code relativeTolerance} of its
+	 * value.
+	 */
+	public static Estimate integrate(Function<Double, Double> f, Interval interval, double relativeTolerance) {
+		return integrate(f, new double[] {interval.lower(), interval.upper()}, relativeTolerance);
+	}
+	
+	
+	/**
+	 * Returns the integral of the function of {@code curve} over the 1-dimensional interval {@code interval}, to within
+	 * {@code relativeTolerance} of its value, starting from the mesh of the curve.
+	 */
+	public static Estimate integrate(SimpleFunctionCurve curve, Interval interval, double relativeTolerance) {
+		return integrate(curve.getFunction(), getInitialPoints(curve, interval), relativeTolerance);
+	}
+	
+	
+	/**
+	 * Returns the area between the graphs of {@code a} and {@code b} over {@code interval}, the integral of the absolute value of their
+	 * difference, to within {@code relativeTolerance} of its value. The interval is first split where the graphs cross, so that the
+	 * difference is smooth on each part.
+	 */
+	public static Estimate getArea(SimpleFunctionCurve a, SimpleFunctionCurve b, Interval interval, double relativeTolerance) {
+		Function<Double, Double> fa = a.getFunction();
+		Function<Double, Double> fb = b.getFunction();
+		Function<Double, Double> difference = x -> Math.abs(fa.apply(x) - fb.apply(x));
+		
+		double step = getStep(a, interval);
+		ArrayList<Double> points = new ArrayList<Double>();
+		points.add(interval.lower());
+		
+		for(CurveAnalysis.Feature feature: CurveAnalysis.findIntersections(a, b, interval, step)) {
+			if(feature.getX() > points.get(points.size() - 1) && feature.getX() < interval.upper()) points.add(feature.getX());
+		}
+		
+		points.add(interval.upper());
+		
+		// The crossings are included among the points where the mesh turns, when it covers the interval
+		double[] crossings = new double[points.size()];
+		for(int i = 0; i < crossings.length; i++) crossings[i] = points.get(i);
+		
+		return integrate(difference, merge(crossings, getInitialPoints(a, interval)), relativeTolerance);
+	}
+	
+	
+	/**
+	 * Returns the length of the graph of {@code curve} over {@code interval}, the integral of sqrt(1 + f'^2), to within
+	 * {@code relativeTolerance} of its value. The derivative is found with the value if the function of the curve is a
+	 * {@link DualFunction}, and by a central difference otherwise.
+	 */
+	public static Estimate getArcLength(SimpleFunctionCurve curve, Interval interval, double relativeTolerance) {
+		Function<Double, Double> speed = x -> {
+			double slope = curve.getValueAndDerivative(x)[1];
+			return Math.sqrt(1 + slope * slope);
+		};
+		
+		return integrate(speed, getInitialPoints(curve, interval), relativeTolerance);
+	}
+	
+	
+	/**
+	 * Returns the integral of {@code f} between the first and last of {@code points}, starting from the subintervals between each of
+	 * them in turn.
+	 */
+	private static Estimate integrate(Function<Double, Double> f, double[] points, double relativeTolerance) {
+		PriorityQueue<Subinterval> heap = new PriorityQueue<Subinterval>((s, t) -> Double.compare(t.error, s.error));
+		
+		ArrayList<Callable<Subinterval[]>> initial = new ArrayList<Callable<Subinterval[]>>();
+		for(int i = 0; i + 1 < points.length; i++) {
+			double a = points[i], b = points[i + 1];
+			initial.add(() -> new Subinterval[] {new Subinterval(f, a, b)});
+		}
+		
+		for(Subinterval[] subintervals: Parallel.run(initial)) heap.add(subintervals[0]);
+		
+		Estimate total = new Estimate(0, 0, 0);
+		double absolute = 0;
+		
+		for(Subinterval subinterval: heap) {
+			total = total.add(subinterval.getEstimate());
+			absolute += subinterval.absolute;
+		}
+		
+		while(!heap.isEmpty() && heap.size() < MAX_SUBINTERVALS) {
+			// The error cannot be brought below the rounding error in the sum of the absolute values of f
+			double tolerance = Math.max(relativeTolerance * Math.abs(total.value), 50 * EPSILON * absolute);
+			if(total.error <= tolerance) break;
+			
+			// The subintervals with the largest errors are bisected in parallel, as long as they are not already too narrow to split
+			ArrayList<Callable<Subinterval[]>> tasks = new ArrayList<Callable<Subinterval[]>>();
+			ArrayList<Subinterval> split = new ArrayList<Subinterval>();
+			
+			while(tasks.size() < Parallel.PROCESSORS && !heap.isEmpty()) {
+				Subinterval worst = heap.poll();
+				split.add(worst);
+				
+				double a = worst.a, b = worst.b, middle = (a + b) / 2;
+				if(!(middle > a && middle < b)) continue;
+				
+				tasks.add(() -> new Subinterval[] {new Subinterval(f, a, middle), new Subinterval(f, middle, b)});
+			}
+			
+			if(tasks.isEmpty()) {
+				heap.addAll(split);
+				break;
+			}
+			
+			Estimate refined = new Estimate(0, 0, 0);
+			for(Subinterval worst: split) {
+				refined = refined.add(new Estimate(-worst.value, -worst.error, 0));
+				absolute -= worst.absolute;
+			}
+			
+			for(Subinterval[] halves: Parallel.run(tasks)) {
+				for(Subinterval half: halves) {
+					heap.add(half);
+					refined = refined.add(half.getEstimate());
+					absolute += half.absolute;
+				}
+			}
+			
+			// Subintervals that were too narrow to split are kept as they are
+			for(Subinterval worst: split) {
+				double middle = (worst.a + worst.b) / 2;
+				if(!(middle > worst.a && middle < worst.b)) {
+					heap.add(worst);
+					refined = refined.add(new Estimate(worst.value, worst.error, 0));
+					absolute += worst.absolute;
+				}
+			}
+			
+			total = total.add(refined);
+			
+			// An unbounded error that has been split away leaves the running error undefined, so it is summed again
+			if(Double.isNaN(total.error)) {
+				double error = 0;
+				for(Subinterval subinterval: heap) error += subinterval.error;
+				total = new Estimate(total.value, error, total.evaluations);
+			}
+		}
+		
+		// The sums are recomputed from the subintervals, so that rounding in the running totals does not build up
+		Estimate sum = new Estimate(0, 0, total.evaluations);
+		for(Subinterval subinterval: heap) sum = sum.add(new Estimate(subinterval.value, subinterval.error, 0));
+		
+		Counters.addFunctionEvaluations(sum.evaluations);
+		return sum;
+	}
+	
+	
+	/**
+	 * Returns the bounds of the subintervals to start integrating the function of {@code curve} over {@code interval} from: the turning
+	 * points of its mesh if it covers the interval, and otherwise just the ends of the interval.
+	 */
+	private static double[] getInitialPoints(SimpleFunctionCurve curve, Interval interval) {
+		double lower = interval.lower();
+		double upper = interval.upper();
+		
+		ArrayList<Double> points = new ArrayList<Double>();
+		points.add(lower);
+		
+		double lastX = Double.NaN, lastY = Double.NaN, lastRise = 0;
+		double firstX = Double.NaN, step = Double.NaN;
+		
+		// Each segment starts where the last one ended, so after the first only their ends need to be read. A mesh of offsets from an origin
+		// at deep zoom is not used
+		double[] origin = curve.getMeshOrigin();
+		ArrayList<double[][]> mesh = (origin[0] == 0 && origin[1] == 0) ? curve.getMesh() : new ArrayList<double[][]>();
+		
+		for(int i = 0; i < mesh.size(); i++) {
+			double[][] segment = mesh.get(i);
+			
+			for(int j = (i == 0) ? 0 : segment.length - 1; j < segment.length; j++) {
+				double[] point = segment[j];
+				if(point[0] < lower || point[0] > upper || point[0] <= lastX) continue;
+				
+				if(Double.isNaN(firstX)) firstX = point[0];
+				else if(Double.isNaN(step)) step = point[0] - lastX;
+				
+				double rise = point[1] - lastY;
+				
+				// A turning point, and the subinterval is ended there unless the mesh turns too often to start from every turn
+				if(rise * lastRise < 0 && lastX > points.get(points.size() - 1)) points.add(lastX);
+				if(rise != 0 && !Double.isNaN(rise)) lastRise = rise;
+				
+				lastX = point[0];
+				lastY = point[1];
+			}
+		}
+		
+		boolean isCovered = firstX <= lower + step && lastX >= upper - step;
+		
+		if(!isCovered || points.size() > MAX_INITIAL_SUBINTERVALS) return new double[] {lower, upper};
+		
+		points.add(upper);
+		
+		double[] result = new double[points.size()];
+		for(int i = 0; i < result.length; i++) result[i] = points.get(i);
+		return result;
+	}
+	
+	
+	/**
+	 * Returns the spacing of the mesh of {@code curve}, or a thousandth of {@code interval} if it has no mesh.
+	 */
+	private static double getStep(SimpleFunctionCurve curve, Interval interval) {
+		double[] origin = curve.getMeshOrigin();
+		if(origin[0] != 0 || origin[1] != 0) return interval.length() / 1000;
+		
+		for(double[][] segment: curve.getMesh()) {
+			if(segment.length >= 2 && segment[1][0] > segment[0][0]) return segment[1][0] - segment[0][0];
+		}
+		
+		return interval.length() / 1000;
+	}
+	
+	
+	/**
+	 * Returns the points of {@code a} and {@code b}, which are both in order, in order and without repeats.
+	 */
+	private static double[] merge(double[] a, double[] b) {
+		double[] merged = new double[a.length + b.length];
+		int i = 0, j = 0, size = 0;
+		
+		while(i < a.length || j < b.length) {
+			double next = (j >= b.length || (i < a.length && a[i] <= b[j])) ? a[i++] : b[j++];
+			if(size == 0 || next > merged[size - 1]) merged[size++] = next;
+		}
+		
+		double[] result = new double[size];
+		System.arraycopy(merged, 0, result, 0, size);
+		return result;
+	}
+	
+	
+	/**
+	 * A subinterval with its integral by the 15-point Kronrod rule and the estimated error of that.
+	 */
+	private static class Subinterval {
+		private final double a, b;
+		private final double value;
+		private final double error;
+		private final double absolute; // The integral of |f|
+		
+		private Subinterval(Function<Double, Double> f, double a, double b) {
+			this.a = a;
+			this.b = b;
+			
+			double centre = (a + b) / 2;
+			double halfWidth = (b - a) / 2;
+			
+			double[] values = new double[15];
+			values[7] = f.apply(centre);
+			
+			for(int i = 0; i < 7; i++) {
+				double offset = halfWidth * KRONROD_NODES[i];
+				values[i] = f.apply(centre - offset);
+				values[14 - i] = f.apply(centre + offset);
+			}
+			
+			double kronrod = KRONROD_WEIGHTS[7] * values[7];
+			double gauss = GAUSS_WEIGHTS[3] * values[7];
+			double kronrodAbsolute = KRONROD_WEIGHTS[7] * Math.abs(values[7]);
+			
+			for(int i = 0; i < 7; i++) {
+				double pair = values[i] + values[14 - i];
+				kronrod += KRONROD_WEIGHTS[i] * pair;
+				kronrodAbsolute += KRONROD_WEIGHTS[i] * (Math.abs(values[i]) + Math.abs(values[14 - i]));
+				if(i % 2 == 1) gauss += GAUSS_WEIGHTS[i / 2] * pair;
+			}
+			
+			// The integral of |f - mean|, which scales the error estimate as in QUADPACK
+			double mean = kronrod / 2;
+			double deviation = KRONROD_WEIGHTS[7] * Math.abs(values[7] - mean);
+			for(int i = 0; i < 7; i++) deviation += KRONROD_WEIGHTS[i] * (Math.abs(values[i] - mean) + Math.abs(values[14 - i] - mean));
+			
+			value = kronrod * halfWidth;
+			absolute = kronrodAbsolute * Math.abs(halfWidth);
+			deviation *= Math.abs(halfWidth);
+			
+			double estimate = Math.abs((kronrod - gauss) * halfWidth);
+			if(deviation != 0 && estimate != 0) estimate = deviation * Math.min(1, Math.pow(200 * estimate / deviation, 1.5));
+			if(absolute > Double.MIN_NORMAL / (50 * EPSILON)) estimate = Math.max(50 * EPSILON * absolute, estimate);
+			
+			// A subinterval on which f is undefined somewhere has an unbounded error, so that it is split first
+			error = Double.isNaN(estimate) ? Double.POSITIVE_INFINITY : estimate;
+		}
+		
+		private Estimate getEstimate() {
+			return new Estimate(value, error, 15);
+		}
+	}
+}
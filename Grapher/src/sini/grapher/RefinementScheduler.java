@@ -0,0 +1,136 @@
+package sini.grapher;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.swing.Timer;
+
+import sini.grapher.profiling.FrameProfiler;
+
+/**
+ * Refines the {@link ProgressiveCurve progressive curves} of a {@link Display} over a number of frames. When the viewport changes, each
+ * curve is fitted to the new viewport, which leaves it coarse but quick to draw, so the next frame can be painted straight away. After
+ * that, a timer firing once per frame gives each curve that still has refining to do one turn, until the frame's budget of
+ * {@link #FRAME_BUDGET} nanoseconds is spent, and repaints the display if anything changed. The rest of the frame is left for painting.
+ * 
+ * <p>A refined curve has to be drawn again, which can cost far more than refining it, so the number of curves refined in a frame is
+ * also capped. The cap is halved whenever the last frame took longer than {@link #FRAME_TARGET} milliseconds to paint, and doubled
+ * otherwise.
+ * 
+ * <p>Curves that are visible are refined before curves that are not, and within each of those groups curves of higher priority are
+ * refined first.
+ */
+class RefinementScheduler implements ActionListener {
+	
+	private static final long FRAME_BUDGET = 8000000;
+	private static final int FRAME_INTERVAL = 16;
+	private static final double FRAME_TARGET = 16;
+	
+	private static final Comparator<ProgressiveCurve> BY_PRIORITY = Comparator.comparingInt(ProgressiveCurve::getPriority).reversed();
+	
+	private final Display display;
+	private final FrameProfiler profiler;
+	private final Timer timer;
+	
+	private int curvesPerFrame = 1;
+	
+	private final ArrayList<ProgressiveCurve> queue = new ArrayList<ProgressiveCurve>();
+	private final ArrayList<ProgressiveCurve> hidden = new ArrayList<ProgressiveCurve>();
+	
+	public RefinementScheduler(Display display, FrameProfiler profiler) {
+		this.display = display;
+		this.profiler = profiler;
+		
+		timer = new Timer(FRAME_INTERVAL, this);
+		timer.setCoalesce(true);
+	}
+	
+	
+	/**
+	 * Fits the progressive curves among {@code curves} to the region of the plane {@code visible}, to be meshed with a step of
+	 * {@code step}, and starts refining them. Any refinement still to be done for the previous viewport is abandoned.
+	 * @return the curves whose meshes were rebuilt.
+	 */
+	public List<ProgressiveCurve> retarget(List<Curve> curves, Interval visible, double step) {
+		return retarget(curves, visible, step, 0, 0, visible);
+	}
+	
+	
+	/**
+	 * Fits the progressive curves among {@code curves} to the region of the plane {@code visible} as {@link #retarget(List, Interval,
+	 * double)} does, except that {@link DeepZoomCurve deep zoom curves} are fitted to {@code offsets}, the same region as offsets from
+	 * (originX, originY), if the origin is not (0, 0).
+	 * @return the curves whose meshes were rebuilt.
+	 */
+	public List<ProgressiveCurve> retarget(List<Curve> curves, Interval visible, double step, double originX, double originY, Interval offsets) {
+		boolean isOffset = originX != 0 || originY != 0;
+		ArrayList<ProgressiveCurve> rebuilt = new ArrayList<ProgressiveCurve>();
+		
+		queue.clear();
+		hidden.clear();
+		
+		for(Curve curve: curves) {
+			if(!(curve instanceof ProgressiveCurve)) continue;
+			
+			ProgressiveCurve progressiveCurve = (ProgressiveCurve) curve;
+			boolean isRebuilt;
+			
+			if(isOffset && curve instanceof DeepZoomCurve) {
+				isRebuilt = ((DeepZoomCurve) curve).setViewport(originX, originY, offsets, step);
+			} else {
+				isRebuilt = progressiveCurve.setViewport(visible, step);
+			}
+			
+			if(isRebuilt) rebuilt.add(progressiveCurve);
+			
+			if(progressiveCurve.isVisible(visible)) queue.add(progressiveCurve);
+			else hidden.add(progressiveCurve);
+		}
+		
+		queue.sort(BY_PRIORITY);
+		hidden.sort(BY_PRIORITY);
+		queue.addAll(hidden);
+		hidden.clear();
+		
+		if(queue.isEmpty()) timer.stop();
+		else timer.restart();
+		
+		return rebuilt;
+	}
+	
+	
+	/**
+	 * Stops refining until the next call to {@link #retarget}.
+	 */
+	public void stop() {
+		queue.clear();
+		timer.stop();
+	}
+	
+	
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		long deadline = System.nanoTime() + FRAME_BUDGET;
+		int curvesRefined = 0;
+		
+		if(profiler.getLastFrameTime() > FRAME_TARGET) curvesPerFrame = Math.max(1, curvesPerFrame / 2);
+		else curvesPerFrame = Math.min(queue.size(), 2 * curvesPerFrame);
+		
+		Iterator<ProgressiveCurve> iter = queue.iterator();
+		
+		while(iter.hasNext() && System.nanoTime() < deadline && curvesRefined < curvesPerFrame) {
+			ProgressiveCurve curve = iter.next();
+			long version = curve.getVersion();
+			
+			if(!curve.refine(deadline)) iter.remove();
+			if(curve.getVersion() != version) curvesRefined++;
+		}
+		
+		if(queue.isEmpty()) timer.stop();
+		if(curvesRefined > 0) display.repaint();
+	}
+}
@@ -0,0 +1,641 @@
+package sini.grapher;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+import sini.grapher.profiling.Counters;
+
+/**
+ * A scalar field f(x, y), drawn as a heat map coloured by the value of f and as contours where f takes given levels. The field is
+ * sampled on a square grid with a spacing of about {@code CELL_PIXELS} pixels, rounded down to a power of 2 so that the same samples are
+ * taken whenever nearby viewports are seen.
+ * 
+ * <p>The grid is split into tiles of {@code TILE_CELLS} by {@code TILE_CELLS} cells, which are sampled in parallel on a pool with one
+ * thread per processor and kept in the shared {@link MeshCache}, so panning only samples the tiles that come into view. Each tile
+ * includes the samples along its far edges, which are shared with the next tiles. Contours are found in each tile by marching squares,
+ * also in parallel, and since a contour crossing an edge shared by two tiles is found from the same two samples in both, the pieces of
+ * each contour are stitched into one polyline across the seams. Changing the levels of the contours or the range of the colours only
+ * redraws the samples already taken, without evaluating f again.
+ * 
+ * <p>Straight after the viewport changes, the field is drawn from a grid {@code 2^COARSE_LEVELS} times coarser, and the tiles of the
+ * full grid are then sampled over the following frames.
+ */
+public class ScalarField implements ProgressiveCurve {
+	
+	private static final int CELL_PIXELS = 2;
+	private static final int TILE_CELLS = 64;
+	private static final int TILE_SAMPLES = TILE_CELLS + 1;
+	private static final int COARSE_LEVELS = 3;
+	
+	// The colour map, from the lowest value to the highest
+	private static final Color[] COLOR_STOPS = {new Color(68, 1, 84), new Color(59, 82, 139), new Color(33, 145, 140), new Color(94, 201, 98), new Color(253, 231, 37)};
+	private static final int COLOR_LEVELS = 256;
+	
+	private final Function<double[], Double> f;
+	private MeshCache cache = MeshCache.getShared();
+	private long version;
+	
+	private Color contourColor = Color.BLACK;
+	private float thickness = 1;
+	private double[] levels = new double[0];
+	private boolean isHeatMapVisible = true;
+	private double minValue = Double.NaN;
+	private double maxValue = Double.NaN;
+	private final int[] colors = new int[COLOR_LEVELS];
+	
+	private Interval visible;
+	private double step;
+	
+	// The grid being drawn, and the finer grid that is being sampled to replace it
+	private Grid grid;
+	private Grid target;
+	
+	// Drawn from the grid
+	private BufferedImage heatMap;
+	private ArrayList<double[]> contours = new ArrayList<double[]>();
+	
+	public ScalarField(Function<double[], Double> f) {
+		this.f = f;
+		
+		for(int i = 0; i < COLOR_LEVELS; i++) colors[i] = getColor((double)i / (COLOR_LEVELS - 1)).getRGB();
+	}
+	
+	public ScalarField(Function<double[], Double> f, double[] levels) {
+		this(f);
+		setLevels(levels);
+	}
+	
+	
+	/**
+	 * Sets the values of f that contours are drawn at.
+	 */
+	public synchronized void setLevels(double[] levels) {
+		this.levels = levels.clone();
+		version++;
+		if(grid != null) contours = findContours();
+	}
+	
+	
+	public synchronized double[] getLevels() {
+		return levels.clone();
+	}
+	
+	
+	/**
+	 * Sets the values of f that are coloured by the two ends of the colour map. If either is {@code NaN}, the lowest and highest values in
+	 * view are used instead.
+	 */
+	public synchronized void setRange(double minValue, double maxValue) {
+		this.minValue = minValue;
+		this.maxValue = maxValue;
+		version++;
+		if(grid != null) heatMap = createHeatMap();
+	}
+	
+	
+	public synchronized void setHeatMapVisible(boolean isHeatMapVisible) {
+		this.isHeatMapVisible = isHeatMapVisible;
+		version++;
+	}
+	
+	
+	public synchronized void setContourStyle(Color color, float thickness) {
+		contourColor = color;
+		this.thickness = thickness;
+		version++;
+	}
+	
+	
+	/**
+	 * Sets the cache that sampled tiles are kept in, or turns caching off if {@code cache} is {@code null}. The shared cache is used by
+	 * default.
+	 */
+	public void setMeshCache(MeshCache cache) {
+		this.cache = cache;
+	}
+	
+	
+	/**
+	 * Returns the contours, each as an array of the x and y coordinates of the points along it in turn.
+	 */
+	public synchronized ArrayList<double[]> getContours() {
+		return contours;
+	}
+	
+	
+	/**
+	 * Returns the spacing of the grid that the field is being drawn from.
+	 */
+	public synchronized double getSpacing() {
+		return (grid == null) ? Double.NaN : grid.spacing;
+	}
+	
+	
+	@Override
+	public synchronized long getVersion() {
+		return version;
+	}
+	
+	
+	@Override
+	public synchronized void draw(Display display, Graphics2D g) {
+		if(grid == null) return;
+		
+		if(isHeatMapVisible && heatMap != null) {
+			// Each pixel of the image is a sample, centred on its point of the grid
+			double scale = grid.spacing * display.getDisplayUnit();
+			AffineTransform transform = new AffineTransform();
+			transform.translate(display.getDisplayX((grid.firstX - 0.5) * grid.spacing), display.getDisplayY((grid.lastY + 0.5) * grid.spacing));
+			transform.scale(scale, scale);
+			
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.drawImage(heatMap, transform, null);
+		}
+		
+		if(contours.isEmpty()) return;
+		
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(contourColor);
+		g.setStroke(new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		
+		Path2D.Double path = new Path2D.Double();
+		long segments = 0;
+		
+		for(double[] contour: contours) {
+			path.moveTo(display.getDisplayX(contour[0]), display.getDisplayY(contour[1]));
+			
+			for(int i = 2; i < contour.length; i += 2) path.lineTo(display.getDisplayX(contour[i]), display.getDisplayY(contour[i + 1]));
+			segments += contour.length / 2 - 1;
+		}
+		
+		g.draw(path);
+		
+		Counters.addSegmentsDrawn(segments);
+	}
+	
+	
+	/**
+	 * Samples the field over the 2-dimensional interval {@code interval} at full detail straight away.
+	 */
+	@Override
+	public void updateMesh(Interval interval, double step) {
+		if(interval.getDimension() != 2) return;
+		
+		setViewport(interval, step);
+		while(refine(Long.MAX_VALUE));
+	}
+	
+	
+	@Override
+	public synchronized ScalarField copy() {
+		ScalarField copy = new ScalarField(f, levels);
+		copy.setRange(minValue, maxValue);
+		copy.setHeatMapVisible(isHeatMapVisible);
+		copy.setContourStyle(contourColor, thickness);
+		copy.setMeshCache(cache);
+		return copy;
+	}
+	
+	
+	@Override
+	public synchronized boolean setViewport(Interval visible, double step) {
+		if(visible.equals(this.visible) && step == this.step) return false;
+		
+		this.visible = visible.clone();
+		this.step = step;
+		
+		// The mesh step is half a pixel
+		double spacing = MeshCache.quantizeStep(2 * CELL_PIXELS * step);
+		
+		grid = new Grid(visible, spacing * (1 << COARSE_LEVELS));
+		grid.sample(Long.MAX_VALUE);
+		target = new Grid(visible, spacing);
+		
+		updateImages();
+		return true;
+	}
+	
+	
+	@Override
+	public synchronized boolean refine(long deadline) {
+		if(target == null) return false;
+		if(!target.sample(deadline)) return true;
+		
+		grid = target;
+		target = null;
+		
+		updateImages();
+		return false;
+	}
+	
+	
+	@Override
+	public int getPriority() {
+		return -1;
+	}
+	
+	
+	/**
+	 * Draws the heat map and finds the contours from the samples of the grid.
+	 */
+	private void updateImages() {
+		version++;
+		if(grid == null) return;
+		
+		heatMap = createHeatMap();
+		contours = findContours();
+	}
+	
+	
+	private BufferedImage createHeatMap() {
+		int width = grid.getSampleWidth();
+		int height = grid.getSampleHeight();
+		
+		double lower = minValue;
+		double upper = maxValue;
+		
+		if(Double.isNaN(lower) || Double.isNaN(upper)) {
+			lower = Double.POSITIVE_INFINITY;
+			upper = Double.NEGATIVE_INFINITY;
+			
+			for(double[] tile: grid.tiles) {
+				for(double value: tile) {
+					if(value < lower) lower = value;
+					if(value > upper) upper = value;
+				}
+			}
+		}
+		
+		double scale = (upper > lower) ? (COLOR_LEVELS - 1) / (upper - lower) : 0;
+		int[] pixels = new int[width * height];
+		
+		for(int row = 0; row < height; row++) {
+			// The first row of the image is the highest row of the grid
+			long j = grid.lastY - row;
+			
+			for(int column = 0; column < width; column++) {
+				double value = grid.getSample(grid.firstX + column, j);
+				
+				if(Double.isNaN(value)) continue;
+				
+				int level = (int)((value - lower) * scale);
+				pixels[row * width + column] = colors[Math.max(0, Math.min(COLOR_LEVELS - 1, level))];
+			}
+		}
+		
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		return image;
+	}
+	
+	
+	/**
+	 * Finds the contours of the grid by marching squares, tile by tile in parallel, and stitches them together across the seams.
+	 */
+	private ArrayList<double[]> findContours() {
+		ArrayList<double[]> contours = new ArrayList<double[]>();
+		if(levels.length == 0) return contours;
+		
+		ArrayList<Callable<Segments[]>> tasks = new ArrayList<Callable<Segments[]>>();
+		for(int tile = 0; tile < grid.tiles.length; tile++) {
+			int index = tile;
+			tasks.add(() -> grid.findSegments(index, levels));
+		}
+		
+		ArrayList<Segments[]> tileSegments = Parallel.run(tasks);
+		
+		// The end of a segment on each edge of the region, at the level being stitched, with the edges numbered by Grid.getEdge
+		int[] endOnEdge = new int[2 * grid.getSampleWidth() * grid.getSampleHeight()];
+		Arrays.fill(endOnEdge, -1);
+		
+		for(int level = 0; level < levels.length; level++) {
+			Segments segments = new Segments();
+			for(Segments[] segmentsByLevel: tileSegments) segments.addAll(segmentsByLevel[level]);
+			
+			// Each edge is crossed by at most one segment from each of the two cells beside it. The ends of the segments are numbered
+			// 2 * segment and 2 * segment + 1, and each is joined to the end on the same edge from the next cell, if there is one
+			int[] joined = new int[2 * segments.size];
+			
+			for(int end = 0; end < joined.length; end++) {
+				int edge = segments.edges[end];
+				int other = endOnEdge[edge];
+				
+				joined[end] = other;
+				if(other >= 0) joined[other] = end;
+				endOnEdge[edge] = end;
+			}
+			
+			for(int end = 0; end < joined.length; end++) endOnEdge[segments.edges[end]] = -1;
+			
+			boolean[] isUsed = new boolean[segments.size];
+			
+			for(int segment = 0; segment < segments.size; segment++) {
+				if(isUsed[segment]) continue;
+				
+				// Walk back to the start of the contour, or all the way round it if it is closed
+				int firstEnd = 2 * segment;
+				while(joined[firstEnd] >= 0 && joined[firstEnd] >> 1 != segment) firstEnd = joined[firstEnd] ^ 1;
+				
+				contours.add(walk(segments, joined, isUsed, firstEnd));
+			}
+		}
+		
+		return contours;
+	}
+	
+	
+	/**
+	 * Returns the contour that starts at the end {@code end} of a segment and follows the joined ends of the segments.
+	 */
+	private static double[] walk(Segments segments, int[] joined, boolean[] isUsed, int end) {
+		double[] points = new double[16];
+		int size = 0;
+		
+		points[size++] = segments.points[2 * end];
+		points[size++] = segments.points[2 * end + 1];
+		
+		while(end >= 0 && !isUsed[end >> 1]) {
+			isUsed[end >> 1] = true;
+			
+			int other = end ^ 1;
+			if(size == points.length) points = Arrays.copyOf(points, 2 * size);
+			points[size++] = segments.points[2 * other];
+			points[size++] = segments.points[2 * other + 1];
+			
+			end = joined[other];
+		}
+		
+		return Arrays.copyOf(points, size);
+	}
+	
+	
+	/**
+	 * Returns the colour of the colour map at {@code t}, between 0 and 1.
+	 */
+	private static Color getColor(double t) {
+		double position = t * (COLOR_STOPS.length - 1);
+		int i = Math.min(COLOR_STOPS.length - 2, (int)position);
+		double u = position - i;
+		
+		Color a = COLOR_STOPS[i];
+		Color b = COLOR_STOPS[i + 1];
+		
+		return new Color((int)Math.round(a.getRed() + u * (b.getRed() - a.getRed())), (int)Math.round(a.getGreen() + u * (b.getGreen() - a.getGreen())),
+				(int)Math.round(a.getBlue() + u * (b.getBlue() - a.getBlue())));
+	}
+	
+	
+	/**
+	 * The samples of the field at the points (i * spacing, j * spacing) of the plane that cover a region, held in tiles. The sample
+	 * (i, j) is held by the tile (floor(i / TILE_CELLS), floor(j / TILE_CELLS)), and also by the tiles before it if it lies on their
+	 * far edges.
+	 */
+	private class Grid {
+		private final double spacing;
+		private final long firstTileX, firstTileY;
+		private final int tilesX, tilesY;
+		
+		// The range of samples that covers the region
+		private final long firstX, lastX, firstY, lastY;
+		
+		private final double[][] tiles;
+		private int sampled; // The number of tiles that have been sampled, in order
+		
+		private Grid(Interval region, double spacing) {
+			this.spacing = spacing;
+			
+			Interval y = region.getFactor();
+			firstX = (long)Math.floor(region.lower() / spacing);
+			lastX = Math.max(firstX + 1, (long)Math.ceil(region.upper() / spacing));
+			firstY = (long)Math.floor(y.lower() / spacing);
+			lastY = Math.max(firstY + 1, (long)Math.ceil(y.upper() / spacing));
+			
+			firstTileX = Math.floorDiv(firstX, TILE_CELLS);
+			firstTileY = Math.floorDiv(firstY, TILE_CELLS);
+			tilesX = (int)(Math.floorDiv(lastX - 1, TILE_CELLS) - firstTileX + 1);
+			tilesY = (int)(Math.floorDiv(lastY - 1, TILE_CELLS) - firstTileY + 1);
+			
+			tiles = new double[tilesX * tilesY][];
+		}
+		
+		private int getSampleWidth() {
+			return (int)(lastX - firstX + 1);
+		}
+		
+		private int getSampleHeight() {
+			return (int)(lastY - firstY + 1);
+		}
+		
+		/**
+		 * Returns the number of the edge from the sample (i, j) to the next sample across or up. Edges are numbered by their position
+		 * in the region, so that the cells on either side of an edge give it the same number.
+		 */
+		private int getEdge(long i, long j, boolean isAcross) {
+			return (int)((j - firstY) * getSampleWidth() + (i - firstX)) * 2 + (isAcross ? 0 : 1);
+		}
+		
+		private double getSample(long i, long j) {
+			long tileX = Math.min(Math.floorDiv(i, TILE_CELLS), firstTileX + tilesX - 1);
+			long tileY = Math.min(Math.floorDiv(j, TILE_CELLS), firstTileY + tilesY - 1);
+			
+			double[] tile = tiles[(int)(tileY - firstTileY) * tilesX + (int)(tileX - firstTileX)];
+			return tile[(int)(j - tileY * TILE_CELLS) * TILE_SAMPLES + (int)(i - tileX * TILE_CELLS)];
+		}
+		
+		private Interval getTileInterval(int index) {
+			long tileX = firstTileX + index % tilesX;
+			long tileY = firstTileY + index / tilesX;
+			double size = TILE_CELLS * spacing;
+			
+			return Interval.product(new Interval(tileX * size, (tileX + 1) * size), new Interval(tileY * size, (tileY + 1) * size));
+		}
+		
+		/**
+		 * Samples the tiles, taking those that are cached from the cache and sampling the rest in parallel, until every tile has been
+		 * sampled or {@link System#nanoTime()} has passed {@code deadline}. Returns true if every tile has been sampled.
+		 */
+		private boolean sample(long deadline) {
+			while(sampled < tiles.length) {
+				ArrayList<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>();
+				ArrayList<Integer> indices = new ArrayList<Integer>();
+				
+				// A batch of one tile for each thread, so that the deadline is checked between batches
+				for(int index = sampled; index < tiles.length && tasks.size() < Parallel.PROCESSORS; index++) {
+					Interval interval = getTileInterval(index);
+					double[] tile = (cache == null) ? null : cache.get(ScalarField.this, interval, spacing);
+					
+					if(tile != null) {
+						tiles[index] = tile;
+					} else {
+						indices.add(index);
+						tasks.add(() -> sampleTile(interval));
+					}
+					
+					sampled = index + 1;
+				}
+				
+				long start = System.nanoTime();
+				ArrayList<double[]> results = Parallel.run(tasks);
+				long cost = (results.isEmpty()) ? 0 : (System.nanoTime() - start) * Math.min(Parallel.PROCESSORS, results.size()) / results.size();
+				
+				for(int i = 0; i < results.size(); i++) {
+					int index = indices.get(i);
+					tiles[index] = results.get(i);
+					
+					if(cache != null) cache.put(ScalarField.this, getTileInterval(index), spacing, tiles[index], 16 + 8L * tiles[index].length, cost);
+				}
+				
+				if(System.nanoTime() > deadline) break;
+			}
+			
+			return sampled == tiles.length;
+		}
+		
+		private double[] sampleTile(Interval interval) {
+			double[] values = new double[TILE_SAMPLES * TILE_SAMPLES];
+			double[] point = new double[2];
+			
+			double x0 = interval.lower();
+			double y0 = interval.getFactor().lower();
+			
+			for(int b = 0; b < TILE_SAMPLES; b++) {
+				for(int a = 0; a < TILE_SAMPLES; a++) {
+					point[0] = x0 + a * spacing;
+					point[1] = y0 + b * spacing;
+					values[b * TILE_SAMPLES + a] = f.apply(point);
+				}
+			}
+			
+			Counters.addFunctionEvaluations(values.length);
+			return values;
+		}
+		
+		/**
+		 * Finds the segments of the contours at {@code levels} through the cells of the tile {@code index} that lie within the region.
+		 */
+		private Segments[] findSegments(int index, double[] levels) {
+			Segments[] segments = new Segments[levels.length];
+			for(int level = 0; level < levels.length; level++) segments[level] = new Segments();
+
+			double[] tile = tiles[index];
+			
+			long tileX = firstTileX + index % tilesX;
+			long tileY = firstTileY + index / tilesX;
+			
+			int fromA = (int)Math.max(0, firstX - tileX * TILE_CELLS);
+			int toA = (int)Math.min(TILE_CELLS, lastX - tileX * TILE_CELLS);
+			int fromB = (int)Math.max(0, firstY - tileY * TILE_CELLS);
+			int toB = (int)Math.min(TILE_CELLS, lastY - tileY * TILE_CELLS);
+			
+			double[] crossings = new double[8];
+			int[] edges = new int[4];
+			
+			for(int b = fromB; b < toB; b++) {
+				for(int a = fromA; a < toA; a++) {
+					double v00 = tile[b * TILE_SAMPLES + a];
+					double v10 = tile[b * TILE_SAMPLES + a + 1];
+					double v01 = tile[(b + 1) * TILE_SAMPLES + a];
+					double v11 = tile[(b + 1) * TILE_SAMPLES + a + 1];
+					
+					long i = tileX * TILE_CELLS + a;
+					long j = tileY * TILE_CELLS + b;
+					
+					double min = Math.min(Math.min(v00, v10), Math.min(v01, v11));
+					double max = Math.max(Math.max(v00, v10), Math.max(v01, v11));
+					
+					for(int level = 0; level < levels.length; level++) {
+						double c = levels[level];
+						if(c > max || c <= min) continue;
+						
+						// The edges in turn: bottom, right, top and left, each interpolated from its lower sample to its higher one
+						int count = 0;
+						count = addCrossing(crossings, edges, count, v00 - c, v10 - c, i, j, true);
+						count = addCrossing(crossings, edges, count, v10 - c, v11 - c, i + 1, j, false);
+						count = addCrossing(crossings, edges, count, v01 - c, v11 - c, i, j + 1, true);
+						count = addCrossing(crossings, edges, count, v00 - c, v01 - c, i, j, false);
+						
+						if(count == 2) {
+							segments[level].add(crossings, edges, 0, 1);
+						} else if(count == 4) {
+							// A saddle is resolved by the mean of the corners, taken as the value at the centre of the cell
+							boolean isCentreLikeV00 = ((v00 + v10 + v01 + v11) / 4 >= c) == (v00 >= c);
+							
+							if(isCentreLikeV00) {
+								segments[level].add(crossings, edges, 0, 1);
+								segments[level].add(crossings, edges, 2, 3);
+							} else {
+								segments[level].add(crossings, edges, 3, 0);
+								segments[level].add(crossings, edges, 1, 2);
+							}
+						}
+					}
+				}
+			}
+			
+			return segments;
+		}
+		
+		/**
+		 * Adds the crossing of the contour through the edge from the sample (i, j) to the next sample across or up, given the values
+		 * {@code v0} and {@code v1} of the field less the level at its ends, if they have different signs. Returns the number of
+		 * crossings found so far in the cell.
+		 */
+		private int addCrossing(double[] crossings, int[] edges, int count, double v0, double v1, long i, long j, boolean isAcross) {
+			if(Double.isNaN(v0) || Double.isNaN(v1) || (v0 >= 0) == (v1 >= 0)) return count;
+			
+			double t = v0 / (v0 - v1);
+			crossings[2 * count] = (isAcross ? i + t : i) * spacing;
+			crossings[2 * count + 1] = (isAcross ? j : j + t) * spacing;
+			edges[count] = getEdge(i, j, isAcross);
+			
+			return count + 1;
+		}
+	}
+	
+	
+	/**
+	 * Segments of contours through cells, each from a crossing on one edge of its cell to a crossing on another. The ends of the segment
+	 * {@code i} are the ends {@code 2 * i} and {@code 2 * i + 1}, with their coordinates and the numbers of their edges held in turn.
+	 */
+	private static class Segments {
+		private double[] points = new double[64];
+		private int[] edges = new int[32];
+		private int size;
+		
+		private void add(double[] crossings, int[] crossingEdges, int from, int to) {
+			if(2 * size + 2 > edges.length) {
+				points = Arrays.copyOf(points, 2 * points.length);
+				edges = Arrays.copyOf(edges, 2 * edges.length);
+			}
+			
+			points[4 * size] = crossings[2 * from];
+			points[4 * size + 1] = crossings[2 * from + 1];
+			points[4 * size + 2] = crossings[2 * to];
+			points[4 * size + 3] = crossings[2 * to + 1];
+			edges[2 * size] = crossingEdges[from];
+			edges[2 * size + 1] = crossingEdges[to];
+			size++;
+		}
+		
+		private void addAll(Segments segments) {
+			if(2 * (size + segments.size) > edges.length) {
+				int capacity = Math.max(2 * edges.length, 2 * (size + segments.size));
+				points = Arrays.copyOf(points, 2 * capacity);
+				edges = Arrays.copyOf(edges, capacity);
+			}
+			
+			System.arraycopy(segments.points, 0, points, 4 * size, 4 * segments.size);
+			System.arraycopy(segments.edges, 0, edges, 2 * size, 2 * segments.size);
+			size += segments.size;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package sini.grapher;
+
+import java.awt.AlphaComposite;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.function.Consumer;
+
+import sini.doubledouble.DoubleDouble;
+
+/**
+ * A cached rendering of part of a {@link Display}'s scene, the size of the display. When the viewport is panned, the part of the cached
+ * image that is still valid is copied to its new position and only the strips that have been newly exposed are rendered, so the cost
+ * of panning scales with the area exposed rather than the area of the display. The whole layer is rendered again when the zoom level
+ * or the size of the display changes, when it is invalidated, or when the pan is not a whole number of pixels.
+ * 
+ * <p>An opaque layer is kept in a {@link VolatileImage} when the display is on screen, so that it can live in video memory, and in a
+ * {@link BufferedImage} otherwise. A transparent layer is always kept in a {@link BufferedImage}, so that it can be brought up to date
+ * on a thread other than the event dispatch thread and composited over other layers afterwards.
+ */
+class ScrollingLayer {
+	
+	private static final double PIXEL_TOLERANCE = 1e-6;
+	
+	private final Display display;
+	private final Consumer<Graphics2D> renderer;
+	private final boolean opaque;
+	
+	private BufferedImage bufferedImage;
+	private VolatileImage volatileImage;
+	
+	private boolean valid;
+	private DoubleDouble viewX = DoubleDouble.ZERO;
+	private DoubleDouble viewY = DoubleDouble.ZERO;
+	private double zoom;
+	
+	/**
+	 * Creates a new opaque layer for {@code display}, whose contents are drawn by {@code renderer}. The renderer is given a graphics
+	 * context clipped to the region that needs to be drawn, and must draw its part of the scene opaquely.
+	 */
+	public ScrollingLayer(Display display, Consumer<Graphics2D> renderer) {
+		this(display, renderer, true);
+	}
+	
+	/**
+	 * Creates a new layer for {@code display}, whose contents are drawn by {@code renderer}. The renderer is given a graphics context
+	 * clipped to the region that needs to be drawn. If the layer is not {@code opaque}, that region is cleared to transparent first.
+	 */
+	public ScrollingLayer(Display display, Consumer<Graphics2D> renderer, boolean opaque) {
+		this.display = display;
+		this.renderer = renderer;
+		this.opaque = opaque;
+	}
+	
+	
+	/**
+	 * Marks the whole layer as out of date, so that it is rendered again the next time it is painted.
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+	
+	
+	/**
+	 * Brings the layer up to date with the viewport of the display, and draws it onto {@code g}.
+	 */
+	public void paint(Graphics2D g) {
+		int width = display.getWidth();
+		int height = display.getHeight();
+		
+		if(width <= 0 || height <= 0) return;
+		
+		do {
+			Image image = prepareImage(width, height);
+			update(image, width, height);
+			g.drawImage(image, 0, 0, null);
+		} while(volatileImage != null && volatileImage.contentsLost());
+	}
+	
+	
+	/**
+	 * Brings a transparent layer up to date with the viewport of the display, without drawing it. This may be called from any thread,
+	 * as long as the display and the curves drawn by the renderer are not changed in the meantime. Returns true if the whole layer had
+	 * to be rendered, and false if it was only scrolled, or was already up to date.
+	 */
+	public boolean update() {
+		int width = display.getWidth();
+		int height = display.getHeight();
+		
+		if(width <= 0 || height <= 0) return false;
+		
+		return update(prepareImage(width, height), width, height);
+	}
+	
+	
+	/**
+	 * Draws a transparent layer onto {@code g} as it was last brought up to date by {@link #update()}.
+	 */
+	public void draw(Graphics2D g) {
+		if(bufferedImage != null) g.drawImage(bufferedImage, 0, 0, null);
+	}
+	
+	
+	/**
+	 * Returns the image that backs this layer, creating it if it does not exist or no longer fits the display, and restoring it if its
+	 * contents have been lost.
+	 */
+	private Image prepareImage(int width, int height) {
+		GraphicsConfiguration configuration = display.getGraphicsConfiguration();
+		
+		if(opaque && configuration != null && !GraphicsEnvironment.isHeadless()) {
+			bufferedImage = null;
+			
+			if(volatileImage == null || volatileImage.getWidth() != width || volatileImage.getHeight() != height) {
+				volatileImage = configuration.createCompatibleVolatileImage(width, height, Transparency.OPAQUE);
+				valid = false;
+			}
+			
+			int status = volatileImage.validate(configuration);
+			
+			if(status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				volatileImage = configuration.createCompatibleVolatileImage(width, height, Transparency.OPAQUE);
+				valid = false;
+			} else if(status == VolatileImage.IMAGE_RESTORED) {
+				valid = false;
+			}
+			
+			return volatileImage;
+		}
+		
+		volatileImage = null;
+		
+		if(bufferedImage == null || bufferedImage.getWidth() != width || bufferedImage.getHeight() != height) {
+			bufferedImage = new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+			valid = false;
+		}
+		
+		return bufferedImage;
+	}
+	
+	
+	private boolean update(Image image, int width, int height) {
+		DoubleDouble newViewX = display.getPrecisePlaneX(0);
+		DoubleDouble newViewY = display.getPrecisePlaneY(0);
+		double newZoom = display.getZoom();
+		
+		double dx = viewX.subtract(newViewX).doubleValue() * display.getDisplayUnit();
+		double dy = newViewY.subtract(viewY).doubleValue() * display.getDisplayUnit();
+		
+		boolean isWholePixelPan = Math.abs(dx - Math.rint(dx)) < PIXEL_TOLERANCE && Math.abs(dy - Math.rint(dy)) < PIXEL_TOLERANCE;
+		boolean isScrollable = valid && newZoom == zoom && isWholePixelPan && Math.abs(dx) < width && Math.abs(dy) < height;
+		
+		Graphics2D g = (Graphics2D) image.getGraphics();
+		g.setComposite(AlphaComposite.Src);
+		
+		if(isScrollable) {
+			int pixelsX = (int)Math.rint(dx);
+			int pixelsY = (int)Math.rint(dy);
+			
+			if(pixelsX != 0 || pixelsY != 0) {
+				g.copyArea(0, 0, width, height, pixelsX, pixelsY);
+				
+				if(pixelsX > 0) render(g, 0, 0, pixelsX, height);
+				else if(pixelsX < 0) render(g, width + pixelsX, 0, -pixelsX, height);
+				
+				if(pixelsY > 0) render(g, 0, 0, width, pixelsY);
+				else if(pixelsY < 0) render(g, 0, height + pixelsY, width, -pixelsY);
+			}
+		} else {
+			render(g, 0, 0, width, height);
+		}
+		
+		g.dispose();
+		
+		valid = true;
+		viewX = newViewX;
+		viewY = newViewY;
+		zoom = newZoom;
+		
+		return !isScrollable;
+	}
+	
+	
+	private void render(Graphics2D g, int x, int y, int width, int height) {
+		Graphics2D clipped = (Graphics2D) g.create();
+		clipped.clipRect(x, y, width, height);
+		
+		if(!opaque) {
+			clipped.setComposite(AlphaComposite.Clear);
+			clipped.fillRect(x, y, width, height);
+		}
+		
+		clipped.setComposite(AlphaComposite.SrcOver);
+		
+		renderer.accept(clipped);
+		clipped.dispose();
+	}
+}
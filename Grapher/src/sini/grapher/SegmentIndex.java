@@ -0,0 +1,544 @@
+package sini.grapher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An index of the line segments of a set of curves, used to find the point on any of them nearest to a point on the plane, such as the
+ * one under the mouse.
+ * 
+ * <p>Each curve has its own uniform grid over its bounding box, with about one cell for every {@code SEGMENTS_PER_CELL} segments, and each
+ * cell lists the segments whose bounding boxes meet it. A query within a small radius then only looks at the segments of a few cells of
+ * each curve, however many segments there are. The grid of a curve is kept for as long as the geometry it was built from is unchanged,
+ * so that when one mesh is rebuilt only that curve is indexed again. Meshes are taken to be unchanged while the same one has the same
+ * size and its curve the same {@link Curve#getVersion() version}; points, which their owner may rewrite in place, while they hash the
+ * same.
+ * 
+ * <p>Points that have a {@link PointLodIndex}, and so are sorted by x, are not copied into a grid, since they may be a file far larger
+ * than the heap. They are searched where they are instead, by binary search on x and then down the levels of the index, skipping the
+ * buckets whose points are all too far away. Other points are only indexed if there are at most {@code MAX_GRID_POINTS} of them.
+ * 
+ * <p>The segments are taken from the meshes of {@link ParametricCurve parametric curves}, the points of {@link PointListCurve point
+ * lists}, the segments of {@link ImplicitCurve implicit curves} and the contours of {@link ScalarField scalar fields}. Other curves, such
+ * as direction fields and streams whose points change all the time, are not indexed.
+ */
+public class SegmentIndex {
+	
+	private static final int SEGMENTS_PER_CELL = 2;
+	private static final long MAX_GRID_POINTS = 1 << 20;
+	
+	// Indexes curves for updateLater, one index at a time, so that the thread that asks is never held up
+	private static final ExecutorService indexer = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "segment-index");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private IdentityHashMap<Curve, Entry> entries = new IdentityHashMap<Curve, Entry>();
+	
+	// The latest curves given to updateLater that are still to be indexed, or null if there are none
+	private ArrayList<Snapshot> pending;
+	private Runnable pendingCallback;
+	
+	
+	/**
+	 * The point on an indexed curve nearest to the point a query was made from.
+	 */
+	public static class Hit {
+		private final Curve curve;
+		private final double x, y;
+		private final double distance;
+		
+		private Hit(Curve curve, double x, double y, double distance) {
+			this.curve = curve;
+			this.x = x;
+			this.y = y;
+			this.distance = distance;
+		}
+		
+		public Curve getCurve() {
+			return curve;
+		}
+		
+		public double getX() {
+			return x;
+		}
+		
+		public double getY() {
+			return y;
+		}
+		
+		/**
+		 * Returns the distance on the plane from the point the query was made from.
+		 */
+		public double getDistance() {
+			return distance;
+		}
+	}
+	
+	
+	/**
+	 * Brings the index up to date with {@code curves}, indexing again those whose geometry has changed since they were last indexed, in
+	 * parallel, and dropping those that are no longer among them. Returns the number of curves that were indexed again.
+	 */
+	public int update(List<? extends Curve> curves) {
+		return index(snapshot(curves), null);
+		}
+		
+		
+	/**
+	 * Brings the index up to date with {@code curves} as {@link #update} does, but on a thread of its own, and then runs
+	 * {@code whenChanged} on that thread if any curve was indexed again or dropped. Only the geometry of the curves is looked up on the
+	 * calling thread. If this is called again before the curves have been indexed, only the latest curves are indexed.
+	 */
+	public void updateLater(List<? extends Curve> curves, Runnable whenChanged) {
+		ArrayList<Snapshot> snapshots = snapshot(curves);
+		
+		synchronized(this) {
+			boolean isQueued = pending != null;
+			pending = snapshots;
+			pendingCallback = whenChanged;
+			if(isQueued) return;
+		}
+		
+		indexer.execute(() -> {
+			ArrayList<Snapshot> next;
+			Runnable callback;
+			
+			synchronized(this) {
+				next = pending;
+				callback = pendingCallback;
+				pending = null;
+				pendingCallback = null;
+			}
+			
+			index(next, callback);
+		});
+	}
+	
+	
+	/**
+	 * Returns the point on an indexed curve nearest to (x, y), or {@code null} if there is none within {@code radius}. The point is on the
+	 * segments as they were indexed, except on the graph of a {@link SimpleFunctionCurve}, where the function is evaluated at the x found.
+	 */
+	public Hit findNearest(double x, double y, double radius) {
+		Search search = new Search(x, y, radius);
+		for(Entry entry: getEntries()) entry.search(search);
+		
+		if(search.nearest == null) return null;
+			
+		double nearestY = search.nearestY;
+		if(search.nearest instanceof SimpleFunctionCurve) {
+			double value = ((SimpleFunctionCurve) search.nearest).getFunction().apply(search.nearestX);
+			if(Double.isFinite(value)) nearestY = value;
+		}
+		
+		return new Hit(search.nearest, search.nearestX, nearestY, Math.sqrt(search.nearestDistance));
+	}
+	
+	
+	/**
+	 * Returns the number of segments indexed across all the curves.
+	 */
+	public long getSegmentCount() {
+		long count = 0;
+		for(Entry entry: getEntries()) count += entry.getSegmentCount();
+		return count;
+	}
+	
+	
+	private synchronized ArrayList<Entry> getEntries() {
+		return new ArrayList<Entry>(entries.values());
+	}
+	
+	
+	/**
+	 * Looks up the geometry of each of {@code curves} that is indexed, and copies the lists of those meshes that have changed, so that
+	 * they can be indexed on another thread while their curves go on changing.
+	 */
+	private ArrayList<Snapshot> snapshot(List<? extends Curve> curves) {
+		IdentityHashMap<Curve, Entry> indexed;
+		synchronized(this) {
+			indexed = entries;
+		}
+		
+		ArrayList<Snapshot> snapshots = new ArrayList<Snapshot>();
+		
+		for(Curve curve: curves) {
+			Object geometry = getGeometry(curve);
+			if(geometry == null) continue;
+			
+			Entry entry = indexed.get(curve);
+			long version = curve.getVersion();
+			
+			if(geometry instanceof PointSource) {
+				PointSource points = (PointSource) geometry;
+				
+				if(points.getLodIndex() != null) {
+					snapshots.add(new Snapshot(curve, (entry instanceof SortedPoints && entry.geometry == geometry) ? entry : new SortedPoints(curve, points)));
+				} else if(points.size() <= MAX_GRID_POINTS) {
+					snapshots.add(new Snapshot(curve, geometry, version, (entry != null && entry.geometry == geometry) ? entry : null));
+				}
+			} else {
+				List<?> list = (List<?>) geometry;
+				
+				if(entry != null && entry.geometry == geometry && entry.size == list.size() && entry.version == version) {
+					snapshots.add(new Snapshot(curve, entry));
+				} else {
+					snapshots.add(new Snapshot(curve, geometry, version, null));
+				}
+			}
+		}
+		
+		return snapshots;
+	}
+	
+	
+	/**
+	 * Indexes again, in parallel, the curves of {@code snapshots} that have changed, and replaces the index with theirs. Runs
+	 * {@code whenChanged}, if it is not {@code null}, if any curve was indexed again or dropped. Returns the number indexed again.
+	 */
+	private int index(ArrayList<Snapshot> snapshots, Runnable whenChanged) {
+		ArrayList<Callable<Entry>> tasks = new ArrayList<Callable<Entry>>();
+		for(Snapshot snapshot: snapshots) tasks.add(() -> snapshot.getEntry());
+		
+		IdentityHashMap<Curve, Entry> updated = new IdentityHashMap<Curve, Entry>();
+		int indexed = 0;
+		
+		ArrayList<Entry> results = Parallel.run(tasks);
+		for(int i = 0; i < snapshots.size(); i++) {
+			updated.put(snapshots.get(i).curve, results.get(i));
+			if(results.get(i) != snapshots.get(i).entry) indexed++;
+		}
+		
+		boolean isDropped;
+		synchronized(this) {
+			isDropped = !updated.keySet().containsAll(entries.keySet());
+			entries = updated;
+		}
+		
+		if(whenChanged != null && (indexed > 0 || isDropped)) whenChanged.run();
+		return indexed;
+	}
+	
+	
+	/**
+	 * Returns the object that holds the segments of {@code curve}, which is replaced rather than changed when they change, or {@code null}
+	 * if the curve is not indexed.
+	 */
+	private static Object getGeometry(Curve curve) {
+		if(curve instanceof ParametricCurve) return ((ParametricCurve) curve).getMesh();
+		if(curve instanceof PointListCurve) return ((PointListCurve) curve).getPoints();
+		if(curve instanceof ImplicitCurve) return ((ImplicitCurve) curve).getSegments();
+		if(curve instanceof ScalarField) return ((ScalarField) curve).getContours();
+		return null;
+	}
+	
+	
+	/**
+	 * The geometry of one curve as it was when an update was asked for, and the entry it was last indexed as, if that may still be
+	 * current.
+	 */
+	private static class Snapshot {
+		private final Curve curve;
+		private final Object geometry;
+		private final long version;
+		private final Entry entry;
+		
+		// A copy of a mesh to be indexed again, and where its offsets are from
+		private List<?> segments;
+		private double[] origin;
+		
+		private Snapshot(Curve curve, Entry entry) {
+			this(curve, entry.geometry, entry.version, entry);
+		}
+		
+		private Snapshot(Curve curve, Object geometry, long version, Entry entry) {
+			this.curve = curve;
+			this.geometry = geometry;
+			this.version = version;
+			this.entry = entry;
+			
+			if(geometry instanceof List && entry == null) {
+				segments = new ArrayList<Object>((List<?>) geometry);
+				origin = (curve instanceof ParametricCurve) ? ((ParametricCurve) curve).getMeshOrigin() : new double[2];
+			}
+		}
+		
+		/**
+		 * Returns the entry of the curve, which is the one it was last indexed as unless that is out of date.
+		 */
+		private Entry getEntry() {
+			if(geometry instanceof PointSource && !(entry instanceof SortedPoints)) {
+				// Points may have been rewritten in place, so they are hashed to tell
+				long hash = PointLodIndex.hash((PointSource) geometry);
+				if(entry != null && ((Grid) entry).hash == hash) return entry;
+				
+				return new Grid(this, ((PointSource) geometry).size(), hash);
+			}
+			
+			return (entry != null) ? entry : new Grid(this, segments.size(), 0);
+		}
+	}
+	
+	
+	/**
+	 * A query for the point nearest to (x, y) within {@code radius}, and the nearest point found so far.
+	 */
+	private static class Search {
+		private final double x, y, radius;
+		
+		private Curve nearest;
+		private double nearestDistance; // Squared, and the square of the radius until a point is found
+		private double nearestX = Double.NaN, nearestY = Double.NaN;
+		
+		private Search(double x, double y, double radius) {
+			this.x = x;
+			this.y = y;
+			this.radius = radius;
+			nearestDistance = radius * radius;
+		}
+		
+		private void visit(Curve curve, double x0, double y0, double x1, double y1) {
+			double dx = x1 - x0, dy = y1 - y0;
+			double lengthSquared = dx * dx + dy * dy;
+			
+			// The parameter of the nearest point along the segment, clamped to its ends
+			double t = (lengthSquared == 0) ? 0 : ((x - x0) * dx + (y - y0) * dy) / lengthSquared;
+			t = Math.max(0, Math.min(1, t));
+			
+			double px = x0 + t * dx, py = y0 + t * dy;
+			double distance = (px - x) * (px - x) + (py - y) * (py - y);
+			
+			if(distance < nearestDistance) {
+				nearest = curve;
+				nearestDistance = distance;
+				nearestX = px;
+				nearestY = py;
+			}
+		}
+	}
+	
+	
+	/**
+	 * The segments of one curve as they were indexed.
+	 */
+	private abstract static class Entry {
+		final Curve curve;
+		final Object geometry;
+		final long size;
+		final long version;
+		
+		private Entry(Curve curve, Object geometry, long size, long version) {
+			this.curve = curve;
+			this.geometry = geometry;
+			this.size = size;
+			this.version = version;
+		}
+		
+		abstract void search(Search search);
+		
+		abstract long getSegmentCount();
+	}
+	
+	
+	/**
+	 * Points sorted by x, searched where they are through their {@link PointLodIndex}.
+	 */
+	private static class SortedPoints extends Entry {
+		private final PointSource points;
+		
+		private SortedPoints(Curve curve, PointSource points) {
+			super(curve, points, points.size(), 0);
+			this.points = points;
+		}
+		
+		@Override
+		void search(Search search) {
+			PointLodIndex index = points.getLodIndex();
+			long size = points.size();
+			if(index == null || size < 2) return;
+			
+			// The segments that start from the point before the first in reach to the last in reach, or the one after it
+			long first = Math.max(0, index.findFirst(search.x - search.radius) - 1);
+			long last = Math.min(size - 2, index.findFirst(search.x + search.radius));
+			if(first <= last) search(search, index, index.getLevels() - 1, first, last);
+		}
+		
+		/**
+		 * Searches the segments that start from the points {@code first} to {@code last}, through the buckets of {@code level} they fall
+		 * in, going down to the next level only in buckets that may hold a point nearer than the nearest found so far.
+		 */
+		private void search(Search search, PointLodIndex index, int level, long first, long last) {
+			if(level < 0) {
+				for(long i = first; i <= last; i++) search.visit(curve, points.getX(i), points.getY(i), points.getX(i + 1), points.getY(i + 1));
+				return;
+			}
+			
+			long bucketSize = index.getBucketSize(level);
+			
+			for(long bucket = first / bucketSize; bucket <= last / bucketSize; bucket++) {
+				long start = Math.max(first, bucket * bucketSize), end = Math.min(last, (bucket + 1) * bucketSize - 1);
+				
+				// The segments starting in the bucket reach the first point of the next one
+				double nextY = points.getY(end + 1);
+				double minY = Math.min(index.getMinY(level, bucket), nextY), maxY = Math.max(index.getMaxY(level, bucket), nextY);
+				
+				double dx = Math.max(0, Math.max(points.getX(start) - search.x, search.x - points.getX(end + 1)));
+				double dy = Math.max(0, Math.max(minY - search.y, search.y - maxY));
+				
+				if(dx * dx + dy * dy < search.nearestDistance) search(search, index, level - 1, start, end);
+			}
+		}
+		
+		@Override
+		long getSegmentCount() {
+			return Math.max(0, points.size() - 1);
+		}
+	}
+	
+	
+	/**
+	 * The uniform grid over the segments of one curve, with the segments of each cell listed one cell after another.
+	 */
+	private static class Grid extends Entry {
+		private final long hash; // The hash of the points the grid was built from, if it was built from points
+		
+		private double[] coordinates = new double[64]; // The x and y coordinates of the start and end of each segment
+		private int segmentCount;
+		
+		private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+		private double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+		private double cellSize;
+		private int columns, rows;
+		
+		private int[] cellStarts; // The position in cellSegments of the first segment of each cell, and of the end of the last cell
+		private int[] cellSegments;
+		
+		@SuppressWarnings("unchecked")
+		private Grid(Snapshot snapshot, long size, long hash) {
+			super(snapshot.curve, snapshot.geometry, size, snapshot.version);
+			this.hash = hash;
+			
+			if(geometry instanceof PointSource) {
+				PointSource points = (PointSource) geometry;
+				for(long i = 0; i + 1 < size; i++) add(points.getX(i), points.getY(i), points.getX(i + 1), points.getY(i + 1));
+			} else if(curve instanceof ScalarField) {
+				for(double[] contour: (List<double[]>) snapshot.segments) {
+					for(int i = 0; i + 3 < contour.length; i += 2) add(contour[i], contour[i + 1], contour[i + 2], contour[i + 3]);
+				}
+			} else {
+				// The mesh of a curve at deep zoom holds offsets from its origin, and the segments are indexed where they are on the plane
+				double[] origin = snapshot.origin;
+				
+				for(double[][] polyline: (List<double[][]>) snapshot.segments) {
+					for(int i = 0; i + 1 < polyline.length; i++) {
+						add(origin[0] + polyline[i][0], origin[1] + polyline[i][1], origin[0] + polyline[i + 1][0], origin[1] + polyline[i + 1][1]);
+					}
+				}
+			}
+			
+			build();
+		}
+		
+		@Override
+		void search(Search search) {
+			double x = search.x, y = search.y, radius = search.radius;
+			if(x < minX - radius || x > maxX + radius || y < minY - radius || y > maxY + radius) return;
+			
+			int column0 = getColumn(x - radius), column1 = getColumn(x + radius);
+			int row0 = getRow(y - radius), row1 = getRow(y + radius);
+			double[] c = coordinates;
+			
+			for(int row = row0; row <= row1; row++) {
+				for(int cell = row * columns + column0; cell <= row * columns + column1; cell++) {
+					for(int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+						int k = 4 * cellSegments[i];
+						search.visit(curve, c[k], c[k + 1], c[k + 2], c[k + 3]);
+					}
+				}
+			}
+		}
+		
+		@Override
+		long getSegmentCount() {
+			return segmentCount;
+		}
+		
+		private void add(double x0, double y0, double x1, double y1) {
+			if(!(Double.isFinite(x0) && Double.isFinite(y0) && Double.isFinite(x1) && Double.isFinite(y1))) return;
+			
+			if(4 * segmentCount + 4 > coordinates.length) {
+				double[] grown = new double[2 * coordinates.length];
+				System.arraycopy(coordinates, 0, grown, 0, 4 * segmentCount);
+				coordinates = grown;
+			}
+			
+			int k = 4 * segmentCount++;
+			coordinates[k] = x0;
+			coordinates[k + 1] = y0;
+			coordinates[k + 2] = x1;
+			coordinates[k + 3] = y1;
+			
+			minX = Math.min(minX, Math.min(x0, x1));
+			maxX = Math.max(maxX, Math.max(x0, x1));
+			minY = Math.min(minY, Math.min(y0, y1));
+			maxY = Math.max(maxY, Math.max(y0, y1));
+		}
+		
+		/**
+		 * Sizes the cells so that there are about {@code SEGMENTS_PER_CELL} segments in each, and lists the segments of each cell.
+		 */
+		private void build() {
+			double width = maxX - minX, height = maxY - minY;
+			double cells = Math.max(1, segmentCount / SEGMENTS_PER_CELL);
+			
+			// A curve that is a horizontal or vertical line has cells along its length
+			cellSize = Math.max(Math.sqrt(width * height / cells), Math.max(width, height) / cells);
+			if(!(cellSize > 0)) cellSize = 1;
+			
+			columns = (segmentCount == 0) ? 1 : (int)Math.min(width / cellSize, cells) + 1;
+			rows = (segmentCount == 0) ? 1 : (int)Math.min(height / cellSize, cells) + 1;
+			cellStarts = new int[columns * rows + 1];
+			
+			// Counts the segments of each cell, then places each segment after those of the cells before it
+			for(int s = 0; s < segmentCount; s++) {
+				int k = 4 * s;
+				int column0 = getColumn(Math.min(coordinates[k], coordinates[k + 2])), column1 = getColumn(Math.max(coordinates[k], coordinates[k + 2]));
+				int row0 = getRow(Math.min(coordinates[k + 1], coordinates[k + 3])), row1 = getRow(Math.max(coordinates[k + 1], coordinates[k + 3]));
+				
+				for(int row = row0; row <= row1; row++) {
+					for(int column = column0; column <= column1; column++) cellStarts[row * columns + column + 1]++;
+				}
+			}
+			
+			for(int cell = 0; cell < columns * rows; cell++) cellStarts[cell + 1] += cellStarts[cell];
+			
+			cellSegments = new int[cellStarts[columns * rows]];
+			int[] next = Arrays.copyOf(cellStarts, columns * rows);
+			
+			for(int s = 0; s < segmentCount; s++) {
+				int k = 4 * s;
+				int column0 = getColumn(Math.min(coordinates[k], coordinates[k + 2])), column1 = getColumn(Math.max(coordinates[k], coordinates[k + 2]));
+				int row0 = getRow(Math.min(coordinates[k + 1], coordinates[k + 3])), row1 = getRow(Math.max(coordinates[k + 1], coordinates[k + 3]));
+				
+				for(int row = row0; row <= row1; row++) {
+					for(int column = column0; column <= column1; column++) cellSegments[next[row * columns + column]++] = s;
+				}
+			}
+		}
+		
+		private int getColumn(double x) {
+			return (int)Math.max(0, Math.min(columns - 1, Math.floor((x - minX) / cellSize)));
+		}
+		
+		private int getRow(double y) {
+			return (int)Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cellSize)));
+		}
+	}
+}
@@ -1,14 +1,345 @@
 package sini.grapher;
 
 import java.awt.Color;
+import java.util.ArrayList;
 import java.util.function.Function;
 
-public class SimpleFunctionCurve extends ParametricCurve {
+import sini.batch.BatchFunction;
+import sini.batch.BatchKernels;
+import sini.doubledouble.DoubleDouble;
+import sini.doubledouble.DoubleDoubleFunction;
+import sini.dual.DualFunction;
+import sini.grapher.profiling.Counters;
+import sini.grapher.profiling.MeshUpdateEvent;
+
+/**
+ * The graph of a function of one variable over the visible part of the x-axis.
+ * 
+ * <p>The x-axis is split into blocks of {@code BLOCK_SEGMENTS} segments, and the mesh is built block by block with a step rounded down
+ * to a power of 2, so that the same blocks are built again whenever nearby viewports are seen. Finished blocks are kept in the shared
+ * {@link MeshCache}, so panning only builds the blocks that come into view, and returning to a recently seen viewport builds nothing.
+ * A block that is not cached is first built with a step {@code 2^COARSE_LEVELS} times larger, and then refined by halving the step,
+ * evaluating the function only at the midpoints of the existing segments.
+ * 
+ * <p>At deep zoom the blocks are built from offsets from an origin near the viewport instead, without the cache, and a
+ * {@link DoubleDoubleFunction} is evaluated at the origin plus each offset in double-double precision, so that the graph keeps its detail
+ * where x itself cannot be told apart from its neighbouring doubles.
+ * 
+ * @author Sini
+ */
+public class SimpleFunctionCurve extends ParametricCurve implements DeepZoomCurve {
+	
+	private static final int COARSE_LEVELS = 4;
+	private static final int BLOCK_SEGMENTS = 256;
+	private static final double FINITE_DIFFERENCE_STEP = 6e-6;
+	
+	private Function<Double, Double> function;
+	
+	private double step; // The step that the blocks are being refined towards
+	private ArrayList<Block> blocks = new ArrayList<Block>();
+	private long evaluations;
+	private double originX, originY; // The origin of the mesh, which is (0, 0) except at deep zoom
+	
 	public SimpleFunctionCurve(Function<Double, Double> f) {
 		super((double[] p) -> new double[] {p[0], f.apply(p[0])});
+		function = f;
 	}
 	
 	public SimpleFunctionCurve(Function<Double, Double> f, Color color) {
 		super((double[] p) -> new double[] {p[0], f.apply(p[0])}, color);
+		function = f;
+	}
+	
+	public Function<Double, Double> getFunction() {
+		return function;
+	}
+	
+	/**
+	 * Returns the value of the function at {@code x} and its derivative there, in turn. If the function is a {@link DualFunction}, both
+	 * come from one evaluation, and otherwise the derivative is found by a central difference, which takes two more.
+	 */
+	public double[] getValueAndDerivative(double x) {
+		if(function instanceof DualFunction) {
+			Counters.addFunctionEvaluations(1);
+			return ((DualFunction) function).getValueAndDerivative(x);
+		}
+		
+		double h = FINITE_DIFFERENCE_STEP * Math.max(1, Math.abs(x));
+		Counters.addFunctionEvaluations(3);
+		
+		return new double[] {function.apply(x), (function.apply(x + h) - function.apply(x - h)) / (2 * h)};
+	}
+	
+	/**
+	 * Builds the mesh over {@code interval} at full detail straight away.
+	 */
+	@Override
+	public void updateMesh(Interval interval, double step) {
+		setViewport(interval, step);
+		while(refine(Long.MAX_VALUE));
+	}
+	
+	@Override
+	public SimpleFunctionCurve copy() {
+		SimpleFunctionCurve copy = new SimpleFunctionCurve(function, getColor());
+		copy.setMeshCache(getMeshCache());
+		return copy;
+	}
+	
+	@Override
+	public boolean setViewport(Interval visible, double step) {
+		setOrigin(0, 0);
+		return fit(visible, step);
+	}
+	
+	@Override
+	public boolean setViewport(double originX, double originY, Interval offsets, double step) {
+		setOrigin(originX, originY);
+		return fit(offsets, step);
+	}
+	
+	/**
+	 * Moves the origin of the mesh to (x, y), dropping the blocks built relative to the old one.
+	 */
+	private void setOrigin(double x, double y) {
+		if(x == originX && y == originY) return;
+		
+		originX = x;
+		originY = y;
+		blocks = new ArrayList<Block>();
+		setMeshOrigin(x, y);
+	}
+	
+	/**
+	 * Returns the cache that blocks are kept in, or {@code null} if they are not to be cached, as when they are built relative to an origin.
+	 */
+	private MeshCache getBlockCache() {
+		return (originX == 0 && originY == 0) ? getMeshCache() : null;
+	}
+	
+	private boolean fit(Interval visible, double step) {
+		MeshUpdateEvent event = new MeshUpdateEvent();
+		event.begin();
+		long startEvaluations = evaluations;
+		
+		double blockStep = MeshCache.quantizeStep(step);
+		double blockWidth = BLOCK_SEGMENTS * blockStep;
+		
+		long firstIndex = (long)Math.floor(visible.lower() / blockWidth);
+		long lastIndex = Math.max(firstIndex, (long)Math.ceil(visible.upper() / blockWidth) - 1);
+		
+		ArrayList<Block> oldBlocks = (blockStep == this.step) ? blocks : new ArrayList<Block>();
+		
+		this.step = blockStep;
+		blocks = new ArrayList<Block>();
+		
+		for(long index = firstIndex; index <= lastIndex; index++) {
+			blocks.add(getBlock(index, oldBlocks));
+		}
+		
+		setMesh(joinBlocks());
+		event.end();
+		
+		if(event.shouldCommit()) {
+			event.curveType = getClass().getSimpleName();
+			event.step = blockStep;
+			event.meshSize = getMesh().size();
+			event.evaluations = evaluations - startEvaluations;
+			event.commit();
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public boolean refine(long deadline) {
+		boolean isRefined = false;
+		
+		do {
+			// The coarsest block is refined first, so that the whole graph gains detail evenly
+			Block coarsest = null;
+			
+			for(Block block: blocks) {
+				if(block.step > step && (coarsest == null || block.step > coarsest.step)) coarsest = block;
+			}
+			
+			if(coarsest == null) break;
+			
+			coarsest.refine();
+			isRefined = true;
+			
+			MeshCache cache = getBlockCache();
+			if(cache != null && coarsest.step == step) cache.put(this, coarsest.getInterval(), step, coarsest.segments, MeshCache.sizeOf(coarsest.segments), coarsest.cost);
+		} while(System.nanoTime() < deadline);
+		
+		if(isRefined) {
+			setMesh(joinBlocks());
+			markChanged();
+		}
+		
+		for(Block block: blocks) {
+			if(block.step > step) return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Returns the block with index {@code index}, which is taken from {@code oldBlocks} if it is there, then from the cache, and is
+	 * otherwise built coarsely.
+	 */
+	private Block getBlock(long index, ArrayList<Block> oldBlocks) {
+		for(Block block: oldBlocks) {
+			if(block.index == index) return block;
+		}
+		
+		Block block = new Block(index);
+		MeshCache cache = getBlockCache();
+		ArrayList<double[][]> segments = (cache == null) ? null : cache.get(this, block.getInterval(), step);
+		
+		if(segments != null) {
+			block.segments = segments;
+			block.step = step;
+		} else {
+			block.build(step * (1 << COARSE_LEVELS));
+		}
+		
+		return block;
+	}
+	
+	private ArrayList<double[][]> joinBlocks() {
+		int size = 0;
+		for(Block block: blocks) size += block.segments.size();
+		
+		ArrayList<double[][]> mesh = new ArrayList<double[][]>(size);
+		for(Block block: blocks) mesh.addAll(block.segments);
+		
+		return mesh;
+	}
+	
+	/**
+	 * The part of the mesh between {@code index * BLOCK_SEGMENTS * step} and {@code (index + 1) * BLOCK_SEGMENTS * step}, where
+	 * {@code step} is the step the curve is being refined towards.
+	 */
+	private class Block {
+		private final long index;
+		private ArrayList<double[][]> segments;
+		private double step;
+		private long cost; // The time spent building the block, in nanoseconds
+		
+		private Block(long index) {
+			this.index = index;
+		}
+		
+		private Interval getInterval() {
+			double width = BLOCK_SEGMENTS * SimpleFunctionCurve.this.step;
+			return new Interval(index * width, (index + 1) * width);
+		}
+		
+		private void build(double step) {
+			long start = System.nanoTime();
+			
+			double lower = index * BLOCK_SEGMENTS * SimpleFunctionCurve.this.step;
+			int segmentCount = (int)Math.round(BLOCK_SEGMENTS * SimpleFunctionCurve.this.step / step);
+			
+			double[] ys = null;
+			if(isBatched()) {
+				double[] xs = new double[segmentCount + 1];
+				for(int i = 0; i <= segmentCount; i++) xs[i] = lower + i * step;
+				ys = evaluate(xs);
+			}
+			
+			segments = new ArrayList<double[][]>(segmentCount);
+			double[] lastPoint = point(lower, ys, 0);
+			
+			for(int i = 1; i <= segmentCount; i++) {
+				double[] point = point(lower + i * step, ys, i);
+				segments.add(new double[][] {lastPoint, point});
+				lastPoint = point;
+			}
+			
+			Counters.addFunctionEvaluations(segmentCount + 1);
+			evaluations += segmentCount + 1;
+			
+			this.step = step;
+			cost += System.nanoTime() - start;
+		}
+		
+		/**
+		 * Halves the step of the block, by splitting each segment at its midpoint.
+		 */
+		private void refine() {
+			long start = System.nanoTime();
+			
+			double[] ys = null;
+			if(isBatched()) {
+				double[] xs = new double[segments.size()];
+				for(int i = 0; i < xs.length; i++) xs[i] = (segments.get(i)[0][0] + segments.get(i)[1][0]) / 2;
+				ys = evaluate(xs);
+			}
+			
+			ArrayList<double[][]> refinedSegments = new ArrayList<double[][]>(2 * segments.size());
+			
+			for(int i = 0; i < segments.size(); i++) {
+				double[][] segment = segments.get(i);
+				double[] midpoint = point((segment[0][0] + segment[1][0]) / 2, ys, i);
+				
+				refinedSegments.add(new double[][] {segment[0], midpoint});
+				refinedSegments.add(new double[][] {midpoint, segment[1]});
+			}
+			
+			Counters.addFunctionEvaluations(segments.size());
+			evaluations += segments.size();
+			
+			segments = refinedSegments;
+			step /= 2;
+			cost += System.nanoTime() - start;
+		}
+		
+		/**
+		 * Returns whether the mesh points are evaluated a block at a time: only a {@link BatchFunction} gains from it, and not when it is
+		 * to be evaluated in double-double precision.
+		 */
+		private boolean isBatched() {
+			boolean offset = originX != 0 || originY != 0;
+			return function instanceof BatchFunction && !(offset && function instanceof DoubleDoubleFunction);
+		}
+		
+		/**
+		 * Returns the mesh point at {@code x}, taking its y-coordinate from {@code ys} if the points were evaluated in a batch.
+		 */
+		private double[] point(double x, double[] ys, int index) {
+			return new double[] {x, (ys != null) ? ys[index] : evaluate(x)};
+		}
+		
+		/**
+		 * Returns the y-coordinates of the mesh at the x-coordinates {@code xs}, which are offsets from the origin at deep zoom, with a
+		 * {@link BatchFunction} evaluated at all of them in one call.
+		 */
+		private double[] evaluate(double[] xs) {
+			double[] ys = new double[xs.length];
+			if(originX == 0 && originY == 0) {
+				((BatchFunction) function).apply(xs, ys, 0, xs.length);
+				return ys;
+			}
+			
+			// As for single points, the function is evaluated at the double nearest the origin plus each offset
+			double[] shifted = new double[xs.length];
+			BatchKernels.add(xs, shifted, 0, xs.length, originX);
+			((BatchFunction) function).apply(shifted, ys, 0, xs.length);
+			BatchKernels.add(ys, ys, 0, xs.length, -originY);
+			return ys;
+		}
+		
+		private double evaluate(double x) {
+			if(originX == 0 && originY == 0) return function.apply(x);
+			
+			// An ordinary function can only be evaluated at the double nearest the point
+			if(!(function instanceof DoubleDoubleFunction)) return function.apply(originX + x) - originY;
+			
+			// The high part of y is near the origin, so taking the origin away from it is exact
+			DoubleDouble y = ((DoubleDoubleFunction) function).apply(DoubleDouble.sum(originX, x));
+			return (y.hi - originY) + y.lo;
+		}
 	}
 }
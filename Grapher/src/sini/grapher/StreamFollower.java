@@ -0,0 +1,74 @@
+package sini.grapher;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+/**
+ * Keeps the newest point of a {@link StreamingCurve} in view on a {@link Display}. Once per refresh of the screen, if points have been
+ * added to the curve, the display is repainted, and scrolled sideways by whole pixels so that the newest point sits a little way in from
+ * its right edge. Scrolling pauses while the user is moving the viewport, or has moved it so that the newest point is out of view, and
+ * resumes once the newest point is back in view.
+ */
+class StreamFollower implements ActionListener {
+	
+	// The fraction of the width of the display left empty to the right of the newest point
+	private static final double MARGIN = 0.1;
+	
+	private final Display display;
+	private final ViewportAnimator animator;
+	private final StreamingCurve curve;
+	private final Timer timer;
+	
+	private long lastVersion = -1;
+	private double lastLatestX = Double.NaN;
+	
+	public StreamFollower(Display display, ViewportAnimator animator, StreamingCurve curve) {
+		this.display = display;
+		this.animator = animator;
+		this.curve = curve;
+		
+		timer = new Timer(1000 / ViewportAnimator.getRefreshRate(), this);
+		timer.setCoalesce(true);
+	}
+	
+	
+	public void start() {
+		timer.start();
+	}
+	
+	
+	public void stop() {
+		timer.stop();
+	}
+	
+	
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		long version = curve.getVersion();
+		if(version == lastVersion) return;
+		lastVersion = version;
+		
+		double latestX = curve.getLatestX();
+		int width = display.getWidth();
+		
+		// The stream is only followed if the newest point was in view when the last points arrived
+		double lastDisplayX = display.getDisplayX(lastLatestX);
+		boolean isFollowing = Double.isNaN(lastLatestX) || (lastDisplayX >= 0 && lastDisplayX <= width);
+		lastLatestX = latestX;
+		
+		if(Double.isNaN(latestX) || animator.isActive() || width == 0 || !isFollowing) {
+			display.repaint();
+			return;
+		}
+		
+		double dx = Math.rint(display.getDisplayX(latestX) - (1 - MARGIN) * width);
+		
+		if(dx > 0) {
+			display.setViewport(display.getPrecisePlaneX(dx), display.getPrecisePlaneY(0), display.getZoom(), true);
+		} else {
+			display.repaint();
+		}
+	}
+}
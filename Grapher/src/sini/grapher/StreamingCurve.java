@@ -0,0 +1,313 @@
+package sini.grapher;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Path2D;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+import sini.grapher.profiling.Counters;
+
+/**
+ * A curve through a live stream of points, such as telemetry, which one thread adds to while the display draws it. The x coordinates of
+ * the points must not decrease, as when they are timestamps.
+ * 
+ * <p>The points are kept in a ring buffer of primitive coordinates, written by a single producer without locking. The producer publishes
+ * points by advancing a volatile count, at least once every {@code publishInterval} points, and the display reads only points that have
+ * been published. The ring holds at least twice as many points as are retained, so that the producer can carry on writing while a frame
+ * is drawn; if it may have lapped the frame anyway, allowing for the points it has written but not yet published, the points are read
+ * again. Points that are older than the retention, or further behind the newest point than the retained
+ * span of x, are dropped.
+ * 
+ * <p>However many points are in view, at most four lines are drawn through each column of pixels: each column is reduced to the first,
+ * lowest, highest and last point in it, which draws the same picture as the points themselves.
+ */
+public class StreamingCurve implements Curve {
+	
+	// Times the display retries reading the points in view before giving up on the oldest of them, if the producer keeps lapping it
+	private static final int MAX_READ_ATTEMPTS = 4;
+	
+	// The most points the producer writes before publishing them, which bounds how far it may be ahead of the published count
+	private static final int MAX_PUBLISH_INTERVAL = 1024;
+	
+	private final int retention;
+	private final int mask;
+	private final int publishInterval;
+	private final double[] xs;
+	private final double[] ys;
+	
+	private volatile long written; // The number of points published by the producer
+	private long pending; // The number of points written by the producer, including those not yet published
+	
+	private volatile double retainedSpan = Double.POSITIVE_INFINITY;
+	
+	private Color color;
+	private float thickness;
+	private volatile long colorVersion;
+	
+	// The first, lowest, highest and last y coordinate in each column of pixels, reused from frame to frame
+	private int[] columnCounts = new int[0];
+	private double[] columnFirst = new double[0];
+	private double[] columnMin = new double[0];
+	private double[] columnMax = new double[0];
+	private double[] columnLast = new double[0];
+	
+	public StreamingCurve(int retention) {
+		this(retention, Color.BLUE, 2);
+	}
+	
+	/**
+	 * Creates a curve that retains the last {@code retention} points added to it.
+	 */
+	public StreamingCurve(int retention, Color color, float thickness) {
+		if(retention <= 0 || retention > 1 << 29) throw new IllegalArgumentException("Retention must be between 1 and 2^29: " + retention);
+		
+		int capacity = Integer.highestOneBit(2 * retention - 1) << 1;
+		
+		this.retention = retention;
+		this.color = color;
+		this.thickness = thickness;
+		
+		mask = capacity - 1;
+		publishInterval = Math.min(MAX_PUBLISH_INTERVAL, capacity / 2);
+		xs = new double[mask + 1];
+		ys = new double[mask + 1];
+	}
+	
+	
+	/**
+	 * Adds the point (x, y) to the curve. Only one thread may add points to a curve.
+	 */
+	public void add(double x, double y) {
+		int i = (int)(pending & mask);
+		xs[i] = x;
+		ys[i] = y;
+		
+		written = ++pending;
+	}
+	
+	
+	/**
+	 * Adds the first {@code count} points given by {@code x} and {@code y} to the curve, publishing them {@code publishInterval} at a
+	 * time. Only one thread may add points to a curve.
+	 */
+	public void add(double[] x, double[] y, int count) {
+		long published = pending;
+		
+		for(int j = 0; j < count; j++) {
+			int i = (int)(pending & mask);
+			xs[i] = x[j];
+			ys[i] = y[j];
+			pending++;
+			
+			if(pending - published == publishInterval) written = published = pending;
+		}
+		
+		written = pending;
+	}
+	
+	
+	/**
+	 * Drops points that are further than {@code span} behind the newest point in x, as well as those older than the retention.
+	 */
+	public void setRetainedSpan(double span) {
+		retainedSpan = span;
+	}
+	
+	
+	public void setColor(Color color) {
+		this.color = color;
+		colorVersion++;
+	}
+	
+	
+	/**
+	 * Returns the number of points that have ever been added to the curve, which changes each time points are added.
+	 */
+	@Override
+	public long getVersion() {
+		return written + colorVersion;
+	}
+	
+	
+	/**
+	 * Returns the number of points retained.
+	 */
+	public int getSize() {
+		return (int)Math.min(written, retention);
+	}
+	
+	
+	/**
+	 * Returns the x coordinate of the newest point, or {@code NaN} if there are none.
+	 */
+	public double getLatestX() {
+		while(true) {
+			long end = written;
+			if(end == 0) return Double.NaN;
+			
+			double x = xs[(int)((end - 1) & mask)];
+			if(isIntact(end - 1)) return x;
+		}
+	}
+	
+	
+	@Override
+	public void updateMesh(Interval interval, double step) {}
+	
+	
+	@Override
+	public synchronized void draw(Display display, Graphics2D g) {
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(color);
+		g.setStroke(new BasicStroke(thickness, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+		
+		Rectangle bounds = g.getClipBounds();
+		if(bounds == null) bounds = new Rectangle(display.getWidth(), display.getHeight());
+		
+		int columns = bounds.width;
+		ensureColumns(columns);
+		
+		double left = display.getPlaneX(bounds.x);
+		double right = display.getPlaneX(bounds.x + bounds.width);
+		
+		// The last point before the clip and the first point after it are drawn where they are, so that lines leading out of view are drawn
+		double leadX = Double.NaN, leadY = 0;
+		double trailX = Double.NaN, trailY = 0;
+		
+		for(int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+			long end = written;
+			long start = getOldestRetained(end);
+			long first = findFirst(start, end, left);
+			
+			Arrays.fill(columnCounts, 0, columns, 0);
+			leadX = trailX = Double.NaN;
+			
+			if(first > start) {
+				leadX = xs[(int)((first - 1) & mask)];
+				leadY = ys[(int)((first - 1) & mask)];
+			}
+			
+			for(long i = first; i < end; i++) {
+				int slot = (int)(i & mask);
+				double x = xs[slot];
+				
+				if(x >= right) {
+					trailX = x;
+					trailY = ys[slot];
+					break;
+				}
+				
+				int column = (int)Math.floor(display.getDisplayX(x)) - bounds.x;
+				addToColumn(Math.max(0, Math.min(columns - 1, column)), ys[slot]);
+			}
+			
+			// The points read are only valid if the producer has not since started overwriting them
+			if(isIntact(start)) break;
+		}
+		
+		Path2D.Double path = new Path2D.Double();
+		long segments = 0;
+		
+		if(!Double.isNaN(leadX)) path.moveTo(display.getDisplayX(leadX), display.getDisplayY(leadY));
+		
+		for(int column = 0; column < columns; column++) {
+			if(columnCounts[column] == 0) continue;
+			
+			double x = bounds.x + column + 0.5;
+			lineTo(path, x, display.getDisplayY(columnFirst[column]));
+			
+			if(columnCounts[column] > 1) {
+				lineTo(path, x, display.getDisplayY(columnMin[column]));
+				lineTo(path, x, display.getDisplayY(columnMax[column]));
+				lineTo(path, x, display.getDisplayY(columnLast[column]));
+				segments += 3;
+			}
+			
+			segments++;
+		}
+		
+		if(!Double.isNaN(trailX)) lineTo(path, display.getDisplayX(trailX), display.getDisplayY(trailY));
+		
+		g.draw(path);
+		
+		Counters.addSegmentsDrawn(segments);
+	}
+	
+	
+	/**
+	 * Returns whether the points from {@code start} on, which the caller has just read, are intact. A slot is only overwritten once the
+	 * producer is a whole ring ahead, and it may have written up to {@code publishInterval - 1} points beyond those it has published.
+	 */
+	private boolean isIntact(long start) {
+		// Keeps the plain reads of the points from being moved after the read of the count
+		VarHandle.acquireFence();
+		return written - start <= mask + 1 - publishInterval;
+	}
+	
+	
+	private static void lineTo(Path2D.Double path, double x, double y) {
+		if(path.getCurrentPoint() == null) path.moveTo(x, y);
+		else path.lineTo(x, y);
+	}
+	
+	
+	/**
+	 * Returns the index of the oldest point that is retained, when {@code end} points have been published.
+	 */
+	private long getOldestRetained(long end) {
+		long start = Math.max(0, end - retention);
+		double span = retainedSpan;
+		
+		if(end > start && span != Double.POSITIVE_INFINITY) {
+			start = findFirst(start, end, xs[(int)((end - 1) & mask)] - span);
+		}
+		
+		return start;
+	}
+	
+	
+	/**
+	 * Returns the index of the first point between {@code start} and {@code end} whose x coordinate is at least {@code x}, or {@code end}
+	 * if there is none.
+	 */
+	private long findFirst(long start, long end, double x) {
+		while(start < end) {
+			long mid = (start + end) >>> 1;
+			
+			if(xs[(int)(mid & mask)] < x) start = mid + 1;
+			else end = mid;
+		}
+		
+		return start;
+	}
+	
+	
+	private void addToColumn(int column, double y) {
+		if(columnCounts[column] == 0) {
+			columnFirst[column] = y;
+			columnMin[column] = y;
+			columnMax[column] = y;
+		} else {
+			if(y < columnMin[column]) columnMin[column] = y;
+			if(y > columnMax[column]) columnMax[column] = y;
+		}
+		
+		columnLast[column] = y;
+		columnCounts[column]++;
+	}
+	
+	
+	private void ensureColumns(int columns) {
+		if(columnCounts.length >= columns) return;
+		
+		columnCounts = new int[columns];
+		columnFirst = new double[columns];
+		columnMin = new double[columns];
+		columnMax = new double[columns];
+		columnLast = new double[columns];
+	}
+}
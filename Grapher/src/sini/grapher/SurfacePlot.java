@@ -0,0 +1,556 @@
+package sini.grapher;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import sini.grapher.profiling.Counters;
+
+/**
+ * A surface in space, the image of a 2-dimensional parameter domain under a map {@code f: R^2 -> R^3}, seen through an
+ * {@link OrbitCamera} and drawn by a software rasteriser with a depth buffer. The domain is sampled on a lattice, and each square of four
+ * neighbouring samples is split into two triangles. The surface is lit by a light over the shoulder of the camera, computed at the
+ * vertices from normals estimated by central differences and interpolated across each triangle (Gouraud shading), and both sides of the
+ * surface are lit alike. Samples where f is not finite leave holes in the surface.
+ * 
+ * <p>Each frame is drawn in three passes, each split between a pool with one thread per processor:
+ * <ul>
+ * 	<li>the vertices are projected onto the screen and shaded;
+ * 	<li>the squares are sorted into the {@code TILE_SIZE} pixel tiles of the screen that their bounding boxes overlap, each thread
+ * 	sorting a band of squares into bins of its own;
+ * 	<li>the tiles are rasterised, each thread taking the next tile that has not been taken, and filling the triangles of every bin of
+ * 	that tile a row at a time, with depth and shade stepped along the row from their plane equations.
+ * </ul>
+ * No two threads write to the same tile, so the colour and depth buffers are shared without locking. The surface is drawn into an image
+ * with a transparent background over the rest of the display, and so it does not follow the viewport of the plane.
+ */
+public class SurfacePlot implements Curve {
+	
+	private static final int TILE_SIZE = 64;
+	private static final int MIN_VERTICES_PER_THREAD = 1 << 14;
+	
+	private static final int SHADES = 256;
+	private static final double AMBIENT = 0.25; // The shade of a surface lit edge on
+	private static final double NEAR = 1e-3; // The nearest a vertex can be to the camera, in units of the radius of the surface
+	
+	private final Function<double[], double[]> f;
+	private OrbitCamera camera = new OrbitCamera();
+	private Color color;
+	private long version;
+	private OrbitCamera versionCamera; // The camera and its version when the version of the surface was last taken
+	private long versionCameraVersion;
+	
+	// The mesh: rows by columns vertices, with the coordinates and unit normal of each in turn
+	private int rows;
+	private int columns;
+	private float[] positions;
+	private float[] normals;
+	private double centerX, centerY, centerZ;
+	private double radius;
+	
+	// The projected vertices and the buffers of the last frame, reused while the sizes stay the same
+	private float[] screenX = new float[0];
+	private float[] screenY = new float[0];
+	private float[] inverseDepths = new float[0]; // 1 / depth is linear across the screen, and is not positive for vertices left out
+	private float[] shades = new float[0];
+	private BufferedImage image;
+	private float[] depthBuffer;
+	private TileBins[] bins = new TileBins[0];
+	private final int[] shadeColors = new int[SHADES];
+	
+	public SurfacePlot(Function<double[], double[]> f, Interval interval, double step) {
+		this(f, interval, step, Color.RED);
+	}
+	
+	public SurfacePlot(Function<double[], double[]> f, Interval interval, double step, Color color) {
+		this.f = f;
+		setColor(color);
+		updateMesh(interval, step);
+	}
+	
+	
+	public synchronized void setColor(Color color) {
+		this.color = color;
+		
+		for(int i = 0; i < SHADES; i++) {
+			double shade = (double)i / (SHADES - 1);
+			shadeColors[i] = 0xFF000000 | ((int)(color.getRed() * shade) << 16) | ((int)(color.getGreen() * shade) << 8) | (int)(color.getBlue() * shade);
+		}
+		
+		version++;
+	}
+	
+	
+	public Color getColor() {
+		return color;
+	}
+	
+	
+	public OrbitCamera getCamera() {
+		return camera;
+	}
+	
+	
+	/**
+	 * Views the surface through {@code camera}, which may be shared with other surfaces so that they turn together.
+	 */
+	public synchronized void setCamera(OrbitCamera camera) {
+		this.camera = camera;
+	}
+	
+	
+	/**
+	 * Returns a number that changes whenever the colour or the camera of the surface changes, or the camera moves. The versions of
+	 * different cameras cannot be compared, so a change of camera or of its version is counted into the version of the surface instead
+	 * of being added to it.
+	 */
+	@Override
+	public synchronized long getVersion() {
+		OrbitCamera camera = this.camera;
+		long cameraVersion = camera.getVersion();
+		
+		if(camera != versionCamera || cameraVersion != versionCameraVersion) {
+			versionCamera = camera;
+			versionCameraVersion = cameraVersion;
+			version++;
+		}
+		
+		return version;
+	}
+	
+	
+	/**
+	 * Returns the number of triangles in the mesh, including those that are left out because a vertex is not finite.
+	 */
+	public int getTriangleCount() {
+		return 2 * Math.max(0, rows - 1) * Math.max(0, columns - 1);
+	}
+	
+	
+	/**
+	 * Samples the surface on the lattice of {@code interval} with spacing {@code step}. The interval is the parameter domain of the
+	 * surface, which must be 2-dimensional, and not the part of the plane in view.
+	 */
+	@Override
+	public void updateMesh(Interval interval, double step) {
+		if(interval.getDimension() != 2) throw new IllegalArgumentException("A surface plot needs a 2-dimensional parameter domain, not a " + interval.getDimension() + "-dimensional one");
+		
+		Interval u = interval;
+		Interval v = interval.getFactor();
+		int columns = (int)Math.floor(u.length() / step + 1e-9) + 1;
+		int rows = (int)Math.floor(v.length() / step + 1e-9) + 1;
+		float[] positions = new float[3 * rows * columns];
+		
+		int threads = Math.max(1, Math.min(Parallel.PROCESSORS, rows * columns / MIN_VERTICES_PER_THREAD));
+		ArrayList<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(threads);
+		
+		for(int i = 0; i < threads; i++) {
+			int from = rows * i / threads;
+			int to = rows * (i + 1) / threads;
+			
+			tasks.add(() -> {
+				for(int row = from; row < to; row++) {
+					for(int column = 0; column < columns; column++) {
+						double[] point = f.apply(new double[] {u.lower() + column * step, v.lower() + row * step});
+						int index = 3 * (row * columns + column);
+						
+						for(int j = 0; j < 3; j++) positions[index + j] = (point != null && point.length >= 3) ? (float)point[j] : Float.NaN;
+					}
+				}
+				
+				return 0;
+			});
+		}
+		
+		Parallel.run(tasks);
+		Counters.addFunctionEvaluations(rows * columns);
+		
+		synchronized(this) {
+			this.rows = rows;
+			this.columns = columns;
+			this.positions = positions;
+			normals = computeNormals();
+			computeBounds();
+		}
+	}
+	
+	
+	/**
+	 * Returns the unit normal of each vertex, the cross product of the central differences of its neighbours along the rows and along
+	 * the columns. A difference falls back to a one-sided one at the edge of the lattice or of a hole, and a vertex with no finite
+	 * neighbour along either direction is given a zero normal, which is shaded as if lit edge on.
+	 */
+	private float[] computeNormals() {
+		float[] normals = new float[positions.length];
+		double[] du = new double[3];
+		double[] dv = new double[3];
+		
+		for(int row = 0; row < rows; row++) {
+			for(int column = 0; column < columns; column++) {
+				int vertex = row * columns + column;
+				if(!isFinite(vertex)) continue;
+				
+				int left = (column > 0 && isFinite(vertex - 1)) ? vertex - 1 : vertex;
+				int right = (column < columns - 1 && isFinite(vertex + 1)) ? vertex + 1 : vertex;
+				int up = (row > 0 && isFinite(vertex - columns)) ? vertex - columns : vertex;
+				int down = (row < rows - 1 && isFinite(vertex + columns)) ? vertex + columns : vertex;
+				
+				for(int j = 0; j < 3; j++) {
+					du[j] = positions[3 * right + j] - positions[3 * left + j];
+					dv[j] = positions[3 * down + j] - positions[3 * up + j];
+				}
+				
+				double nx = du[1] * dv[2] - du[2] * dv[1];
+				double ny = du[2] * dv[0] - du[0] * dv[2];
+				double nz = du[0] * dv[1] - du[1] * dv[0];
+				double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+				if(length == 0) continue;
+				
+				normals[3 * vertex] = (float)(nx / length);
+				normals[3 * vertex + 1] = (float)(ny / length);
+				normals[3 * vertex + 2] = (float)(nz / length);
+			}
+		}
+		
+		return normals;
+	}
+	
+	
+	/**
+	 * Finds the center and radius of the bounding box of the finite vertices, which the camera is aimed at and scaled to.
+	 */
+	private void computeBounds() {
+		double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+		double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		
+		for(int vertex = 0; vertex < rows * columns; vertex++) {
+			if(!isFinite(vertex)) continue;
+			
+			for(int j = 0; j < 3; j++) {
+				min[j] = Math.min(min[j], positions[3 * vertex + j]);
+				max[j] = Math.max(max[j], positions[3 * vertex + j]);
+			}
+		}
+		
+		if(min[0] > max[0]) {
+			centerX = centerY = centerZ = 0;
+			radius = 1;
+			return;
+		}
+		
+		centerX = (min[0] + max[0]) / 2;
+		centerY = (min[1] + max[1]) / 2;
+		centerZ = (min[2] + max[2]) / 2;
+		radius = Math.hypot(Math.hypot(max[0] - min[0], max[1] - min[1]), max[2] - min[2]) / 2;
+		if(radius == 0) radius = 1;
+	}
+	
+	
+	private boolean isFinite(int vertex) {
+		return Float.isFinite(positions[3 * vertex]) && Float.isFinite(positions[3 * vertex + 1]) && Float.isFinite(positions[3 * vertex + 2]);
+	}
+	
+	
+	@Override
+	public synchronized void draw(Display display, Graphics2D g) {
+		Rectangle bounds = g.getClipBounds();
+		if(bounds == null) bounds = new Rectangle(display.getWidth(), display.getHeight());
+		if(bounds.isEmpty() || rows < 2 || columns < 2) return;
+		
+		int width = bounds.width;
+		int height = bounds.height;
+		int vertices = rows * columns;
+		int threads = Math.max(1, Math.min(Parallel.PROCESSORS, vertices / MIN_VERTICES_PER_THREAD));
+		
+		ensureBuffers(threads, width, height);
+		
+		// The camera's frame, the screen position of the target and the scale of the perspective projection
+		double[] direction = camera.getDirection();
+		double[] right = camera.getRight();
+		double[] up = camera.getUp();
+		double cameraDistance = camera.getDistance() * radius;
+		double focalLength = 0.5 * Math.min(display.getWidth(), display.getHeight()) / Math.tan(camera.getFieldOfView() / 2);
+		double originX = display.getWidth() / 2.0 - bounds.x;
+		double originY = display.getHeight() / 2.0 - bounds.y;
+		
+		// The light comes from above and to the left of the camera
+		double[] light = new double[3];
+		for(int j = 0; j < 3; j++) light[j] = direction[j] + 0.5 * up[j] - 0.3 * right[j];
+		double lightLength = Math.sqrt(light[0] * light[0] + light[1] * light[1] + light[2] * light[2]);
+		for(int j = 0; j < 3; j++) light[j] /= lightLength;
+		
+		ArrayList<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(threads);
+		
+		for(int i = 0; i < threads; i++) {
+			int from = vertices * i / threads;
+			int to = vertices * (i + 1) / threads;
+			
+			tasks.add(() -> project(from, to, direction, right, up, light, cameraDistance, focalLength, originX, originY));
+		}
+		
+		Parallel.run(tasks);
+		
+		int tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+		int tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+		tasks.clear();
+		
+		for(int i = 0; i < threads; i++) {
+			TileBins tileBins = bins[i];
+			int from = (rows - 1) * i / threads;
+			int to = (rows - 1) * (i + 1) / threads;
+			
+			tileBins.clear(tilesAcross * tilesDown);
+			tasks.add(() -> bin(tileBins, from, to, width, height, tilesAcross));
+		}
+		
+		int squares = 0;
+		for(int result: Parallel.run(tasks)) squares += result;
+		
+		int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		AtomicInteger nextTile = new AtomicInteger();
+		tasks.clear();
+		
+		for(int i = 0; i < threads; i++) {
+			tasks.add(() -> {
+				for(int tile = nextTile.getAndIncrement(); tile < tilesAcross * tilesDown; tile = nextTile.getAndIncrement()) {
+					rasterise(tile, pixels, width, height, tilesAcross, threads);
+				}
+				
+				return 0;
+			});
+		}
+		
+		Parallel.run(tasks);
+		
+		g.drawImage(image, bounds.x, bounds.y, null);
+		Counters.addSegmentsDrawn(squares);
+	}
+	
+	
+	/**
+	 * Projects vertices {@code from} up to {@code to} onto the image, and shades them by the light.
+	 */
+	private int project(int from, int to, double[] direction, double[] right, double[] up, double[] light, double cameraDistance,
+			double focalLength, double originX, double originY) {
+		double near = NEAR * radius;
+		
+		for(int vertex = from; vertex < to; vertex++) {
+			double x = positions[3 * vertex] - centerX;
+			double y = positions[3 * vertex + 1] - centerY;
+			double z = positions[3 * vertex + 2] - centerZ;
+			double depth = cameraDistance - (x * direction[0] + y * direction[1] + z * direction[2]);
+			
+			// NaN depths fail the comparison too
+			if(!(depth > near)) {
+				inverseDepths[vertex] = -1;
+				continue;
+			}
+			
+			double inverseDepth = 1 / depth;
+			screenX[vertex] = (float)(originX + focalLength * (x * right[0] + y * right[1] + z * right[2]) * inverseDepth);
+			screenY[vertex] = (float)(originY - focalLength * (x * up[0] + y * up[1] + z * up[2]) * inverseDepth);
+			inverseDepths[vertex] = (float)inverseDepth;
+			
+			double lit = normals[3 * vertex] * light[0] + normals[3 * vertex + 1] * light[1] + normals[3 * vertex + 2] * light[2];
+			shades[vertex] = (float)(AMBIENT + (1 - AMBIENT) * Math.abs(lit));
+		}
+		
+		return 0;
+	}
+	
+	
+	/**
+	 * Sorts the squares with their top left corners in rows {@code from} up to {@code to} of the lattice into the bins of the tiles their
+	 * bounding boxes overlap. Squares with a vertex left out, or wholly off the image, are dropped. Returns the number of squares kept.
+	 */
+	private int bin(TileBins tileBins, int from, int to, int width, int height, int tilesAcross) {
+		int kept = 0;
+		
+		for(int row = from; row < to; row++) {
+			for(int column = 0; column < columns - 1; column++) {
+				int a = row * columns + column;
+				int b = a + 1;
+				int c = a + columns;
+				int d = c + 1;
+				
+				if(inverseDepths[a] <= 0 || inverseDepths[b] <= 0 || inverseDepths[c] <= 0 || inverseDepths[d] <= 0) continue;
+				
+				float minX = Math.min(Math.min(screenX[a], screenX[b]), Math.min(screenX[c], screenX[d]));
+				float maxX = Math.max(Math.max(screenX[a], screenX[b]), Math.max(screenX[c], screenX[d]));
+				float minY = Math.min(Math.min(screenY[a], screenY[b]), Math.min(screenY[c], screenY[d]));
+				float maxY = Math.max(Math.max(screenY[a], screenY[b]), Math.max(screenY[c], screenY[d]));
+				
+				if(maxX < 0 || maxY < 0 || minX >= width || minY >= height) continue;
+				
+				int firstColumn = (int)Math.max(0, minX) / TILE_SIZE;
+				int lastColumn = (int)Math.min(width - 1, maxX) / TILE_SIZE;
+				int firstRow = (int)Math.max(0, minY) / TILE_SIZE;
+				int lastRow = (int)Math.min(height - 1, maxY) / TILE_SIZE;
+				
+				for(int tileRow = firstRow; tileRow <= lastRow; tileRow++) {
+					for(int tileColumn = firstColumn; tileColumn <= lastColumn; tileColumn++) tileBins.add(tileRow * tilesAcross + tileColumn, a);
+				}
+				
+				kept++;
+			}
+		}
+		
+		return kept;
+	}
+	
+	
+	/**
+	 * Clears a tile of the image and fills in the two triangles of each square in its bins.
+	 */
+	private void rasterise(int tile, int[] pixels, int width, int height, int tilesAcross, int threads) {
+		int left = (tile % tilesAcross) * TILE_SIZE;
+		int top = (tile / tilesAcross) * TILE_SIZE;
+		int right = Math.min(width, left + TILE_SIZE);
+		int bottom = Math.min(height, top + TILE_SIZE);
+		
+		for(int y = top; y < bottom; y++) {
+			Arrays.fill(pixels, y * width + left, y * width + right, 0);
+			Arrays.fill(depthBuffer, y * width + left, y * width + right, 0);
+		}
+		
+		for(int i = 0; i < threads; i++) {
+			int[] squares = bins[i].squares[tile];
+			int count = bins[i].counts[tile];
+			
+			for(int j = 0; j < count; j++) {
+				int a = squares[j];
+				fillTriangle(a, a + 1, a + columns, left, top, right, bottom, pixels, width);
+				fillTriangle(a + 1, a + columns + 1, a + columns, left, top, right, bottom, pixels, width);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Fills the pixels of the triangle with vertices {@code a}, {@code b} and {@code c} whose centers lie in it and in the given rectangle,
+	 * and are nearer than what has been drawn there. Inverse depth and shade are interpolated from their plane equations, so each pixel
+	 * along a row costs two additions.
+	 */
+	private void fillTriangle(int a, int b, int c, int left, int top, int right, int bottom, int[] pixels, int width) {
+		// Sort the vertices from top to bottom
+		if(screenY[b] < screenY[a]) {
+			int t = a;
+			a = b;
+			b = t;
+		}
+		
+		if(screenY[c] < screenY[b]) {
+			int t = b;
+			b = c;
+			c = t;
+		}
+		
+		if(screenY[b] < screenY[a]) {
+			int t = a;
+			a = b;
+			b = t;
+		}
+		
+		double ax = screenX[a], ay = screenY[a];
+		double bx = screenX[b], by = screenY[b];
+		double cx = screenX[c], cy = screenY[c];
+		
+		int firstY = Math.max(top, (int)Math.ceil(ay - 0.5));
+		int lastY = Math.min(bottom, (int)Math.ceil(cy - 0.5));
+		if(firstY >= lastY) return;
+		
+		double area = (bx - ax) * (cy - ay) - (cx - ax) * (by - ay);
+		if(area == 0) return;
+		
+		double z0 = inverseDepths[a], z1 = inverseDepths[b] - z0, z2 = inverseDepths[c] - z0;
+		double s0 = shades[a], s1 = shades[b] - s0, s2 = shades[c] - s0;
+		double dzdx = (z1 * (cy - ay) - z2 * (by - ay)) / area;
+		double dzdy = (z2 * (bx - ax) - z1 * (cx - ax)) / area;
+		double dsdx = (s1 * (cy - ay) - s2 * (by - ay)) / area;
+		double dsdy = (s2 * (bx - ax) - s1 * (cx - ax)) / area;
+		
+		// The long edge runs from top to bottom, and the short edges meet at the middle vertex
+		double longSlope = (cx - ax) / (cy - ay);
+		double upperSlope = (by > ay) ? (bx - ax) / (by - ay) : 0;
+		double lowerSlope = (cy > by) ? (cx - bx) / (cy - by) : 0;
+		double scale = SHADES - 1;
+		
+		for(int y = firstY; y < lastY; y++) {
+			double centerY = y + 0.5;
+			double x1 = ax + (centerY - ay) * longSlope;
+			double x2 = (centerY < by) ? ax + (centerY - ay) * upperSlope : bx + (centerY - by) * lowerSlope;
+			
+			int firstX = Math.max(left, (int)Math.ceil(Math.min(x1, x2) - 0.5));
+			int lastX = Math.min(right, (int)Math.ceil(Math.max(x1, x2) - 0.5));
+			if(firstX >= lastX) continue;
+			
+			double z = z0 + (firstX + 0.5 - ax) * dzdx + (centerY - ay) * dzdy;
+			double s = (s0 + (firstX + 0.5 - ax) * dsdx + (centerY - ay) * dsdy) * scale;
+			double stepS = dsdx * scale;
+			int row = y * width;
+			
+			for(int x = firstX; x < lastX; x++, z += dzdx, s += stepS) {
+				if(z > depthBuffer[row + x]) {
+					depthBuffer[row + x] = (float)z;
+					pixels[row + x] = shadeColors[Math.max(0, Math.min(SHADES - 1, (int)s))];
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Makes sure there is an image and a depth buffer of {@code width} by {@code height} pixels, room to project every vertex, and at
+	 * least {@code threads} sets of bins.
+	 */
+	private void ensureBuffers(int threads, int width, int height) {
+		if(image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			depthBuffer = new float[width * height];
+		}
+		
+		int vertices = rows * columns;
+		if(screenX.length != vertices) {
+			screenX = new float[vertices];
+			screenY = new float[vertices];
+			inverseDepths = new float[vertices];
+			shades = new float[vertices];
+		}
+		
+		if(bins.length < threads) {
+			TileBins[] newBins = Arrays.copyOf(bins, threads);
+			for(int i = bins.length; i < threads; i++) newBins[i] = new TileBins();
+			bins = newBins;
+		}
+	}
+	
+	
+	/**
+	 * The squares that one thread has sorted into each tile, kept from frame to frame so that they are only grown, never reallocated.
+	 */
+	private static class TileBins {
+		int[][] squares = new int[0][];
+		int[] counts = new int[0];
+		
+		void clear(int tiles) {
+			if(squares.length != tiles) {
+				squares = new int[tiles][16];
+				counts = new int[tiles];
+			}
+			
+			Arrays.fill(counts, 0);
+		}
+		
+		void add(int tile, int square) {
+			if(counts[tile] == squares[tile].length) squares[tile] = Arrays.copyOf(squares[tile], 2 * counts[tile]);
+			squares[tile][counts[tile]++] = square;
+		}
+	}
+}
@@ -5,6 +5,7 @@ import java.util.HashMap;
 
 public class Theme {
 	private HashMap<String, Color> theme = new HashMap<String, Color>();
+	private int version;
 	
 	public static final String BACKGROUND = "bg";
 	public static final String AXES = "axes";
@@ -22,9 +23,18 @@ public class Theme {
 
 	public void setColor(String colorKey, Color color) {
 		theme.put(colorKey, color);
+		version++;
 	}
 	
 	public Color getColor(String colorKey) {
 		return theme.get(colorKey);
 	}
+	
+	/**
+	 * Returns a number that changes whenever a colour of this theme is changed, so that users of the theme can tell when colours they
+	 * have looked up are out of date.
+	 */
+	public int getVersion() {
+		return version;
+	}
 }
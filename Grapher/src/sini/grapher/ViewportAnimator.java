@@ -0,0 +1,260 @@
+package sini.grapher;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.Point;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+import sini.doubledouble.DoubleDouble;
+
+/**
+ * Drives the viewport of a {@link Display} from mouse input. Input events do not move the viewport themselves; they only update a target,
+ * and a timer firing once per refresh of the screen moves the viewport towards it and repaints the display. However many events arrive
+ * between two frames, the display is updated and painted at most once.
+ * 
+ * <p>The viewport is described by an anchor: a point on the plane, the point on the display it sits at, and the zoom level. Dragging
+ * moves the anchor's display point with the mouse. Scrolling the wheel anchors the point under the mouse and changes the target zoom
+ * level, which the viewport approaches smoothly, so that the point under the mouse stays still while zooming. Releasing a drag lets the
+ * viewport carry on in the same direction, slowing down until it stops.
+ * 
+ * <p>While the zoom level is animating, or the viewport is drifting after a drag, the meshes of the curves are not rebuilt; they are
+ * rebuilt once the viewport comes to rest.
+ */
+class ViewportAnimator implements ActionListener {
+	
+	private static final int DEFAULT_REFRESH_RATE = 60;
+	
+	// Time constants (in seconds) of the exponential approach to the target zoom level, and of the decay of a fling
+	private static final double ZOOM_TIME_CONSTANT = 0.06;
+	private static final double FLING_TIME_CONSTANT = 0.25;
+	
+	// Drags released after the mouse has been still for longer than this (in seconds) do not fling
+	private static final double FLING_TIMEOUT = 0.05;
+	private static final double MIN_FLING_SPEED = 20;
+	private static final double ZOOM_TOLERANCE = 1e-3;
+	
+	private final Display display;
+	private final Timer timer;
+	
+	private DoubleDouble anchorPlaneX; // In double-double precision, so that the anchor can be placed on a pixel at any zoom
+	private DoubleDouble anchorPlaneY;
+	private double anchorDisplayX;
+	private double anchorDisplayY;
+	private double targetZoom;
+	private boolean active;
+	
+	// The velocity of the anchor in pixels per second, measured while dragging and decaying after release
+	private double velocityX;
+	private double velocityY;
+	private boolean dragging;
+	private boolean flinging;
+	private long lastDragTime;
+	
+	private long lastFrameTime;
+	
+	// The viewport last applied, to tell whether it has since been moved by something else
+	private DoubleDouble appliedViewX;
+	private DoubleDouble appliedViewY;
+	private double appliedZoom;
+	
+	public ViewportAnimator(Display display) {
+		this.display = display;
+		
+		timer = new Timer(1000 / getRefreshRate(), this);
+		timer.setCoalesce(true);
+	}
+	
+	
+	/**
+	 * Starts a drag at the point {@code p} on the display, stopping any fling in progress.
+	 */
+	public void press(Point p) {
+		anchor(p.x, p.y);
+		
+		dragging = true;
+		flinging = false;
+		velocityX = 0;
+		velocityY = 0;
+		lastDragTime = System.nanoTime();
+	}
+	
+	
+	/**
+	 * Moves the point on the plane that was under the mouse when the drag started to the point {@code p} on the display.
+	 */
+	public void drag(Point p) {
+		if(!dragging) press(p);
+		
+		long now = System.nanoTime();
+		double elapsed = (now - lastDragTime) / 1e9;
+		
+		if(elapsed > 0) {
+			// Smooth the velocity over the last few events, as the mouse reports positions at an uneven rate
+			velocityX = (velocityX + (p.x - anchorDisplayX) / elapsed) / 2;
+			velocityY = (velocityY + (p.y - anchorDisplayY) / elapsed) / 2;
+		}
+		
+		anchorDisplayX = p.x;
+		anchorDisplayY = p.y;
+		lastDragTime = now;
+		
+		start();
+	}
+	
+	
+	/**
+	 * Ends a drag, letting the viewport fling onwards if the mouse was still moving.
+	 */
+	public void release() {
+		if(!dragging) return;
+		dragging = false;
+		
+		boolean isMoving = (System.nanoTime() - lastDragTime) / 1e9 < FLING_TIMEOUT;
+		flinging = isMoving && Math.hypot(velocityX, velocityY) > MIN_FLING_SPEED;
+		
+		start();
+	}
+	
+	
+	/**
+	 * Multiplies the target zoom level by {@code factor}, keeping the point on the plane under the point {@code p} on the display still.
+	 */
+	public void zoom(Point p, double factor) {
+		anchor(p.x, p.y);
+		targetZoom *= factor;
+		
+		start();
+	}
+	
+	
+	@Override
+	public void actionPerformed(ActionEvent e) {
+		long now = System.nanoTime();
+		double elapsed = Math.min((now - lastFrameTime) / 1e9, 4.0 * timer.getDelay() / 1000);
+		lastFrameTime = now;
+		
+		if(isMovedElsewhere()) {
+			stop();
+			return;
+		}
+		
+		double zoom = display.getZoom();
+		
+		if(Math.abs(Math.log(targetZoom / zoom)) < ZOOM_TOLERANCE) {
+			zoom = targetZoom;
+		} else {
+			zoom *= Math.pow(targetZoom / zoom, 1 - Math.exp(-elapsed / ZOOM_TIME_CONSTANT));
+		}
+		
+		if(flinging) {
+			anchorDisplayX += velocityX * elapsed;
+			anchorDisplayY += velocityY * elapsed;
+			
+			double decay = Math.exp(-elapsed / FLING_TIME_CONSTANT);
+			velocityX *= decay;
+			velocityY *= decay;
+			
+			flinging = Math.hypot(velocityX, velocityY) > MIN_FLING_SPEED;
+		}
+		
+		boolean isSettled = !dragging && !flinging && zoom == targetZoom;
+		
+		apply(zoom, isSettled);
+		
+		if(isSettled) stop();
+	}
+	
+	
+	/**
+	 * Anchors the point on the plane currently under the point (x, y) on the display, picking up the viewport from the display if it is
+	 * not already being animated.
+	 */
+	private void anchor(double x, double y) {
+		if(!active || isMovedElsewhere()) {
+			targetZoom = display.getZoom();
+			flinging = false;
+			
+			anchorPlaneX = display.getPrecisePlaneX(x);
+			anchorPlaneY = display.getPrecisePlaneY(y);
+		} else {
+			// The display may not have caught up with the latest input yet, so the point is found from the current anchor instead
+			double displayUnit = display.getDisplayUnit();
+			anchorPlaneX = anchorPlaneX.add((x - Math.rint(anchorDisplayX)) / displayUnit);
+			anchorPlaneY = anchorPlaneY.subtract((y - Math.rint(anchorDisplayY)) / displayUnit);
+		}
+		
+		anchorDisplayX = x;
+		anchorDisplayY = y;
+	}
+	
+	
+	/**
+	 * Sets the viewport of the display to the current anchor at the zoom level {@code zoom}.
+	 */
+	private void apply(double zoom, boolean isSettled) {
+		double displayUnit = zoom * Display.GRID_CELL_DISPLAY_SIZE;
+		
+		// The anchor is kept on a whole pixel so that panning at a fixed zoom level can scroll the display's cached layers
+		DoubleDouble viewX = anchorPlaneX.subtract(Math.rint(anchorDisplayX) / displayUnit);
+		DoubleDouble viewY = anchorPlaneY.add(Math.rint(anchorDisplayY) / displayUnit);
+		
+		// Meshes are rebuilt while dragging, as the mouse only moves the viewport a little each frame, but not mid-animation
+		display.setViewport(viewX, viewY, zoom, isSettled || (dragging && zoom == targetZoom));
+		
+		appliedViewX = display.getPrecisePlaneX(0);
+		appliedViewY = display.getPrecisePlaneY(0);
+		appliedZoom = display.getZoom();
+	}
+	
+	
+	/**
+	 * Returns true while the viewport is being moved by mouse input.
+	 */
+	public boolean isActive() {
+		return active;
+	}
+	
+	
+	private boolean isMovedElsewhere() {
+		return active && (!display.getPrecisePlaneX(0).equals(appliedViewX) || !display.getPrecisePlaneY(0).equals(appliedViewY) || display.getZoom() != appliedZoom);
+	}
+	
+	
+	private void start() {
+		if(active) return;
+		
+		active = true;
+		appliedViewX = display.getPrecisePlaneX(0);
+		appliedViewY = display.getPrecisePlaneY(0);
+		appliedZoom = display.getZoom();
+		lastFrameTime = System.nanoTime();
+		
+		timer.start();
+	}
+	
+	
+	private void stop() {
+		active = false;
+		flinging = false;
+		timer.stop();
+	}
+	
+	
+	/**
+	 * Returns the refresh rate of the default screen, or 60Hz if it cannot be found.
+	 */
+	static int getRefreshRate() {
+		try {
+			DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode();
+			if(mode.getRefreshRate() != DisplayMode.REFRESH_RATE_UNKNOWN) return mode.getRefreshRate();
+		} catch (HeadlessException e) {
+			// No screen to pace the frames to
+		}
+		
+		return DEFAULT_REFRESH_RATE;
+	}
+}
@@ -0,0 +1,41 @@
+package sini.grapher.profiling;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the work done by curves, shared by every thread. Curves count their work locally and add it here once per draw or
+ * mesh build, so the cost of counting stays out of their inner loops.
+ */
+public class Counters {
+	
+	private static final LongAdder segmentsDrawn = new LongAdder();
+	private static final LongAdder functionEvaluations = new LongAdder();
+	private static final ThreadLocal<long[]> threadSegmentsDrawn = ThreadLocal.withInitial(() -> new long[1]);
+	
+	private Counters() {}
+	
+	public static void addSegmentsDrawn(long segments) {
+		segmentsDrawn.add(segments);
+		threadSegmentsDrawn.get()[0] += segments;
+	}
+	
+	public static void addFunctionEvaluations(long evaluations) {
+		functionEvaluations.add(evaluations);
+	}
+	
+	public static long getSegmentsDrawn() {
+		return segmentsDrawn.sum();
+	}
+	
+	/**
+	 * Returns the number of segments drawn so far by the current thread, which unlike the shared total is not disturbed by curves
+	 * being drawn on other threads at the same time.
+	 */
+	public static long getThreadSegmentsDrawn() {
+		return threadSegmentsDrawn.get()[0];
+	}
+	
+	public static long getFunctionEvaluations() {
+		return functionEvaluations.sum();
+	}
+}
@@ -0,0 +1,25 @@
+package sini.grapher.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for every curve drawn within a frame.
+ */
+@Name("sini.grapher.CurveDraw")
+@Label("Curve Draw")
+@Category("Grapher")
+@Description("A single curve drawn by the display")
+public class CurveDrawEvent extends jdk.jfr.Event {
+	
+	@Label("Curve Type")
+	public String curveType;
+	
+	@Label("Curve Index")
+	public int curveIndex;
+	
+	@Label("Segments Drawn")
+	public long segmentsDrawn;
+}
@@ -0,0 +1,22 @@
+package sini.grapher.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded whenever a {@code Display} updates the meshes of the curves that depend on its viewport.
+ */
+@Name("sini.grapher.CurveUpdate")
+@Label("Curve Update")
+@Category("Grapher")
+@Description("The curves that depend on the viewport being updated by the display")
+public class CurveUpdateEvent extends jdk.jfr.Event {
+	
+	@Label("Curves Updated")
+	public int curvesUpdated;
+	
+	@Label("Zoom")
+	public double zoom;
+}
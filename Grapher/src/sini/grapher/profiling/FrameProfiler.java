@@ -0,0 +1,227 @@
+package sini.grapher.profiling;
+
+import java.awt.Graphics2D;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import sini.grapher.Curve;
+import sini.grapher.Display;
+
+/**
+ * Measures the frames painted by a {@code Display}. Each frame is timed as a whole and curve by curve, and is recorded both as JFR events
+ * and in a rolling history of recent frames, from which the frame rate, frame time percentiles and the slowest curve are derived.
+ * 
+ * <p>A profiler is meant to be used from a single thread, which is the event dispatch thread for a display on screen, with the exception
+ * of {@link #drawCurve}.
+ */
+public class FrameProfiler {
+	
+	private static final int HISTORY_LENGTH = 256;
+	private static final long NANOS_PER_SECOND = 1000000000L;
+	
+	private static final com.sun.management.ThreadMXBean threadBean = getThreadBean();
+	
+	private final long[] frameStarts = new long[HISTORY_LENGTH];
+	private final long[] frameTimes = new long[HISTORY_LENGTH];
+	private final long[] sortedFrameTimes = new long[HISTORY_LENGTH];
+	private long frameCount;
+	
+	private PaintEvent paintEvent;
+	private long frameStart;
+	private long frameSegmentsStart;
+	private long frameAllocationStart;
+	
+	private Class<?> frameSlowestCurveType;
+	private int frameSlowestCurveIndex;
+	private long frameSlowestCurveTime;
+	
+	private String slowestCurve = "-";
+	private long slowestCurveTime;
+	private long lastFrameSegments;
+	private long lastFrameAllocatedBytes = -1;
+	
+	
+	public void beginFrame() {
+		paintEvent = new PaintEvent();
+		paintEvent.begin();
+		
+		frameStart = System.nanoTime();
+		frameSegmentsStart = Counters.getSegmentsDrawn();
+		frameAllocationStart = getAllocatedBytes();
+		
+		synchronized(this) {
+			frameSlowestCurveType = null;
+			frameSlowestCurveTime = -1;
+		}
+	}
+	
+	
+	/**
+	 * Draws the curve {@code curve}, which sits at position {@code index} in the list of curves being drawn, onto {@code g} and times it.
+	 * Unlike the rest of the profiler this may be called from any thread, so that curves drawn concurrently into separate layers can be
+	 * timed too.
+	 */
+	public void drawCurve(Curve curve, int index, Display display, Graphics2D g) {
+		CurveDrawEvent curveEvent = new CurveDrawEvent();
+		curveEvent.begin();
+		
+		long curveStart = System.nanoTime();
+		long curveSegmentsStart = Counters.getThreadSegmentsDrawn();
+		
+		curve.draw(display, g);
+		
+		long time = System.nanoTime() - curveStart;
+		curveEvent.end();
+		
+		if(curveEvent.shouldCommit()) {
+			curveEvent.curveType = curve.getClass().getSimpleName();
+			curveEvent.curveIndex = index;
+			curveEvent.segmentsDrawn = Counters.getThreadSegmentsDrawn() - curveSegmentsStart;
+			curveEvent.commit();
+		}
+		
+		synchronized(this) {
+			if(time > frameSlowestCurveTime) {
+				frameSlowestCurveTime = time;
+				frameSlowestCurveIndex = index;
+				frameSlowestCurveType = curve.getClass();
+			}
+		}
+	}
+	
+	
+	public void endFrame(int width, int height, int curveCount) {
+		long now = System.nanoTime();
+		paintEvent.end();
+		
+		lastFrameSegments = Counters.getSegmentsDrawn() - frameSegmentsStart;
+		lastFrameAllocatedBytes = (frameAllocationStart < 0) ? -1 : getAllocatedBytes() - frameAllocationStart;
+		
+		if(paintEvent.shouldCommit()) {
+			paintEvent.width = width;
+			paintEvent.height = height;
+			paintEvent.curveCount = curveCount;
+			paintEvent.segmentsDrawn = lastFrameSegments;
+			paintEvent.allocatedBytes = lastFrameAllocatedBytes;
+			paintEvent.commit();
+		}
+		
+		int slot = (int)(frameCount % HISTORY_LENGTH);
+		frameStarts[slot] = frameStart;
+		frameTimes[slot] = now - frameStart;
+		frameCount++;
+		
+		synchronized(this) {
+			if(frameSlowestCurveType != null) {
+				slowestCurve = frameSlowestCurveType.getSimpleName() + " #" + frameSlowestCurveIndex;
+				slowestCurveTime = frameSlowestCurveTime;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Returns the number of frames that started within the last second.
+	 */
+	public double getFramesPerSecond() {
+		long now = System.nanoTime();
+		int frames = 0;
+		
+		for(int i = 0; i < getHistorySize(); i++) {
+			if(now - frameStarts[i] <= NANOS_PER_SECOND) frames++;
+		}
+		
+		return frames;
+	}
+	
+	
+	/**
+	 * Returns the {@code percentile}-th percentile of the times (in milliseconds) taken to paint the recent frames, where {@code percentile}
+	 * lies between 0 and 100.
+	 */
+	public double getFrameTimePercentile(double percentile) {
+		int size = getHistorySize();
+		if(size == 0) return 0;
+		
+		System.arraycopy(frameTimes, 0, sortedFrameTimes, 0, size);
+		Arrays.sort(sortedFrameTimes, 0, size);
+		
+		int index = (int)Math.ceil(percentile / 100 * size) - 1;
+		return sortedFrameTimes[Math.max(0, Math.min(size - 1, index))] / 1e6;
+	}
+	
+	
+	/**
+	 * Returns the time (in milliseconds) taken to paint the last frame.
+	 */
+	public double getLastFrameTime() {
+		if(frameCount == 0) return 0;
+		return frameTimes[(int)((frameCount - 1) % HISTORY_LENGTH)] / 1e6;
+	}
+	
+	
+	/**
+	 * Returns the name of the curve that took the longest to draw in the last frame.
+	 */
+	public String getSlowestCurve() {
+		return slowestCurve;
+	}
+	
+	
+	/**
+	 * Returns the time (in milliseconds) taken to draw the slowest curve in the last frame.
+	 */
+	public double getSlowestCurveTime() {
+		return slowestCurveTime / 1e6;
+	}
+	
+	
+	public long getLastFrameSegments() {
+		return lastFrameSegments;
+	}
+	
+	
+	/**
+	 * Returns the number of bytes allocated by the painting thread during the last frame, or -1 if the JVM cannot measure it.
+	 */
+	public long getLastFrameAllocatedBytes() {
+		return lastFrameAllocatedBytes;
+	}
+	
+	
+	private int getHistorySize() {
+		return (int)Math.min(frameCount, HISTORY_LENGTH);
+	}
+	
+	
+	/**
+	 * Returns whether the JVM can measure the bytes allocated by a thread, without which {@link #getAllocatedBytes} always returns -1.
+	 */
+	public static boolean isAllocationMeasured() {
+		return threadBean != null;
+	}
+	
+	/**
+	 * Returns the number of bytes allocated so far by the current thread, or -1 if the JVM cannot measure it.
+	 */
+	public static long getAllocatedBytes() {
+		if(threadBean == null) return -1;
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	
+	private static com.sun.management.ThreadMXBean getThreadBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			
+			if(bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+				if(sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) return sunBean;
+			}
+		} catch (LinkageError e) {
+			// The jdk.management module is not available
+		}
+		
+		return null;
+	}
+}
@@ -0,0 +1,55 @@
+package sini.grapher.profiling;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+
+import sini.grapher.MeshCache;
+
+/**
+ * A heads-up display that shows the measurements taken by a {@link FrameProfiler} in the top left corner of the display.
+ */
+public class HudOverlay {
+	
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	private static final Color BACKGROUND = new Color(0, 0, 0, 170);
+	private static final Color TEXT = new Color(120, 255, 120);
+	private static final int PADDING = 6;
+	
+	private final FrameProfiler profiler;
+	
+	public HudOverlay(FrameProfiler profiler) {
+		this.profiler = profiler;
+	}
+	
+	public void paint(Graphics2D g) {
+		long allocated = profiler.getLastFrameAllocatedBytes();
+		
+		MeshCache meshCache = MeshCache.getShared();
+		String[] lines = new String[] {
+				String.format("FPS        %.0f", profiler.getFramesPerSecond()),
+				String.format("Frame p50  %.2f ms", profiler.getFrameTimePercentile(50)),
+				String.format("Frame p99  %.2f ms", profiler.getFrameTimePercentile(99)),
+				String.format("Slowest    %s (%.2f ms)", profiler.getSlowestCurve(), profiler.getSlowestCurveTime()),
+				String.format("Segments   %,d", profiler.getLastFrameSegments()),
+				String.format("Evals      %,d", Counters.getFunctionEvaluations()),
+				String.format("Mesh cache %,d KB (%.0f%% hits)", meshCache.getBytes() / 1024, 100 * meshCache.getHitRate()),
+				(allocated < 0) ? "Allocated  n/a" : String.format("Allocated  %,d KB", allocated / 1024)
+		};
+		
+		g.setFont(FONT);
+		FontMetrics metrics = g.getFontMetrics();
+		
+		int width = 0;
+		for(String line: lines) width = Math.max(width, metrics.stringWidth(line));
+		
+		g.setColor(BACKGROUND);
+		g.fillRect(PADDING, PADDING, width + 2*PADDING, lines.length * metrics.getHeight() + 2*PADDING);
+		
+		g.setColor(TEXT);
+		for(int i = 0; i < lines.length; i++) {
+			g.drawString(lines[i], 2*PADDING, 2*PADDING + i * metrics.getHeight() + metrics.getAscent());
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package sini.grapher.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for every mesh that is built, whether by a curve updating its mesh or by a differential equation integrating a solution.
+ */
+@Name("sini.grapher.MeshUpdate")
+@Label("Mesh Update")
+@Category("Grapher")
+@Description("A mesh built for a curve")
+public class MeshUpdateEvent extends jdk.jfr.Event {
+	
+	@Label("Curve Type")
+	public String curveType;
+	
+	@Label("Step")
+	public double step;
+	
+	@Label("Mesh Size")
+	public int meshSize;
+	
+	@Label("Function Evaluations")
+	public long evaluations;
+}
@@ -0,0 +1,31 @@
+package sini.grapher.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Recorded for every frame painted by a {@code Display}.
+ */
+@Name("sini.grapher.Paint")
+@Label("Paint")
+@Category("Grapher")
+@Description("A frame painted by the display")
+public class PaintEvent extends jdk.jfr.Event {
+	
+	@Label("Width")
+	public int width;
+	
+	@Label("Height")
+	public int height;
+	
+	@Label("Curves")
+	public int curveCount;
+	
+	@Label("Segments Drawn")
+	public long segmentsDrawn;
+	
+	@Label("Allocated Bytes")
+	public long allocatedBytes;
+}
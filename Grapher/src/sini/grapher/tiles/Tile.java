@@ -0,0 +1,26 @@
+package sini.grapher.tiles;
+
+/**
+ * A rendered tile, stored as encoded PNG data along with the entity tag that identifies its contents.
+ */
+public class Tile {
+	
+	private final byte[] png;
+	private final String etag;
+	
+	public Tile(byte[] png, String etag) {
+		this.png = png;
+		this.etag = etag;
+	}
+	
+	public byte[] getPng() {
+		return png;
+	}
+	
+	/**
+	 * Returns the entity tag of this tile, including the surrounding quotes required by HTTP.
+	 */
+	public String getEtag() {
+		return etag;
+	}
+}
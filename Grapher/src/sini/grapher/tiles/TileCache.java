@@ -0,0 +1,141 @@
+package sini.grapher.tiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A two level cache of rendered tiles. Recently used tiles are kept in memory, up to a fixed number of bytes, and the least recently used
+ * tile is evicted first when that limit is exceeded. If a directory is given, every tile is also written to disk as
+ * {@code scene/zoom/x/y.png} below it, so that tiles survive restarts. Tiles that are found on disk are promoted back into memory.
+ * 
+ * <p>Tiles are stored against the {@link TileRenderer#getSceneHash() hash} of the scene they were rendered from as well as their key, so
+ * that tiles of a scene that has since changed are never served. They are not deleted, and should be cleared by hand.
+ */
+public class TileCache {
+	
+	private static final Logger LOGGER = Logger.getLogger(TileCache.class.getName());
+	
+	private final long maxMemoryBytes;
+	private final File directory;
+	
+	private final LinkedHashMap<String, Tile> memory = new LinkedHashMap<String, Tile>(16, 0.75f, true); // By scene/zoom/x/y
+	private long memoryBytes;
+	
+	/**
+	 * Creates a new cache that holds at most {@code maxMemoryBytes} bytes of tiles in memory, and persists tiles below {@code directory}.
+	 * If {@code directory} is {@code null}, tiles are only cached in memory.
+	 */
+	public TileCache(long maxMemoryBytes, File directory) {
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.directory = directory;
+	}
+	
+	public TileCache(long maxMemoryBytes) {
+		this(maxMemoryBytes, null);
+	}
+	
+	
+	/**
+	 * Returns the cached tile for {@code key} of the scene with the hash {@code scene}, or {@code null} if it is neither in memory nor on
+	 * disk.
+	 */
+	public Tile get(String scene, TileKey key) {
+		synchronized(this) {
+			Tile tile = memory.get(getPath(scene, key));
+			if(tile != null) return tile;
+		}
+		
+		if(directory == null) return null;
+		
+		File file = getFile(scene, key);
+		if(!file.isFile()) return null;
+		
+		byte[] png;
+		try {
+			png = Files.readAllBytes(file.toPath());
+		} catch (IOException e) {
+			return null;
+		}
+		
+		Tile tile = new Tile(png, TileRenderer.getEtag(png));
+		putInMemory(getPath(scene, key), tile);
+		return tile;
+	}
+	
+	
+	/**
+	 * Caches {@code tile} as the tile for {@code key} of the scene with the hash {@code scene}. A tile that cannot be written to disk is
+	 * logged and kept in memory only.
+	 */
+	public void put(String scene, TileKey key, Tile tile) {
+		putInMemory(getPath(scene, key), tile);
+		
+		if(directory == null) return;
+		
+		File file = getFile(scene, key);
+		File temp = null;
+		
+		try {
+			Files.createDirectories(file.getParentFile().toPath());
+			
+			// Write to a temporary file first, so that a concurrent reader never sees a partially written tile
+			temp = File.createTempFile("tile", ".tmp", file.getParentFile());
+			Files.write(temp.toPath(), tile.getPng());
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			// The tile is still cached in memory and can be served, it is only rendered again after a restart
+			LOGGER.log(Level.WARNING, "Could not write tile " + file, e);
+			if(temp != null) temp.delete();
+		}
+	}
+	
+	
+	public synchronized int getMemoryTileCount() {
+		return memory.size();
+	}
+	
+	
+	public synchronized long getMemoryBytes() {
+		return memoryBytes;
+	}
+	
+	
+	/**
+	 * Returns the file that the tile given by {@code key} of the scene with the hash {@code scene} is stored in, or {@code null} if this
+	 * cache does not persist tiles.
+	 */
+	public File getFile(String scene, TileKey key) {
+		if(directory == null) return null;
+		return new File(directory, getPath(scene, key) + ".png");
+	}
+	
+	
+	private static String getPath(String scene, TileKey key) {
+		return scene + "/" + key;
+	}
+	
+	
+	private synchronized void putInMemory(String path, Tile tile) {
+		Tile previous = memory.put(path, tile);
+		if(previous != null) memoryBytes -= previous.getPng().length;
+		memoryBytes += tile.getPng().length;
+		
+		Iterator<Map.Entry<String, Tile>> iter = memory.entrySet().iterator();
+		
+		while(memoryBytes > maxMemoryBytes && iter.hasNext()) {
+			Map.Entry<String, Tile> eldest = iter.next();
+			
+			if(eldest.getKey().equals(path)) continue; // Always keep the tile that was just added
+			
+			memoryBytes -= eldest.getValue().getPng().length;
+			iter.remove();
+		}
+	}
+}
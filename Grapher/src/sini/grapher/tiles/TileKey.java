@@ -0,0 +1,43 @@
+package sini.grapher.tiles;
+
+/**
+ * Identifies a single tile by its zoom level and its column and row at that zoom level. Tile columns increase to the right and tile rows
+ * increase downwards, matching the orientation of the display. Since the plane is unbounded, both may be negative.
+ */
+public class TileKey {
+	
+	public final int zoom;
+	public final int x;
+	public final int y;
+	
+	public TileKey(int zoom, int x, int y) {
+		this.zoom = zoom;
+		this.x = x;
+		this.y = y;
+	}
+	
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(obj instanceof TileKey) {
+			TileKey key = (TileKey) obj;
+			return (zoom == key.zoom) && (x == key.x) && (y == key.y);
+		}
+		return false;
+	}
+	
+	
+	@Override
+	public int hashCode() {
+		return (zoom * 31 + x) * 31 + y;
+	}
+	
+	
+	/**
+	 * Returns this key in the form {@code zoom/x/y}, as used in tile URLs and in the layout of the on-disk cache.
+	 */
+	@Override
+	public String toString() {
+		return zoom + "/" + x + "/" + y;
+	}
+}
@@ -0,0 +1,187 @@
+package sini.grapher.tiles;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CRC32;
+
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+import sini.grapher.Curve;
+import sini.grapher.Display;
+import sini.grapher.Interval;
+import sini.grapher.PointDouble;
+import sini.grapher.ProgressiveCurve;
+import sini.grapher.Theme;
+
+/**
+ * Renders square tiles of a scene of curves. At zoom level 0, one unit on the plane spans {@link #BASE_DISPLAY_UNIT} pixels, and every zoom
+ * level doubles that. Tile (0, 0) has its top left corner at the origin of the plane at every zoom level.
+ * 
+ * <p>Tiles are rendered without axis numbers, since those are pinned to the edges of the viewport and would be repeated on every tile.
+ * Any number of tiles may be rendered concurrently: what a {@link ProgressiveCurve} draws depends on the viewport it was last fitted to,
+ * so each tile fits a {@link ProgressiveCurve#copy() copy} of its own to the tile and refines it to full detail, leaving the curves of
+ * the scene as they were. Other curves are shared, and are drawn by one tile at a time.
+ * 
+ * <p>The scene is identified by a name, which stands for how its curves are defined, since that cannot be read back from them. Together
+ * with the classes and {@link Curve#getVersion() versions} of the curves it gives the {@link #getSceneHash() hash} of the scene, which
+ * tiles are cached against, so the name must be changed whenever the curves are defined differently.
+ */
+public class TileRenderer {
+	
+	public static final int TILE_SIZE = 256;
+	public static final double BASE_DISPLAY_UNIT = 64;
+	
+	private static final int FORMAT_VERSION = 2; // Changed whenever tiles are drawn differently, so that older tiles are not reused
+	
+	private ArrayList<Curve> curves;
+	private String scene;
+	
+	public TileRenderer(ArrayList<Curve> curves, String scene) {
+		this.curves = curves;
+		this.scene = scene;
+	}
+	
+	
+	/**
+	 * Returns the length on a tile (in pixels) that corresponds to a length of one unit on the plane at the zoom level {@code zoom}.
+	 */
+	public static double getDisplayUnit(int zoom) {
+		return BASE_DISPLAY_UNIT * Math.pow(2, zoom);
+	}
+	
+	
+	/**
+	 * Returns a hash of the name of the scene and the classes and versions of its curves, in hexadecimal, which changes whenever a curve
+	 * is added, removed or changed.
+	 */
+	public String getSceneHash() {
+		long hash = mix(FORMAT_VERSION ^ scene.hashCode());
+		
+		for(Curve curve: curves) {
+			hash = mix(hash ^ curve.getClass().getName().hashCode());
+			hash = mix(hash ^ curve.getVersion());
+		}
+		
+		return Long.toHexString(hash);
+	}
+	
+	
+	public BufferedImage render(TileKey key) {
+		double displayUnit = getDisplayUnit(key.zoom);
+		
+		// The view only provides the transform and the grid, the curves are drawn by hand below
+		Display view = createView(
+				new PointDouble(key.x * TILE_SIZE / displayUnit, -key.y * TILE_SIZE / displayUnit), 
+				displayUnit / Display.GRID_CELL_DISPLAY_SIZE);
+		
+		BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		
+		g.setColor(view.getTheme().getColor(Theme.BACKGROUND));
+		g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+		view.paintGrid(g);
+		
+		// A pixel wider than the tile on each side, so that lines crossing its edges are drawn in full
+		Interval visible = Interval.product(new Interval(view.getPlaneX(-1), view.getPlaneX(TILE_SIZE + 1)), new Interval(view.getPlaneY(TILE_SIZE + 1), view.getPlaneY(-1)));
+		
+		for(Curve curve: curves) {
+			if(curve instanceof ProgressiveCurve) {
+				ProgressiveCurve copy = ((ProgressiveCurve) curve).copy();
+				copy.setViewport(visible, view.getMeshStep());
+				if(!copy.isVisible(visible)) continue;
+				
+				while(copy.refine(Long.MAX_VALUE));
+				copy.draw(view, g);
+			} else {
+				// Other curves cannot be copied, so the tiles being rendered at the same time take turns to draw them
+				synchronized(curve) {
+					curve.draw(view, g);
+				}
+			}
+		}
+		
+		view.paintAxes(g);
+		g.dispose();
+		
+		return image;
+	}
+	
+	
+	/**
+	 * Creates a display the size of a tile, with its top left corner at {@code viewPoint}. Like any Swing component, the display is
+	 * created on the event dispatch thread. It is never shown, so the tile may then be drawn with it on any thread.
+	 */
+	private static Display createView(PointDouble viewPoint, double zoom) {
+		Display[] view = new Display[1];
+		Runnable create = () -> {
+			view[0] = new Display(new ArrayList<Curve>());
+			view[0].setSize(TILE_SIZE, TILE_SIZE);
+			view[0].setViewport(viewPoint, zoom);
+		};
+		
+		if(SwingUtilities.isEventDispatchThread()) {
+			create.run();
+			return view[0];
+		}
+		
+		try {
+			SwingUtilities.invokeAndWait(create);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			
+			CancellationException cancellation = new CancellationException("Interrupted while creating the view of a tile");
+			cancellation.initCause(e);
+			throw cancellation;
+		} catch (InvocationTargetException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if(e.getCause() instanceof Error) throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		
+		return view[0];
+	}
+	
+	
+	/**
+	 * Renders the tile given by {@code key} and encodes it as a PNG.
+	 */
+	public Tile renderTile(TileKey key) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		try {
+			ImageIO.write(render(key), "png", out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		
+		byte[] png = out.toByteArray();
+		return new Tile(png, getEtag(png));
+	}
+	
+	
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	
+	/**
+	 * Returns an entity tag derived from the contents of a tile, so that it stays the same for identical tiles across restarts.
+	 */
+	public static String getEtag(byte[] png) {
+		CRC32 crc = new CRC32();
+		crc.update(png);
+		return "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(png.length) + "\"";
+	}
+}
@@ -0,0 +1,298 @@
+package sini.grapher.tiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import sini.grapher.Curve;
+import sini.grapher.CurveList;
+
+/**
+ * An HTTP server, bound to the loopback address, that serves tiles of a scene in the layout used by slippy maps. Tiles are requested as
+ * {@code /tiles/zoom/x/y.png}, and the root path serves a page that browses the scene with Leaflet.
+ * 
+ * <p>Tiles are rendered in parallel on a pool with one thread per processor, and concurrent requests for the same tile share a single
+ * render. Every response carries an entity tag, and requests whose {@code If-None-Match} header matches it are answered with
+ * {@code 304 Not Modified}.
+ * 
+ * <p>The page loads Leaflet from unpkg.com unless told otherwise by {@link #setLeafletUrl} or {@link #serveLeaflet}, the latter of which
+ * serves a copy of Leaflet along with the tiles, so that the scene can be browsed without a connection to the internet.
+ */
+public class TileServer {
+	
+	private static final Pattern TILE_PATH = Pattern.compile("/tiles/(-?\\d+)/(-?\\d+)/(-?\\d+)\\.png");
+	
+	public static final String DEFAULT_LEAFLET_URL = "https://unpkg.com/leaflet@1.9.4/dist/";
+	private static final String LOCAL_LEAFLET_PATH = "/leaflet/";
+	
+	// The page, with the URL of the directory that Leaflet is loaded from in place of {leaflet}
+	private static final String INDEX_PAGE = 
+			"<!DOCTYPE html>\n" + 
+			"<html>\n" + 
+			"<head>\n" + 
+			"<meta charset=\"utf-8\">\n" + 
+			"<title>Grapher</title>\n" + 
+			"<link rel=\"stylesheet\" href=\"{leaflet}leaflet.css\">\n" + 
+			"<script src=\"{leaflet}leaflet.js\"></script>\n" + 
+			"<style>html, body, #map { height: 100%; margin: 0; }</style>\n" + 
+			"</head>\n" + 
+			"<body>\n" + 
+			"<div id=\"map\"></div>\n" + 
+			"<script>\n" + 
+			"var map = L.map('map', { crs: L.CRS.Simple, minZoom: -8, maxZoom: 40 }).setView([0, 0], 0);\n" + 
+			"L.tileLayer('/tiles/{z}/{x}/{y}.png', { tileSize: " + TileRenderer.TILE_SIZE + ", minZoom: -8, maxZoom: 40, noWrap: true }).addTo(map);\n" + 
+			"</script>\n" + 
+			"</body>\n" + 
+			"</html>\n";
+	
+	private final HttpServer server;
+	private final ExecutorService requestPool;
+	private final ExecutorService renderPool;
+	
+	private final TileRenderer renderer;
+	private final TileCache cache;
+	
+	// The renders in progress, by the hash of the scene and the key of the tile
+	private final ConcurrentHashMap<String, CompletableFuture<Tile>> pendingTiles = new ConcurrentHashMap<String, CompletableFuture<Tile>>();
+	
+	private volatile String leafletUrl = DEFAULT_LEAFLET_URL;
+	
+	/**
+	 * Creates a new server for the scene given by {@code curves} and named {@code scene}, as for {@link TileRenderer}, listening on the
+	 * loopback address at {@code port}. If {@code port} is 0, a free port is chosen, which can be read back through {@link #getPort()}. The
+	 * server does not accept requests until it is started.
+	 */
+	public TileServer(ArrayList<Curve> curves, String scene, int port, TileCache cache) throws IOException {
+		this.renderer = new TileRenderer(curves, scene);
+		this.cache = cache;
+		
+		requestPool = Executors.newCachedThreadPool(r -> newDaemonThread(r, "tile-request"));
+		renderPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> newDaemonThread(r, "tile-render"));
+		
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(requestPool);
+		server.createContext("/tiles/", this::handleTile);
+		server.createContext("/", this::handleIndex);
+	}
+	
+	
+	public void start() {
+		server.start();
+	}
+	
+	
+	public void stop() {
+		server.stop(0);
+		requestPool.shutdownNow();
+		renderPool.shutdownNow();
+	}
+	
+	
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+	
+	
+	public TileCache getCache() {
+		return cache;
+	}
+	
+	
+	/**
+	 * Sets the URL of the directory that the page loads {@code leaflet.js} and {@code leaflet.css} from.
+	 */
+	public void setLeafletUrl(String url) {
+		leafletUrl = url.endsWith("/") ? url : url + "/";
+	}
+	
+	
+	/**
+	 * Serves the files below {@code directory}, which should hold a copy of the {@code dist} directory of Leaflet, at
+	 * {@code /leaflet/}, and has the page load Leaflet from there.
+	 */
+	public void serveLeaflet(File directory) throws IOException {
+		File root = directory.getCanonicalFile();
+		server.createContext(LOCAL_LEAFLET_PATH, exchange -> handleLeaflet(exchange, root));
+		leafletUrl = LOCAL_LEAFLET_PATH;
+	}
+	
+	
+	/**
+	 * Returns the tile given by {@code key}, rendering it if it is not already cached.
+	 */
+	public Tile getTile(TileKey key) {
+		String scene = renderer.getSceneHash();
+		
+		Tile tile = cache.get(scene, key);
+		if(tile != null) return tile;
+		
+		String path = scene + "/" + key;
+		CompletableFuture<Tile> future = pendingTiles.computeIfAbsent(path, k -> CompletableFuture.supplyAsync(() -> {
+			Tile rendered = renderer.renderTile(key);
+			cache.put(scene, key, rendered);
+			return rendered;
+		}, renderPool));
+		
+		try {
+			return future.join();
+		} finally {
+			pendingTiles.remove(path, future);
+		}
+	}
+	
+	
+	private void handleTile(HttpExchange exchange) throws IOException {
+		try {
+			if(!exchange.getRequestMethod().equals("GET")) {
+				exchange.sendResponseHeaders(405, -1);
+				return;
+			}
+			
+			Matcher matcher = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+			
+			if(!matcher.matches()) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			
+			TileKey key;
+			try {
+				key = new TileKey(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)));
+			} catch (NumberFormatException e) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			
+			Tile tile;
+			try {
+				tile = getTile(key);
+			} catch (CompletionException e) {
+				exchange.sendResponseHeaders(500, -1);
+				return;
+			}
+			
+			exchange.getResponseHeaders().set("ETag", tile.getEtag());
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			
+			if(matchesEtag(exchange.getRequestHeaders().getFirst("If-None-Match"), tile.getEtag())) {
+				exchange.sendResponseHeaders(304, -1);
+				return;
+			}
+			
+			exchange.getResponseHeaders().set("Content-Type", "image/png");
+			exchange.sendResponseHeaders(200, tile.getPng().length);
+			
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(tile.getPng());
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	
+	private void handleIndex(HttpExchange exchange) throws IOException {
+		try {
+			if(!exchange.getRequestURI().getPath().equals("/")) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			
+			byte[] page = INDEX_PAGE.replace("{leaflet}", leafletUrl).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+			exchange.sendResponseHeaders(200, page.length);
+			
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(page);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	
+	/**
+	 * Serves a file below {@code root}, refusing paths that lead outside it.
+	 */
+	private static void handleLeaflet(HttpExchange exchange, File root) throws IOException {
+		try {
+			File file = new File(root, exchange.getRequestURI().getPath().substring(LOCAL_LEAFLET_PATH.length())).getCanonicalFile();
+			
+			if(!exchange.getRequestMethod().equals("GET") || !file.toPath().startsWith(root.toPath()) || !file.isFile()) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			
+			String name = file.getName();
+			String type = name.endsWith(".js") ? "text/javascript" : name.endsWith(".css") ? "text/css" : name.endsWith(".png") ? "image/png" : "application/octet-stream";
+			
+			byte[] content = Files.readAllBytes(file.toPath());
+			exchange.getResponseHeaders().set("Content-Type", type);
+			exchange.sendResponseHeaders(200, content.length);
+			
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(content);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+	
+	
+	/**
+	 * Returns {@code true} if the value of an {@code If-None-Match} header, which may list several entity tags, matches {@code etag}.
+	 */
+	private static boolean matchesEtag(String ifNoneMatch, String etag) {
+		if(ifNoneMatch == null) return false;
+		
+		for(String candidate: ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if(candidate.startsWith("W/")) candidate = candidate.substring(2);
+			if(candidate.equals("*") || candidate.equals(etag)) return true;
+		}
+		
+		return false;
+	}
+	
+	
+	private static Thread newDaemonThread(Runnable r, String name) {
+		Thread thread = new Thread(r, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+	
+	
+	/**
+	 * Serves the scene from {@link CurveList} on the port given by the first argument (8080 by default), caching tiles in the directory
+	 * given by the second argument, if any, against the name of the scene given by the third argument, which should be changed whenever
+	 * {@code CurveList} is. Leaflet is served from the directory given by the system property {@code grapher.leafletDirectory} if it is
+	 * set, and loaded from the URL given by {@code grapher.leafletUrl} otherwise.
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+		File directory = (args.length > 1) ? new File(args[1]) : null;
+		String scene = (args.length > 2) ? args[2] : "CurveList";
+		
+		TileServer server = new TileServer(CurveList.getCurves(), scene, port, new TileCache(256L << 20, directory));
+		server.setLeafletUrl(System.getProperty("grapher.leafletUrl", DEFAULT_LEAFLET_URL));
+		if(System.getProperty("grapher.leafletDirectory") != null) server.serveLeaflet(new File(System.getProperty("grapher.leafletDirectory")));
+		server.start();
+		
+		System.out.println("Serving tiles at http://localhost:" + server.getPort() + "/");
+	}
+}
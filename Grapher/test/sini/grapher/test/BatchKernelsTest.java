@@ -0,0 +1,59 @@
+package sini.grapher.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import sini.batch.BatchFunction;
+import sini.batch.BatchKernels;
+import sini.grapher.Interval;
+import sini.grapher.SimpleFunctionCurve;
+
+public class BatchKernelsTest {
+	
+	@Test
+	public void testPolynomial() {
+		double[] coefficients = {1, -2, 0.5, 3};
+		double[] xs = new Random(1).doubles(1000, -10, 10).toArray();
+		double[] ys = new double[xs.length];
+		BatchKernels.polynomial(coefficients, xs, ys, 0, xs.length);
+		
+		// The same rounding as Horner's rule one point at a time
+		for(int i = 0; i < xs.length; i++) assertEquals(((3 * xs[i] + 0.5) * xs[i] - 2) * xs[i] + 1, ys[i]);
+		
+		BatchFunction cubic = BatchFunction.polynomial(coefficients);
+		assertEquals(1 - 2 * 2 + 0.5 * 4 + 3 * 8, (double)cubic.apply(2.0));
+		
+		// A curve of a batch function is meshed exactly as one of the same function given a point at a time
+		SimpleFunctionCurve batch = new SimpleFunctionCurve(cubic);
+		SimpleFunctionCurve plain = new SimpleFunctionCurve(x -> ((3 * x + 0.5) * x - 2) * x + 1);
+		batch.setMeshCache(null);
+		plain.setMeshCache(null);
+		
+		for(SimpleFunctionCurve curve: new SimpleFunctionCurve[] {batch, plain}) {
+			curve.setViewport(new Interval(-3, 3), 0.01);
+			while(curve.refine(Long.MAX_VALUE));
+		}
+		
+		assertEquals(plain.getMesh().size(), batch.getMesh().size());
+		for(int i = 0; i < plain.getMesh().size(); i++) {
+			assertEquals(plain.getMesh().get(i)[1][0], batch.getMesh().get(i)[1][0]);
+			assertEquals(plain.getMesh().get(i)[1][1], batch.getMesh().get(i)[1][1]);
+		}
+	}
+	
+	@Test
+	public void testAdd() {
+		double[] xs = new Random(2).doubles(1000, -10, 10).toArray();
+		double[] out = new double[xs.length];
+		BatchKernels.add(xs, out, 0, xs.length, -4.3);
+		
+		for(int i = 0; i < xs.length; i++) assertEquals(xs[i] - 4.3, out[i]);
+		
+		// The same array can be both the input and the output
+		BatchKernels.add(xs, xs, 0, xs.length, -4.3);
+		for(int i = 0; i < xs.length; i++) assertEquals(out[i], xs[i]);
+	}
+}
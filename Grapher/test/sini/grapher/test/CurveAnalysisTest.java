@@ -0,0 +1,139 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import sini.dual.DualFunction;
+import sini.dual.DualMath;
+import sini.grapher.Curve;
+import sini.grapher.CurveAnalysis;
+import sini.grapher.CurveAnalysis.Feature;
+import sini.grapher.CurveAnalysis.Kind;
+import sini.grapher.Display;
+import sini.grapher.Interval;
+import sini.grapher.MarkerCurve;
+import sini.grapher.PointDouble;
+import sini.grapher.PointListCurve;
+import sini.grapher.SimpleFunctionCurve;
+
+public class CurveAnalysisTest {
+	
+	static final Interval INTERVAL = new Interval(-10, 10);
+	static final double STEP = 0.01;
+	
+	private static double[] getXs(ArrayList<Feature> features, Kind kind) {
+		return features.stream().filter(feature -> feature.getKind() == kind).mapToDouble(Feature::getX).sorted().toArray();
+	}
+	
+	@Test
+	public void testRootsOfSine() {
+		SimpleFunctionCurve plain = new SimpleFunctionCurve(x -> Math.sin(x));
+		SimpleFunctionCurve dual = new SimpleFunctionCurve((DualFunction) x -> DualMath.sin(x));
+		plain.updateMesh(INTERVAL, STEP);
+		
+		// The roots of sin in (-10, 10) are the multiples of pi from -3 pi to 3 pi, found to full precision with or without derivatives
+		for(SimpleFunctionCurve curve: new SimpleFunctionCurve[] {plain, dual}) {
+			double[] roots = getXs(CurveAnalysis.findRoots(curve, INTERVAL, STEP), Kind.ROOT);
+			assertEquals(7, roots.length);
+			
+			for(int i = 0; i < roots.length; i++) assertEquals((i - 3) * Math.PI, roots[i], 1e-14);
+		}
+	}
+	
+	@Test
+	public void testExtrema() {
+		SimpleFunctionCurve plain = new SimpleFunctionCurve(x -> Math.cos(x) + x / 10);
+		SimpleFunctionCurve dual = new SimpleFunctionCurve((DualFunction) x -> DualMath.cos(x).add(x.divide(10)));
+		
+		for(SimpleFunctionCurve curve: new SimpleFunctionCurve[] {plain, dual}) {
+			ArrayList<Feature> extrema = CurveAnalysis.findExtrema(curve, INTERVAL, STEP);
+			double[] maxima = getXs(extrema, Kind.MAXIMUM);
+			double[] minima = getXs(extrema, Kind.MINIMUM);
+			
+			assertEquals(3, maxima.length);
+			assertEquals(4, minima.length);
+			
+			// Where sin x = 1/10
+			double tolerance = (curve == dual) ? 1e-14 : 1e-7;
+			for(int i = 0; i < 3; i++) assertEquals(Math.asin(0.1) + 2 * Math.PI * (i - 1), maxima[i], tolerance);
+			for(int i = 0; i < 4; i++) assertEquals(Math.PI - Math.asin(0.1) + 2 * Math.PI * (i - 2), minima[i], tolerance);
+		}
+	}
+	
+	@Test
+	public void testIntersections() {
+		SimpleFunctionCurve line = new SimpleFunctionCurve(x -> x / 2);
+		SimpleFunctionCurve parabola = new SimpleFunctionCurve(x -> x * x - 2);
+		
+		double[] xs = getXs(CurveAnalysis.findIntersections(line, parabola, INTERVAL, STEP), Kind.INTERSECTION);
+		assertEquals(2, xs.length);
+		assertEquals((0.5 - Math.sqrt(8.25)) / 2, xs[0], 1e-14);
+		assertEquals((0.5 + Math.sqrt(8.25)) / 2, xs[1], 1e-14);
+		
+		// A zigzag through the points (k, (-1)^k) crosses the line y = x / 2 once on each segment with |x| < 2
+		double[] coordinates = new double[2 * 21];
+		for(int k = -10; k <= 10; k++) {
+			coordinates[2 * (k + 10)] = k;
+			coordinates[2 * (k + 10) + 1] = (k % 2 == 0) ? 1 : -1;
+		}
+		
+		PointListCurve zigzag = new PointListCurve(DoubleBuffer.wrap(coordinates), Color.BLUE, 1);
+		double[] withLine = getXs(CurveAnalysis.findIntersections(zigzag, line, INTERVAL, STEP), Kind.INTERSECTION);
+		assertEquals(4, withLine.length);
+		for(double x: withLine) assertEquals(x / 2, 1 - 2 * Math.abs(x - Math.rint(x / 2) * 2), 1e-12);
+		
+		// Two point lists cross where the zigzag meets its reflection in y = 0, half way along each segment
+		double[] reflected = coordinates.clone();
+		for(int i = 1; i < reflected.length; i += 2) reflected[i] = -reflected[i];
+		
+		PointListCurve mirror = new PointListCurve(DoubleBuffer.wrap(reflected), Color.RED, 1);
+		double[] crossings = getXs(CurveAnalysis.findIntersections(zigzag, mirror, INTERVAL, STEP), Kind.INTERSECTION);
+		assertEquals(20, crossings.length);
+		for(int i = 0; i < crossings.length; i++) assertEquals(-9.5 + i, crossings[i], 1e-12);
+	}
+	
+	@Test
+	public void testAnalyseInParallelChunks() {
+		// Enough samples for many chunks, and a root at each seam between them is found once
+		SimpleFunctionCurve sine = new SimpleFunctionCurve(x -> Math.sin(x));
+		SimpleFunctionCurve cosine = new SimpleFunctionCurve(x -> Math.cos(x));
+		Interval interval = new Interval(-100, 100);
+		
+		ArrayList<Curve> curves = new ArrayList<Curve>(Arrays.asList(sine, cosine));
+		ArrayList<Feature> features = CurveAnalysis.analyse(curves, interval, 0.001);
+		
+		assertEquals(64 + 63, getXs(features, Kind.ROOT).length);
+		assertEquals(32 + 31, getXs(features, Kind.MAXIMUM).length);
+		assertEquals(64, getXs(features, Kind.INTERSECTION).length);
+		
+		for(Feature feature: features) {
+			if(feature.getKind() == Kind.INTERSECTION) assertEquals(Math.sin(feature.getX()), Math.cos(feature.getX()), 1e-12);
+		}
+	}
+	
+	@Test
+	public void testMarkers() {
+		CurveCanvas canvas = new CurveCanvas(400, 300, CurveCanvas.TRANSPARENT);
+		canvas.display.setViewport(new PointDouble(-4, 3), 50.0 / Display.GRID_CELL_DISPLAY_SIZE);
+		
+		SimpleFunctionCurve curve = new SimpleFunctionCurve(x -> x * x - 1);
+		ArrayList<Feature> features = new ArrayList<Feature>(CurveAnalysis.findRoots(curve, INTERVAL, STEP));
+		features.addAll(CurveAnalysis.findExtrema(curve, INTERVAL, STEP));
+		assertEquals(3, features.size());
+		
+		MarkerCurve markers = new MarkerCurve(features, Color.RED);
+		canvas.draw(markers);
+		
+		// A filled triangle at the minimum and rings around the roots
+		assertTrue(canvas.getRGB(0, -1) == Color.RED.getRGB());
+		assertTrue(canvas.getRGB(1, 0) != Color.RED.getRGB());
+		assertTrue(canvas.image.getRGB((int)canvas.display.getDisplayX(1) + 4, (int)canvas.display.getDisplayY(0)) != 0);
+	}
+}
@@ -0,0 +1,55 @@
+package sini.grapher.test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+import sini.grapher.Curve;
+import sini.grapher.Display;
+import sini.grapher.profiling.Counters;
+
+/**
+ * A display of a fixed size with an image of the same size to draw curves into, for the tests that check what a curve draws.
+ */
+class CurveCanvas {
+	
+	static final Color TRANSPARENT = new Color(0, 0, 0, 0);
+	
+	final Display display;
+	final BufferedImage image;
+	private final Color background;
+	
+	/**
+	 * Creates a display of {@code width} by {@code height} pixels, whose image is cleared to {@code background} before each curve is
+	 * drawn. With a {@link #TRANSPARENT} background, the pixels that a curve does not draw are 0.
+	 */
+	CurveCanvas(int width, int height, Color background) {
+		display = new Display(new ArrayList<Curve>());
+		display.setSize(width, height);
+		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		this.background = background;
+	}
+	
+	/**
+	 * Clears the image and draws {@code curve} into it, returning the number of segments drawn.
+	 */
+	long draw(Curve curve) {
+		Graphics2D g = image.createGraphics();
+		g.setBackground(background);
+		g.clearRect(0, 0, image.getWidth(), image.getHeight());
+		
+		long start = Counters.getThreadSegmentsDrawn();
+		curve.draw(display, g);
+		g.dispose();
+		
+		return Counters.getThreadSegmentsDrawn() - start;
+	}
+	
+	/**
+	 * Returns the colour of the pixel at the point (x, y) of the plane.
+	 */
+	int getRGB(double x, double y) {
+		return image.getRGB((int)display.getDisplayX(x), (int)display.getDisplayY(y));
+	}
+}
@@ -0,0 +1,106 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.nio.DoubleBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sini.grapher.DensityScatterCurve;
+import sini.grapher.Display;
+import sini.grapher.Interval;
+import sini.grapher.PointDouble;
+
+public class DensityScatterCurveTest {
+	
+	static final int WIDTH = 200;
+	static final int HEIGHT = 100;
+	
+	CurveCanvas canvas;
+	Display display;
+	
+	@Before
+	public void setup() {
+		canvas = new CurveCanvas(WIDTH, HEIGHT, CurveCanvas.TRANSPARENT);
+		display = canvas.display;
+		
+		// One unit of the plane to a pixel, with the origin at the top left
+		display.setViewport(new PointDouble(0, 0), 1.0 / Display.GRID_CELL_DISPLAY_SIZE);
+	}
+	
+	private int getAlpha(double x, double y) {
+		return canvas.getRGB(x, y) >>> 24;
+	}
+	
+	/**
+	 * Returns a buffer of {@code count} points, all at (x, y) except for the point at {@code loneIndex}, which is at (loneX, loneY).
+	 */
+	private static DoubleBuffer getPoints(int count, double x, double y, int loneIndex, double loneX, double loneY) {
+		double[] coordinates = new double[2 * count];
+		
+		for(int i = 0; i < count; i++) {
+			coordinates[2*i] = (i == loneIndex) ? loneX : x;
+			coordinates[2*i + 1] = (i == loneIndex) ? loneY : y;
+		}
+		
+		return DoubleBuffer.wrap(coordinates);
+	}
+	
+	@Test
+	public void testDensityIsLogScaled() {
+		DensityScatterCurve curve = new DensityScatterCurve(getPoints(100000, 10.5, -10.5, 0, 100.5, -50.5), Color.RED);
+		canvas.draw(curve);
+		
+		int denseAlpha = getAlpha(10.5, -10.5);
+		int loneAlpha = getAlpha(100.5, -50.5);
+		
+		assertTrue(denseAlpha == 255);
+		assertTrue(loneAlpha > 0 && loneAlpha < denseAlpha);
+		assertTrue((canvas.image.getRGB(10, 10) & 0xFFFFFF) == 0xFF0000);
+		
+		// Nothing is drawn where there are no points
+		assertTrue(getAlpha(50.5, -50.5) == 0);
+	}
+	
+	@Test
+	public void testPointsOutOfViewAreIgnored() {
+		double[] coordinates = {-5, -5, WIDTH + 5, -5, 5, 5, Double.NaN, -5, 5.5, -5.5};
+		DensityScatterCurve curve = new DensityScatterCurve(DoubleBuffer.wrap(coordinates), Color.RED);
+		canvas.draw(curve);
+		
+		int drawn = 0;
+		for(int x = 0; x < WIDTH; x++) {
+			for(int y = 0; y < HEIGHT; y++) {
+				if((canvas.image.getRGB(x, y) >>> 24) != 0) drawn++;
+			}
+		}
+		
+		assertTrue(drawn == 1);
+		assertTrue(getAlpha(5.5, -5.5) == 255);
+	}
+	
+	@Test
+	public void testRefinementCountsEveryPoint() {
+		// Enough points that only some of them are counted at first, with one lone point that is skipped until the last refinement
+		int count = (1 << 20) + 1;
+		DensityScatterCurve curve = new DensityScatterCurve(getPoints(count, 10.5, -10.5, 1, 100.5, -50.5), Color.RED);
+		
+		Interval visible = Interval.product(new Interval(0, WIDTH), new Interval(-HEIGHT, 0));
+		assertTrue(curve.setViewport(visible, 1));
+		assertFalse(curve.setViewport(visible, 1));
+		
+		canvas.draw(curve);
+		assertTrue(getAlpha(100.5, -50.5) == 0);
+		
+		long version = curve.getVersion();
+		while(curve.refine(Long.MAX_VALUE));
+		assertTrue(curve.getVersion() != version);
+		
+		canvas.draw(curve);
+		assertTrue(getAlpha(100.5, -50.5) > 0);
+		assertTrue(getAlpha(10.5, -10.5) == 255);
+	}
+}
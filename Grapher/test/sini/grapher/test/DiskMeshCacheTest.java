@@ -0,0 +1,178 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sini.grapher.DifferentialEquation;
+import sini.grapher.DiskMeshCache;
+import sini.grapher.Interval;
+import sini.grapher.PointListCurve;
+import sini.grapher.PointSource;
+
+public class DiskMeshCacheTest {
+	
+	static final Interval REGION = Interval.pow(new Interval(-4, 4), 2);
+	
+	File file;
+	DiskMeshCache cache;
+	
+	@Before
+	public void setup() throws IOException {
+		file = new File(Files.createTempDirectory("meshes").toFile(), "meshes.bin");
+		cache = new DiskMeshCache(file);
+	}
+	
+	@Test
+	public void testRoundTrip() {
+		DiskMeshCache.Key key = new DiskMeshCache.Key("test", 1.5, REGION);
+		assertEquals(null, cache.get(key));
+		
+		cache.put(key, DoubleBuffer.wrap(new double[] {1, 2, 3.5, -4}));
+		cache.put(new DiskMeshCache.Key("other"), DoubleBuffer.wrap(new double[] {5}));
+		
+		// A new cache on the same file, as after a restart, maps the values back in
+		DoubleBuffer values = new DiskMeshCache(file).get(new DiskMeshCache.Key("test", 1.5, REGION));
+		
+		assertTrue(values.isDirect());
+		assertEquals(4, values.remaining());
+		assertEquals(3.5, values.get(2));
+		assertEquals(-4.0, values.get(3));
+	}
+	
+	@Test
+	public void testKeysAreHashedFromTheirParts() {
+		assertEquals(new DiskMeshCache.Key("test", 1.5, REGION), new DiskMeshCache.Key("test", 1.5, REGION));
+		assertEquals(new DiskMeshCache.Key("test", 1.5, REGION).hashCode(), new DiskMeshCache.Key("test", 1.5, REGION).hashCode());
+		assertTrue(!new DiskMeshCache.Key("test", 1.5, REGION).equals(new DiskMeshCache.Key("test", 2.5, REGION)));
+		assertTrue(!new DiskMeshCache.Key("test", 1, 2).equals(new DiskMeshCache.Key("test", 2, 1)));
+		
+		try {
+			new DiskMeshCache.Key("test", new Object());
+			fail("A part that cannot be hashed was accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+	
+	@Test
+	public void testTruncatedRecordIsDropped() throws IOException {
+		DiskMeshCache.Key first = new DiskMeshCache.Key("first");
+		DiskMeshCache.Key second = new DiskMeshCache.Key("second");
+		
+		cache.put(first, DoubleBuffer.wrap(new double[] {1, 2, 3}));
+		cache.put(second, DoubleBuffer.wrap(new double[] {4, 5, 6}));
+		
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 4);
+		}
+		
+		DiskMeshCache reopened = new DiskMeshCache(file);
+		assertEquals(3, reopened.get(first).remaining());
+		assertEquals(null, reopened.get(second));
+		
+		// The next record is written over the end of the cut short one
+		reopened.put(second, DoubleBuffer.wrap(new double[] {7}));
+		assertEquals(7.0, new DiskMeshCache(file).get(second).get(0));
+		assertEquals(2.0, new DiskMeshCache(file).get(first).get(1));
+	}
+	
+	@Test
+	public void testFileIsCompactedAtCap() {
+		DiskMeshCache small = new DiskMeshCache(file, 4096);
+		DiskMeshCache.Key kept = new DiskMeshCache.Key("kept");
+		small.put(kept, DoubleBuffer.wrap(new double[] {1}));
+		
+		// Storing the same key over and over leaves one live record, and keeps the file under the cap
+		for(int i = 0; i < 100; i++) {
+			small.put(new DiskMeshCache.Key("repeated"), DoubleBuffer.wrap(new double[] {i, i, i}));
+			small.get(kept);
+			assertTrue(file.length() <= 4096);
+		}
+		
+		DiskMeshCache reopened = new DiskMeshCache(file, 4096);
+		assertEquals(99.0, reopened.get(new DiskMeshCache.Key("repeated")).get(0));
+		assertEquals(1.0, reopened.get(kept).get(0));
+		
+		// The least recently used arrays are dropped to make room
+		for(int i = 0; i < 200; i++) reopened.put(new DiskMeshCache.Key("new", i), DoubleBuffer.wrap(new double[] {i}));
+		assertTrue(file.length() <= 4096);
+		assertEquals(null, new DiskMeshCache(file, 4096).get(kept));
+		assertEquals(199.0, new DiskMeshCache(file, 4096).get(new DiskMeshCache.Key("new", 199)).get(0));
+		
+		// An array that could never fit is not stored
+		reopened.put(kept, DoubleBuffer.wrap(new double[1000]));
+		assertEquals(null, new DiskMeshCache(file, 4096).get(kept));
+	}
+	
+	@Test
+	public void testCachesSharingFileSeeEachOthersWrites() {
+		DiskMeshCache other = new DiskMeshCache(file);
+		DiskMeshCache.Key first = new DiskMeshCache.Key("first");
+		DiskMeshCache.Key second = new DiskMeshCache.Key("second");
+		
+		cache.put(first, DoubleBuffer.wrap(new double[] {1}));
+		other.put(second, DoubleBuffer.wrap(new double[] {2}));
+		cache.put(new DiskMeshCache.Key("third"), DoubleBuffer.wrap(new double[] {3}));
+		
+		// Each write rereads what the other appended, rather than writing over it
+		DiskMeshCache reopened = new DiskMeshCache(file);
+		assertEquals(1.0, reopened.get(first).get(0));
+		assertEquals(2.0, reopened.get(second).get(0));
+		assertEquals(2.0, cache.get(second).get(0));
+	}
+	
+	@Test
+	public void testSolutionCurveIsLoadedFromCache() {
+		int[] evaluations = new int[1];
+		Function<double[], Double> f = p -> {
+			evaluations[0]++;
+			return Math.sin(p[0]) + Math.cos(p[1]);
+		};
+		
+		DifferentialEquation deq = new DifferentialEquation(f);
+		deq.setDiskCache(cache, "sin(t) + cos(x)");
+		PointListCurve traced = (PointListCurve) deq.getSolutionCurve(REGION, 0.5, 0, 0.2, 1000);
+		
+		// A new equation with the same identity and a new cache on the same file, as after a restart, never evaluates the function
+		DifferentialEquation restarted = new DifferentialEquation(f);
+		restarted.setDiskCache(new DiskMeshCache(file), "sin(t) + cos(x)");
+		
+		evaluations[0] = 0;
+		PointListCurve loaded = (PointListCurve) restarted.getSolutionCurve(REGION, 0.5, 0, 0.2, 1000);
+		
+		assertEquals(0, evaluations[0]);
+		assertTrue(isSamePoints(traced, loaded));
+		
+		// Changing the identity or the starting point misses the cache
+		DifferentialEquation changed = new DifferentialEquation(p -> Math.sin(p[0]) - Math.cos(p[1]));
+		changed.setDiskCache(cache, "sin(t) - cos(x)");
+		PointListCurve other = (PointListCurve) changed.getSolutionCurve(REGION, 0.5, 0, 0.2, 1000);
+		assertTrue(!isSamePoints(traced, other));
+		
+		restarted.getSolutionCurve(REGION, 0.6, 0, 0.2, 1000);
+		assertTrue(evaluations[0] > 0);
+	}
+	
+	private static boolean isSamePoints(PointListCurve a, PointListCurve b) {
+		PointSource pointsA = a.getPoints();
+		PointSource pointsB = b.getPoints();
+		if(pointsA.size() != pointsB.size()) return false;
+		
+		for(long i = 0; i < pointsA.size(); i++) {
+			if(pointsA.getX(i) != pointsB.getX(i) || pointsA.getY(i) != pointsB.getY(i)) return false;
+		}
+		
+		return true;
+	}
+}
@@ -0,0 +1,82 @@
+package sini.grapher.test;
+
+import static org.junit.Assume.assumeTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sini.grapher.Curve;
+import sini.grapher.Display;
+import sini.grapher.PointDouble;
+import sini.grapher.profiling.FrameProfiler;
+
+public class DisplayAllocationTest {
+	
+	static final int WIDTH = 800;
+	static final int HEIGHT = 600;
+	
+	Display display;
+	BufferedImage image;
+	Graphics2D g;
+	
+	@Before
+	public void setup() {
+		display = new Display(new ArrayList<Curve>());
+		display.setSize(WIDTH, HEIGHT);
+		display.centerViewport(new PointDouble(0, 0));
+		
+		image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		g = image.createGraphics();
+	}
+	
+	@After
+	public void teardown() {
+		g.dispose();
+	}
+	
+	/**
+	 * Pans the display by {@code dx} pixels, as dragging the mouse does.
+	 */
+	private void pan(int dx) {
+		PointDouble anchor = display.getPlanePoint(new Point(WIDTH / 2, HEIGHT / 2));
+		display.movePlanePointToDisplayPoint(anchor, new Point(WIDTH / 2 + dx, HEIGHT / 2));
+	}
+	
+	private long paintBackground() {
+		long start = FrameProfiler.getAllocatedBytes();
+		
+		display.paintGrid(g);
+		display.paintAxes(g);
+		display.paintAxisNumbers(g);
+		
+		return FrameProfiler.getAllocatedBytes() - start;
+	}
+	
+	@Test
+	public void testPanFrameDoesNotAllocate() {
+		// Without allocation measurement every difference is 0, and the test would pass without measuring anything
+		assumeTrue(FrameProfiler.isAllocationMeasured());
+		
+		// Pan back and forth across the same range, so that every label has been seen and the paint path has been compiled
+		for(int i = 0; i < 2000; i++) {
+			pan((i / 100) % 2 == 0 ? 3 : -3);
+			paintBackground();
+		}
+		
+		long allocated = 0;
+		
+		for(int i = 0; i < 200; i++) {
+			pan((i / 100) % 2 == 0 ? 3 : -3);
+			allocated += paintBackground();
+		}
+		
+		assertEquals(0, allocated, "bytes allocated while painting the background of pan frames");
+	}
+}
@@ -0,0 +1,143 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.fail;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Point;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.ArrayList;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sini.grapher.Curve;
+import sini.grapher.Display;
+import sini.grapher.PointDouble;
+
+public class DisplayInputTest {
+	
+	static final long TIMEOUT = 5000;
+	
+	Display display;
+	
+	@Before
+	public void setup() throws Exception {
+		SwingUtilities.invokeAndWait(() -> {
+			display = new Display(new ArrayList<Curve>());
+			display.setSize(800, 600);
+			display.centerViewport(new PointDouble(0, 0));
+		});
+	}
+	
+	@Test
+	public void testWheelEventsAreCoalesced() throws Exception {
+		Point mouse = new Point(100, 150);
+		PointDouble[] planePoint = new PointDouble[1];
+		double startZoom = display.getZoom();
+		
+		SwingUtilities.invokeAndWait(() -> {
+			planePoint[0] = display.getPlanePoint(mouse);
+			
+			// Three steps arriving within one frame only set the target, without moving the viewport
+			for(int i = 0; i < 3; i++) display.mouseWheelMoved(wheelEvent(mouse, -1));
+			assertEquals(startZoom, display.getZoom());
+		});
+		
+		double targetZoom = startZoom * Math.pow(Display.ZOOM_FACTOR, 3);
+		waitUntil(() -> Math.abs(display.getZoom() / targetZoom - 1) < 1e-12);
+		
+		// The point under the mouse stays still while zooming
+		SwingUtilities.invokeAndWait(() -> {
+			PointDouble point = display.getPlanePoint(mouse);
+			assertEquals(planePoint[0].x, point.x, 1e-9);
+			assertEquals(planePoint[0].y, point.y, 1e-9);
+		});
+	}
+	
+	@Test
+	public void testDragMovesPointWithMouse() throws Exception {
+		Point start = new Point(100, 100);
+		Point end = new Point(160, 130);
+		PointDouble[] planePoint = new PointDouble[1];
+		
+		SwingUtilities.invokeAndWait(() -> {
+			planePoint[0] = display.getPlanePoint(start);
+			
+			display.mousePressed(mouseEvent(MouseEvent.MOUSE_PRESSED, start));
+			for(int x = start.x; x <= end.x; x += 10) display.mouseDragged(mouseEvent(MouseEvent.MOUSE_DRAGGED, new Point(x, start.y + (x - start.x) / 2)));
+		});
+		
+		waitUntil(() -> Math.abs(display.getPlanePoint(end).x - planePoint[0].x) < 1e-9);
+		
+		// Holding the mouse still before releasing it does not fling the viewport
+		Thread.sleep(100);
+		SwingUtilities.invokeAndWait(() -> display.mouseReleased(mouseEvent(MouseEvent.MOUSE_RELEASED, end)));
+		Thread.sleep(100);
+		
+		SwingUtilities.invokeAndWait(() -> {
+			PointDouble point = display.getPlanePoint(end);
+			assertEquals(planePoint[0].x, point.x, 1e-9);
+			assertEquals(planePoint[0].y, point.y, 1e-9);
+		});
+	}
+	
+	@Test
+	public void testSurfaceGesturesFallBackWithoutSurfaces() throws Exception {
+		double startZoom = display.getZoom();
+		Point start = new Point(100, 100);
+		Point end = new Point(160, 100);
+		PointDouble[] planePoint = new PointDouble[1];
+		
+		// With no surface plots to turn, shift and the wheel zooms and a right drag pans, as they did before there were any
+		SwingUtilities.invokeAndWait(() -> display.mouseWheelMoved(wheelEvent(start, -1, InputEvent.SHIFT_DOWN_MASK)));
+		waitUntil(() -> Math.abs(display.getZoom() / (startZoom * Display.ZOOM_FACTOR) - 1) < 1e-12);
+		
+		SwingUtilities.invokeAndWait(() -> {
+			planePoint[0] = display.getPlanePoint(start);
+			display.mousePressed(rightMouseEvent(MouseEvent.MOUSE_PRESSED, start));
+			display.mouseDragged(rightMouseEvent(MouseEvent.MOUSE_DRAGGED, end));
+		});
+		
+		waitUntil(() -> Math.abs(display.getPlanePoint(end).x - planePoint[0].x) < 1e-9);
+		SwingUtilities.invokeAndWait(() -> display.mouseReleased(rightMouseEvent(MouseEvent.MOUSE_RELEASED, end)));
+	}
+	
+	
+	private MouseWheelEvent wheelEvent(Point p, int rotation) {
+		return wheelEvent(p, rotation, 0);
+	}
+	
+	private MouseWheelEvent wheelEvent(Point p, int rotation, int modifiers) {
+		return new MouseWheelEvent(display, MouseEvent.MOUSE_WHEEL, System.currentTimeMillis(), modifiers, p.x, p.y, 0, false,
+				MouseWheelEvent.WHEEL_UNIT_SCROLL, 1, rotation);
+	}
+	
+	private MouseEvent mouseEvent(int id, Point p) {
+		return new MouseEvent(display, id, System.currentTimeMillis(), MouseEvent.BUTTON1_DOWN_MASK, p.x, p.y, 1, false, MouseEvent.BUTTON1);
+	}
+	
+	private MouseEvent rightMouseEvent(int id, Point p) {
+		return new MouseEvent(display, id, System.currentTimeMillis(), MouseEvent.BUTTON3_DOWN_MASK, p.x, p.y, 1, false, MouseEvent.BUTTON3);
+	}
+	
+	private void waitUntil(Condition condition) throws Exception {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		boolean[] met = new boolean[1];
+		
+		while(System.currentTimeMillis() < deadline) {
+			SwingUtilities.invokeAndWait(() -> met[0] = condition.isMet());
+			if(met[0]) return;
+			Thread.sleep(10);
+		}
+		
+		fail("Timed out waiting for the viewport");
+	}
+	
+	interface Condition {
+		boolean isMet();
+	}
+}
@@ -0,0 +1,116 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sini.doubledouble.DoubleDouble;
+import sini.doubledouble.DoubleDoubleFunction;
+import sini.doubledouble.DoubleDoubleMath;
+import sini.grapher.Curve;
+import sini.grapher.Display;
+import sini.grapher.PointDouble;
+import sini.grapher.SimpleFunctionCurve;
+
+public class DoubleDoubleTest {
+	
+	static final MathContext CONTEXT = new MathContext(60);
+	
+	/**
+	 * Checks that {@code actual} is within {@code ulps} units in the 106th bit of {@code expected}.
+	 */
+	private static void checkClose(BigDecimal expected, DoubleDouble actual, double ulps) {
+		BigDecimal error = actual.toBigDecimal().subtract(expected).abs();
+		BigDecimal bound = expected.abs().multiply(new BigDecimal(ulps * Math.scalb(1.0, -106)));
+		assertTrue(error.compareTo(bound) <= 0);
+	}
+	
+	@Test
+	public void testArithmetic() {
+		Random random = new Random(47);
+		
+		for(int i = 0; i < 1000; i++) {
+			DoubleDouble a = DoubleDouble.sum(random.nextDouble() * 1e3, random.nextDouble() * 1e-14);
+			DoubleDouble b = DoubleDouble.sum(random.nextDouble() - 0.5, random.nextDouble() * 1e-18);
+			BigDecimal x = a.toBigDecimal(), y = b.toBigDecimal();
+			
+			checkClose(x.add(y), a.add(b), 4 * x.abs().add(y.abs()).divide(x.add(y).abs(), CONTEXT).doubleValue());
+			checkClose(x.multiply(y), a.multiply(b), 8);
+			checkClose(x.divide(y, CONTEXT), a.divide(b), 8);
+			checkClose(x.multiply(new BigDecimal(0.1)), a.multiply(0.1), 4);
+			checkClose(x.divide(new BigDecimal(7), CONTEXT), a.divide(7), 4);
+			checkClose(x.sqrt(CONTEXT), DoubleDoubleMath.sqrt(a), 8);
+		}
+		
+		// Sums that a double rounds away are kept
+		DoubleDouble one = DoubleDouble.ONE.add(Math.scalb(1.0, -80));
+		assertEquals(1.0, one.hi);
+		assertEquals(Math.scalb(1.0, -80), one.subtract(1).doubleValue());
+		
+		DoubleDouble e = DoubleDoubleMath.exp(DoubleDouble.ONE);
+		checkClose(new BigDecimal("2.71828182845904523536028747135266249775724709369995"), e, 16);
+		checkClose(BigDecimal.ONE, DoubleDoubleMath.log(e), 64);
+	}
+	
+	@Test
+	public void testDeepZoom() {
+		// A wave 200 pixels high and 60 pixels long when a pixel is 1e-16, near x = 1000, where doubles are 1.1e-13 apart
+		SimpleFunctionCurve precise = new SimpleFunctionCurve((DoubleDoubleFunction) x -> {
+			double offset = x.subtract(1000).multiply(1e14).doubleValue();
+			return DoubleDouble.valueOf(1e-14 * Math.sin(offset)).add(3);
+		});
+		SimpleFunctionCurve plain = new SimpleFunctionCurve(x -> 1e-14 * Math.sin((x - 1000) * 1e14) + 3);
+		
+		Display display = new Display(new ArrayList<Curve>(Arrays.asList(precise, plain)));
+		display.setSize(400, 300);
+		display.setViewport(new PointDouble(-4, 3), 1);
+		assertTrue(!display.isDeepZoom());
+		assertEquals(0.0, precise.getMeshOrigin()[0]);
+		
+		display.setViewport(DoubleDouble.valueOf(1000).subtract(2e-14), DoubleDouble.valueOf(3).add(1.5e-14), 2e14);
+		assertTrue(display.isDeepZoom());
+		assertEquals(1000.0, precise.getMeshOrigin()[0]);
+		
+		int[] rows = new int[2];
+		SimpleFunctionCurve[] curves = {precise, plain};
+		
+		for(int i = 0; i < 2; i++) {
+			SimpleFunctionCurve curve = curves[i];
+			while(curve.refine(Long.MAX_VALUE));
+			
+			double[] origin = curve.getMeshOrigin();
+			HashSet<Long> columns = new HashSet<Long>();
+			HashSet<Long> ys = new HashSet<Long>();
+			
+			for(double[][] segment: curve.getMesh()) {
+				double x = display.getDisplayX(origin[0], segment[0][0]);
+				if(x < 0 || x > 400) continue;
+				
+				columns.add(Math.round(x));
+				ys.add(Math.round(display.getDisplayY(origin[1], segment[0][1])));
+			}
+			
+			// Every column is meshed
+			assertTrue(columns.size() >= 400);
+			rows[i] = ys.size();
+		}
+		
+		// The whole wave is drawn from double-double evaluations, and an ordinary function is stuck at the double nearest the viewport
+		assertTrue(rows[0] > 195);
+		assertTrue(rows[1] <= 2);
+		
+		// Pixels map back and forth exactly
+		for(int x = 0; x <= 400; x += 40) {
+			DoubleDouble planeX = display.getPrecisePlaneX(x);
+			assertEquals(x, display.getDisplayX(1000, planeX.subtract(1000).doubleValue()), 1e-6);
+		}
+	}
+}
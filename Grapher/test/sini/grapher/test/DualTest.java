@@ -0,0 +1,131 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+import sini.dual.Dual;
+import sini.dual.DualFunction;
+import sini.dual.DualMath;
+import sini.dual.DualScalarFunction;
+import sini.dual.DualVectorFunction;
+import sini.grapher.DifferentialEquation;
+import sini.grapher.Integrator;
+import sini.grapher.ParametricCurve;
+import sini.grapher.SimpleFunctionCurve;
+import sini.grapher.profiling.Counters;
+
+public class DualTest {
+	
+	/**
+	 * Checks the derivative of {@code f} against a central difference of {@code value} at points across (0.1, 2).
+	 */
+	private static void checkDerivative(UnaryOperator<Dual> f, Function<Double, Double> value) {
+		for(double x = 0.1; x < 2; x += 0.093) {
+			Dual y = f.apply(Dual.variable(x, 0, 1));
+			double h = 1e-6;
+			double difference = (value.apply(x + h) - value.apply(x - h)) / (2 * h);
+			
+			assertEquals(value.apply(x), y.value, 1e-12);
+			assertEquals(difference, y.getDerivative(0), 1e-6 * Math.max(1, Math.abs(difference)));
+		}
+	}
+	
+	@Test
+	public void testDerivatives() {
+		checkDerivative(x -> x.multiply(x).add(x.multiply(3)).subtract(1), x -> x*x + 3*x - 1);
+		checkDerivative(x -> Dual.constant(1).divide(x), x -> 1 / x);
+		checkDerivative(x -> DualMath.pow(x, 3), x -> x*x*x);
+		checkDerivative(x -> DualMath.pow(x, 0.7), x -> Math.pow(x, 0.7));
+		checkDerivative(x -> DualMath.pow(x, x), x -> Math.pow(x, x));
+		checkDerivative(DualMath::sqrt, Math::sqrt);
+		checkDerivative(DualMath::exp, Math::exp);
+		checkDerivative(DualMath::log, Math::log);
+		checkDerivative(DualMath::sin, Math::sin);
+		checkDerivative(DualMath::cos, Math::cos);
+		checkDerivative(DualMath::tan, Math::tan);
+		checkDerivative(DualMath::atan, Math::atan);
+		checkDerivative(DualMath::tanh, Math::tanh);
+		checkDerivative(x -> DualMath.sin(DualMath.exp(x.negate())).multiply(x), x -> Math.sin(Math.exp(-x)) * x);
+	}
+	
+	@Test
+	public void testResultsDoNotShareGradients() {
+		Dual x = Dual.variable(2, 0, 1);
+		Dual sum = x.add(1);
+		Dual difference = x.subtract(1);
+		
+		sum.gradient[0] = 5;
+		difference.gradient[0] = 7;
+		assertEquals(1.0, x.getDerivative(0));
+		assertEquals(5.0, sum.getDerivative(0));
+	}
+	
+	@Test
+	public void testGradientAndJacobian() {
+		DualScalarFunction f = p -> DualMath.atan2(p[1], p[0]).add(p[0].multiply(p[1]));
+		Dual gradient = f.getGradient(new double[] {1, 2});
+		
+		assertEquals(Math.atan2(2, 1) + 2, gradient.value, 1e-15);
+		assertEquals(-2.0 / 5 + 2, gradient.getDerivative(0), 1e-15);
+		assertEquals(1.0 / 5 + 1, gradient.getDerivative(1), 1e-15);
+		assertEquals(Math.atan2(2, 1) + 2, f.apply(new double[] {1, 2}), 1e-15);
+		
+		// A circle, whose tangent is found with one evaluation
+		DualVectorFunction circle = p -> new Dual[] {DualMath.cos(p[0]), DualMath.sin(p[0])};
+		ParametricCurve curve = new ParametricCurve(circle);
+		
+		long evaluations = Counters.getFunctionEvaluations();
+		double[][] jacobian = curve.getJacobian(new double[] {0.5});
+		
+		assertEquals(1, Counters.getFunctionEvaluations() - evaluations);
+		assertEquals(-Math.sin(0.5), jacobian[0][0], 1e-15);
+		assertEquals(Math.cos(0.5), jacobian[1][0], 1e-15);
+		
+		// Without dual numbers the Jacobian comes from finite differences
+		double[][] estimate = new ParametricCurve(p -> new double[] {Math.cos(p[0]), Math.sin(p[0])}).getJacobian(new double[] {0.5});
+		assertEquals(jacobian[0][0], estimate[0][0], 1e-7);
+		assertEquals(jacobian[1][0], estimate[1][0], 1e-7);
+	}
+	
+	@Test
+	public void testSimpleFunctionCurveDerivative() {
+		SimpleFunctionCurve curve = new SimpleFunctionCurve((DualFunction) x -> DualMath.sin(DualMath.sqr(x)));
+		SimpleFunctionCurve plain = new SimpleFunctionCurve(x -> Math.sin(x * x));
+		
+		for(double x = -2; x <= 2; x += 0.25) {
+			double[] exact = curve.getValueAndDerivative(x);
+			double[] estimate = plain.getValueAndDerivative(x);
+			
+			assertEquals(Math.sin(x * x), exact[0], 1e-15);
+			assertEquals(2 * x * Math.cos(x * x), exact[1], 1e-14);
+			assertEquals(exact[1], estimate[1], 1e-8);
+		}
+	}
+	
+	@Test
+	public void testBackwardEulerWithJacobian() {
+		// A stiff equation, x' = -50 (x - cos t)
+		long[] evaluations = new long[2];
+		
+		DifferentialEquation plain = new DifferentialEquation(p -> {
+			evaluations[0]++;
+			return -50 * (p[1] - Math.cos(p[0]));
+		});
+		
+		DifferentialEquation dual = new DifferentialEquation((DualScalarFunction) p -> {
+			evaluations[1]++;
+			return p[1].subtract(DualMath.cos(p[0])).multiply(-50);
+		});
+		
+		double x = plain.solve(Integrator.BACKWARD_EULER, 0, 1, 2, 0.05);
+		double y = dual.solve(Integrator.BACKWARD_EULER, 0, 1, 2, 0.05);
+		
+		assertEquals(x, y, 1e-9);
+		assertTrue(evaluations[1] < 0.6 * evaluations[0]);
+	}
+}
@@ -0,0 +1,141 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sini.grapher.Display;
+import sini.grapher.HistogramCurve;
+import sini.grapher.MappedPointSource;
+import sini.grapher.PointDouble;
+import sini.grapher.PointListCurve;
+
+public class HistogramCurveTest {
+	
+	static final int WIDTH = 400;
+	static final int HEIGHT = 300;
+	
+	CurveCanvas canvas;
+	Display display;
+	
+	@Before
+	public void setup() {
+		canvas = new CurveCanvas(WIDTH, HEIGHT, Color.WHITE);
+		display = canvas.display;
+	}
+	
+	private boolean isDrawn(double x, double y) {
+		return canvas.getRGB(x, y) != Color.WHITE.getRGB();
+	}
+	
+	@Test
+	public void testStatistics() {
+		HistogramCurve curve = new HistogramCurve(0.5);
+		
+		curve.add(0.1, 1);
+		curve.add(0.4, 3);
+		curve.add(0.6, -2);
+		curve.add(-0.1, 7);
+		curve.add(Double.NaN, 5);
+		
+		assertEquals(2, curve.getCount(0, 0));
+		assertEquals(2.0, curve.getMean(0, 0));
+		assertEquals(1.0, curve.getMin(0, 0));
+		assertEquals(3.0, curve.getMax(0, 0));
+		assertEquals(1, curve.getCount(0, 1));
+		assertEquals(1, curve.getCount(0, -1));
+		assertTrue(Double.isNaN(curve.getMean(0, 2)));
+		
+		// Merging pairs of bins puts the first three points together, and leaves the negative one on its own
+		assertEquals(3, curve.getCount(1, 0));
+		assertEquals(2.0 / 3, curve.getMean(1, 0), 1e-12);
+		assertEquals(-2.0, curve.getMin(1, 0));
+		assertEquals(1, curve.getCount(1, -1));
+		assertEquals(4, curve.getCount(40, -1) + curve.getCount(40, 0));
+	}
+	
+	@Test
+	public void testAddAllMatchesAdd() {
+		Random random = new Random(1);
+		double[] coordinates = new double[2 * 300000];
+		for(int i = 0; i < coordinates.length; i++) coordinates[i] = random.nextGaussian() * 1000;
+		
+		HistogramCurve added = new HistogramCurve(1);
+		HistogramCurve addedAll = new HistogramCurve(1);
+		
+		for(int i = 0; i < coordinates.length; i += 2) added.add(coordinates[i], coordinates[i + 1]);
+		addedAll.addAll(new PointListCurve(DoubleBuffer.wrap(coordinates), Color.BLUE, 1).getPoints());
+		
+		for(int level = 0; level <= 12; level += 4) {
+			for(long bin = -5000 >> level; bin <= 5000 >> level; bin++) {
+				assertEquals(added.getCount(level, bin), addedAll.getCount(level, bin));
+				assertTrue(Double.compare(added.getMin(level, bin), addedAll.getMin(level, bin)) == 0);
+				assertTrue(Double.compare(added.getMax(level, bin), addedAll.getMax(level, bin)) == 0);
+				if(added.getCount(level, bin) > 0) assertEquals(added.getMean(level, bin), addedAll.getMean(level, bin), 1e-9);
+			}
+		}
+	}
+	
+	@Test
+	public void testBarsFollowZoom() {
+		HistogramCurve curve = new HistogramCurve(0.01);
+		for(int i = 0; i < 100; i++) curve.add(0.005 + i * 0.01, 0);
+		
+		// At a pixel to every 0.01, bins 0.01 wide are merged in fours to make bars 4 pixels wide, each holding 4 points
+		display.setViewport(new PointDouble(-0.5, 3), 100.0 / Display.GRID_CELL_DISPLAY_SIZE);
+		canvas.draw(curve);
+		
+		assertTrue(isDrawn(0.5, 0.5));
+		assertTrue(!isDrawn(0.5, 1.5));
+		assertTrue(!isDrawn(1.5, 0.5));
+		assertTrue(!isDrawn(-0.2, 0.5));
+	}
+	
+	@Test
+	public void testStreamingUpdatesMergedBins() {
+		HistogramCurve curve = new HistogramCurve(0.01, HistogramCurve.Statistic.RANGE, Color.BLACK);
+		for(int i = 0; i < 100; i++) curve.add(i * 0.01, 0);
+		
+		display.setViewport(new PointDouble(-0.5, 3), 100.0 / Display.GRID_CELL_DISPLAY_SIZE);
+		canvas.draw(curve);
+		assertTrue(!isDrawn(0.505, 2));
+		
+		// A point added after the bins are merged widens the range of its merged bin, and one far from the rest gets a bar of its own
+		long version = curve.getVersion();
+		curve.add(0.505, 2.5);
+		curve.add(2.005, 1.5);
+		assertTrue(curve.getVersion() != version);
+		
+		canvas.draw(curve);
+		assertTrue(isDrawn(0.505, 2));
+		assertTrue(isDrawn(2.005, 1.5));
+	}
+	
+	@Test
+	public void testAddAllFromMappedFile() throws Exception {
+		File file = File.createTempFile("histogram", ".bin");
+		file.deleteOnExit();
+		
+		try(DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			for(int i = 0; i < 1000; i++) {
+				out.writeLong(Long.reverseBytes(Double.doubleToLongBits(i % 10)));
+				out.writeLong(Long.reverseBytes(Double.doubleToLongBits(i)));
+			}
+		}
+		
+		HistogramCurve curve = new HistogramCurve(1, HistogramCurve.Statistic.MEAN, Color.BLUE);
+		curve.addAll(new MappedPointSource(file));
+		
+		assertEquals(100, curve.getCount(0, 3));
+		assertEquals(500.0, curve.getMean(0, 5));
+	}
+}
@@ -0,0 +1,137 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.UnaryOperator;
+
+import org.junit.Test;
+
+import sini.grapher.ImplicitCurve;
+import sini.grapher.ImplicitFunction;
+import sini.grapher.Interval;
+import sini.grapher.IntervalMath;
+
+public class ImplicitCurveTest {
+	
+	static final Interval REGION = Interval.product(new Interval(-2, 2), new Interval(-2, 2));
+	static final double STEP = 0.005;
+	
+	/**
+	 * Checks that the enclosure of {@code f} over random intervals contains the values of {@code value} at random points of them.
+	 */
+	private static void checkEnclosure(UnaryOperator<Interval> f, DoubleUnaryOperator value) {
+		Random random = new Random(1);
+		
+		for(int i = 0; i < 2000; i++) {
+			double a = random.nextGaussian() * 5;
+			double b = a + random.nextDouble() * Math.pow(10, random.nextInt(4) - 2);
+			Interval enclosure = f.apply(new Interval(a, b));
+			
+			for(int j = 0; j < 20; j++) {
+				double x = (j == 0) ? a : (j == 1) ? b : a + random.nextDouble() * (b - a);
+				double y = value.applyAsDouble(x);
+				
+				if(Double.isNaN(y)) continue;
+				assertTrue(enclosure.lower() <= y && y <= enclosure.upper());
+			}
+		}
+	}
+	
+	@Test
+	public void testEnclosuresContainValues() {
+		checkEnclosure(a -> IntervalMath.multiply(IntervalMath.add(a, 1.5), IntervalMath.subtract(a, IntervalMath.constant(2))), x -> (x + 1.5) * (x - 2));
+		checkEnclosure(a -> IntervalMath.divide(IntervalMath.constant(1), a), x -> 1 / x);
+		checkEnclosure(a -> IntervalMath.pow(a, 2), x -> x * x);
+		checkEnclosure(a -> IntervalMath.pow(a, 3), x -> x * x * x);
+		checkEnclosure(a -> IntervalMath.pow(a, -2), x -> 1 / (x * x));
+		checkEnclosure(IntervalMath::sqrt, Math::sqrt);
+		checkEnclosure(IntervalMath::exp, Math::exp);
+		checkEnclosure(IntervalMath::log, Math::log);
+		checkEnclosure(IntervalMath::sin, Math::sin);
+		checkEnclosure(IntervalMath::cos, Math::cos);
+		checkEnclosure(IntervalMath::tan, Math::tan);
+		checkEnclosure(IntervalMath::atan, Math::atan);
+		checkEnclosure(IntervalMath::abs, Math::abs);
+		
+		// Tight bounds where they are known exactly
+		Interval cos = IntervalMath.cos(new Interval(-0.1, 3.5));
+		assertTrue(cos.lower() == -1 && cos.upper() == 1);
+		
+		Interval square = IntervalMath.pow(new Interval(-1, 2), 2);
+		assertTrue(square.lower() == 0 && square.upper() > 4 && square.upper() < 4.000001);
+		
+		assertTrue(IntervalMath.isEmpty(IntervalMath.sqrt(new Interval(-2, -1))));
+		assertTrue(IntervalMath.isEmpty(IntervalMath.add(IntervalMath.log(new Interval(-2, -1)), IntervalMath.constant(1))));
+	}
+	
+	@Test
+	public void testCircle() {
+		ImplicitCurve curve = new ImplicitCurve(ImplicitFunction.of((x, y) -> x*x + y*y - 1,
+				(x, y) -> IntervalMath.add(IntervalMath.add(IntervalMath.sqr(x), IntervalMath.sqr(y)), -1)));
+		curve.updateMesh(REGION, STEP);
+		
+		assertFalse(curve.getSegments().isEmpty());
+		
+		for(double[][] segment: curve.getSegments()) {
+			for(double[] point: segment) assertTrue(Math.abs(Math.hypot(point[0], point[1]) - 1) < 2 * STEP);
+		}
+		
+		// The work is done near the circle, rather than over the whole region
+		int pixels = (int)(4 / (2 * STEP));
+		assertTrue(curve.getSegments().size() < 20 * pixels);
+	}
+	
+	@Test
+	public void testThinFeaturesAreKept() {
+		// x^2 + y^2 = 0 is a single point, and (y - x^2)^2 = 0 touches 0 along a parabola without changing sign
+		ImplicitCurve point = new ImplicitCurve(ImplicitFunction.of((x, y) -> x*x + y*y,
+				(x, y) -> IntervalMath.add(IntervalMath.sqr(x), IntervalMath.sqr(y))));
+		point.updateMesh(REGION, STEP);
+		
+		assertTrue(point.getSegments().isEmpty());
+		assertFalse(point.getFilledBoxes().isEmpty());
+		for(double[] box: point.getFilledBoxes()) assertTrue(box[0] <= 0 && box[2] >= 0 && box[1] <= 0 && box[3] >= 0);
+		
+		ImplicitCurve parabola = new ImplicitCurve(ImplicitFunction.of((x, y) -> (y - x*x) * (y - x*x),
+				(x, y) -> IntervalMath.sqr(IntervalMath.subtract(y, IntervalMath.sqr(x)))));
+		parabola.updateMesh(REGION, STEP);
+		
+		// Every column of pixels that the parabola passes through has a box on it
+		boolean[] columns = new boolean[(int)(2.8 / (2 * STEP))];
+		
+		for(double[] box: parabola.getFilledBoxes()) {
+			double x = (box[0] + box[2]) / 2;
+			assertTrue(Math.abs((box[1] + box[3]) / 2 - x * x) < 0.1);
+			
+			int column = (int)Math.floor((x + 1.4) / (2 * STEP));
+			if(column >= 0 && column < columns.length) columns[column] = true;
+		}
+		
+		for(boolean column: columns) assertTrue(column);
+	}
+	
+	@Test
+	public void testRefinement() {
+		ImplicitCurve curve = new ImplicitCurve(ImplicitFunction.of((x, y) -> Math.sin(3 * x) - y,
+				(x, y) -> IntervalMath.subtract(IntervalMath.sin(IntervalMath.multiply(x, 3)), y)));
+		
+		assertTrue(curve.setViewport(REGION, STEP));
+		assertFalse(curve.setViewport(REGION, STEP));
+		
+		int coarseSegments = curve.getSegments().size();
+		assertTrue(coarseSegments > 0);
+		
+		long version = curve.getVersion();
+		while(curve.refine(Long.MAX_VALUE));
+		
+		assertTrue(curve.getVersion() != version);
+		assertTrue(curve.getSegments().size() > 4 * coarseSegments);
+		
+		for(double[][] segment: curve.getSegments()) {
+			for(double[] point: segment) assertTrue(Math.abs(Math.sin(3 * point[0]) - point[1]) < 0.05);
+		}
+	}
+}
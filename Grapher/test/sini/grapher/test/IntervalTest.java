@@ -4,12 +4,14 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import sini.grapher.Interval;
+import sini.grapher.ParametricCurve;
 
 public class IntervalTest {
 	
@@ -116,4 +118,106 @@ public class IntervalTest {
 			index++;
 		}
 	}
+	
+	/**
+	 * Returns the average over {@code count} points of {@code iter} of the product of {@code 1 + (x_i - 1/2)} over the coordinates,
+	 * whose integral over the unit cube is 1.
+	 */
+	private static double average(Iterator<double[]> iter, int count) {
+		double sum = 0;
+		for(int n = 0; n < count; n++) {
+			double product = 1;
+			for(double x: iter.next()) product *= 1 + (x - 0.5);
+			sum += product;
+		}
+		
+		return sum / count;
+	}
+	
+	@Test
+	public void testSobolIterator() {
+		// The first points of the 2-dimensional sequence, scaled into prod
+		Iterator<double[]> iter = prod.getSobolIterator(4);
+		assertTrue(Arrays.equals(new double[] {1, 2}, iter.next()));
+		assertTrue(Arrays.equals(new double[] {2, 3.5}, iter.next()));
+		assertTrue(Arrays.equals(new double[] {2.5, 2.75}, iter.next()));
+		assertTrue(Arrays.equals(new double[] {1.5, 4.25}, iter.next()));
+		assertTrue(!iter.hasNext());
+		
+		// The first 2^8 points put one point in each box of area 2^-8 whose sides are powers of 2, for any aspect ratio
+		Interval square = Interval.pow(new Interval(0, 1), 2);
+		for(int a = 0; a <= 8; a++) {
+			int[] counts = new int[256];
+			iter = square.getSobolIterator(256);
+			
+			while(iter.hasNext()) {
+				double[] point = iter.next();
+				counts[((int)(point[0] * (1 << a)) << (8 - a)) + (int)(point[1] * (1 << (8 - a)))]++;
+			}
+			
+			for(int count: counts) assertEquals(1, count);
+		}
+		
+		// In all the tabulated dimensions, a few thousand points integrate a smooth function several times better than random ones would
+		Interval cube = Interval.pow(new Interval(0, 1), 21);
+		assertEquals(1, average(cube.getSobolIterator(4096), 4096), 1e-2);
+	}
+	
+	@Test
+	public void testHaltonIterator() {
+		Interval cube = Interval.pow(new Interval(0, 1), 5);
+		Iterator<double[]> iter = cube.getHaltonIterator(3);
+		
+		assertTrue(Arrays.equals(new double[] {1.0 / 2, 1.0 / 3, 1.0 / 5, 1.0 / 7, 1.0 / 11}, iter.next()));
+		double[] second = iter.next();
+		assertEquals(1.0 / 4, second[0]);
+		assertEquals(2.0 / 3, second[1], 1e-15);
+		assertEquals(3.0 / 4, iter.next()[0]);
+		assertTrue(!iter.hasNext());
+		
+		assertEquals(1, average(cube.getHaltonIterator(4096), 4096), 5e-3);
+	}
+	
+	@Test
+	public void testSparseGridIterator() {
+		int[][] counts = {{1, 5, 13, 29, 65}, {1, 7, 25, 69, 177}};
+		
+		for(int d = 2; d <= 3; d++) {
+			for(int level = 0; level < counts[d - 2].length; level++) {
+				Iterator<double[]> iter = Interval.pow(new Interval(-1, 1), d).getSparseGridIterator(level);
+				
+				int count = 0;
+				while(iter.hasNext()) {
+					iter.next();
+					count++;
+				}
+				
+				assertEquals(counts[d - 2][level], count);
+			}
+		}
+		
+		// Every point of a 10-dimensional sparse grid is in the interval and is visited once
+		Interval interval = Interval.pow(i2, 10);
+		HashSet<String> points = new HashSet<String>();
+		Iterator<double[]> iter = interval.getSparseGridIterator(3);
+		
+		while(iter.hasNext()) {
+			double[] point = iter.next();
+			assertTrue(interval.contains(point));
+			assertTrue(points.add(Arrays.toString(point)));
+		}
+		
+		assertEquals(1581, points.size());
+	}
+	
+	@Test
+	public void testPointCloud() {
+		// A map from a 3-dimensional parameter domain, sampled by 1000 points rather than a lattice of n-cubes
+		ParametricCurve curve = new ParametricCurve(p -> new double[] {p[0] + p[1], p[1] * p[2]});
+		curve.updatePointCloud(Interval.pow(new Interval(0, 1), 3).getSobolIterator(1000));
+		
+		assertEquals(1000, curve.getMesh().size());
+		assertEquals(1, curve.getMesh().get(0).length);
+		assertTrue(Arrays.equals(new double[] {1, 0.25}, curve.getMesh().get(1)[0]));
+	}
 }
@@ -0,0 +1,98 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import sini.grapher.Interval;
+import sini.grapher.MeshCache;
+import sini.grapher.SimpleFunctionCurve;
+
+public class MeshCacheTest {
+	
+	static final Interval INTERVAL = new Interval(0, 1);
+	static final Interval VISIBLE = Interval.product(new Interval(-4, 4), new Interval(-3, 3));
+	static final double STEP = 1.0 / 64;
+	
+	@Test
+	public void testHitAndMiss() {
+		MeshCache cache = new MeshCache(1000);
+		Object curve = new Object();
+		String mesh = "mesh";
+		
+		assertNull(cache.get(curve, INTERVAL, STEP));
+		cache.put(curve, INTERVAL, STEP, mesh, 100, 1000);
+		
+		assertTrue(cache.get(curve, new Interval(0, 1), STEP) == mesh);
+		assertNull(cache.get(curve, INTERVAL, 2 * STEP));
+		assertNull(cache.get(new Object(), INTERVAL, STEP));
+		assertEquals(0.25, cache.getHitRate(), 1e-12);
+	}
+	
+	@Test
+	public void testEvictsCheapestFirst() {
+		MeshCache cache = new MeshCache(300);
+		Object curve = new Object();
+		
+		cache.put(curve, new Interval(0, 1), STEP, "expensive", 100, 100000);
+		cache.put(curve, new Interval(1, 2), STEP, "cheap", 100, 100);
+		cache.put(curve, new Interval(2, 3), STEP, "middling", 100, 10000);
+		cache.put(curve, new Interval(3, 4), STEP, "new", 100, 1000);
+		
+		assertEquals(300L, cache.getBytes());
+		assertEquals(3, cache.getSize());
+		assertNull(cache.get(curve, new Interval(1, 2), STEP));
+		assertEquals("expensive", cache.<String>get(curve, new Interval(0, 1), STEP));
+		assertEquals("new", cache.<String>get(curve, new Interval(3, 4), STEP));
+		
+		// Meshes larger than the whole budget are never cached
+		cache.put(curve, new Interval(4, 5), STEP, "huge", 1000, 1000000);
+		assertNull(cache.get(curve, new Interval(4, 5), STEP));
+		
+		cache.setBudget(100);
+		assertEquals(100L, cache.getBytes());
+	}
+	
+	@Test
+	public void testUseRenewsMesh() {
+		MeshCache cache = new MeshCache(200);
+		Object curve = new Object();
+		
+		cache.put(curve, new Interval(0, 1), STEP, "first", 100, 1000);
+		cache.put(curve, new Interval(1, 2), STEP, "second", 100, 1000);
+		
+		// Of two meshes that were as costly to build, the one used least recently is evicted
+		cache.get(curve, new Interval(0, 1), STEP);
+		cache.put(curve, new Interval(2, 3), STEP, "third", 100, 1000);
+		
+		assertEquals("first", cache.<String>get(curve, new Interval(0, 1), STEP));
+		assertNull(cache.get(curve, new Interval(1, 2), STEP));
+	}
+	
+	@Test
+	public void testReturningToViewportNeedsNoRefinement() {
+		SimpleFunctionCurve curve = new SimpleFunctionCurve(x -> Math.sin(x));
+		MeshCache cache = new MeshCache(MeshCache.DEFAULT_BUDGET);
+		curve.setMeshCache(cache);
+		
+		curve.setViewport(VISIBLE, STEP);
+		while(curve.refine(Long.MAX_VALUE));
+		ArrayList<double[][]> mesh = curve.getMesh();
+		
+		curve.setViewport(Interval.product(new Interval(-16, 16), new Interval(-12, 12)), 4 * STEP);
+		while(curve.refine(Long.MAX_VALUE));
+		
+		// Steps that round down to the same power of 2 share the cached blocks
+		curve.setViewport(VISIBLE, 1.5 * STEP);
+		
+		assertFalse(curve.refine(Long.MAX_VALUE));
+		assertEquals(mesh.size(), curve.getMesh().size());
+		for(int i = 0; i < mesh.size(); i++) assertTrue(mesh.get(i) == curve.getMesh().get(i));
+		assertTrue(cache.getBytes() <= cache.getBudget());
+	}
+}
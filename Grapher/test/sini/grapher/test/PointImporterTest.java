@@ -0,0 +1,146 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sini.grapher.MappedPointSource;
+import sini.grapher.PointDouble;
+import sini.grapher.PointImporter;
+import sini.grapher.PointListCurve;
+import sini.grapher.PointLodIndex;
+
+public class PointImporterTest {
+	
+	static final int POINTS = 100000;
+	
+	File directory;
+	
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("points").toFile();
+	}
+	
+	private File writeCsv(int points) throws IOException {
+		File csv = new File(directory, "points.csv");
+		
+		try(PrintWriter writer = new PrintWriter(csv)) {
+			writer.println("t,value");
+			writer.println("# A comment");
+			
+			for(int i = 0; i < points; i++) {
+				writer.println((i % 2 == 0) ? (i * 0.01 + "," + getY(i)) : (i * 0.01 + "\t " + getY(i) + ";extra"));
+			}
+		}
+		
+		return csv;
+	}
+	
+	private static double getY(int i) {
+		return Math.sin(i * 0.01) + (i % 7) * 0.1;
+	}
+	
+	@Test
+	public void testCsvImport() throws IOException {
+		MappedPointSource source = PointImporter.importCsv(writeCsv(POINTS), new File(directory, "points.bin"), false);
+		
+		assertEquals((long)POINTS, source.size());
+		assertEquals(null, source.getLodIndex());
+		
+		for(int i = 0; i < POINTS; i += 997) {
+			assertEquals(i * 0.01, source.getX(i));
+			assertEquals(getY(i), source.getY(i));
+		}
+		
+		// Mapping the file in small chunks reads the same points across the chunk boundaries
+		MappedPointSource chunked = new MappedPointSource(source.getFile(), 64);
+		for(int i = 0; i < POINTS; i += 31) assertEquals(source.getY(i), chunked.getY(i));
+		
+		File bad = new File(directory, "bad.csv");
+		Files.write(bad.toPath(), "1,2\n3,x\n".getBytes());
+		
+		try {
+			PointImporter.importCsv(bad, new File(directory, "bad.bin"), false);
+			fail("Imported a malformed line");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("Line 2"));
+		}
+	}
+	
+	@Test
+	public void testLodIndex() throws IOException {
+		File binary = new File(directory, "points.bin");
+		MappedPointSource source = PointImporter.importCsv(writeCsv(POINTS), binary, true);
+		PointLodIndex index = source.getLodIndex();
+		
+		assertNotNull(index);
+		assertEquals(1L, index.getBucketCount(index.getLevels() - 1));
+		
+		for(int level: new int[] {0, 3, index.getLevels() - 1}) {
+			long bucket = index.getBucketCount(level) / 2;
+			long size = index.getBucketSize(level);
+			
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			
+			for(long i = bucket * size; i < Math.min(POINTS, (bucket + 1) * size); i++) {
+				min = Math.min(min, source.getY(i));
+				max = Math.max(max, source.getY(i));
+			}
+			
+			assertEquals(min, index.getMinY(level, bucket));
+			assertEquals(max, index.getMaxY(level, bucket));
+		}
+		
+		assertEquals(0L, index.findFirst(-1));
+		assertEquals(501L, index.findFirst(5.005));
+		assertEquals((long)POINTS, index.findFirst(1e9));
+		
+		// The index is reused by the next import of the same file
+		long indexModified = PointImporter.getIndexFile(binary).lastModified();
+		assertNotNull(PointImporter.importBinary(binary, true).getLodIndex());
+		assertEquals(indexModified, PointImporter.getIndexFile(binary).lastModified());
+		
+		// Rewriting the points with the same length and modification time still rebuilds the index
+		long binaryModified = binary.lastModified();
+		ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(binary.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+		for(int i = 0; i < POINTS; i++) bytes.putDouble(16 * i + 8, 100 + i);
+		Files.write(binary.toPath(), bytes.array());
+		binary.setLastModified(binaryModified);
+		
+		index = PointImporter.importBinary(binary, true).getLodIndex();
+		assertEquals(100.0, index.getMinY(index.getLevels() - 1, 0));
+		assertEquals(100.0 + POINTS - 1, index.getMaxY(index.getLevels() - 1, 0));
+		
+		// Points that are not sorted by x are not indexed
+		File unsorted = new File(directory, "unsorted.csv");
+		Files.write(unsorted.toPath(), "1,2\n0,3\n".getBytes());
+		assertEquals(null, PointImporter.importCsv(unsorted, new File(directory, "unsorted.bin"), true).getLodIndex());
+	}
+	
+	@Test
+	public void testIndexedCurveDrawsEnvelope() throws IOException {
+		MappedPointSource source = PointImporter.importCsv(writeCsv(POINTS), new File(directory, "points.bin"), true);
+		PointListCurve curve = new PointListCurve(source, Color.BLUE, 1);
+		
+		CurveCanvas canvas = new CurveCanvas(400, 300, Color.WHITE);
+		canvas.display.setViewport(new PointDouble(-10, 2), 0.005);
+		long segments = canvas.draw(curve);
+		
+		// Every point is in view, but only two to four buckets are drawn for each column of pixels, with two segments for each
+		assertTrue(canvas.display.getPlaneX(400) > POINTS * 0.01);
+		assertTrue(segments >= 2 * 2 * 400 && segments <= 2 * 4 * 400 + 2);
+	}
+}
@@ -0,0 +1,87 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import sini.grapher.Interval;
+import sini.grapher.PointListCurve;
+import sini.grapher.SimpleFunctionCurve;
+
+public class ProgressiveCurveTest {
+	
+	static final Interval VISIBLE = Interval.product(new Interval(-4, 4), new Interval(-3, 3));
+	static final double STEP = 1.0 / 64;
+	
+	@Test
+	public void testFunctionCurveRefinesToFullDetail() {
+		SimpleFunctionCurve curve = new SimpleFunctionCurve(x -> Math.sin(x));
+		
+		assertTrue(curve.setViewport(VISIBLE, STEP));
+		int coarseSize = curve.getMesh().size();
+		long version = curve.getVersion();
+		
+		// A deadline that has already passed still lets each call make some progress
+		int calls = 0;
+		while(curve.refine(0)) calls++;
+		
+		assertTrue(calls > 0);
+		assertTrue(curve.getVersion() > version);
+		assertEquals(16 * coarseSize, curve.getMesh().size());
+		assertFalse(curve.refine(Long.MAX_VALUE));
+		
+		// Every segment joins two points on the graph, and each segment starts where the last one ended
+		ArrayList<double[][]> mesh = curve.getMesh();
+		
+		for(int i = 0; i < mesh.size(); i++) {
+			double[][] segment = mesh.get(i);
+			assertEquals(Math.sin(segment[0][0]), segment[0][1], 1e-12);
+			assertEquals(Math.sin(segment[1][0]), segment[1][1], 1e-12);
+			assertEquals(STEP, segment[1][0] - segment[0][0], 1e-9);
+			if(i > 0) assertEquals(mesh.get(i - 1)[1][0], segment[0][0]);
+		}
+	}
+	
+	@Test
+	public void testPanKeepsLevelOfDetail() {
+		SimpleFunctionCurve curve = new SimpleFunctionCurve(x -> x * x);
+		
+		curve.setViewport(VISIBLE, STEP);
+		while(curve.refine(Long.MAX_VALUE));
+		
+		Interval panned = Interval.product(new Interval(-3, 5), new Interval(-3, 3));
+		curve.setViewport(panned, STEP);
+		
+		// The blocks that were already built are kept, so nothing is left to refine
+		ArrayList<double[][]> mesh = curve.getMesh();
+		
+		assertFalse(curve.refine(Long.MAX_VALUE));
+		assertEquals(STEP, mesh.get(0)[1][0] - mesh.get(0)[0][0], 1e-9);
+		assertTrue(mesh.get(0)[0][0] <= -3);
+		assertTrue(mesh.get(mesh.size() - 1)[1][0] >= 5);
+	}
+	
+	@Test
+	public void testPointListCurveVisibility() {
+		ArrayList<double[]> points = new ArrayList<double[]>();
+		for(int i = 0; i < 1000; i++) points.add(new double[] {10 + i / 100.0, 0});
+		
+		PointListCurve curve = new PointListCurve(points);
+		assertFalse(curve.isVisible(VISIBLE));
+		assertTrue(curve.isVisible(Interval.product(new Interval(15, 16), new Interval(-1, 1))));
+		
+		assertTrue(curve.setViewport(VISIBLE, STEP));
+		assertFalse(curve.setViewport(VISIBLE, STEP));
+		
+		int refinements = 0;
+		while(curve.refine(Long.MAX_VALUE)) refinements++;
+		
+		// The stride falls from 8 to 1, and then antialiasing is turned on
+		assertEquals(3, refinements);
+		assertFalse(curve.refine(Long.MAX_VALUE));
+	}
+}
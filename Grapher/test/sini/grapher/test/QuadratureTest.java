@@ -0,0 +1,87 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.function.DoubleUnaryOperator;
+
+import org.junit.Test;
+
+import sini.dual.DualFunction;
+import sini.dual.DualMath;
+import sini.grapher.Interval;
+import sini.grapher.Quadrature;
+import sini.grapher.Quadrature.Estimate;
+import sini.grapher.SimpleFunctionCurve;
+
+public class QuadratureTest {
+	
+	static final double TOLERANCE = 1e-10;
+	
+	@Test
+	public void testIntegrals() {
+		Estimate sine = Quadrature.integrate(x -> Math.sin(x), new Interval(0, Math.PI), TOLERANCE);
+		assertEquals(2, sine.getValue(), 2e-10);
+		assertTrue(sine.getEvaluations() <= 45);
+		
+		Estimate gaussian = Quadrature.integrate(x -> Math.exp(-x * x), new Interval(-10, 10), TOLERANCE);
+		assertEquals(Math.sqrt(Math.PI), gaussian.getValue(), 2e-10);
+		
+		// A peak that is narrow compared with the interval, and a singularity at an end that can be integrated
+		Estimate peak = Quadrature.integrate(x -> 1 / (1e-4 + x * x), new Interval(-1, 1), TOLERANCE);
+		assertEquals(2 * Math.atan(100) / 1e-2, peak.getValue(), 1e-10 * peak.getValue());
+		
+		Estimate root = Quadrature.integrate(x -> 1 / Math.sqrt(x), new Interval(0, 1), TOLERANCE);
+		assertEquals(2, root.getValue(), 1e-9);
+		
+		// A trapezium sum would take tens of thousands of evaluations for the same precision
+		assertTrue(peak.getEvaluations() < 2000);
+	}
+	
+	@Test
+	public void testIntegrateFromMesh() {
+		SimpleFunctionCurve curve = new SimpleFunctionCurve(x -> Math.sin(x * x));
+		Interval interval = new Interval(0, 10);
+		
+		Estimate fresh = Quadrature.integrate(curve, interval, TOLERANCE);
+		curve.updateMesh(interval, 0.01);
+		Estimate meshed = Quadrature.integrate(curve, interval, TOLERANCE);
+		
+		// The Fresnel integral S(sqrt(2 / pi) 10) sqrt(pi / 2)
+		double expected = 0.58367089992962334;
+		assertEquals(expected, fresh.getValue(), 1e-10);
+		assertEquals(expected, meshed.getValue(), 1e-10);
+		assertTrue(meshed.getEvaluations() < fresh.getEvaluations());
+	}
+	
+	@Test
+	public void testArea() {
+		SimpleFunctionCurve line = new SimpleFunctionCurve(x -> x / 2);
+		SimpleFunctionCurve parabola = new SimpleFunctionCurve(x -> x * x - 2);
+		
+		// |x^2 - x / 2 - 2| over [-3, 3], split where the graphs cross
+		double a = (0.5 - Math.sqrt(8.25)) / 2, b = (0.5 + Math.sqrt(8.25)) / 2;
+		DoubleUnaryOperator f = x -> x * x * x / 3 - x * x / 4 - 2 * x;
+		double expected = (f.applyAsDouble(a) - f.applyAsDouble(-3)) - (f.applyAsDouble(b) - f.applyAsDouble(a)) + (f.applyAsDouble(3) - f.applyAsDouble(b));
+		
+		Estimate area = Quadrature.getArea(line, parabola, new Interval(-3, 3), TOLERANCE);
+		assertEquals(expected, area.getValue(), 1e-12);
+		assertTrue(area.getEvaluations() <= 3 * 15);
+	}
+	
+	@Test
+	public void testArcLength() {
+		// The length of the parabola y = x^2 over [0, 1]
+		double expected = Math.sqrt(5) / 2 + Math.log(2 + Math.sqrt(5)) / 4;
+		
+		SimpleFunctionCurve dual = new SimpleFunctionCurve((DualFunction) x -> DualMath.sqr(x));
+		SimpleFunctionCurve plain = new SimpleFunctionCurve(x -> x * x);
+		
+		assertEquals(expected, Quadrature.getArcLength(dual, new Interval(0, 1), TOLERANCE).getValue(), 1e-13);
+		assertEquals(expected, Quadrature.getArcLength(plain, new Interval(0, 1), TOLERANCE).getValue(), 1e-9);
+		
+		// A quarter of the unit circle
+		SimpleFunctionCurve circle = new SimpleFunctionCurve((DualFunction) x -> DualMath.sqrt(x.multiply(x).negate().add(1)));
+		assertEquals(Math.PI / 4, Quadrature.getArcLength(circle, new Interval(0, Math.sqrt(0.5)), TOLERANCE).getValue(), 1e-12);
+	}
+}
@@ -0,0 +1,102 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import sini.grapher.Display;
+import sini.grapher.Interval;
+import sini.grapher.MeshCache;
+import sini.grapher.PointDouble;
+import sini.grapher.ScalarField;
+import sini.grapher.profiling.Counters;
+
+public class ScalarFieldTest {
+	
+	static final Interval REGION = Interval.product(new Interval(-2.3, 1.7), new Interval(-1.6, 2.1));
+	static final double STEP = 0.005;
+	
+	@Test
+	public void testContoursAreStitchedCircles() {
+		ScalarField field = new ScalarField(p -> p[0] * p[0] + p[1] * p[1], new double[] {1, 2});
+		field.setMeshCache(null);
+		field.updateMesh(REGION, STEP);
+		
+		// Each level gives one closed contour, which crosses the seams between many tiles
+		ArrayList<double[]> contours = field.getContours();
+		assertEquals(2, contours.size());
+		
+		for(double[] contour: contours) {
+			double radius = Math.hypot(contour[0], contour[1]);
+			assertTrue(Math.abs(radius - 1) < 0.01 || Math.abs(radius - Math.sqrt(2)) < 0.01);
+			assertTrue(contour.length > 200);
+			
+			for(int i = 0; i < contour.length; i += 2) assertEquals(radius, Math.hypot(contour[i], contour[i + 1]), 0.01);
+			assertEquals(contour[0], contour[contour.length - 2]);
+			assertEquals(contour[1], contour[contour.length - 1]);
+		}
+	}
+	
+	@Test
+	public void testContoursLeavingRegionAreOpen() {
+		ScalarField field = new ScalarField(p -> p[0] - p[1], new double[] {0, 0.5});
+		field.setMeshCache(null);
+		field.updateMesh(REGION, STEP);
+		
+		ArrayList<double[]> contours = field.getContours();
+		assertEquals(2, contours.size());
+		
+		for(double[] contour: contours) {
+			assertTrue(contour[0] != contour[contour.length - 2] || contour[1] != contour[contour.length - 1]);
+			for(int i = 0; i < contour.length; i += 2) assertEquals(contour[i] - contour[i + 1], (contour == contours.get(0)) ? 0 : 0.5, 1e-9);
+		}
+	}
+	
+	@Test
+	public void testLevelsDoNotResample() {
+		ScalarField field = new ScalarField(p -> Math.sin(p[0]) * Math.cos(p[1]));
+		field.setMeshCache(new MeshCache(1 << 26));
+		field.updateMesh(REGION, STEP);
+		assertTrue(field.getContours().isEmpty());
+		
+		long evaluations = Counters.getFunctionEvaluations();
+		long version = field.getVersion();
+		
+		field.setLevels(new double[] {-0.5, 0, 0.5});
+		field.setRange(-1, 1);
+		
+		assertEquals(evaluations, Counters.getFunctionEvaluations());
+		assertTrue(field.getVersion() != version);
+		assertFalse(field.getContours().isEmpty());
+		
+		// Moving back to a viewport seen before takes every tile from the cache
+		field.updateMesh(Interval.product(new Interval(10, 11), new Interval(10, 11)), STEP);
+		evaluations = Counters.getFunctionEvaluations();
+		field.updateMesh(REGION, STEP);
+		assertEquals(evaluations, Counters.getFunctionEvaluations());
+	}
+	
+	@Test
+	public void testHeatMap() {
+		CurveCanvas canvas = new CurveCanvas(400, 300, Color.WHITE);
+		canvas.display.setViewport(new PointDouble(-2, 1.5), 100.0 / Display.GRID_CELL_DISPLAY_SIZE);
+		
+		ScalarField field = new ScalarField(p -> (p[0] > 0) ? p[0] : Double.NaN);
+		field.setViewport(Interval.product(new Interval(-2, 2), new Interval(-1.5, 1.5)), canvas.display.getMeshStep());
+		while(field.refine(Long.MAX_VALUE));
+		
+		canvas.draw(field);
+		
+		// Where f is undefined nothing is drawn, and elsewhere the colour changes with the value
+		assertEquals(Color.WHITE.getRGB(), canvas.getRGB(-1, 0));
+		
+		int low = canvas.getRGB(0.1, 0);
+		int high = canvas.getRGB(1.9, 0);
+		assertTrue(low != Color.WHITE.getRGB() && high != Color.WHITE.getRGB() && low != high);
+	}
+}
@@ -0,0 +1,202 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sini.grapher.Curve;
+import sini.grapher.Display;
+import sini.grapher.Interval;
+import sini.grapher.MappedPointSource;
+import sini.grapher.PointDouble;
+import sini.grapher.PointImporter;
+import sini.grapher.PointListCurve;
+import sini.grapher.PointSource;
+import sini.grapher.SegmentIndex;
+import sini.grapher.SegmentIndex.Hit;
+import sini.grapher.SimpleFunctionCurve;
+
+public class SegmentIndexTest {
+	
+	/**
+	 * Returns random walks of {@code count} points each, starting across [-5, 5].
+	 */
+	private static ArrayList<Curve> getWalks(int walks, int count, Random random) {
+		ArrayList<Curve> curves = new ArrayList<Curve>();
+		
+		for(int i = 0; i < walks; i++) {
+			double[] coordinates = new double[2 * count];
+			coordinates[0] = random.nextDouble() * 10 - 5;
+			coordinates[1] = random.nextDouble() * 10 - 5;
+			
+			for(int j = 1; j < count; j++) {
+				coordinates[2 * j] = coordinates[2 * j - 2] + random.nextGaussian() * 0.05;
+				coordinates[2 * j + 1] = coordinates[2 * j - 1] + random.nextGaussian() * 0.05;
+			}
+			
+			curves.add(new PointListCurve(DoubleBuffer.wrap(coordinates), Color.BLUE, 1));
+		}
+		
+		return curves;
+	}
+	
+	/**
+	 * Returns the distance from (x, y) to the nearest segment of any of {@code curves}, by looking at every one.
+	 */
+	private static double getDistance(ArrayList<Curve> curves, double x, double y) {
+		double nearest = Double.POSITIVE_INFINITY;
+		
+		for(Curve curve: curves) {
+			PointSource points = ((PointListCurve) curve).getPoints();
+			
+			for(long i = 0; i + 1 < points.size(); i++) {
+				double x0 = points.getX(i), y0 = points.getY(i);
+				double dx = points.getX(i + 1) - x0, dy = points.getY(i + 1) - y0;
+				double t = Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / (dx * dx + dy * dy)));
+				nearest = Math.min(nearest, Math.hypot(x0 + t * dx - x, y0 + t * dy - y));
+			}
+		}
+		
+		return nearest;
+	}
+	
+	@Test
+	public void testNearestMatchesLinearScan() {
+		Random random = new Random(4);
+		ArrayList<Curve> curves = getWalks(40, 500, random);
+		
+		SegmentIndex index = new SegmentIndex();
+		assertEquals(40, index.update(curves));
+		assertEquals(40 * 499, index.getSegmentCount());
+		
+		for(int i = 0; i < 200; i++) {
+			double x = random.nextDouble() * 12 - 6, y = random.nextDouble() * 12 - 6;
+			double expected = getDistance(curves, x, y);
+			Hit hit = index.findNearest(x, y, 0.2);
+			
+			if(expected > 0.2) {
+				assertTrue(hit == null);
+			} else {
+				assertEquals(expected, hit.getDistance(), 1e-12);
+				assertEquals(expected, Math.hypot(hit.getX() - x, hit.getY() - y), 1e-12);
+			}
+		}
+	}
+	
+	@Test
+	public void testSortedPointsAreSearchedInPlace() throws IOException {
+		// A noisy curve sorted by x, with an index of its levels of detail, so that it is searched where it is rather than copied
+		Random random = new Random(46);
+		int count = 20000;
+		ByteBuffer bytes = ByteBuffer.allocate(16 * count).order(ByteOrder.LITTLE_ENDIAN);
+		
+		for(int i = 0; i < count; i++) {
+			bytes.putDouble(i * 0.001 - 10);
+			bytes.putDouble(Math.sin(i * 0.001) + random.nextGaussian() * 0.05);
+		}
+		
+		File file = new File(Files.createTempDirectory("segments").toFile(), "points.bin");
+		Files.write(file.toPath(), bytes.array());
+		
+		MappedPointSource source = PointImporter.importBinary(file, true);
+		assertNotNull(source.getLodIndex());
+		
+		ArrayList<Curve> curves = new ArrayList<Curve>(Arrays.asList(new PointListCurve(source, Color.BLUE, 1)));
+		SegmentIndex index = new SegmentIndex();
+		index.update(curves);
+		assertEquals(count - 1L, index.getSegmentCount());
+		
+		for(int i = 0; i < 200; i++) {
+			double x = random.nextDouble() * 24 - 12, y = random.nextDouble() * 3 - 1.5;
+			double expected = getDistance(curves, x, y);
+			Hit hit = index.findNearest(x, y, 0.05);
+			
+			if(expected > 0.05) {
+				assertTrue(hit == null);
+			} else {
+				assertEquals(expected, hit.getDistance(), 1e-12);
+			}
+		}
+	}
+	
+	@Test
+	public void testPointsRewrittenInPlaceAreIndexedAgain() {
+		double[] coordinates = {0, 0, 1, 0, 2, 0};
+		ArrayList<Curve> curves = new ArrayList<Curve>(Arrays.asList(new PointListCurve(DoubleBuffer.wrap(coordinates), Color.BLUE, 1)));
+		
+		SegmentIndex index = new SegmentIndex();
+		assertEquals(1, index.update(curves));
+		assertEquals(0, index.update(curves));
+		
+		for(int i = 1; i < coordinates.length; i += 2) coordinates[i] = 5;
+		assertEquals(1, index.update(curves));
+		assertTrue(index.findNearest(1, 0, 0.1) == null);
+		assertEquals(5.0, index.findNearest(1, 5.05, 0.1).getY());
+	}
+	
+	@Test
+	public void testIncrementalUpdate() {
+		SimpleFunctionCurve sine = new SimpleFunctionCurve(x -> Math.sin(x));
+		SimpleFunctionCurve parabola = new SimpleFunctionCurve(x -> x * x);
+		sine.updateMesh(new Interval(-5, 5), 0.01);
+		parabola.updateMesh(new Interval(-5, 5), 0.01);
+		
+		ArrayList<Curve> curves = new ArrayList<Curve>(Arrays.asList(sine, parabola));
+		SegmentIndex index = new SegmentIndex();
+		assertEquals(2, index.update(curves));
+		assertEquals(0, index.update(curves));
+		
+		// Only the curve whose mesh was rebuilt is indexed again, and a curve that is removed is dropped
+		sine.updateMesh(new Interval(0, 20), 0.01);
+		assertEquals(1, index.update(curves));
+		
+		Hit hit = index.findNearest(15, Math.sin(15) + 0.01, 0.1);
+		assertTrue(hit.getCurve() == sine);
+		
+		// The point on the graph of a function is found from the function rather than the mesh
+		assertEquals(Math.sin(hit.getX()), hit.getY(), 1e-15);
+		
+		curves.remove(sine);
+		assertEquals(0, index.update(curves));
+		assertTrue(index.findNearest(15, Math.sin(15), 0.1) == null);
+		assertTrue(index.findNearest(2, 4, 0.1).getCurve() == parabola);
+	}
+	
+	@Test
+	public void testHover() throws InterruptedException {
+		SimpleFunctionCurve line = new SimpleFunctionCurve(x -> x / 2);
+		Display display = new Display(new ArrayList<Curve>(Arrays.asList(line)));
+		display.setSize(400, 300);
+		display.setViewport(new PointDouble(-4, 3), 2);
+		line.updateMesh(new Interval(-4, 4), display.getMeshStep());
+		
+		// A few pixels above the line at x = 1, where it is traced once the line has been indexed, and then far from it
+		int x = (int)display.getDisplayX(1), y = (int)display.getDisplayY(0.5) - 3;
+		display.mouseMoved(new MouseEvent(display, MouseEvent.MOUSE_MOVED, 0, 0, x, y, 0, false));
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(display.getHover() == null && System.currentTimeMillis() < deadline) Thread.sleep(10);
+		
+		Hit hover = display.getHover();
+		assertTrue(hover.getCurve() == line);
+		assertEquals(hover.getX() / 2, hover.getY(), 1e-15);
+		assertEquals(3 / display.getDisplayUnit() / Math.sqrt(1.25), hover.getDistance(), 0.01);
+		
+		display.mouseMoved(new MouseEvent(display, MouseEvent.MOUSE_MOVED, 0, 0, x, y - 50, 0, false));
+		assertTrue(display.getHover() == null);
+	}
+}
@@ -0,0 +1,164 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sini.grapher.Display;
+import sini.grapher.PointDouble;
+import sini.grapher.StreamingCurve;
+
+public class StreamingCurveTest {
+	
+	static final int WIDTH = 400;
+	static final int HEIGHT = 300;
+	
+	CurveCanvas canvas;
+	Display display;
+	
+	@Before
+	public void setup() {
+		canvas = new CurveCanvas(WIDTH, HEIGHT, Color.WHITE);
+		display = canvas.display;
+	}
+	
+	@Test
+	public void testRetention() {
+		StreamingCurve curve = new StreamingCurve(1000);
+		assertTrue(Double.isNaN(curve.getLatestX()));
+		
+		for(int i = 0; i < 5000; i++) curve.add(i * 0.01, 0);
+		
+		assertEquals(1000, curve.getSize());
+		assertEquals(49.99, curve.getLatestX());
+		
+		// Only the retained points are drawn, so nothing is drawn to the left of them
+		display.setViewport(new PointDouble(0, 10), getZoom(50));
+		canvas.draw(curve);
+		assertTrue(isBlank(0, (int)display.getDisplayX(39.7)));
+		assertTrue(!isBlank((int)display.getDisplayX(40.1), WIDTH));
+		
+		curve.setRetainedSpan(1);
+		canvas.draw(curve);
+		assertTrue(isBlank(0, (int)display.getDisplayX(48.7)));
+	}
+	
+	@Test
+	public void testDecimationKeepsExtremes() {
+		StreamingCurve curve = new StreamingCurve(1 << 20, Color.BLACK, 1);
+		
+		// A million points across the display, with one spike far above the rest
+		for(int i = 0; i < 1000000; i++) curve.add(i * 1e-5, (i == 500000) ? 5 : Math.sin(i * 0.001) * 0.1);
+		
+		display.setViewport(new PointDouble(0, 6), getZoom(10));
+		long segments = canvas.draw(curve);
+		
+		assertTrue(segments <= 4 * WIDTH);
+		
+		int spikeX = (int)display.getDisplayX(5);
+		int spikeY = (int)display.getDisplayY(5);
+		assertTrue(isDrawn(spikeX, spikeY + 1));
+	}
+	
+	@Test
+	public void testDrawWhileStreaming() throws Exception {
+		StreamingCurve curve = new StreamingCurve(10000, Color.BLACK, 1);
+		display.setViewport(new PointDouble(0, 2), getZoom(10));
+		
+		Thread producer = new Thread(() -> {
+			double[] x = new double[100];
+			double[] y = new double[100];
+			
+			for(int n = 0; n < 2000000; n += 100) {
+				for(int i = 0; i < 100; i++) {
+					x[i] = (n + i) * 0.001;
+					y[i] = Math.sin(x[i]);
+				}
+				
+				curve.add(x, y, 100);
+			}
+		});
+		
+		producer.start();
+		
+		while(producer.isAlive()) {
+			display.setViewport(new PointDouble(curve.getLatestX() - 10, 2), display.getZoom());
+			assertTrue(canvas.draw(curve) <= 4 * WIDTH + 1);
+		}
+		
+		assertEquals(1999.999, curve.getLatestX(), 1e-9);
+		assertEquals(2000000 + 0L, curve.getVersion());
+	}
+	
+	@Test
+	public void testLargeBatchesAreNotReadAhead() throws Exception {
+		// Batches far larger than the ring, whose points are numbered by x, so that reading a slot the producer has overwritten shows up as
+		// a point newer than those published
+		StreamingCurve curve = new StreamingCurve(64);
+		int batch = 100000;
+		
+		Thread producer = new Thread(() -> {
+			double[] x = new double[batch];
+			
+			for(int n = 0; n < 100 * batch; n += batch) {
+				for(int i = 0; i < batch; i++) x[i] = n + i;
+				curve.add(x, x, batch);
+			}
+		});
+		
+		producer.start();
+		
+		while(producer.isAlive()) {
+			double latestX = curve.getLatestX();
+			assertTrue(Double.isNaN(latestX) || latestX < curve.getVersion());
+		}
+	}
+	
+	@Test
+	public void testAutoScroll() throws Exception {
+		StreamingCurve curve = new StreamingCurve(1000);
+		
+		SwingUtilities.invokeAndWait(() -> {
+			display.setViewport(new PointDouble(0, 2), 1);
+			display.setAutoScroll(curve);
+		});
+		
+		double width = display.getPlaneX(WIDTH) - display.getPlaneX(0);
+		for(int i = 0; i <= 100; i++) curve.add(3 * width * i / 100, 0);
+		
+		long deadline = System.currentTimeMillis() + 5000;
+		while(display.getDisplayX(curve.getLatestX()) > WIDTH && System.currentTimeMillis() < deadline) Thread.sleep(10);
+		
+		SwingUtilities.invokeAndWait(() -> display.setAutoScroll(null));
+		
+		double latestX = display.getDisplayX(curve.getLatestX());
+		assertTrue(latestX > 0.8 * WIDTH && latestX <= WIDTH);
+	}
+	
+	/**
+	 * Returns the zoom level at which {@code width} units of the plane fill the width of the display.
+	 */
+	private static double getZoom(double width) {
+		return WIDTH / width / Display.GRID_CELL_DISPLAY_SIZE;
+	}
+	
+	private boolean isBlank(int fromX, int toX) {
+		for(int x = Math.max(0, fromX); x < Math.min(WIDTH, toX); x++) {
+			for(int y = 0; y < HEIGHT; y++) {
+				if(isDrawn(x, y)) return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	private boolean isDrawn(int x, int y) {
+		return (canvas.image.getRGB(x, y) & 0xFFFFFF) != 0xFFFFFF;
+	}
+}
@@ -0,0 +1,68 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import sini.grapher.Interval;
+import sini.grapher.OrbitCamera;
+import sini.grapher.SurfacePlot;
+
+public class SurfacePlotTest {
+	
+	@Test
+	public void testPlane() {
+		// The square [-1, 1]^2 in the plane z = 0, seen from straight above with x to the right, fills a square in the middle of the image
+		SurfacePlot plane = new SurfacePlot(p -> new double[] {p[0], p[1], 0}, Interval.pow(new Interval(-1, 1), 2), 0.01, Color.WHITE);
+		plane.getCamera().set(-Math.PI / 2, OrbitCamera.MAX_PITCH, 2.5);
+		assertEquals(2 * 200 * 200, plane.getTriangleCount());
+		
+		CurveCanvas canvas = new CurveCanvas(400, 400, CurveCanvas.TRANSPARENT);
+		canvas.draw(plane);
+		BufferedImage image = canvas.image;
+		int center = image.getRGB(200, 200);
+		
+		// Lit almost face on, and transparent outside the square
+		assertTrue((center >>> 24) == 0xFF);
+		assertTrue((center & 0xFF) > 200);
+		assertEquals(0, image.getRGB(5, 5));
+		assertEquals(0, image.getRGB(395, 200));
+		
+		// Turning the camera changes the version of the surface, so that displays draw it again
+		long version = plane.getVersion();
+		plane.getCamera().rotate(0.1, 0);
+		assertTrue(plane.getVersion() != version);
+		
+		// As does swapping in another camera, even one whose own version would add up to the same
+		version = plane.getVersion();
+		OrbitCamera shared = new OrbitCamera();
+		shared.rotate(0.1, 0);
+		plane.setCamera(shared);
+		assertTrue(plane.getVersion() != version);
+	}
+	
+	@Test
+	public void testDepth() {
+		// Two sheets: first a small tilted one above the middle, then a flat one under all of it, with a gap of missing samples between
+		SurfacePlot sheets = new SurfacePlot(p -> {
+			if(Math.abs(p[0] - 1) < 0.03) return new double[] {Double.NaN, Double.NaN, Double.NaN};
+			if(p[0] < 1) return new double[] {p[0] - 0.5, p[1] / 2, 0.5 - 0.8 * (p[0] - 0.5)};
+			return new double[] {2 * (p[0] - 1.5), p[1], 0};
+		}, Interval.product(new Interval(0, 2), new Interval(-1, 1)), 0.02, Color.WHITE);
+		sheets.getCamera().set(-Math.PI / 2, OrbitCamera.MAX_PITCH, 2.5);
+		
+		CurveCanvas canvas = new CurveCanvas(400, 400, CurveCanvas.TRANSPARENT);
+		canvas.draw(sheets);
+		BufferedImage image = canvas.image;
+		int middle = image.getRGB(200, 200) & 0xFF;
+		int side = image.getRGB(200 + 110, 200) & 0xFF;
+		
+		// The flat sheet, drawn later, is hidden in the middle by the nearer tilted one, which faces the light less squarely
+		assertTrue(side > 0 && middle > 0);
+		assertTrue(middle < side - 10);
+	}
+}
@@ -0,0 +1,195 @@
+package sini.grapher.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sini.grapher.Curve;
+import sini.grapher.PointListCurve;
+import sini.grapher.ScalarField;
+import sini.grapher.SimpleFunctionCurve;
+import sini.grapher.tiles.Tile;
+import sini.grapher.tiles.TileCache;
+import sini.grapher.tiles.TileKey;
+import sini.grapher.tiles.TileRenderer;
+import sini.grapher.tiles.TileServer;
+
+public class TileServerTest {
+	
+	File cacheDirectory;
+	ArrayList<Curve> curves;
+	TileServer server;
+	
+	@Before
+	public void setup() throws IOException {
+		cacheDirectory = Files.createTempDirectory("tiles").toFile();
+		curves = getScene();
+		server = new TileServer(curves, "test", 0, new TileCache(1 << 20, cacheDirectory));
+		server.start();
+	}
+	
+	@After
+	public void teardown() {
+		server.stop();
+	}
+	
+	private static ArrayList<Curve> getScene() {
+		ArrayList<Curve> curves = new ArrayList<Curve>();
+		curves.add(new SimpleFunctionCurve(x -> Math.sin(x), Color.RED));
+		
+		ArrayList<double[]> points = new ArrayList<double[]>();
+		for(int i = 0; i < 100; i++) points.add(new double[] {i * 0.1, Math.cos(i * 0.1)});
+		curves.add(new PointListCurve(points));
+		
+		return curves;
+	}
+	
+	private HttpURLConnection open(String path) throws IOException {
+		URL url = new URL("http://localhost:" + server.getPort() + path);
+		return (HttpURLConnection) url.openConnection();
+	}
+	
+	@Test
+	public void testServesTile() throws IOException {
+		HttpURLConnection connection = open("/tiles/0/0/-1.png");
+		
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("image/png", connection.getContentType());
+		assertTrue(connection.getHeaderField("ETag") != null);
+		
+		BufferedImage image;
+		try(InputStream in = connection.getInputStream()) {
+			image = ImageIO.read(in);
+		}
+		
+		assertEquals(TileRenderer.TILE_SIZE, image.getWidth());
+		assertEquals(TileRenderer.TILE_SIZE, image.getHeight());
+	}
+	
+	@Test
+	public void testNotModified() throws IOException {
+		HttpURLConnection first = open("/tiles/2/-3/1.png");
+		assertEquals(200, first.getResponseCode());
+		String etag = first.getHeaderField("ETag");
+		first.getInputStream().close();
+		
+		HttpURLConnection second = open("/tiles/2/-3/1.png");
+		second.setRequestProperty("If-None-Match", etag);
+		assertEquals(304, second.getResponseCode());
+		assertEquals(etag, second.getHeaderField("ETag"));
+	}
+	
+	@Test
+	public void testInvalidPaths() throws IOException {
+		assertEquals(404, open("/tiles/0/0.png").getResponseCode());
+		assertEquals(404, open("/tiles/a/b/c.png").getResponseCode());
+		assertEquals(404, open("/missing").getResponseCode());
+		assertEquals(200, open("/").getResponseCode());
+	}
+	
+	@Test
+	public void testDiskCache() throws IOException {
+		TileKey key = new TileKey(1, 0, 0);
+		Tile tile = server.getTile(key);
+		String scene = new TileRenderer(curves, "test").getSceneHash();
+		
+		assertTrue(new File(cacheDirectory, scene + "/1/0/0.png").isFile());
+		
+		TileCache reloaded = new TileCache(1 << 20, cacheDirectory);
+		assertEquals(tile.getEtag(), reloaded.get(scene, key).getEtag());
+		
+		// A scene with another name, or whose curves have changed, does not see the tile
+		assertEquals(null, reloaded.get(new TileRenderer(curves, "other").getSceneHash(), key));
+		
+		((SimpleFunctionCurve) curves.get(0)).setColor(Color.GREEN);
+		assertTrue(!new TileRenderer(curves, "test").getSceneHash().equals(scene));
+		assertTrue(!server.getTile(key).getEtag().equals(tile.getEtag()));
+	}
+	
+	@Test
+	public void testViewportDependentCurvesAreDrawn() {
+		// A heat map of x + y, which draws nothing until it is fitted to a viewport
+		ArrayList<Curve> scene = new ArrayList<Curve>();
+		scene.add(new ScalarField(p -> p[0] + p[1]));
+		TileRenderer renderer = new TileRenderer(scene, "field");
+		
+		BufferedImage image = renderer.render(new TileKey(0, 0, -1));
+		assertTrue(image.getRGB(10, 10) != image.getRGB(TileRenderer.TILE_SIZE - 10, 10));
+		assertTrue(image.getRGB(10, TileRenderer.TILE_SIZE - 10) != image.getRGB(10, 10));
+		
+		// The curve of the scene is left unfitted
+		assertEquals(0, ((ScalarField) scene.get(0)).getContours().size());
+		assertTrue(Double.isNaN(((ScalarField) scene.get(0)).getSpacing()));
+	}
+	
+	@Test
+	public void testServesLocalLeaflet() throws IOException {
+		File base = Files.createTempDirectory("leaflet").toFile();
+		File leaflet = new File(base, "dist");
+		leaflet.mkdir();
+		Files.write(new File(leaflet, "leaflet.js").toPath(), "var L = {};".getBytes());
+		Files.write(new File(base, "secret.txt").toPath(), "secret".getBytes());
+		server.serveLeaflet(leaflet);
+		
+		HttpURLConnection page = open("/");
+		try(InputStream in = page.getInputStream()) {
+			assertTrue(new String(in.readAllBytes()).contains("src=\"/leaflet/leaflet.js\""));
+		}
+		
+		HttpURLConnection script = open("/leaflet/leaflet.js");
+		assertEquals(200, script.getResponseCode());
+		try(InputStream in = script.getInputStream()) {
+			assertEquals("var L = {};", new String(in.readAllBytes()));
+		}
+		
+		// Only files below the directory are served
+		assertEquals(404, open("/leaflet/missing.js").getResponseCode());
+		assertEquals(404, open("/leaflet/../secret.txt").getResponseCode());
+	}
+	
+	@Test
+	public void testMemoryLimit() {
+		TileCache cache = new TileCache(100);
+		
+		for(int i = 0; i < 10; i++) {
+			cache.put("scene", new TileKey(0, i, 0), new Tile(new byte[30], "\"" + i + "\""));
+		}
+		
+		assertEquals(3, cache.getMemoryTileCount());
+		assertTrue(cache.get("scene", new TileKey(0, 9, 0)) != null);
+		assertTrue(cache.get("scene", new TileKey(0, 0, 0)) == null);
+	}
+	
+	@Test
+	public void testUnwritableDiskCache() throws IOException {
+		// A file where the directory should be, so no tile can be written below it
+		File blocked = File.createTempFile("tiles", ".blocked");
+		TileServer unwritable = new TileServer(getScene(), "test", 0, new TileCache(1 << 20, blocked));
+		
+		try {
+			TileKey key = new TileKey(0, 0, 0);
+			Tile tile = unwritable.getTile(key);
+			
+			assertTrue(tile.getPng().length > 0);
+			assertTrue(blocked.isFile());
+			assertTrue(unwritable.getTile(key) == tile);
+		} finally {
+			unwritable.stop();
+		}
+	}
+}